@@ -52,6 +52,7 @@ public class DocListFragment extends Fragment {
     // Infinite scrolling things
     private boolean loading = true;
     private int previousTotal = 0;
+    private String nextCursor = null;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -192,12 +193,14 @@ public class DocListFragment extends Fragment {
      */
     private void loadDocuments(final View view, final boolean reset) {
         if (view == null) return;
+        if (!reset && nextCursor == null) return; // No more documents
         final View progressBar = view.findViewById(R.id.progressBar);
         final TextView documentsEmptyView = view.findViewById(R.id.documentsEmptyView);
 
         if (reset) {
             loading = true;
             previousTotal = 0;
+            nextCursor = null;
             adapter.clearDocuments();
         } else {
             swipeRefreshLayout.setRefreshing(true);
@@ -205,9 +208,10 @@ public class DocListFragment extends Fragment {
 
         recyclerView.setEmptyView(progressBar);
 
-        DocumentResource.list(getActivity(), reset ? 0 : adapter.getItemCount(), query, new HttpCallback() {
+        DocumentResource.list(getActivity(), nextCursor, query, new HttpCallback() {
             @Override
             public void onSuccess(JSONObject response) {
+                nextCursor = response.isNull("next") ? null : response.optString("next");
                 adapter.addDocuments(response.optJSONArray("documents"));
                 documentsEmptyView.setText(R.string.no_documents);
                 recyclerView.setEmptyView(documentsEmptyView);
@@ -21,20 +21,23 @@ public class DocumentResource extends BaseResource {
      * GET /document/list.
      *
      * @param context Context
-     * @param offset Offset
+     * @param cursor Cursor of the page, null for the first page
      * @param query Search query
      * @param callback Callback
      */
-    public static void list(Context context, int offset, String query, HttpCallback callback) {
+    public static void list(Context context, String cursor, String query, HttpCallback callback) {
+        HttpUrl.Builder urlBuilder = HttpUrl.parse(getApiUrl(context) + "/document/list")
+                .newBuilder()
+                .addQueryParameter("limit", "20")
+                .addQueryParameter("total", "none")
+                .addQueryParameter("sort_column", "3")
+                .addQueryParameter("asc", "false")
+                .addQueryParameter("search", query);
+        if (cursor != null) {
+            urlBuilder.addQueryParameter("cursor", cursor);
+        }
         Request request = new Request.Builder()
-                .url(HttpUrl.parse(getApiUrl(context) + "/document/list")
-                        .newBuilder()
-                        .addQueryParameter("limit", "20")
-                        .addQueryParameter("offset", Integer.toString(offset))
-                        .addQueryParameter("sort_column", "3")
-                        .addQueryParameter("asc", "false")
-                        .addQueryParameter("search", query)
-                        .build())
+                .url(urlBuilder.build())
                 .get()
                 .build();
         OkHttpUtil.buildClient(context)
@@ -7,7 +7,7 @@ package com.sismics.docs.core.constant;
  */
 public enum ConfigType {
     /**
-     * Lucene directory storage type.
+     * Lucene directory storage type (RAM, FILE, MMAP or HYBRID).
      */
     LUCENE_DIRECTORY_STORAGE,
     /**
@@ -65,5 +65,10 @@ public enum ConfigType {
     LDAP_BASE_DN,
     LDAP_FILTER,
     LDAP_DEFAULT_EMAIL,
-    LDAP_DEFAULT_STORAGE
+    LDAP_DEFAULT_STORAGE,
+
+    /**
+     * Secret used to sign the session tokens, generated if not provided by the environment.
+     */
+    SESSION_TOKEN_SECRET
 }
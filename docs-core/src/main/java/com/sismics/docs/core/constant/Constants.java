@@ -83,6 +83,61 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Filter, sort and paginate fulltext searches in the Lucene index.
+     */
+    public static final String LUCENE_FILTERING_ENV = "DOCS_LUCENE_FILTERING";
+
+    /**
+     * Number of PDF pages OCR-ized in parallel environment variable.
+     */
+    public static final String OCR_THREAD_COUNT_ENV = "DOCS_OCR_THREAD_COUNT";
+
+    /**
+     * Number of ZIP entries compressed in parallel environment variable.
+     */
+    public static final String ZIP_THREAD_COUNT_ENV = "DOCS_ZIP_THREAD_COUNT";
+
+    /**
+     * Sign the session tokens to authenticate without a database lookup environment variable.
+     */
+    public static final String SIGNED_SESSION_TOKEN_ENV = "DOCS_SIGNED_SESSION_TOKEN";
+
+    /**
+     * Secret used to sign the session tokens environment variable.
+     */
+    public static final String SESSION_TOKEN_SECRET_ENV = "DOCS_SESSION_TOKEN_SECRET";
+
+    /**
+     * Storage backend of the files environment variable (local or s3).
+     */
+    public static final String STORAGE_BACKEND_ENV = "DOCS_STORAGE_BACKEND";
+
+    /**
+     * S3-compatible object storage configuration environment variables.
+     */
+    public static final String S3_ENDPOINT_ENV = "DOCS_S3_ENDPOINT";
+    public static final String S3_REGION_ENV = "DOCS_S3_REGION";
+    public static final String S3_BUCKET_ENV = "DOCS_S3_BUCKET";
+    public static final String S3_ACCESS_KEY_ENV = "DOCS_S3_ACCESS_KEY";
+    public static final String S3_SECRET_KEY_ENV = "DOCS_S3_SECRET_KEY";
+
+    /**
+     * Interval between two reloads of the in-memory configuration environment variable (in seconds, 0 to disable).
+     * Only needed when several instances share the same database.
+     */
+    public static final String CONFIG_RELOAD_INTERVAL_ENV = "DOCS_CONFIG_RELOAD_INTERVAL";
+
+    /**
+     * Maximum number of pooled connections to the LDAP server environment variable.
+     */
+    public static final String LDAP_POOL_SIZE_ENV = "DOCS_LDAP_POOL_SIZE";
+
+    /**
+     * Only trusted jwt issuer environment variable, the certificates of any issuer are fetched if empty.
+     */
+    public static final String JWT_ISSUER_ENV = "DOCS_JWT_ISSUER";
+
     /**
      * Expiration time of the password recovery in hours.
      */
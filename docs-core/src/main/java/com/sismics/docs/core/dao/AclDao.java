@@ -8,11 +8,14 @@ import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TagCache;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -37,6 +40,7 @@ public class AclDao {
         // Create the ACL
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(acl);
+        TagCache.invalidateAll();
 
         // Create audit log
         AuditLogUtil.create(acl, AuditLogType.CREATE, userId);
@@ -65,23 +69,34 @@ public class AclDao {
      * @param sourceId Source ID
      * @return ACL DTO list
      */
-    @SuppressWarnings("unchecked")
     public List<AclDto> getBySourceId(String sourceId, AclType type) {
+        return getBySourceIds(Collections.singletonList(sourceId), type);
+    }
+
+    /**
+     * Search ACLs of multiple sources.
+     *
+     * @param sourceIds Source IDs
+     * @param type ACL type
+     * @return ACL DTO list
+     */
+    @SuppressWarnings("unchecked")
+    public List<AclDto> getBySourceIds(Collection<String> sourceIds, AclType type) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
+        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_PERM_C, a.ACL_SOURCEID_C, a.ACL_TARGETID_C, ")
                 .append(" u.USE_USERNAME_C, s.SHA_ID_C, s.SHA_NAME_C, g.GRP_NAME_C ")
                 .append(" from T_ACL a ")
                 .append(" left join T_USER u on u.USE_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_SHARE s on s.SHA_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_GROUP g on g.GRP_ID_C = a.ACL_TARGETID_C ")
-                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C = :sourceId ");
+                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C in (:sourceIds) ");
         if (type != null) {
             sb.append(" and a.ACL_TYPE_C = :type");
         }
 
         // Perform the query
         Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("sourceId", sourceId);
+        q.setParameter("sourceIds", sourceIds);
         if (type != null) {
             q.setParameter("type", type.name());
         }
@@ -94,6 +109,7 @@ public class AclDao {
             AclDto aclDto = new AclDto();
             aclDto.setId((String) o[i++]);
             aclDto.setPerm(PermType.valueOf((String) o[i++]));
+            aclDto.setSourceId((String) o[i++]);
             aclDto.setTargetId((String) o[i++]);
             String userName = (String) o[i++];
             String shareId = (String) o[i++];
@@ -181,5 +197,6 @@ public class AclDao {
         q.setParameter("type", type);
         q.setParameter("dateNow", new Date());
         q.executeUpdate();
+        TagCache.invalidateAll();
     }
 }
\ No newline at end of file
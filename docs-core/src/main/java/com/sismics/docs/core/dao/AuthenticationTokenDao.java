@@ -1,11 +1,14 @@
 package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.util.authentication.AuthenticationCache;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import org.joda.time.DateTime;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import org.hibernate.query.NativeQuery;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -54,6 +57,8 @@ public class AuthenticationTokenDao {
         AuthenticationToken authenticationToken = em.find(AuthenticationToken.class, authenticationTokenId);
         if (authenticationToken != null) {
             em.remove(authenticationToken);
+            SessionTokenUtil.revoke(authenticationTokenId);
+            AuthenticationCache.invalidateAll();
         } else {
             throw new Exception("Token not found: " + authenticationTokenId);
         }
@@ -64,16 +69,27 @@ public class AuthenticationTokenDao {
      *
      * @param userId User ID
      */
+    @SuppressWarnings("unchecked")
     public void deleteOldSessionToken(String userId) {
+        Date minDate = DateTime.now().minusDays(1).toDate();
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select a.id from AuthenticationToken a where a.userId = :userId and a.longLasted = :longLasted and a.lastConnectionDate < :minDate");
+        q.setParameter("userId", userId);
+        q.setParameter("longLasted", false);
+        q.setParameter("minDate", minDate);
+        for (String tokenId : (List<String>) q.getResultList()) {
+            SessionTokenUtil.revoke(tokenId);
+        }
+
         StringBuilder sb = new StringBuilder("delete from T_AUTHENTICATION_TOKEN AS ato ");
         sb.append(" where ato.AUT_IDUSER_C = :userId and ato.AUT_LONGLASTED_B = :longLasted");
         sb.append(" and ato.AUT_LASTCONNECTIONDATE_D < :minDate ");
 
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        Query q = em.createNativeQuery(sb.toString());
+        q = em.createNativeQuery(sb.toString());
         q.setParameter("userId", userId);
         q.setParameter("longLasted", false);
-        q.setParameter("minDate", DateTime.now().minusDays(1).toDate());
+        q.setParameter("minDate", minDate);
+        q.unwrap(NativeQuery.class).addSynchronizedEntityClass(AuthenticationToken.class);
         q.executeUpdate();
     }
 
@@ -91,7 +107,11 @@ public class AuthenticationTokenDao {
         Query q = em.createNativeQuery(sb.toString());
         q.setParameter("currentDate", new Date());
         q.setParameter("id", id);
+        q.unwrap(NativeQuery.class).addSynchronizedEntityClass(AuthenticationToken.class);
         q.executeUpdate();
+
+        // A token seen as expired in the cache is always reloaded, the previous date is harmless
+        AuthenticationCache.invalidate(AuthenticationCache.getTokenKey(id));
     }
     
     /**
@@ -113,11 +133,20 @@ public class AuthenticationTokenDao {
      * 
      * @param userId
      */
+    @SuppressWarnings("unchecked")
     public void deleteByUserId(String userId, String id) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        Query q = em.createQuery("delete AuthenticationToken a where a.userId = :userId and a.id != :id");
+        Query q = em.createQuery("select a.id from AuthenticationToken a where a.userId = :userId and a.id != :id");
+        q.setParameter("userId", userId);
+        q.setParameter("id", id);
+        for (String tokenId : (List<String>) q.getResultList()) {
+            SessionTokenUtil.revoke(tokenId);
+        }
+
+        q = em.createQuery("delete AuthenticationToken a where a.userId = :userId and a.id != :id");
         q.setParameter("userId", userId);
         q.setParameter("id", id);
         q.executeUpdate();
+        AuthenticationCache.invalidateAll();
     }
 }
@@ -2,10 +2,14 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.Query;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Configuration parameter DAO.
@@ -34,6 +38,21 @@ public class ConfigDao {
         }
     }
 
+    /**
+     * Returns all the configuration parameters.
+     *
+     * @return Configuration parameters
+     */
+    @SuppressWarnings("unchecked")
+    public List<Config> findAll() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+        // The table also contains internal parameters, such as the database version
+        Query q = em.createQuery("select c from Config c where c.id in :idList");
+        q.setParameter("idList", Arrays.asList(ConfigType.values()));
+        return q.getResultList();
+    }
+
     /**
      * Updates a configuration parameter.
      *
@@ -51,5 +70,8 @@ public class ConfigDao {
         } else {
             config.setValue(value);
         }
+
+        // The new value is visible by the other requests once committed
+        ConfigUtil.invalidate();
     }
 }
@@ -11,6 +11,7 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.query.NativeQuery;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.List;
@@ -59,6 +60,44 @@ public class DocumentDao {
         return q.getResultList();
     }
 
+    /**
+     * Returns a page of all active documents, ordered by ID.
+     *
+     * @param lastId ID of the last document of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of documents
+     */
+    public List<Document> findAllAfter(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null"
+                + (lastId == null ? "" : " and d.id > :lastId") + " order by d.id", Document.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns a page of the documents updated or deleted after a date, ordered by ID.
+     *
+     * @param date Date
+     * @param lastId ID of the last document of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of documents
+     */
+    public List<Document> findUpdatedAfter(Date date, String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where (d.updateDate > :date or d.deleteDate > :date)"
+                + (lastId == null ? "" : " and d.id > :lastId") + " order by d.id", Document.class);
+        q.setParameter("date", date);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
     /**
      * Returns the list of all active documents from a user.
      * 
@@ -236,6 +275,7 @@ public class DocumentDao {
         query.setParameter("updateDate", new Date());
         query.setParameter("fileId", document.getFileId());
         query.setParameter("id", document.getId());
+        query.unwrap(NativeQuery.class).addSynchronizedEntityClass(Document.class);
         query.executeUpdate();
     }
 
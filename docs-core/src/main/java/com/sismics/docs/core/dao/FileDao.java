@@ -30,9 +30,20 @@ public class FileDao {
      * @return New ID
      */
     public String create(File file, String userId) {
-        // Create the UUID
-        file.setId(UUID.randomUUID().toString());
-        
+        return create(file, UUID.randomUUID().toString(), userId);
+    }
+
+    /**
+     * Creates a new file with an ID chosen before, when its content has been stored first.
+     *
+     * @param file File
+     * @param id File ID
+     * @param userId User ID
+     * @return New ID
+     */
+    public String create(File file, String id, String userId) {
+        file.setId(id);
+
         // Create the file
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         file.setCreateDate(new Date());
@@ -59,6 +70,56 @@ public class FileDao {
         return q.getResultList();
     }
     
+    /**
+     * Returns a page of all files, ordered by ID.
+     *
+     * @param lastId ID of the last file of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findAllAfter(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.deleteDate is null"
+                + (lastId == null ? "" : " and f.id > :lastId") + " order by f.id", File.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns a page of the files created, deleted or from a document updated after a date, ordered by ID.
+     *
+     * @param date Date
+     * @param lastId ID of the last file of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findUpdatedAfter(Date date, String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where (f.createDate > :date or f.deleteDate > :date"
+                + " or f.documentId in (select d.id from Document d where d.updateDate > :date or d.deleteDate > :date))"
+                + (lastId == null ? "" : " and f.id > :lastId") + " order by f.id", File.class);
+        q.setParameter("date", date);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
     /**
      * Returns the list of all files from a user.
      * 
@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.Group;
 import com.sismics.docs.core.model.jpa.UserGroup;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.authentication.AuthenticationCache;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -15,6 +16,7 @@ import com.sismics.util.context.ThreadLocalContext;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
+import org.hibernate.jpa.HibernateHints;
 import java.util.*;
 
 /**
@@ -33,6 +35,7 @@ public class GroupDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         Query q = em.createQuery("select g from Group g where g.name = :name and g.deleteDate is null");
         q.setParameter("name", name);
+        q.setHint(HibernateHints.HINT_CACHEABLE, true);
         try {
             return (Group) q.getSingleResult();
         } catch (NoResultException e) {
@@ -50,6 +53,7 @@ public class GroupDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         Query q = em.createQuery("select g from Group g where g.id = :id and g.deleteDate is null");
         q.setParameter("id", id);
+        q.setHint(HibernateHints.HINT_CACHEABLE, true);
         try {
             return (Group) q.getSingleResult();
         } catch (NoResultException e) {
@@ -111,6 +115,9 @@ public class GroupDao {
         q.setParameter("groupId", groupDb.getId());
         q.executeUpdate();
 
+        // The members lose this group and its parents
+        AuthenticationCache.invalidateAll();
+
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.DELETE, userId);
     }
@@ -128,6 +135,9 @@ public class GroupDao {
         // Create the user group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(userGroup);
+
+        // The user gains this group and its parents
+        AuthenticationCache.invalidateAll();
         
         return userGroup.getId();
     }
@@ -150,6 +160,9 @@ public class GroupDao {
         // Delete the user group
         Date dateNow = new Date();
         userGroupDb.setDeleteDate(dateNow);
+
+        // The user loses this group and its parents
+        AuthenticationCache.invalidateAll();
     }
     
     /**
@@ -261,6 +274,9 @@ public class GroupDao {
         // Update the group
         groupDb.setName(group.getName());
         groupDb.setParentId(group.getParentId());
+
+        // The group hierarchy may have changed
+        AuthenticationCache.invalidateAll();
         
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.UPDATE, userId);
@@ -15,6 +15,7 @@ import com.sismics.util.context.ThreadLocalContext;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
+import org.hibernate.jpa.HibernateHints;
 import java.util.*;
 
 /**
@@ -79,6 +80,7 @@ public class MetadataDao {
         try {
             Query q = em.createQuery("select r from Metadata r where r.id = :id and r.deleteDate is null");
             q.setParameter("id", id);
+            q.setHint(HibernateHints.HINT_CACHEABLE, true);
             return (Metadata) q.getSingleResult();
         } catch (NoResultException e) {
             return null;
@@ -14,6 +14,7 @@ import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import org.hibernate.query.NativeQuery;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -149,6 +150,7 @@ public class RouteStepDao {
         q.setParameter("comment", comment);
         q.setParameter("validatorUserId", validatorUserId);
         q.setParameter("id", id);
+        q.unwrap(NativeQuery.class).addSynchronizedEntityClass(RouteStep.class);
         q.executeUpdate();
     }
 }
@@ -8,6 +8,7 @@ import com.sismics.docs.core.model.jpa.DocumentTag;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TagCache;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -96,6 +97,7 @@ public class TagDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         tag.setCreateDate(new Date());
         em.persist(tag);
+        TagCache.invalidateAll();
         
         // Create audit log
         AuditLogUtil.create(tag, AuditLogType.CREATE, userId);
@@ -135,6 +137,7 @@ public class TagDao {
         q = em.createQuery("update Tag t set t.parentId = null where t.parentId = :tagId and t.deleteDate is null");
         q.setParameter("tagId", tagId);
         q.executeUpdate();
+        TagCache.invalidateAll();
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.DELETE, userId);
@@ -159,6 +162,7 @@ public class TagDao {
         tagDb.setName(tag.getName());
         tagDb.setColor(tag.getColor());
         tagDb.setParentId(tag.getParentId());
+        TagCache.invalidateAll();
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.UPDATE, userId);
@@ -166,6 +170,24 @@ public class TagDao {
         return tagDb;
     }
 
+    /**
+     * Returns the tag IDs of a list of documents.
+     *
+     * @param documentIds Document IDs
+     * @return Tag IDs by document ID
+     */
+    public Map<String, List<String>> getTagIdsByDocumentsIds(Iterable<String> documentIds) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select dt.documentId, dt.tagId from DocumentTag dt where dt.documentId in :documentIds and dt.deleteDate is null");
+        q.setParameter("documentIds", documentIds);
+        Map<String, List<String>> result = new HashMap<>();
+        q.getResultList().forEach(o -> {
+            Object[] resultLine = (Object[]) o;
+            result.computeIfAbsent((String) resultLine[0], documentId -> new ArrayList<>()).add((String) resultLine[1]);
+        });
+        return result;
+    }
+
     /**
      * Returns the list of all tags.
      *
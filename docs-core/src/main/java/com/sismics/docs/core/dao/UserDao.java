@@ -14,6 +14,10 @@ import com.sismics.docs.core.dao.dto.UserDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.authentication.AuthenticationCache;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -115,6 +119,9 @@ public class UserDao {
         userDb.setTotpKey(user.getTotpKey());
         userDb.setDisableDate(user.getDisableDate());
 
+        // The user may have been disabled
+        AuthenticationCache.invalidateAll();
+
         // Create audit log
         AuditLogUtil.create(userDb, AuditLogType.UPDATE, userId);
         
@@ -217,6 +224,24 @@ public class UserDao {
         }
     }
     
+    /**
+     * Returns the private keys of a list of users.
+     *
+     * @param userIds User IDs
+     * @return Private keys by user ID
+     */
+    public Map<String, String> getPrivateKeysByIds(Iterable<String> userIds) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select u.id, u.privateKey from User u where u.id in :userIds");
+        q.setParameter("userIds", userIds);
+        Map<String, String> result = new HashMap<>();
+        q.getResultList().forEach(o -> {
+            Object[] resultLine = (Object[]) o;
+            result.put((String) resultLine[0], (String) resultLine[1]);
+        });
+        return result;
+    }
+
     /**
      * Gets an active user by its username.
      * 
@@ -240,6 +265,7 @@ public class UserDao {
      * @param username User's username
      * @param userId User ID
      */
+    @SuppressWarnings("unchecked")
     public void delete(String username, String userId) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
             
@@ -251,8 +277,15 @@ public class UserDao {
         // Delete the user
         Date dateNow = new Date();
         userDb.setDeleteDate(dateNow);
+        AuthenticationCache.invalidateAll();
 
         // Delete linked data
+        q = em.createQuery("select at.id from AuthenticationToken at where at.userId = :userId");
+        q.setParameter("userId", userDb.getId());
+        for (String tokenId : (List<String>) q.getResultList()) {
+            SessionTokenUtil.revoke(tokenId);
+        }
+
         q = em.createQuery("delete from AuthenticationToken at where at.userId = :userId");
         q.setParameter("userId", userDb.getId());
         q.executeUpdate();
@@ -313,6 +346,31 @@ public class UserDao {
      * @return List of users
      */
     public List<UserDto> findByCriteria(UserCriteria criteria, SortCriteria sortCriteria) {
+        QueryParam queryParam = QueryUtil.getSortedQueryParam(buildQueryParam(criteria), sortCriteria);
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+        return assembleResultList(l);
+    }
+
+    /**
+     * Searches users by criteria, one page at a time.
+     *
+     * @param paginatedList List of users (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     */
+    public void findByCriteria(PaginatedList<UserDto> paginatedList, UserCriteria criteria, SortCriteria sortCriteria) {
+        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, buildQueryParam(criteria), sortCriteria);
+        paginatedList.setResultList(assembleResultList(l));
+    }
+
+    /**
+     * Build the user search query.
+     *
+     * @param criteria Search criteria
+     * @return Query parameters
+     */
+    private QueryParam buildQueryParam(UserCriteria criteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
         
@@ -344,12 +402,16 @@ public class UserDao {
             sb.append(Joiner.on(" and ").join(criteriaList));
         }
         
-        // Perform the search
-        QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), sortCriteria);
-        @SuppressWarnings("unchecked")
-        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
-        
-        // Assemble results
+        return new QueryParam(sb.toString(), parameterMap);
+    }
+
+    /**
+     * Assemble the results of the user search query.
+     *
+     * @param l Query results
+     * @return List of users
+     */
+    private List<UserDto> assembleResultList(List<Object[]> l) {
         List<UserDto> userDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
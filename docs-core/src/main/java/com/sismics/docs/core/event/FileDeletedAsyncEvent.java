@@ -13,6 +13,11 @@ public class FileDeletedAsyncEvent extends UserEvent {
      */
     private String fileId;
 
+    /**
+     * ID of the document of the file, null if orphan.
+     */
+    private String documentId;
+
     private Long fileSize;
 
     public String getFileId() {
@@ -23,6 +28,14 @@ public class FileDeletedAsyncEvent extends UserEvent {
         this.fileId = fileId;
     }
 
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
     public Long getFileSize() {
         return fileSize;
     }
@@ -35,6 +48,7 @@ public class FileDeletedAsyncEvent extends UserEvent {
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
+            .add("documentId", documentId)
             .add("fileSize", fileSize)
             .toString();
     }
@@ -25,6 +25,16 @@ public abstract class FileEvent extends UserEvent {
      */
     private Path unencryptedFile;
 
+    /**
+     * SHA-256 of the unencrypted file, null if not computed yet.
+     */
+    private String contentHash;
+
+    /**
+     * True to process the file again, ignoring and replacing the cached result.
+     */
+    private boolean skipCache;
+
     public String getFileId() {
         return fileId;
     }
@@ -50,11 +60,28 @@ public abstract class FileEvent extends UserEvent {
         return this;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public boolean isSkipCache() {
+        return skipCache;
+    }
+
+    public void setSkipCache(boolean skipCache) {
+        this.skipCache = skipCache;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("language", language)
+            .add("skipCache", skipCache)
             .toString();
     }
 }
\ No newline at end of file
@@ -6,4 +6,16 @@ package com.sismics.docs.core.event;
  * @author bgamard
  */
 public class FileUpdatedAsyncEvent extends FileEvent {
-}
\ No newline at end of file
+    /**
+     * ID of the document of the file before the update, null if unchanged.
+     */
+    private String previousDocumentId;
+
+    public String getPreviousDocumentId() {
+        return previousDocumentId;
+    }
+
+    public void setPreviousDocumentId(String previousDocumentId) {
+        this.previousDocumentId = previousDocumentId;
+    }
+}
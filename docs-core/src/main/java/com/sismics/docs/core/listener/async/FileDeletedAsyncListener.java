@@ -59,7 +59,7 @@ public class FileDeletedAsyncListener {
 
         TransactionUtil.handle(() -> {
             // Update index
-            AppContext.getInstance().getIndexingHandler().deleteDocument(event.getFileId());
+            AppContext.getInstance().getIndexingHandler().deleteFile(event.getFileId(), event.getDocumentId());
         });
     }
 }
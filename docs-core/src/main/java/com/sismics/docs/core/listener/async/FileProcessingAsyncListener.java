@@ -10,23 +10,23 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.ProcessingCacheUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.docs.core.util.storage.StorageOutputStream;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.util.ImageUtil;
 import com.sismics.util.Scalr;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -120,7 +120,7 @@ public class FileProcessingAsyncListener {
             if (isFileCreated) {
                 AppContext.getInstance().getIndexingHandler().createFile(freshFile);
             } else {
-                AppContext.getInstance().getIndexingHandler().updateFile(freshFile);
+                AppContext.getInstance().getIndexingHandler().updateFile(freshFile, ((FileUpdatedAsyncEvent) event).getPreviousDocumentId());
             }
         });
 
@@ -144,29 +144,38 @@ public class FileProcessingAsyncListener {
             return null;
         }
 
+        // Reuse the result of an identical file processed before, unless a new processing is requested
+        ProcessingCacheUtil.CacheKey cacheKey = null;
+        try {
+            cacheKey = ProcessingCacheUtil.getKey(formatHandler, event.getLanguage(), event.getUnencryptedFile(), event.getContentHash());
+        } catch (Exception e) {
+            log.error("Unable to compute the processing cache key of: " + file, e);
+        }
+        ProcessingCacheUtil.ProcessingResult result = cacheKey == null || event.isSkipCache() ? null : ProcessingCacheUtil.get(cacheKey);
+        if (result != null) {
+            log.info("File processing result found in cache: " + file.getId());
+            try {
+                writeThumbnails(user, file, result);
+            } catch (Throwable e) {
+                log.error("Unable to write cached thumbnails for: " + file, e);
+            }
+            return result.getContent();
+        }
+
         // Generate file variations
+        boolean success = true;
+        byte[] web = null;
+        byte[] thumbnail = null;
         try {
-            Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
             BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
             if (image != null) {
                 // Generate thumbnails from image
-                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
-                BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
+                web = toJpeg(Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280));
+                thumbnail = toJpeg(Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256));
                 image.flush();
-
-                // Write "web" encrypted image
-                Path outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_web");
-                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(web, outputStream);
-                }
-
-                // Write "thumb" encrypted image
-                outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_thumb");
-                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(thumbnail, outputStream);
-                }
             }
         } catch (Throwable e) {
+            success = false;
             log.error("Unable to generate thumbnails for: " + file, e);
         }
 
@@ -177,10 +186,65 @@ public class FileProcessingAsyncListener {
         try {
             content = formatHandler.extractContent(event.getLanguage(), event.getUnencryptedFile());
         } catch (Throwable e) {
+            success = false;
             log.error("Error extracting content from: " + file, e);
         }
         log.info(MessageFormat.format("File content extracted in {0}ms: " + file.getId(), System.currentTimeMillis() - startTime));
 
+        result = new ProcessingCacheUtil.ProcessingResult(web, thumbnail, content);
+        try {
+            writeThumbnails(user, file, result);
+        } catch (Throwable e) {
+            success = false;
+            log.error("Unable to write thumbnails for: " + file, e);
+        }
+
+        // Only cache complete results, the previous result of a file processed again is dropped anyway
+        if (success && cacheKey != null) {
+            ProcessingCacheUtil.put(cacheKey, result);
+        } else if (cacheKey != null && event.isSkipCache()) {
+            ProcessingCacheUtil.delete(cacheKey);
+        }
+
         return content;
     }
+
+    /**
+     * Encode an image in JPEG.
+     *
+     * @param image Image
+     * @return JPEG data
+     * @throws Exception e
+     */
+    private byte[] toJpeg(BufferedImage image) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageUtil.writeJpeg(image, outputStream);
+        image.flush();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Write the encrypted "web" and "thumb" images of a file.
+     *
+     * @param user User whom created the file
+     * @param file File
+     * @param result Processing result
+     * @throws Exception e
+     */
+    private void writeThumbnails(User user, File file, ProcessingCacheUtil.ProcessingResult result) throws Exception {
+        if (result.getWeb() != null) {
+            try (StorageOutputStream storageOutputStream = StorageUtil.getBackend().write(file.getId() + "_web");
+                 OutputStream outputStream = new CipherOutputStream(storageOutputStream, EncryptionUtil.getEncryptionCipher(user.getPrivateKey()))) {
+                outputStream.write(result.getWeb());
+                storageOutputStream.commit();
+            }
+        }
+        if (result.getThumbnail() != null) {
+            try (StorageOutputStream storageOutputStream = StorageUtil.getBackend().write(file.getId() + "_thumb");
+                 OutputStream outputStream = new CipherOutputStream(storageOutputStream, EncryptionUtil.getEncryptionCipher(user.getPrivateKey()))) {
+                outputStream.write(result.getThumbnail());
+                storageOutputStream.commit();
+            }
+        }
+    }
 }
@@ -9,10 +9,23 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.indexing.RebuildIndexStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Listener on rebuild index.
@@ -25,8 +38,44 @@ public class RebuildIndexAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(RebuildIndexAsyncListener.class);
 
+    /**
+     * Number of documents or files indexed in a batch.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Number of batches between two checkpoints.
+     */
+    private static final int CHECKPOINT_BATCH_COUNT = 20;
+
+    /**
+     * Checkpoint key of the current phase.
+     */
+    private static final String CHECKPOINT_PHASE = "rebuild_phase";
+
+    /**
+     * Checkpoint key of the last indexed ID.
+     */
+    private static final String CHECKPOINT_LAST_ID = "rebuild_last_id";
+
+    /**
+     * Checkpoint key of the checkpoint time.
+     */
+    private static final String CHECKPOINT_TIME = "rebuild_time";
+
+    /**
+     * Documents indexing phase.
+     */
+    private static final String PHASE_DOCUMENTS = "documents";
+
+    /**
+     * Files indexing phase.
+     */
+    private static final String PHASE_FILES = "files";
+
     /**
      * Rebuild Lucene index.
+     * The index is rebuilt in a shadow index, then swapped with the current one.
      * 
      * @param event Index rebuild event
      */
@@ -37,35 +86,123 @@ public class RebuildIndexAsyncListener {
             log.info("Rebuild index event: " + event.toString());
         }
 
-        // Clear the index
-        AppContext.getInstance().getIndexingHandler().clearIndex();
-
-        // Index all documents
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            DocumentDao documentDao = new DocumentDao();
-            List<Document> documentList;
-            do {
-                documentList = documentDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createDocuments(documentList);
-                offset += 100;
-            } while (documentList.size() > 0);
-        });
-
-        // Index all files
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            FileDao fileDao = new FileDao();
-            List<File> fileList;
-            do {
-                fileList = fileDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createFiles(fileList);
-                offset += 100;
-            } while (fileList.size() > 0);
-        });
+        AtomicLong totalCount = new AtomicLong();
+        TransactionUtil.handle(() -> totalCount.set(new DocumentDao().getDocumentCount() + new FileDao().getFileCount()));
+        if (!RebuildIndexStatus.start(totalCount.get())) {
+            log.info("The index is already being rebuilt");
+            return;
+        }
 
-        if (log.isInfoEnabled()) {
-            log.info("Rebuilding index done");
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        int threadCount = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Map<String, String> checkpoint = indexingHandler.startRebuild();
+            String lastId = checkpoint.get(CHECKPOINT_LAST_ID);
+            if (lastId != null) {
+                log.info("Resuming index rebuild from the {} after {}", checkpoint.get(CHECKPOINT_PHASE), lastId);
+            }
+
+            // Index again what has changed while the rebuild was interrupted, changes are not applied to it meanwhile
+            String checkpointTime = checkpoint.get(CHECKPOINT_TIME);
+            if (checkpointTime != null) {
+                Date updateDate = new Date(Long.parseLong(checkpointTime));
+                rebuild(executor, null, null,
+                        pageLastId -> new DocumentDao().findUpdatedAfter(updateDate, pageLastId, BATCH_SIZE),
+                        Document::getId, indexingHandler::createDocuments);
+                rebuild(executor, null, null,
+                        pageLastId -> new FileDao().findUpdatedAfter(updateDate, pageLastId, BATCH_SIZE),
+                        File::getId, indexingHandler::createFiles);
+            }
+
+            // Index all documents
+            if (!PHASE_FILES.equals(checkpoint.get(CHECKPOINT_PHASE))) {
+                RebuildIndexStatus.setPhase(PHASE_DOCUMENTS);
+                rebuild(executor, PHASE_DOCUMENTS, lastId,
+                        pageLastId -> new DocumentDao().findAllAfter(pageLastId, BATCH_SIZE),
+                        Document::getId, indexingHandler::createDocuments);
+                lastId = null;
+            }
+
+            // Index all files
+            RebuildIndexStatus.setPhase(PHASE_FILES);
+            rebuild(executor, PHASE_FILES, lastId,
+                    pageLastId -> new FileDao().findAllAfter(pageLastId, BATCH_SIZE),
+                    File::getId, indexingHandler::createFiles);
+
+            // Replace the current index
+            indexingHandler.finishRebuild();
+            if (log.isInfoEnabled()) {
+                log.info("Rebuilding index done");
+            }
+        } catch (Exception e) {
+            log.error("Error rebuilding the index", e);
+            indexingHandler.abortRebuild();
+        } finally {
+            executor.shutdownNow();
+            RebuildIndexStatus.finish();
+        }
+    }
+
+    /**
+     * Index all documents or files, with keyset pagination.
+     * Batches are indexed concurrently, and the progress is checkpointed regularly.
+     *
+     * @param executor Executor indexing the batches
+     * @param phase Current phase, null to never checkpoint
+     * @param lastId Last indexed ID, null to start from the beginning
+     * @param pageReader Reads the page following an ID
+     * @param idGetter ID getter
+     * @param batchIndexer Indexes a batch
+     * @param <T> Type of the indexed entity
+     * @throws Exception e
+     */
+    private <T> void rebuild(ExecutorService executor, String phase, String lastId,
+                             Function<String, List<T>> pageReader, Function<T, String> idGetter, Consumer<List<T>> batchIndexer) throws Exception {
+        AtomicReference<String> pageLastId = new AtomicReference<>(lastId);
+        List<Future<?>> futureList = new ArrayList<>();
+        while (true) {
+            // Read the next page
+            List<T> batch = new ArrayList<>();
+            TransactionUtil.handle(() -> batch.addAll(pageReader.apply(pageLastId.get())));
+            if (batch.isEmpty()) {
+                break;
+            }
+            pageLastId.set(idGetter.apply(batch.get(batch.size() - 1)));
+
+            // Build and index the Lucene documents in a worker thread
+            futureList.add(executor.submit(() -> {
+                TransactionUtil.handle(() -> batchIndexer.accept(batch));
+                RebuildIndexStatus.addIndexed(batch.size());
+            }));
+
+            if (futureList.size() >= CHECKPOINT_BATCH_COUNT) {
+                checkpoint(futureList, phase, pageLastId.get());
+            }
+        }
+        checkpoint(futureList, phase, pageLastId.get());
+    }
+
+    /**
+     * Wait for the pending batches, then checkpoint the progress.
+     *
+     * @param futureList Pending batches (cleared by side effects)
+     * @param phase Current phase, null to only wait for the pending batches
+     * @param lastId Last indexed ID
+     * @throws Exception e
+     */
+    private void checkpoint(List<Future<?>> futureList, String phase, String lastId) throws Exception {
+        for (Future<?> future : futureList) {
+            future.get();
+        }
+        futureList.clear();
+
+        if (phase != null && lastId != null) {
+            Map<String, String> checkpoint = new HashMap<>();
+            checkpoint.put(CHECKPOINT_PHASE, phase);
+            checkpoint.put(CHECKPOINT_LAST_ID, lastId);
+            checkpoint.put(CHECKPOINT_TIME, Long.toString(System.currentTimeMillis()));
+            AppContext.getInstance().getIndexingHandler().checkpointRebuild(checkpoint);
         }
     }
 }
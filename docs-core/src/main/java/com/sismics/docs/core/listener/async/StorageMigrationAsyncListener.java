@@ -0,0 +1,45 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.event.StorageMigrationAsyncEvent;
+import com.sismics.docs.core.util.storage.LocalStorageBackend;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener on storage migration.
+ * The files stored in the local storage directory are moved to the hashed layout,
+ * or copied to the configured storage backend if it is not local.
+ */
+public class StorageMigrationAsyncListener {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(StorageMigrationAsyncListener.class);
+
+    /**
+     * Migrate the storage.
+     *
+     * @param event Storage migration event
+     */
+    @Subscribe
+    public void on(final StorageMigrationAsyncEvent event) {
+        if (log.isInfoEnabled()) {
+            log.info("Storage migration event: " + event.toString());
+        }
+
+        try {
+            StorageBackend backend = StorageUtil.getBackend();
+            LocalStorageBackend localBackend = StorageUtil.getLocalBackend();
+            if (backend instanceof LocalStorageBackend) {
+                log.info("{} files moved to the hashed storage layout", localBackend.migrateLegacyLayout());
+            } else {
+                StorageUtil.migrate(localBackend, backend);
+            }
+        } catch (Exception e) {
+            log.error("Error migrating the storage", e);
+        }
+    }
+}
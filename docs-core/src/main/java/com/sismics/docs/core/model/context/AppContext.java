@@ -2,28 +2,28 @@ package com.sismics.docs.core.model.context;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.event.FileEvent;
+import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
+import com.sismics.docs.core.event.StorageMigrationAsyncEvent;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.service.SessionTokenService;
 import com.sismics.docs.core.util.PdfUtil;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
 import com.sismics.util.ClasspathScanner;
-import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Global application context.
@@ -36,20 +36,55 @@ public class AppContext {
      */
     private static final Logger log = LoggerFactory.getLogger(AppContext.class);
 
+    /**
+     * Maximum number of generic events waiting to be processed.
+     */
+    private static final int EVENT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * Maximum number of uploaded files waiting to be processed.
+     */
+    private static final int FILE_PROCESSING_QUEUE_CAPACITY = 100;
+
+    /**
+     * Maximum number of imported files waiting to be processed.
+     */
+    private static final int IMPORT_QUEUE_CAPACITY = 100;
+
+    /**
+     * Maximum number of bulk events waiting to be processed.
+     */
+    private static final int BULK_QUEUE_CAPACITY = 100;
+
     /**
      * Singleton instance.
      */
     private static AppContext instance;
 
     /**
-     * Generic asynchronous event bus.
+     * Generic asynchronous event queue.
      */
-    private EventBus asyncEventBus;
+    private AsyncEventQueue asyncEventQueue;
 
     /**
-     * Asynchronous bus for email sending.
+     * Asynchronous queue for processing uploaded files (thumbnails, OCR).
      */
-    private EventBus mailEventBus;
+    private AsyncEventQueue fileProcessingQueue;
+
+    /**
+     * Asynchronous queue for processing imported files, processed after the uploaded ones.
+     */
+    private AsyncEventQueue importQueue;
+
+    /**
+     * Asynchronous queue for bulk operations (reindexing, storage migration), processed last.
+     */
+    private AsyncEventQueue bulkQueue;
+
+    /**
+     * Asynchronous queue for email sending.
+     */
+    private AsyncEventQueue mailQueue;
 
     /**
      * Indexing handler.
@@ -72,9 +107,14 @@ public class AppContext {
     private FileSizeService fileSizeService;
 
     /**
-     * Asynchronous executors.
+     * Session token service, null if the session tokens are not signed.
      */
-    private List<ThreadPoolExecutor> asyncExecutorList;
+    private SessionTokenService sessionTokenService;
+
+    /**
+     * Asynchronous event queues.
+     */
+    private List<AsyncEventQueue> asyncEventQueueList;
 
     /**
      * Start the application context.
@@ -113,6 +153,13 @@ public class AppContext {
         fileSizeService.startAsync();
         fileSizeService.awaitRunning();
 
+        // Start session token service
+        if (SessionTokenUtil.isEnabled()) {
+            sessionTokenService = new SessionTokenService();
+            sessionTokenService.startAsync();
+            sessionTokenService.awaitRunning();
+        }
+
         // Register fonts
         PdfUtil.registerFonts();
 
@@ -143,22 +190,31 @@ public class AppContext {
      * (Re)-initializes the event buses.
      */
     private void resetEventBus() {
-        asyncExecutorList = new ArrayList<>();
-
-        asyncEventBus = newAsyncEventBus();
-        asyncEventBus.register(new FileProcessingAsyncListener());
-        asyncEventBus.register(new FileDeletedAsyncListener());
-        asyncEventBus.register(new DocumentCreatedAsyncListener());
-        asyncEventBus.register(new DocumentUpdatedAsyncListener());
-        asyncEventBus.register(new DocumentDeletedAsyncListener());
-        asyncEventBus.register(new RebuildIndexAsyncListener());
-        asyncEventBus.register(new AclCreatedAsyncListener());
-        asyncEventBus.register(new AclDeletedAsyncListener());
-        asyncEventBus.register(new WebhookAsyncListener());
-
-        mailEventBus = newAsyncEventBus();
-        mailEventBus.register(new PasswordLostAsyncListener());
-        mailEventBus.register(new RouteStepValidateAsyncListener());
+        asyncEventQueueList = new ArrayList<>();
+        int threadCount = Math.max(Runtime.getRuntime().availableProcessors() / 2, 2);
+
+        mailQueue = newAsyncEventQueue("mail", threadCount, EVENT_QUEUE_CAPACITY, Thread.NORM_PRIORITY);
+        mailQueue.register(new PasswordLostAsyncListener());
+        mailQueue.register(new RouteStepValidateAsyncListener());
+
+        asyncEventQueue = newAsyncEventQueue("events", threadCount, EVENT_QUEUE_CAPACITY, Thread.NORM_PRIORITY);
+        asyncEventQueue.register(new FileDeletedAsyncListener());
+        asyncEventQueue.register(new DocumentCreatedAsyncListener());
+        asyncEventQueue.register(new DocumentUpdatedAsyncListener());
+        asyncEventQueue.register(new DocumentDeletedAsyncListener());
+        asyncEventQueue.register(new AclCreatedAsyncListener());
+        asyncEventQueue.register(new AclDeletedAsyncListener());
+        asyncEventQueue.register(new WebhookAsyncListener());
+
+        fileProcessingQueue = newAsyncEventQueue("processing", threadCount, FILE_PROCESSING_QUEUE_CAPACITY, Thread.NORM_PRIORITY);
+        fileProcessingQueue.register(new FileProcessingAsyncListener());
+
+        importQueue = newAsyncEventQueue("import", 1, IMPORT_QUEUE_CAPACITY, Thread.MIN_PRIORITY);
+        importQueue.register(new FileProcessingAsyncListener());
+
+        bulkQueue = newAsyncEventQueue("bulk", 1, BULK_QUEUE_CAPACITY, Thread.MIN_PRIORITY);
+        bulkQueue.register(new RebuildIndexAsyncListener());
+        bulkQueue.register(new StorageMigrationAsyncListener());
     }
 
     /**
@@ -175,23 +231,76 @@ public class AppContext {
     }
 
     /**
-     * Creates a new asynchronous event bus.
+     * Creates a new asynchronous event queue.
      *
-     * @return Async event bus
+     * @param name Queue name
+     * @param threadCount Number of threads processing the events
+     * @param capacity Maximum number of events waiting to be processed
+     * @param threadPriority Priority of the threads processing the events
+     * @return Async event queue
      */
-    private EventBus newAsyncEventBus() {
-        if (EnvironmentUtil.isUnitTest()) {
-            return new EventBus();
-        } else {
-            int threadCount = Math.max(Runtime.getRuntime().availableProcessors() / 2, 2);
-            ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
-                    1L, TimeUnit.MINUTES,
-                    new LinkedBlockingQueue<>());
-            asyncExecutorList.add(executor);
-            return new AsyncEventBus(executor);
+    private AsyncEventQueue newAsyncEventQueue(String name, int threadCount, int capacity, int threadPriority) {
+        AsyncEventQueue queue = new AsyncEventQueue(name, threadCount, capacity, threadPriority);
+        asyncEventQueueList.add(queue);
+        return queue;
+    }
+
+    /**
+     * Post an asynchronous event to the queue processing it.
+     *
+     * @param event Event
+     */
+    public void postAsyncEvent(Object event) {
+        postAsyncEvent(event, false);
+    }
+
+    /**
+     * Post an asynchronous event to the queue processing it.
+     * Files are processed in their own queue, imported files in a low priority one,
+     * and bulk operations only use one low priority thread.
+     * File events are also posted to the events queue, for the webhooks.
+     *
+     * @param event Event
+     * @param bulk True if the event comes from a bulk operation
+     */
+    public void postAsyncEvent(Object event, boolean bulk) {
+        if (event instanceof RebuildIndexAsyncEvent || event instanceof StorageMigrationAsyncEvent) {
+            bulkQueue.post(event);
+            return;
+        }
+
+        // A queue rejecting the event doesn't prevent the other one from processing it
+        RejectedExecutionException rejectedException = null;
+        if (event instanceof FileEvent) {
+            try {
+                (bulk ? importQueue : fileProcessingQueue).post(event);
+            } catch (RejectedExecutionException e) {
+                rejectedException = e;
+            }
+        }
+        try {
+            asyncEventQueue.post(event);
+        } catch (RejectedExecutionException e) {
+            if (rejectedException == null) {
+                rejectedException = e;
+            } else {
+                rejectedException.addSuppressed(e);
+            }
+        }
+        if (rejectedException != null) {
+            throw rejectedException;
         }
     }
 
+    /**
+     * Returns true if too many uploaded files are waiting to be processed.
+     *
+     * @return True if the file processing queue is full
+     */
+    public boolean isFileProcessingQueueFull() {
+        return fileProcessingQueue.isFull();
+    }
+
     /**
      * Return the current number of queued tasks waiting to be processed.
      *
@@ -199,18 +308,18 @@ public class AppContext {
      */
     public int getQueuedTaskCount() {
         int queueSize = 0;
-        for (ThreadPoolExecutor executor : asyncExecutorList) {
-            queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
+        for (AsyncEventQueue queue : asyncEventQueueList) {
+            queueSize += queue.getQueuedTaskCount();
         }
         return queueSize;
     }
 
-    public EventBus getAsyncEventBus() {
-        return asyncEventBus;
+    public List<AsyncEventQueue> getAsyncEventQueueList() {
+        return asyncEventQueueList;
     }
 
     public EventBus getMailEventBus() {
-        return mailEventBus;
+        return mailQueue.getEventBus();
     }
 
     public IndexingHandler getIndexingHandler() {
@@ -226,14 +335,9 @@ public class AppContext {
     }
 
     public void shutDown() {
-        for (ExecutorService executor : asyncExecutorList) {
-            // Shutdown executor, don't accept any more tasks (can cause error with nested events)
-            try {
-                executor.shutdown();
-                executor.awaitTermination(1, TimeUnit.MINUTES);
-            } catch (InterruptedException e) {
-                // NOP
-            }
+        // Shutdown the queues posting events to other queues first
+        for (AsyncEventQueue queue : Lists.reverse(asyncEventQueueList)) {
+            queue.shutDown();
         }
 
         if (indexingHandler != null) {
@@ -253,6 +357,11 @@ public class AppContext {
             fileSizeService.stopAsync();
         }
 
+        if (sessionTokenService != null) {
+            sessionTokenService.stopAsync();
+            sessionTokenService.awaitTerminated();
+        }
+
         instance = null;
     }
 }
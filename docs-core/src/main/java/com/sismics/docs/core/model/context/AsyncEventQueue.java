@@ -0,0 +1,196 @@
+package com.sismics.docs.core.model.context;
+
+import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.eventbus.EventBus;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.metrics.MetricRegistry;
+import com.sismics.util.metrics.Timer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event bus processing its events in a dedicated thread pool with a bounded queue.
+ * When the queue is full, posting an event waits for some space to be available:
+ * the events of a committed transaction are never dropped.
+ * The threads of the queue itself process the event instead, so that they can't deadlock.
+ */
+public class AsyncEventQueue {
+    /**
+     * Name prefix of the threads of all the event queues.
+     */
+    private static final String THREAD_NAME_PREFIX = "async-";
+
+    /**
+     * Interval between two checks of the queue shutdown while waiting (in milliseconds).
+     */
+    private static final long POST_POLL_MS = 1000;
+
+    /**
+     * Queue name.
+     */
+    private final String name;
+
+    /**
+     * Maximum number of events waiting to be processed.
+     */
+    private final int capacity;
+
+    /**
+     * Event bus.
+     */
+    private final EventBus eventBus;
+
+    /**
+     * Executor, null in unit tests where events are processed synchronously.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Time spent by the events waiting in the queue.
+     */
+    private final Timer waitTimer;
+
+    /**
+     * Constructor.
+     *
+     * @param name Queue name
+     * @param threadCount Number of threads processing the events
+     * @param capacity Maximum number of events waiting to be processed
+     * @param threadPriority Priority of the threads processing the events
+     */
+    public AsyncEventQueue(String name, int threadCount, int capacity, int threadPriority) {
+        this(name, threadCount, capacity, threadPriority, EnvironmentUtil.isUnitTest());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name Queue name
+     * @param threadCount Number of threads processing the events
+     * @param capacity Maximum number of events waiting to be processed
+     * @param threadPriority Priority of the threads processing the events
+     * @param synchronous True to process the events in the posting thread
+     */
+    AsyncEventQueue(String name, int threadCount, int capacity, int threadPriority, boolean synchronous) {
+        this.name = name;
+        this.capacity = capacity;
+        this.waitTimer = MetricRegistry.timer("async." + name + ".wait");
+
+        if (synchronous) {
+            eventBus = new EventBus(name);
+            return;
+        }
+
+        String threadNamePrefix = THREAD_NAME_PREFIX + name + "-";
+        AtomicInteger threadIndex = new AtomicInteger();
+        AtomicLong blockedCounter = MetricRegistry.counter("async." + name + ".blocked");
+        AtomicLong rejectedCounter = MetricRegistry.counter("async." + name + ".rejected");
+        executor = new ThreadPoolExecutor(threadCount, threadCount,
+                1L, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(capacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, threadNamePrefix + threadIndex.incrementAndGet());
+                    thread.setPriority(threadPriority);
+                    return thread;
+                },
+                (runnable, executor) -> {
+                    if (Thread.currentThread().getName().startsWith(threadNamePrefix) && !executor.isShutdown()) {
+                        runnable.run();
+                        return;
+                    }
+                    blockedCounter.incrementAndGet();
+                    try {
+                        while (!executor.isShutdown()) {
+                            if (executor.getQueue().offer(runnable, POST_POLL_MS, TimeUnit.MILLISECONDS)) {
+                                return;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        rejectedCounter.incrementAndGet();
+                        throw new RejectedExecutionException("Interrupted while waiting for event queue " + name, e);
+                    }
+                    rejectedCounter.incrementAndGet();
+                    throw new RejectedExecutionException("Event queue " + name + " is shut down");
+                });
+        eventBus = new AsyncEventBus(name, command -> {
+            long queueTime = System.nanoTime();
+            executor.execute(() -> {
+                waitTimer.updateSince(queueTime);
+                command.run();
+            });
+        });
+
+        MetricRegistry.gauge("async." + name + ".queued", this::getQueuedTaskCount);
+        MetricRegistry.gauge("async." + name + ".active", executor::getActiveCount);
+    }
+
+    /**
+     * Register a listener on this queue.
+     *
+     * @param listener Listener
+     */
+    public void register(Object listener) {
+        eventBus.register(listener);
+    }
+
+    /**
+     * Post an event to this queue.
+     *
+     * @param event Event
+     */
+    public void post(Object event) {
+        eventBus.post(event);
+    }
+
+    /**
+     * Returns the current number of tasks waiting or being processed.
+     *
+     * @return Number of queued tasks
+     */
+    public int getQueuedTaskCount() {
+        if (executor == null) {
+            return 0;
+        }
+        return (int) (executor.getTaskCount() - executor.getCompletedTaskCount());
+    }
+
+    /**
+     * Returns true if the queue cannot accept any more event without blocking.
+     *
+     * @return True if the queue is full
+     */
+    public boolean isFull() {
+        return executor != null && executor.getQueue().size() >= capacity;
+    }
+
+    /**
+     * Shutdown the queue, waiting for the queued events to be processed.
+     */
+    public void shutDown() {
+        if (executor == null) {
+            return;
+        }
+
+        // Don't accept any more tasks (can cause error with nested events)
+        try {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            // NOP
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+}
@@ -1,11 +1,14 @@
 package com.sismics.docs.core.model.jpa;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import com.google.common.base.MoreObjects;
 import com.sismics.docs.core.constant.ConfigType;
@@ -16,6 +19,8 @@ import com.sismics.docs.core.constant.ConfigType;
  * @author jtremeaux
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "config")
 @Table(name = "T_CONFIG")
 public class Config {
     /**
@@ -4,6 +4,8 @@ import com.google.common.base.MoreObjects;
 import com.sismics.docs.core.constant.MetadataType;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.util.Date;
 
 /**
@@ -12,6 +14,8 @@ import java.util.Date;
  * @author bgamard
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "metadata")
 @Table(name = "T_METADATA")
 public class Metadata implements Loggable {
     /**
@@ -2,10 +2,13 @@ package com.sismics.docs.core.model.jpa;
 
 import com.google.common.base.MoreObjects;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.util.Date;
 
 /**
@@ -14,6 +17,8 @@ import java.util.Date;
  * @author bgamard
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "route_model")
 @Table(name = "T_ROUTE_MODEL")
 public class RouteModel implements Loggable {
     /**
@@ -71,6 +71,9 @@ public class InboxService extends AbstractScheduledService {
      */
     public void syncInbox() {
         TransactionUtil.handle(() -> {
+            // Imported files are processed after the uploaded ones
+            ThreadLocalContext.get().setBulk(true);
+
             Boolean enabled = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED);
             if (!enabled) {
                 return;
@@ -259,7 +262,7 @@ public class InboxService extends AbstractScheduledService {
 
         // Add files to the document
         for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
-            FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
+            FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(),
                     document.getLanguage(), "admin", document.getId());
         }
 
@@ -0,0 +1,86 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service loading the secret of the signed session tokens, and forgetting their expired verifications.
+ */
+public class SessionTokenService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(SessionTokenService.class);
+
+    /**
+     * Delay between two cleanups of the expired verifications (in seconds).
+     */
+    private static final int CLEANUP_DELAY = 60;
+
+    @Override
+    protected void startUp() {
+        log.info("Session token service starting up");
+        String secret = System.getenv(Constants.SESSION_TOKEN_SECRET_ENV);
+        if (Strings.isNullOrEmpty(secret)) {
+            secret = loadSecret();
+        }
+        SessionTokenUtil.setSecret(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Session token service shutting down");
+        SessionTokenUtil.setSecret(null);
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            SessionTokenUtil.removeExpiredEntries();
+        } catch (Throwable e) {
+            log.error("Exception during session token service iteration", e);
+        }
+    }
+
+    /**
+     * Load the secret from the configuration, generating it the first time.
+     *
+     * @return Secret
+     */
+    private String loadSecret() {
+        String[] secret = new String[1];
+        TransactionUtil.handle(() -> {
+            ConfigDao configDao = new ConfigDao();
+            Config config = configDao.getById(ConfigType.SESSION_TOKEN_SECRET);
+            if (config == null) {
+                byte[] bytes = new byte[32];
+                new SecureRandom().nextBytes(bytes);
+                configDao.update(ConfigType.SESSION_TOKEN_SECRET, Base64.getEncoder().encodeToString(bytes));
+                config = configDao.getById(ConfigType.SESSION_TOKEN_SECRET);
+            }
+            secret[0] = config.getValue();
+        });
+        if (secret[0] == null) {
+            throw new IllegalStateException("Cannot load the session token secret");
+        }
+        return secret[0];
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(CLEANUP_DELAY, CLEANUP_DELAY, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,562 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.CipherOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Chunked uploads, which can be resumed after a connection loss.
+ * Each upload has its own directory containing its properties and the chunks received so far, encrypted with the user key.
+ * Chunks can be sent in any order and concurrently, a chunk is only visible once completely received.
+ */
+public class ChunkedUploadUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadUtil.class);
+
+    /**
+     * Maximum number of chunks of an upload.
+     */
+    public static final int MAX_CHUNK_COUNT = 10000;
+
+    /**
+     * Uploads without activity are deleted after this delay (in milliseconds).
+     */
+    private static final long EXPIRATION_MS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Minimum delay between two cleanups of the expired uploads (in milliseconds).
+     */
+    private static final long CLEANUP_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Name of the file containing the upload properties.
+     */
+    private static final String PROPERTIES_FILE = "upload.properties";
+
+    /**
+     * Name of the file created while an upload is being completed.
+     */
+    private static final String COMPLETING_FILE = ".completing";
+
+    /**
+     * Prefix of the chunk files.
+     */
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    /**
+     * Time of the last cleanup.
+     */
+    private static volatile long lastCleanupTime;
+
+    /**
+     * Serializes the size accounting of the chunks of an upload, and of the uploads of a user.
+     */
+    private static final Striped<Lock> uploadLocks = Striped.lazyWeakLock(64);
+
+    /**
+     * Start a new upload.
+     *
+     * @param userId User ID
+     * @param documentId Document ID, null if the file is not attached to a document
+     * @param previousFileId ID of the previous version of the file, null if the file is not a new version
+     * @param name File name, can be null
+     * @param size Total size of the file, the chunks can't exceed it
+     * @param availableSize Storage available to the user, shared by all its uploads in progress
+     * @return Upload
+     * @throws IOException If the uploads in progress would exceed the available storage (QuotaReached)
+     */
+    public static ChunkedUpload create(String userId, String documentId, String previousFileId, String name, long size, long availableSize) throws IOException {
+        Path uploadDirectory = DirectoryUtil.getUploadDirectory();
+        deleteExpiredUploads(uploadDirectory);
+
+        // The announced sizes are reserved until the uploads complete or expire
+        Lock lock = uploadLocks.get(userId);
+        lock.lock();
+        try {
+            if (getPendingSize(uploadDirectory, userId) + size > availableSize) {
+                throw new IOException("QuotaReached");
+            }
+            return create(uploadDirectory, userId, documentId, previousFileId, name, size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the properties of a new upload.
+     *
+     * @param uploadDirectory Upload directory
+     * @param userId User ID
+     * @param documentId Document ID
+     * @param previousFileId ID of the previous version of the file
+     * @param name File name
+     * @param size Total size of the file
+     * @return Upload
+     * @throws IOException e
+     */
+    private static ChunkedUpload create(Path uploadDirectory, String userId, String documentId, String previousFileId, String name, long size) throws IOException {
+        ChunkedUpload upload = new ChunkedUpload(uploadDirectory.resolve(UUID.randomUUID().toString()));
+        upload.userId = userId;
+        upload.documentId = documentId;
+        upload.previousFileId = previousFileId;
+        upload.name = name;
+        upload.size = size;
+        upload.createDate = new Date();
+
+        Properties properties = new Properties();
+        properties.setProperty("userId", userId);
+        if (documentId != null) {
+            properties.setProperty("documentId", documentId);
+        }
+        if (previousFileId != null) {
+            properties.setProperty("previousFileId", previousFileId);
+        }
+        if (name != null) {
+            properties.setProperty("name", name);
+        }
+        properties.setProperty("size", Long.toString(size));
+        properties.setProperty("createDate", Long.toString(upload.createDate.getTime()));
+
+        Files.createDirectories(upload.directory);
+        try (OutputStream outputStream = Files.newOutputStream(upload.directory.resolve(PROPERTIES_FILE))) {
+            properties.store(outputStream, null);
+        }
+        return upload;
+    }
+
+    /**
+     * Returns the total announced size of the uploads in progress of a user.
+     *
+     * @param uploadDirectory Upload directory
+     * @param userId User ID
+     * @return Size (in bytes)
+     * @throws IOException e
+     */
+    private static long getPendingSize(Path uploadDirectory, String userId) throws IOException {
+        long now = System.currentTimeMillis();
+        long pendingSize = 0;
+        try (DirectoryStream<Path> directoryList = Files.newDirectoryStream(uploadDirectory)) {
+            for (Path directory : directoryList) {
+                Properties properties = new Properties();
+                try (InputStream inputStream = Files.newInputStream(directory.resolve(PROPERTIES_FILE))) {
+                    properties.load(inputStream);
+                    if (now - Files.getLastModifiedTime(directory).toMillis() > EXPIRATION_MS) {
+                        continue;
+                    }
+                } catch (NoSuchFileException e) {
+                    // Being created or deleted
+                    continue;
+                }
+                if (userId.equals(properties.getProperty("userId")) && properties.getProperty("size") != null) {
+                    pendingSize += Long.parseLong(properties.getProperty("size"));
+                }
+            }
+        }
+        return pendingSize;
+    }
+
+    /**
+     * Returns an upload in progress.
+     *
+     * @param uploadId Upload ID
+     * @param userId ID of the user who started the upload
+     * @return Upload, null if not found
+     * @throws IOException e
+     */
+    public static ChunkedUpload get(String uploadId, String userId) throws IOException {
+        if (!uploadId.matches("[a-z0-9\\-]+")) {
+            return null;
+        }
+
+        ChunkedUpload upload = new ChunkedUpload(DirectoryUtil.getUploadDirectory().resolve(uploadId));
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(upload.directory.resolve(PROPERTIES_FILE))) {
+            properties.load(inputStream);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!userId.equals(properties.getProperty("userId")) || properties.getProperty("size") == null) {
+            // Uploads without a size are not accepted anymore, they will expire
+            return null;
+        }
+
+        upload.userId = userId;
+        upload.documentId = properties.getProperty("documentId");
+        upload.previousFileId = properties.getProperty("previousFileId");
+        upload.name = properties.getProperty("name");
+        upload.size = Long.parseLong(properties.getProperty("size"));
+        upload.createDate = new Date(Long.parseLong(properties.getProperty("createDate")));
+        return upload;
+    }
+
+    /**
+     * Receive a chunk, replacing the previous chunk with the same index if any.
+     *
+     * @param upload Upload
+     * @param index Chunk index (first is 0)
+     * @param inputStream Unencrypted chunk content
+     * @param privateKey Private key of the user
+     * @return Chunk size
+     * @throws Exception e
+     */
+    public static long writeChunk(ChunkedUpload upload, int index, InputStream inputStream, String privateKey) throws Exception {
+        if (index < 0 || index >= MAX_CHUNK_COUNT) {
+            throw new IOException("InvalidChunk");
+        }
+        if (Files.exists(upload.directory.resolve(COMPLETING_FILE))) {
+            throw new IOException("UploadCompleting");
+        }
+
+        // Write to a temporary file first, partial chunks are never read
+        Path tmpFile = upload.directory.resolve(".tmp-" + UUID.randomUUID());
+        try {
+            long chunkSize = 0;
+            try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(tmpFile), EncryptionUtil.getEncryptionCipher(privateKey))) {
+                byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = inputStream.read(buffer)) != -1) {
+                    chunkSize += length;
+                    if (chunkSize > upload.size) {
+                        throw new IOException("UploadTooLarge");
+                    }
+                    outputStream.write(buffer, 0, length);
+                }
+            }
+
+            // Don't keep more data than announced, concurrent chunks of the same upload are accounted one at a time
+            Lock lock = uploadLocks.get(upload.getId());
+            lock.lock();
+            try {
+                long otherChunkSize = 0;
+                for (Map.Entry<Integer, Long> chunk : upload.getChunkSizes().entrySet()) {
+                    if (chunk.getKey() != index) {
+                        otherChunkSize += chunk.getValue();
+                    }
+                }
+                if (otherChunkSize + chunkSize > upload.size) {
+                    throw new IOException("UploadTooLarge");
+                }
+
+                Files.move(tmpFile, upload.getChunkFile(index), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                lock.unlock();
+            }
+            return chunkSize;
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Mark an upload as being completed, no more chunks are accepted.
+     *
+     * @param upload Upload
+     * @return False if the upload is already being completed
+     * @throws IOException e
+     */
+    public static boolean startCompletion(ChunkedUpload upload) throws IOException {
+        try {
+            Files.createFile(upload.directory.resolve(COMPLETING_FILE));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Accept chunks again after a failed completion.
+     *
+     * @param upload Upload
+     * @throws IOException e
+     */
+    public static void cancelCompletion(ChunkedUpload upload) throws IOException {
+        Files.deleteIfExists(upload.directory.resolve(COMPLETING_FILE));
+    }
+
+    /**
+     * Open the unencrypted content of a complete upload, its chunks are read one after the other.
+     *
+     * @param upload Upload
+     * @param privateKey Private key of the user
+     * @return Content, to be closed by the caller
+     * @throws IOException If some chunks are missing (UploadIncomplete)
+     */
+    public static InputStream openContent(ChunkedUpload upload, String privateKey) throws IOException {
+        SortedMap<Integer, Long> chunkSizes = upload.getChunkSizes();
+        long totalSize = chunkSizes.values().stream().mapToLong(Long::longValue).sum();
+        boolean contiguous = chunkSizes.isEmpty() || chunkSizes.lastKey() == chunkSizes.size() - 1;
+        if (!contiguous || totalSize != upload.size) {
+            throw new IOException("UploadIncomplete");
+        }
+
+        List<Path> chunkFileList = new ArrayList<>();
+        for (int index : chunkSizes.keySet()) {
+            chunkFileList.add(upload.getChunkFile(index));
+        }
+        return new ChunkInputStream(chunkFileList.iterator(), privateKey);
+    }
+
+    /**
+     * Delete an upload and its chunks.
+     *
+     * @param upload Upload
+     * @throws IOException e
+     */
+    public static void delete(ChunkedUpload upload) throws IOException {
+        deleteDirectory(upload.directory);
+    }
+
+    /**
+     * Delete the uploads without activity for too long.
+     *
+     * @param uploadDirectory Upload directory
+     */
+    private static void deleteExpiredUploads(Path uploadDirectory) {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanupTime < CLEANUP_INTERVAL_MS) {
+            return;
+        }
+        lastCleanupTime = now;
+
+        try (DirectoryStream<Path> directoryList = Files.newDirectoryStream(uploadDirectory)) {
+            for (Path directory : directoryList) {
+                if (now - Files.getLastModifiedTime(directory).toMillis() > EXPIRATION_MS) {
+                    log.info("Deleting the expired upload: {}", directory.getFileName());
+                    deleteDirectory(directory);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error deleting the expired uploads", e);
+        }
+    }
+
+    /**
+     * Delete a directory and its content.
+     *
+     * @param directory Directory
+     * @throws IOException e
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> pathStream = Files.walk(directory)) {
+            Iterator<Path> iterator = pathStream.sorted(Comparator.reverseOrder()).iterator();
+            while (iterator.hasNext()) {
+                Files.deleteIfExists(iterator.next());
+            }
+        }
+    }
+
+    /**
+     * Chunked upload in progress.
+     */
+    public static class ChunkedUpload {
+        /**
+         * Upload directory.
+         */
+        private final Path directory;
+
+        /**
+         * ID of the user who started the upload.
+         */
+        private String userId;
+
+        /**
+         * Document ID.
+         */
+        private String documentId;
+
+        /**
+         * ID of the previous version of the file.
+         */
+        private String previousFileId;
+
+        /**
+         * File name.
+         */
+        private String name;
+
+        /**
+         * Total size of the file.
+         */
+        private long size;
+
+        /**
+         * Creation date.
+         */
+        private Date createDate;
+
+        private ChunkedUpload(Path directory) {
+            this.directory = directory;
+        }
+
+        public String getId() {
+            return directory.getFileName().toString();
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        public String getPreviousFileId() {
+            return previousFileId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public Date getCreateDate() {
+            return createDate;
+        }
+
+        /**
+         * Returns the received chunks.
+         *
+         * @return Size of each received chunk, by index
+         * @throws IOException e
+         */
+        public SortedMap<Integer, Long> getChunkSizes() throws IOException {
+            SortedMap<Integer, Long> chunkSizes = new TreeMap<>();
+            try (DirectoryStream<Path> chunkFileList = Files.newDirectoryStream(directory, CHUNK_PREFIX + "*")) {
+                for (Path chunkFile : chunkFileList) {
+                    try {
+                        // Encrypted in CTR mode, the chunk has the same size as its content
+                        chunkSizes.put(Integer.parseInt(chunkFile.getFileName().toString().substring(CHUNK_PREFIX.length())),
+                                Files.size(chunkFile));
+                    } catch (NoSuchFileException e) {
+                        // Replaced in the meantime
+                    }
+                }
+            }
+            return chunkSizes;
+        }
+
+        /**
+         * Returns the number of bytes received from the start of the file, without missing chunks.
+         * The upload can be resumed from this offset.
+         *
+         * @return Offset
+         * @throws IOException e
+         */
+        public long getOffset() throws IOException {
+            long offset = 0;
+            int expectedIndex = 0;
+            for (Map.Entry<Integer, Long> chunk : getChunkSizes().entrySet()) {
+                if (chunk.getKey() != expectedIndex++) {
+                    break;
+                }
+                offset += chunk.getValue();
+            }
+            return offset;
+        }
+
+        /**
+         * Returns the file of a chunk.
+         *
+         * @param index Chunk index
+         * @return Chunk file
+         */
+        private Path getChunkFile(int index) {
+            return directory.resolve(String.format("%s%05d", CHUNK_PREFIX, index));
+        }
+    }
+
+    /**
+     * Input stream reading and decrypting the chunks one after the other.
+     */
+    private static class ChunkInputStream extends InputStream {
+        /**
+         * Chunk files not opened yet.
+         */
+        private final Iterator<Path> chunkFileIterator;
+
+        /**
+         * Private key of the user.
+         */
+        private final String privateKey;
+
+        /**
+         * Current chunk.
+         */
+        private InputStream current;
+
+        private ChunkInputStream(Iterator<Path> chunkFileIterator, String privateKey) {
+            this.chunkFileIterator = chunkFileIterator;
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                if (current == null) {
+                    if (!chunkFileIterator.hasNext()) {
+                        return -1;
+                    }
+                    InputStream chunkInputStream = Files.newInputStream(chunkFileIterator.next());
+                    try {
+                        current = EncryptionUtil.decryptInputStream(chunkInputStream, privateKey);
+                    } catch (Exception e) {
+                        chunkInputStream.close();
+                        throw new IOException(e);
+                    }
+                }
+                int length = current.read(b, off, len);
+                if (length != -1) {
+                    return length;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
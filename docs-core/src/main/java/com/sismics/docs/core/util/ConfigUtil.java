@@ -1,16 +1,57 @@
 package com.sismics.docs.core.util;
 
+import com.google.common.base.Strings;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration parameter utilities.
+ * Parameters are read from an immutable in-memory snapshot, replaced when they are modified.
  *
  */
 public class ConfigUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ConfigUtil.class);
+
+    /**
+     * Snapshot used outside of a transactional context, without any parameter.
+     */
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(Collections.emptyMap(), 0);
+
+    /**
+     * Interval between two reloads of the snapshot (in nanoseconds), 0 if it is only reloaded after a modification.
+     */
+    private static final long RELOAD_INTERVAL_NANOS = getReloadIntervalNanos();
+
+    /**
+     * Invalidate the snapshot after the commit, concurrent requests may have loaded the previous parameters.
+     */
+    private static final Runnable CLEAR_HOOK = ConfigUtil::clear;
+
+    /**
+     * Current snapshot, null if it must be loaded.
+     */
+    private static volatile Snapshot snapshot;
+
+    /**
+     * Current generation of the snapshot, incremented on each invalidation.
+     */
+    private static long generation;
+
     /**
      * Returns the textual value of a configuration parameter.
      *
@@ -19,12 +60,23 @@ public class ConfigUtil {
      * @throws IllegalStateException Configuration parameter undefined
      */
     public static String getConfigStringValue(ConfigType configType) {
-        ConfigDao configDao = new ConfigDao();
-        Config config = configDao.getById(configType);
-        if (config == null) {
+        Map<ConfigType, String> valueMap = getSnapshot().valueMap;
+        if (!valueMap.containsKey(configType)) {
             throw new IllegalStateException("Config parameter not found: " + configType);
         }
-        return config.getValue();
+        return valueMap.get(configType);
+    }
+
+    /**
+     * Returns the textual value of a configuration parameter with a default value.
+     *
+     * @param configType Type of the configuration parameter
+     * @param defaultValue Default value to return if the configuration parameter is undefined
+     * @return Textual value of the configuration parameter
+     */
+    public static String getConfigStringValue(ConfigType configType, String defaultValue) {
+        Map<ConfigType, String> valueMap = getSnapshot().valueMap;
+        return valueMap.containsKey(configType) ? valueMap.get(configType) : defaultValue;
     }
 
     /**
@@ -88,4 +140,96 @@ public class ConfigUtil {
             return defaultValue;
         }
     }
+
+    /**
+     * Invalidate the configuration parameters, now and after the current transaction is committed.
+     */
+    public static void invalidate() {
+        clear();
+        ThreadLocalContext.get().addCommitHook(CLEAR_HOOK);
+    }
+
+    /**
+     * Invalidate the configuration parameters immediately.
+     */
+    public static synchronized void clear() {
+        generation++;
+        snapshot = null;
+    }
+
+    /**
+     * Returns the current snapshot, loading it if needed.
+     *
+     * @return Snapshot
+     */
+    private static Snapshot getSnapshot() {
+        Snapshot currentSnapshot = snapshot;
+        if (currentSnapshot != null
+                && (RELOAD_INTERVAL_NANOS == 0 || System.nanoTime() - currentSnapshot.loadNanos < RELOAD_INTERVAL_NANOS)) {
+            return currentSnapshot;
+        }
+
+        // Prevents from loading parameters outside of a transactional context (e.g. jUnit)
+        ThreadLocalContext context = ThreadLocalContext.get();
+        if (context.getEntityManager() == null) {
+            return currentSnapshot == null ? EMPTY_SNAPSHOT : currentSnapshot;
+        }
+
+        long loadGeneration;
+        synchronized (ConfigUtil.class) {
+            loadGeneration = generation;
+        }
+        Map<ConfigType, String> valueMap = new EnumMap<>(ConfigType.class);
+        for (Config config : new ConfigDao().findAll()) {
+            valueMap.put(config.getId(), config.getValue());
+        }
+        Snapshot loadedSnapshot = new Snapshot(Collections.unmodifiableMap(valueMap), System.nanoTime());
+        MetricRegistry.counter("config_cache.load").incrementAndGet();
+
+        // Parameters modified during the loading must not be overwritten by the previous values,
+        // and the uncommitted parameters of this transaction must not be seen by the other threads
+        synchronized (ConfigUtil.class) {
+            if (generation == loadGeneration && !context.hasCommitHook(CLEAR_HOOK)) {
+                snapshot = loadedSnapshot;
+            }
+        }
+        return loadedSnapshot;
+    }
+
+    /**
+     * Returns the interval between two reloads of the snapshot.
+     *
+     * @return Interval in nanoseconds
+     */
+    private static long getReloadIntervalNanos() {
+        String reloadInterval = System.getenv(Constants.CONFIG_RELOAD_INTERVAL_ENV);
+        if (!Strings.isNullOrEmpty(reloadInterval)) {
+            try {
+                return TimeUnit.SECONDS.toNanos(Math.max(Long.parseLong(reloadInterval.trim()), 0));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + Constants.CONFIG_RELOAD_INTERVAL_ENV + " value: " + reloadInterval + ", using the default");
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Immutable values of the configuration parameters.
+     */
+    private static class Snapshot {
+        /**
+         * Values by configuration parameter.
+         */
+        private final Map<ConfigType, String> valueMap;
+
+        /**
+         * Time of the loading (in nanoseconds).
+         */
+        private final long loadNanos;
+
+        private Snapshot(Map<ConfigType, String> valueMap, long loadNanos) {
+            this.valueMap = valueMap;
+            this.loadNanos = loadNanos;
+        }
+    }
 }
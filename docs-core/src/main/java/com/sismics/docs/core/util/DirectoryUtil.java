@@ -67,6 +67,15 @@ public class DirectoryUtil {
     public static Path getLuceneDirectory() {
         return getDataSubDirectory("lucene");
     }
+
+    /**
+     * Returns the directory of the lucene index being rebuilt.
+     *
+     * @return Lucene rebuild directory.
+     */
+    public static Path getLuceneRebuildDirectory() {
+        return getDataSubDirectory("lucene_rebuild");
+    }
     
     /**
      * Returns the storage directory.
@@ -77,6 +86,24 @@ public class DirectoryUtil {
         return getDataSubDirectory("storage");
     }
     
+    /**
+     * Returns the file processing cache directory.
+     *
+     * @return Processing cache directory.
+     */
+    public static Path getProcessingCacheDirectory() {
+        return getDataSubDirectory("processing_cache");
+    }
+
+    /**
+     * Returns the directory of the chunked uploads in progress.
+     *
+     * @return Upload directory.
+     */
+    public static Path getUploadDirectory() {
+        return getDataSubDirectory("upload");
+    }
+
     /**
      * Returns the log directory.
      * 
@@ -1,22 +1,32 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.util.metrics.MetricRegistry;
+import com.sismics.util.metrics.Timer;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +38,30 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * Maximum number of derived keys kept in memory.
+     */
+    private static final int KEY_CACHE_SIZE = 1000;
+
+    /**
+     * AES block size (in bytes).
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Derived keys by hash of their private key.
+     * Deriving a key is slow by design, and is needed to read or write any file.
+     */
+    private static final Cache<HashCode, SecretKey> keyCache = CacheBuilder.newBuilder()
+            .maximumSize(KEY_CACHE_SIZE)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * Key derivation timer.
+     */
+    private static final Timer keyDerivationTimer = MetricRegistry.timer("encryption.key_derivation");
     
     static {
         // Initialize Bouncy Castle provider
@@ -62,22 +96,56 @@ public class EncryptionUtil {
     }
 
     /**
-     * Decrypt a file to a temporary file using the specified private key.
+     * Decrypt a part of an InputStream using the specified private key.
+     * Files are encrypted with AES in counter mode, so decryption can start at any block
+     * without reading the previous ones.
      *
-     * @param file Encrypted file
+     * @param is Encrypted stream, starting at the block containing the offset (see {@link #getBlockStart(long)})
      * @param privateKey Private key
-     * @return Decrypted temporary file
+     * @param offset Offset of the first byte to decrypt
+     * @return Decrypted stream, starting at the offset
      * @throws Exception e
      */
-    public static Path decryptFile(Path file, String privateKey) throws Exception {
-        if (privateKey == null) {
-            // For unit testing
-            return file;
+    public static InputStream decryptInputStream(InputStream is, String privateKey, long offset) throws Exception {
+        Cipher cipher = getCipher(privateKey, Cipher.DECRYPT_MODE);
+        long blockIndex = offset / BLOCK_SIZE;
+        if (blockIndex > 0) {
+            // Increment the initial counter by the number of blocks skipped
+            byte[] counter = new BigInteger(1, cipher.getIV()).add(BigInteger.valueOf(blockIndex)).toByteArray();
+            byte[] iv = new byte[BLOCK_SIZE];
+            int length = Math.min(BLOCK_SIZE, counter.length);
+            System.arraycopy(counter, counter.length - length, iv, BLOCK_SIZE - length, length);
+            cipher = Cipher.getInstance("AES/CTR/NOPADDING");
+            cipher.init(Cipher.DECRYPT_MODE, getSecretKey(privateKey), new IvParameterSpec(iv));
         }
+        InputStream decryptedInputStream = new CipherInputStream(is, cipher);
+        ByteStreams.skipFully(decryptedInputStream, offset % BLOCK_SIZE);
+        return decryptedInputStream;
+    }
 
+    /**
+     * Returns the start of the encrypted block containing an offset.
+     *
+     * @param offset Offset
+     * @return Offset of the block start
+     */
+    public static long getBlockStart(long offset) {
+        return offset - offset % BLOCK_SIZE;
+    }
+
+    /**
+     * Decrypt a stored file to a temporary file using the specified private key.
+     *
+     * @param is Encrypted stream, closed by this method
+     * @param privateKey Private key
+     * @return Decrypted temporary file
+     * @throws Exception e
+     */
+    public static Path decryptFile(InputStream is, String privateKey) throws Exception {
         Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        try (InputStream is = Files.newInputStream(file)) {
-            Files.copy(new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE)), tmpFile, StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream inputStream = privateKey == null ? is : new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE))) {
+            // Not encrypted for unit testing
+            Files.copy(inputStream, tmpFile, StandardCopyOption.REPLACE_EXISTING);
         }
         return tmpFile;
     }
@@ -105,11 +173,37 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
-        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
-        SecretKey desKey = skf.generateSecret(keySpec);
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
-        cipher.init(mode, desKey);
+        cipher.init(mode, getSecretKey(privateKey));
         return cipher;
     }
+
+    /**
+     * Returns the secret key of a private key, from the cache if possible.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    private static SecretKey getSecretKey(String privateKey) throws Exception {
+        return keyCache.get(Hashing.sha256().hashString(privateKey, StandardCharsets.UTF_8),
+                () -> deriveKey(privateKey));
+    }
+
+    /**
+     * Derive a secret key from a private key.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    private static SecretKey deriveKey(String privateKey) throws Exception {
+        long startTime = System.nanoTime();
+        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
+        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
+        SecretKey secretKey = skf.generateSecret(keySpec);
+        keySpec.clearPassword();
+        keyDerivationTimer.updateSince(startTime);
+        return secretKey;
+    }
 }
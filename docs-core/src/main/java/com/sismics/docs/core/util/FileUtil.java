@@ -2,6 +2,8 @@ package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.FileDao;
@@ -11,6 +13,9 @@ import com.sismics.docs.core.event.FileCreatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageOutputStream;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.util.ImageDeskew;
 import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
@@ -23,15 +28,16 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -50,6 +56,16 @@ public class FileUtil {
      * File ID of files currently being processed.
      */
     private static final Set<String> processingFileSet = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Number of bytes read at once from the uploaded files.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of bytes at the start of the uploaded files used to guess their MIME type.
+     */
+    private static final int MIME_SNIFF_SIZE = 4096;
     
     /**
      * Optical character recognition on an image.
@@ -89,107 +105,173 @@ public class FileUtil {
      * @param fileId ID of file to delete
      */
     public static void delete(String fileId) throws IOException {
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        Path webFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_web");
-        Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_thumb");
-        
-        if (Files.exists(storedFile)) {
-            Files.delete(storedFile);
-        }
-        if (Files.exists(webFile)) {
-            Files.delete(webFile);
-        }
-        if (Files.exists(thumbnailFile)) {
-            Files.delete(thumbnailFile);
-        }
+        StorageBackend storageBackend = StorageUtil.getBackend();
+        storageBackend.delete(fileId);
+        storageBackend.delete(fileId + "_web");
+        storageBackend.delete(fileId + "_thumb");
     }
 
     /**
-     * Create a new file.
+     * Create a new file from a file already on disk.
      *
      * @param name File name, can be null
      * @param previousFileId ID of the previous version of the file, if the new file is a new version
      * @param unencryptedFile Path to the unencrypted file
-     * @param fileSize File size
      * @param language File language, can be null if associated to no document
      * @param userId User ID creating the file
      * @param documentId Associated document ID or null if no document
      * @return File ID
      * @throws Exception e
      */
-    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
-        // Validate mime type
-        String mimeType;
-        try {
-            mimeType = MimeTypeUtil.guessMimeType(unencryptedFile, name);
-        } catch (IOException e) {
-            throw new IOException("ErrorGuessMime", e);
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, String language, String userId, String documentId) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
+            return createFile(name, previousFileId, inputStream, null, unencryptedFile, language, userId, documentId).getId();
         }
+    }
 
-        // Validate user quota
+    /**
+     * Create a new file from an uploaded stream.
+     * The stream is read once: it is encrypted to the storage, copied to a temporary file for the processing,
+     * hashed, counted and its first bytes are kept to guess the MIME type.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param inputStream Unencrypted content
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @return Created file
+     * @throws Exception e
+     */
+    public static File createFile(String name, String previousFileId, InputStream inputStream, String language, String userId, String documentId) throws Exception {
+        Path unencryptedFile = AppContext.getInstance().getFileService().createTemporaryFile(name);
+        try (OutputStream unencryptedOutputStream = Files.newOutputStream(unencryptedFile)) {
+            return createFile(name, previousFileId, inputStream, unencryptedOutputStream, unencryptedFile, language, userId, documentId);
+        }
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param inputStream Unencrypted content
+     * @param unencryptedOutputStream Output stream of the unencrypted file, null if it already contains the content
+     * @param unencryptedFile Path to the unencrypted file
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @return Created file
+     * @throws Exception e
+     */
+    private static File createFile(String name, String previousFileId, InputStream inputStream, OutputStream unencryptedOutputStream,
+                                   Path unencryptedFile, String language, String userId, String documentId) throws Exception {
+        // Fail early if the user quota is already reached
         UserDao userDao = new UserDao();
         User user = userDao.getById(userId);
-        if (user.getStorageCurrent() + fileSize > user.getStorageQuota()) {
+        if (user.getStorageCurrent() >= user.getStorageQuota()) {
             throw new IOException("QuotaReached");
         }
 
-        // Validate global quota
-        String globalStorageQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
-        if (!Strings.isNullOrEmpty(globalStorageQuotaStr)) {
-            long globalStorageQuota = Long.parseLong(globalStorageQuotaStr);
-            long globalStorageCurrent = userDao.getGlobalStorageCurrent();
-            if (globalStorageCurrent + fileSize > globalStorageQuota) {
-                throw new IOException("QuotaReached");
+        // Save the file while reading it
+        String fileId = UUID.randomUUID().toString();
+        StorageBackend storageBackend = StorageUtil.getBackend();
+        Hasher hasher = Hashing.sha256().newHasher();
+        byte[] head = new byte[MIME_SNIFF_SIZE];
+        int headLength = 0;
+        long fileSize = 0;
+        try (StorageOutputStream storageOutputStream = storageBackend.write(fileId);
+             OutputStream cipherOutputStream = new CipherOutputStream(storageOutputStream,
+                     EncryptionUtil.getEncryptionCipher(user.getPrivateKey()))) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                cipherOutputStream.write(buffer, 0, length);
+                if (unencryptedOutputStream != null) {
+                    unencryptedOutputStream.write(buffer, 0, length);
+                }
+                hasher.putBytes(buffer, 0, length);
+                if (headLength < head.length) {
+                    int headCount = Math.min(length, head.length - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, headCount);
+                    headLength += headCount;
+                }
+                fileSize += length;
             }
+            storageOutputStream.commit();
+        } catch (IOException e) {
+            storageBackend.delete(fileId);
+            throw new IOException("StreamError", e);
         }
 
-        // Prepare the file
         File file = new File();
-        file.setOrder(0);
-        file.setVersion(0);
-        file.setLatestVersion(true);
-        file.setDocumentId(documentId);
-        file.setName(StringUtils.abbreviate(name, 200));
-        file.setMimeType(mimeType);
-        file.setUserId(userId);
-        file.setSize(fileSize);
+        try {
+            // Validate mime type
+            String mimeType;
+            try {
+                mimeType = MimeTypeUtil.guessMimeType(Arrays.copyOf(head, headLength), name);
+            } catch (IOException e) {
+                throw new IOException("ErrorGuessMime", e);
+            }
 
-        // Get files of this document
-        FileDao fileDao = new FileDao();
-        if (documentId != null) {
-            if (previousFileId == null) {
-                // It's not a new version, so put it in last order
-                file.setOrder(fileDao.getByDocumentId(userId, documentId).size());
-            } else {
-                // It's a new version, update the previous version
-                File previousFile = fileDao.getActiveById(previousFileId);
-                if (previousFile == null || !previousFile.getDocumentId().equals(documentId)) {
-                    throw new IOException("Previous version mismatch");
-                }
+            // Validate user quota
+            if (user.getStorageCurrent() + fileSize > user.getStorageQuota()) {
+                throw new IOException("QuotaReached");
+            }
 
-                if (previousFile.getVersionId() == null) {
-                    previousFile.setVersionId(UUID.randomUUID().toString());
+            // Validate global quota
+            String globalStorageQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
+            if (!Strings.isNullOrEmpty(globalStorageQuotaStr)) {
+                long globalStorageQuota = Long.parseLong(globalStorageQuotaStr);
+                long globalStorageCurrent = userDao.getGlobalStorageCurrent();
+                if (globalStorageCurrent + fileSize > globalStorageQuota) {
+                    throw new IOException("QuotaReached");
                 }
+            }
 
-                // Copy the previous file metadata
-                file.setOrder(previousFile.getOrder());
-                file.setVersionId(previousFile.getVersionId());
-                file.setVersion(previousFile.getVersion() + 1);
+            // Prepare the file
+            file.setOrder(0);
+            file.setVersion(0);
+            file.setLatestVersion(true);
+            file.setDocumentId(documentId);
+            file.setName(StringUtils.abbreviate(name, 200));
+            file.setMimeType(mimeType);
+            file.setUserId(userId);
+            file.setSize(fileSize);
 
-                // Update the previous file
-                previousFile.setLatestVersion(false);
-                fileDao.update(previousFile);
-            }
-        }
+            // Get files of this document
+            FileDao fileDao = new FileDao();
+            if (documentId != null) {
+                if (previousFileId == null) {
+                    // It's not a new version, so put it in last order
+                    file.setOrder(fileDao.getByDocumentId(userId, documentId).size());
+                } else {
+                    // It's a new version, update the previous version
+                    File previousFile = fileDao.getActiveById(previousFileId);
+                    if (previousFile == null || !previousFile.getDocumentId().equals(documentId)) {
+                        throw new IOException("Previous version mismatch");
+                    }
 
-        // Create the file
-        String fileId = fileDao.create(file, userId);
+                    if (previousFile.getVersionId() == null) {
+                        previousFile.setVersionId(UUID.randomUUID().toString());
+                    }
 
-        // Save the file
-        Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-        Path path = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
-            Files.copy(new CipherInputStream(inputStream, cipher), path);
+                    // Copy the previous file metadata
+                    file.setOrder(previousFile.getOrder());
+                    file.setVersionId(previousFile.getVersionId());
+                    file.setVersion(previousFile.getVersion() + 1);
+
+                    // Update the previous file
+                    previousFile.setLatestVersion(false);
+                    fileDao.update(previousFile);
+                }
+            }
+
+            // Create the file
+            fileDao.create(file, fileId, userId);
+        } catch (Exception e) {
+            storageBackend.delete(fileId);
+            throw e;
         }
 
         // Update the user quota
@@ -197,12 +279,13 @@ public class FileUtil {
         userDao.updateQuota(user);
 
         // Raise a new file created event and document updated event if we have a document
-        startProcessingFile(fileId);
+        startProcessingFile(file.getId());
         FileCreatedAsyncEvent fileCreatedAsyncEvent = new FileCreatedAsyncEvent();
         fileCreatedAsyncEvent.setUserId(userId);
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
         fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+        fileCreatedAsyncEvent.setContentHash(hasher.hash().toString());
         ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
 
         if (documentId != null) {
@@ -212,7 +295,7 @@ public class FileUtil {
             ThreadLocalContext.get().addAsyncEvent(documentUpdatedAsyncEvent);
         }
 
-        return fileId;
+        return file;
     }
 
     /**
@@ -255,17 +338,15 @@ public class FileUtil {
     public static long getFileSize(String fileId, User user) {
         // To get the size we copy the decrypted content into a null output stream
         // and count the copied byte size.
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        if (! Files.exists(storedFile)) {
-            log.debug("File does not exist " + fileId);
-            return File.UNKNOWN_SIZE;
-        }
-        try (InputStream fileInputStream = Files.newInputStream(storedFile);
+        try (InputStream fileInputStream = StorageUtil.getBackend().read(fileId);
              InputStream inputStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey());
              CountingInputStream countingInputStream = new CountingInputStream(inputStream);
         ) {
             IOUtils.copy(countingInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
             return countingInputStream.getByteCount();
+        } catch (NoSuchFileException e) {
+            log.debug("File does not exist " + fileId);
+            return File.UNKNOWN_SIZE;
         } catch (Exception e) {
             log.debug("Can't find size of file " + fileId, e);
             return File.UNKNOWN_SIZE;
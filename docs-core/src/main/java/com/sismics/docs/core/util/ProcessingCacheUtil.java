@@ -0,0 +1,259 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.hash.Hashing;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.util.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.CipherOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the thumbnails and text content extracted from files.
+ * Entries are addressed by the hash of the file content, so identical files are processed once.
+ * They are encrypted with a key derived from the file content, only known while processing the same file.
+ */
+public class ProcessingCacheUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ProcessingCacheUtil.class);
+
+    /**
+     * Version of the cache entries format.
+     */
+    private static final int CACHE_VERSION = 1;
+
+    /**
+     * Unused cache entries are deleted after this delay (in milliseconds).
+     */
+    private static final long EXPIRATION_MS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Minimum delay between two cleanups of the expired entries (in milliseconds).
+     */
+    private static final long CLEANUP_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Time of the last cleanup.
+     */
+    private static volatile long lastCleanupTime;
+
+    /**
+     * Returns the cache key of a file processed by a format handler.
+     *
+     * @param formatHandler Format handler
+     * @param language Content language
+     * @param unencryptedFile Unencrypted file
+     * @param contentHash SHA-256 of the unencrypted file if computed during the upload, null to compute it
+     * @return Cache key
+     * @throws IOException e
+     */
+    public static CacheKey getKey(FormatHandler formatHandler, String language, Path unencryptedFile, String contentHash) throws IOException {
+        if (contentHash == null) {
+            contentHash = com.google.common.io.Files.asByteSource(unencryptedFile.toFile()).hash(Hashing.sha256()).toString();
+        }
+        boolean ocrEnabled = ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true);
+        String name = Hashing.sha256().hashString(String.join(":", contentHash, String.valueOf(language),
+                formatHandler.getClass().getName(), String.valueOf(formatHandler.getVersion()),
+                String.valueOf(ocrEnabled), String.valueOf(CACHE_VERSION)), StandardCharsets.UTF_8).toString();
+        return new CacheKey(name, contentHash);
+    }
+
+    /**
+     * Returns a cached processing result.
+     *
+     * @param key Cache key
+     * @return Processing result, null if not cached
+     */
+    public static ProcessingResult get(CacheKey key) {
+        Path entryFile = DirectoryUtil.getProcessingCacheDirectory().resolve(key.name);
+        if (!Files.exists(entryFile)) {
+            MetricRegistry.counter("processing_cache.miss").incrementAndGet();
+            return null;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(entryFile);
+             DataInputStream dataInputStream = new DataInputStream(EncryptionUtil.decryptInputStream(inputStream, key.secret))) {
+            ProcessingResult result = new ProcessingResult(readBytes(dataInputStream), readBytes(dataInputStream), null);
+            byte[] content = readBytes(dataInputStream);
+            if (content != null) {
+                result.content = new String(content, StandardCharsets.UTF_8);
+            }
+
+            // Keep this entry alive
+            Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+            MetricRegistry.counter("processing_cache.hit").incrementAndGet();
+            return result;
+        } catch (Exception e) {
+            log.error("Error reading the processing cache entry: " + key.name, e);
+            MetricRegistry.counter("processing_cache.miss").incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Cache a processing result.
+     *
+     * @param key Cache key
+     * @param result Processing result
+     */
+    public static void put(CacheKey key, ProcessingResult result) {
+        Path cacheDirectory = DirectoryUtil.getProcessingCacheDirectory();
+        try {
+            // Write to a temporary file first, partial entries are never read
+            Path tmpFile = Files.createTempFile(cacheDirectory, key.name, ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(tmpFile);
+                 DataOutputStream dataOutputStream = new DataOutputStream(new CipherOutputStream(outputStream, EncryptionUtil.getEncryptionCipher(key.secret)))) {
+                writeBytes(dataOutputStream, result.web);
+                writeBytes(dataOutputStream, result.thumbnail);
+                writeBytes(dataOutputStream, result.content == null ? null : result.content.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(tmpFile, cacheDirectory.resolve(key.name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            log.error("Error writing the processing cache entry: " + key.name, e);
+        }
+
+        deleteExpiredEntries(cacheDirectory);
+    }
+
+    /**
+     * Delete a cached processing result, does nothing if it is not cached.
+     *
+     * @param key Cache key
+     */
+    public static void delete(CacheKey key) {
+        try {
+            Files.deleteIfExists(DirectoryUtil.getProcessingCacheDirectory().resolve(key.name));
+        } catch (IOException e) {
+            log.error("Error deleting the processing cache entry: " + key.name, e);
+        }
+    }
+
+    /**
+     * Delete the entries unused for too long.
+     *
+     * @param cacheDirectory Cache directory
+     */
+    private static void deleteExpiredEntries(Path cacheDirectory) {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanupTime < CLEANUP_INTERVAL_MS) {
+            return;
+        }
+        lastCleanupTime = now;
+
+        try (DirectoryStream<Path> entryFileList = Files.newDirectoryStream(cacheDirectory)) {
+            for (Path entryFile : entryFileList) {
+                if (now - Files.getLastModifiedTime(entryFile).toMillis() > EXPIRATION_MS) {
+                    Files.deleteIfExists(entryFile);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error deleting the expired processing cache entries", e);
+        }
+    }
+
+    /**
+     * Write a nullable byte array.
+     *
+     * @param dataOutputStream Output stream
+     * @param bytes Byte array
+     * @throws IOException e
+     */
+    private static void writeBytes(DataOutputStream dataOutputStream, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            dataOutputStream.writeInt(-1);
+            return;
+        }
+        dataOutputStream.writeInt(bytes.length);
+        dataOutputStream.write(bytes);
+    }
+
+    /**
+     * Read a nullable byte array.
+     *
+     * @param dataInputStream Input stream
+     * @return Byte array
+     * @throws IOException e
+     */
+    private static byte[] readBytes(DataInputStream dataInputStream) throws IOException {
+        int length = dataInputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Key of a cache entry.
+     */
+    public static class CacheKey {
+        /**
+         * Entry name.
+         */
+        private final String name;
+
+        /**
+         * Secret used to encrypt the entry.
+         */
+        private final String secret;
+
+        private CacheKey(String name, String secret) {
+            this.name = name;
+            this.secret = secret;
+        }
+    }
+
+    /**
+     * Result of a file processing.
+     */
+    public static class ProcessingResult {
+        /**
+         * Web image (JPEG), null if the format has no thumbnail.
+         */
+        private byte[] web;
+
+        /**
+         * Thumbnail image (JPEG), null if the format has no thumbnail.
+         */
+        private byte[] thumbnail;
+
+        /**
+         * Text content.
+         */
+        private String content;
+
+        public ProcessingResult(byte[] web, byte[] thumbnail, String content) {
+            this.web = web;
+            this.thumbnail = thumbnail;
+            this.content = content;
+        }
+
+        public byte[] getWeb() {
+            return web;
+        }
+
+        public byte[] getThumbnail() {
+            return thumbnail;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+}
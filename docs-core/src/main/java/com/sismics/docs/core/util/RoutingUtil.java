@@ -11,6 +11,8 @@ import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.criteria.UserCriteria;
 import com.sismics.docs.core.dao.dto.RouteStepDto;
 import com.sismics.docs.core.dao.dto.UserDto;
+import com.sismics.docs.core.event.AclCreatedAsyncEvent;
+import com.sismics.docs.core.event.AclDeletedAsyncEvent;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.event.RouteStepValidateEvent;
 import com.sismics.docs.core.model.context.AppContext;
@@ -46,6 +48,14 @@ public class RoutingUtil {
         if (previousStep != null) {
             // Remove the previous ACL
             aclDao.delete(documentId, PermType.READ, previousStep.getTargetId(), userId, AclType.ROUTING);
+
+            // Raise an ACL deleted event
+            AclDeletedAsyncEvent event = new AclDeletedAsyncEvent();
+            event.setUserId(userId);
+            event.setSourceId(documentId);
+            event.setPerm(PermType.READ);
+            event.setTargetId(previousStep.getTargetId());
+            ThreadLocalContext.get().addAsyncEvent(event);
         }
 
         if (currentStep != null) {
@@ -56,6 +66,14 @@ public class RoutingUtil {
             acl.setSourceId(documentId);
             acl.setTargetId(currentStep.getTargetId());
             aclDao.create(acl, userId);
+
+            // Raise an ACL created event
+            AclCreatedAsyncEvent event = new AclCreatedAsyncEvent();
+            event.setUserId(userId);
+            event.setSourceId(documentId);
+            event.setPerm(PermType.READ);
+            event.setTargetId(currentStep.getTargetId());
+            ThreadLocalContext.get().addAsyncEvent(event);
         }
 
         // Raise a document updated event
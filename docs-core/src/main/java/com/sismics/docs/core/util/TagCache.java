@@ -0,0 +1,112 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the tags visible by each set of ACL targets (a user and its groups).
+ * Entries are invalidated when tags or ACLs are modified.
+ */
+public class TagCache {
+    /**
+     * Maximum number of cached tag lists.
+     */
+    private static final int MAX_SIZE = 1000;
+
+    /**
+     * Entries are reloaded after this delay, in case the tags are modified by another instance (in seconds).
+     */
+    private static final long EXPIRATION_SECONDS = 60;
+
+    /**
+     * Current generation of the cache, incremented on each invalidation.
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Cached tag lists, by sorted ACL targets.
+     */
+    private static final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterWrite(EXPIRATION_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Invalidate the cache after the commit, concurrent requests may have cached the previous tags.
+     */
+    private static final Runnable CLEAR_HOOK = TagCache::clear;
+
+    /**
+     * Returns the tags visible by a list of ACL targets, with their parent IDs.
+     * The returned tags are shared between requests and must not be modified.
+     *
+     * @param targetIdList List of ACL targets
+     * @return Unmodifiable list of tags
+     */
+    public static List<TagDto> getVisibleTagList(List<String> targetIdList) {
+        List<String> sortedTargetIdList = new ArrayList<>(targetIdList);
+        Collections.sort(sortedTargetIdList);
+        String key = Joiner.on(',').join(sortedTargetIdList);
+
+        long currentGeneration = generation.get();
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation == currentGeneration) {
+            MetricRegistry.counter("tag_cache.hit").incrementAndGet();
+            return entry.tagDtoList;
+        }
+
+        MetricRegistry.counter("tag_cache.miss").incrementAndGet();
+        List<TagDto> tagDtoList = ImmutableList.copyOf(new TagDao().findByCriteria(new TagCriteria().setTargetIdList(targetIdList), null));
+        cache.put(key, new Entry(currentGeneration, tagDtoList));
+        return tagDtoList;
+    }
+
+    /**
+     * Invalidate all cached tags, now and after the current transaction is committed.
+     */
+    public static void invalidateAll() {
+        clear();
+        ThreadLocalContext.get().addCommitHook(CLEAR_HOOK);
+    }
+
+    /**
+     * Invalidate all cached tags immediately.
+     */
+    public static void clear() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Cached tag list.
+     */
+    private static class Entry {
+        /**
+         * Generation of the cache when the tags were loaded.
+         */
+        private final long generation;
+
+        /**
+         * Tags.
+         */
+        private final List<TagDto> tagDtoList;
+
+        private Entry(long generation, List<TagDto> tagDtoList) {
+            this.generation = generation;
+            this.tagDtoList = tagDtoList;
+        }
+    }
+}
@@ -80,9 +80,11 @@ public class TransactionUtil {
 
         // Fire all pending async events after request transaction commit.
         // This way, all modifications done during this request are available in the listeners.
-        context.fireAllAsyncEvents();
-
-        ThreadLocalContext.cleanup();
+        try {
+            context.fireAllAsyncEvents();
+        } finally {
+            ThreadLocalContext.cleanup();
+        }
     }
     
     /**
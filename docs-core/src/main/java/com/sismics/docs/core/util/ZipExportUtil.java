@@ -0,0 +1,416 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import com.sismics.util.metrics.MetricRegistry;
+import com.sismics.util.mime.MimeType;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIP export of a list of files.
+ * Entries are decrypted and compressed in parallel, then written in order to the output.
+ */
+public class ZipExportUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ZipExportUtil.class);
+
+    /**
+     * Number of entries compressed in parallel.
+     */
+    private static final int ZIP_THREAD_COUNT = getZipThreadCount();
+
+    /**
+     * Number of entries compressed ahead of the one being written.
+     */
+    private static final int MAX_PENDING_ENTRIES = ZIP_THREAD_COUNT * 2;
+
+    /**
+     * Compressed entries larger than this size (in bytes) are buffered to a temporary file instead of memory.
+     */
+    private static final int MAX_MEMORY_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Types which are already compressed, stored as is in the ZIP file.
+     */
+    private static final Set<String> STORED_MIME_TYPES = ImmutableSet.of(MimeType.IMAGE_JPEG, MimeType.IMAGE_PNG,
+            MimeType.IMAGE_GIF, MimeType.VIDEO_MP4, MimeType.VIDEO_WEBM, MimeType.APPLICATION_ZIP);
+
+    /**
+     * Compression workers, shared by all the exports to bound the CPU usage.
+     */
+    private static final ExecutorService zipExecutor = Executors.newFixedThreadPool(ZIP_THREAD_COUNT, runnable -> {
+        Thread thread = new Thread(runnable, "zip-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Total size of the exported files (in bytes).
+     */
+    private static final AtomicLong exportedBytes = MetricRegistry.counter("zip_export.bytes");
+
+    /**
+     * Total duration of the exports (in nanoseconds).
+     */
+    private static final AtomicLong exportNanos = MetricRegistry.counter("zip_export.nanos");
+
+    static {
+        MetricRegistry.gauge("zip_export.throughput_mb_s", () -> {
+            long nanos = exportNanos.get();
+            return nanos == 0 ? null : exportedBytes.get() / 1024d / 1024d / nanos * TimeUnit.SECONDS.toNanos(1);
+        });
+    }
+
+    /**
+     * Write a list of files to a ZIP stream.
+     *
+     * @param fileList Files to export
+     * @param privateKeyMap Private keys of the file creators by user ID
+     * @param outputStream Output stream, closed at the end of the export
+     * @throws IOException e
+     */
+    public static void writeZip(List<File> fileList, Map<String, String> privateKeyMap, OutputStream outputStream) throws IOException {
+        long startNanos = System.nanoTime();
+        Deque<Future<CompressedEntry>> pendingEntryList = new ArrayDeque<>();
+        EntryBufferSet bufferSet = new EntryBufferSet();
+        try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(outputStream)) {
+            int index = 0;
+            for (File file : fileList) {
+                // Only keep a few compressed entries in memory
+                if (pendingEntryList.size() >= MAX_PENDING_ENTRIES) {
+                    writeEntry(zipOutputStream, pendingEntryList.poll(), bufferSet);
+                }
+
+                // Files are encrypted by the creator of them
+                String name = index + "-" + file.getFullName(Integer.toString(index));
+                String privateKey = privateKeyMap.get(file.getUserId());
+                pendingEntryList.add(zipExecutor.submit(() -> compressEntry(file, name, privateKey, bufferSet)));
+                index++;
+            }
+
+            while (!pendingEntryList.isEmpty()) {
+                writeEntry(zipOutputStream, pendingEntryList.poll(), bufferSet);
+            }
+        } finally {
+            for (Future<CompressedEntry> pendingEntry : pendingEntryList) {
+                pendingEntry.cancel(true);
+            }
+
+            // Release the entries not written, including the ones still being compressed
+            bufferSet.deleteAll();
+            exportNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Write a compressed entry to the ZIP stream.
+     *
+     * @param zipOutputStream ZIP stream
+     * @param pendingEntry Entry being compressed
+     * @param bufferSet Buffers of the export
+     * @throws IOException e
+     */
+    private static void writeEntry(ZipArchiveOutputStream zipOutputStream, Future<CompressedEntry> pendingEntry,
+                                   EntryBufferSet bufferSet) throws IOException {
+        CompressedEntry compressedEntry;
+        try {
+            compressedEntry = pendingEntry.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted ZIP export", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error compressing a ZIP entry", e.getCause());
+        }
+
+        try (InputStream inputStream = compressedEntry.buffer.getInputStream()) {
+            zipOutputStream.addRawArchiveEntry(compressedEntry.entry, inputStream);
+        } finally {
+            bufferSet.delete(compressedEntry.buffer);
+        }
+        exportedBytes.addAndGet(compressedEntry.entry.getSize());
+    }
+
+    /**
+     * Decrypt and compress a file.
+     *
+     * @param file File
+     * @param name Entry name
+     * @param privateKey Private key of the file creator
+     * @param bufferSet Buffers of the export
+     * @return Compressed entry
+     * @throws Exception e
+     */
+    private static CompressedEntry compressEntry(File file, String name, String privateKey, EntryBufferSet bufferSet) throws Exception {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        boolean stored = STORED_MIME_TYPES.contains(file.getMimeType());
+        entry.setMethod(stored ? ZipEntry.STORED : ZipEntry.DEFLATED);
+
+        EntryBuffer buffer = bufferSet.create();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (CheckedInputStream inputStream = new CheckedInputStream(EncryptionUtil.decryptInputStream(
+                StorageUtil.getBackend().read(file.getId()), privateKey), new CRC32())) {
+            long size;
+            if (stored) {
+                size = ByteStreams.copy(inputStream, buffer);
+            } else {
+                // Raw deflate data, the ZIP headers are written with the entry
+                try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(buffer, deflater)) {
+                    size = ByteStreams.copy(inputStream, deflaterOutputStream);
+                }
+            }
+            entry.setSize(size);
+            entry.setCompressedSize(buffer.getCount());
+            entry.setCrc(inputStream.getChecksum().getValue());
+        } catch (Exception e) {
+            bufferSet.delete(buffer);
+            throw e;
+        } finally {
+            buffer.close();
+            deflater.end();
+        }
+        return new CompressedEntry(entry, buffer);
+    }
+
+    /**
+     * Returns the number of entries compressed in parallel.
+     *
+     * @return Number of compression workers
+     */
+    private static int getZipThreadCount() {
+        String zipThreadCount = System.getenv(Constants.ZIP_THREAD_COUNT_ENV);
+        if (!Strings.isNullOrEmpty(zipThreadCount)) {
+            try {
+                return Math.max(Integer.parseInt(zipThreadCount.trim()), 1);
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + Constants.ZIP_THREAD_COUNT_ENV + " value: " + zipThreadCount + ", using the default");
+            }
+        }
+        return Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+    }
+
+    /**
+     * ZIP entry ready to be written.
+     */
+    private static class CompressedEntry {
+        /**
+         * Entry, with its sizes and CRC.
+         */
+        private final ZipArchiveEntry entry;
+
+        /**
+         * Compressed data.
+         */
+        private final EntryBuffer buffer;
+
+        private CompressedEntry(ZipArchiveEntry entry, EntryBuffer buffer) {
+            this.entry = entry;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Buffers of an export, deleted once their entry is written or the export ends.
+     */
+    private static class EntryBufferSet {
+        /**
+         * Buffers not deleted yet.
+         */
+        private final Set<EntryBuffer> bufferSet = new HashSet<>();
+
+        /**
+         * True if the export has ended.
+         */
+        private boolean ended;
+
+        /**
+         * Create a buffer.
+         *
+         * @return Buffer
+         * @throws IOException If the export has ended
+         */
+        private synchronized EntryBuffer create() throws IOException {
+            if (ended) {
+                throw new IOException("ZIP export ended");
+            }
+            EntryBuffer buffer = new EntryBuffer();
+            bufferSet.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Delete a buffer.
+         *
+         * @param buffer Buffer
+         * @throws IOException e
+         */
+        private synchronized void delete(EntryBuffer buffer) throws IOException {
+            bufferSet.remove(buffer);
+            buffer.delete();
+        }
+
+        /**
+         * Delete all the buffers, and refuse the new ones.
+         */
+        private synchronized void deleteAll() {
+            ended = true;
+            for (EntryBuffer buffer : bufferSet) {
+                try {
+                    buffer.delete();
+                } catch (IOException e) {
+                    log.warn("Error deleting a ZIP export buffer", e);
+                }
+            }
+            bufferSet.clear();
+        }
+    }
+
+    /**
+     * Buffer of compressed data, in memory until it grows too large, then in a temporary file.
+     * The buffer can be deleted while it is written, the next writes fail.
+     */
+    private static class EntryBuffer extends OutputStream {
+        /**
+         * In memory data.
+         */
+        private ByteArrayOutputStream memoryOutputStream = new ByteArrayOutputStream();
+
+        /**
+         * Temporary file, null while the data is in memory.
+         */
+        private Path file;
+
+        /**
+         * Current output.
+         */
+        private OutputStream outputStream = memoryOutputStream;
+
+        /**
+         * Number of bytes written.
+         */
+        private long count;
+
+        /**
+         * True if the buffer is deleted.
+         */
+        private boolean deleted;
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            spillIfNeeded(1);
+            outputStream.write(b);
+            count++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            spillIfNeeded(len);
+            outputStream.write(b, off, len);
+            count += len;
+        }
+
+        /**
+         * Move the data to a temporary file if the memory buffer would grow too large.
+         *
+         * @param length Length of the next write
+         * @throws IOException e
+         */
+        private void spillIfNeeded(int length) throws IOException {
+            if (deleted) {
+                throw new IOException("ZIP export buffer deleted");
+            }
+            if (file != null || count + length <= MAX_MEMORY_BUFFER_SIZE) {
+                return;
+            }
+            file = AppContext.getInstance().getFileService().createTemporaryFile();
+            outputStream = Files.newOutputStream(file);
+            memoryOutputStream.writeTo(outputStream);
+            memoryOutputStream = null;
+        }
+
+        /**
+         * Returns the number of bytes written.
+         *
+         * @return Size in bytes
+         */
+        private long getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            outputStream.close();
+        }
+
+        /**
+         * Release the buffered data.
+         *
+         * @throws IOException e
+         */
+        private synchronized void delete() throws IOException {
+            if (deleted) {
+                return;
+            }
+            deleted = true;
+            try {
+                outputStream.close();
+            } finally {
+                outputStream = OutputStream.nullOutputStream();
+                memoryOutputStream = null;
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        /**
+         * Returns the buffered data.
+         *
+         * @return Input stream
+         * @throws IOException e
+         */
+        private synchronized InputStream getInputStream() throws IOException {
+            if (deleted) {
+                throw new IOException("ZIP export buffer deleted");
+            }
+            if (file == null) {
+                return new ByteArrayInputStream(memoryOutputStream.toByteArray());
+            }
+            return Files.newInputStream(file);
+        }
+    }
+}
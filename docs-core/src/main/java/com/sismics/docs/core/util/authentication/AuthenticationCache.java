@@ -0,0 +1,147 @@
+package com.sismics.docs.core.util.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the data needed to authenticate a request (tokens, users, groups and base functions).
+ * Entries are invalidated when users, groups or tokens are modified.
+ */
+public class AuthenticationCache {
+    /**
+     * Maximum number of cached entries.
+     */
+    private static final int MAX_SIZE = 10000;
+
+    /**
+     * Entries are reloaded after this delay, in case the data is modified by another instance (in seconds).
+     */
+    private static final long EXPIRATION_SECONDS = 60;
+
+    /**
+     * Current generation of the cache, incremented on each invalidation.
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Cached entries.
+     */
+    private static final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterWrite(EXPIRATION_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Invalidate the cache after the commit, concurrent requests may have cached the previous data.
+     */
+    private static final Runnable CLEAR_HOOK = AuthenticationCache::clear;
+
+    /**
+     * Returns the cache key of an authentication token.
+     *
+     * @param tokenId Authentication token ID
+     * @return Cache key
+     */
+    public static String getTokenKey(String tokenId) {
+        return "token:" + tokenId;
+    }
+
+    /**
+     * Returns the cache key of a user.
+     *
+     * @param userId User ID
+     * @return Cache key
+     */
+    public static String getUserKey(String userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * Returns the cache key of the groups and base functions of a user.
+     *
+     * @param userId User ID
+     * @return Cache key
+     */
+    public static String getPrincipalKey(String userId) {
+        return "principal:" + userId;
+    }
+
+    /**
+     * Returns a cached value, loading it if necessary.
+     * Cached values are shared between requests and must not be modified.
+     *
+     * @param key Cache key
+     * @param loader Value loader
+     * @param <T> Value type
+     * @return Value, null values are not cached
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String key, Supplier<T> loader) {
+        long currentGeneration = generation.get();
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation == currentGeneration) {
+            MetricRegistry.counter("authentication_cache.hit").incrementAndGet();
+            return (T) entry.value;
+        }
+
+        // Values loaded during an invalidation are outdated, and ignored by the generation check
+        MetricRegistry.counter("authentication_cache.miss").incrementAndGet();
+        T value = loader.get();
+        if (value != null) {
+            cache.put(key, new Entry(currentGeneration, value));
+        }
+        return value;
+    }
+
+    /**
+     * Invalidate a cached value.
+     *
+     * @param key Cache key
+     */
+    public static void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Invalidate all cached values, now and after the current transaction is committed.
+     * Concurrent requests may cache the previous data until then.
+     */
+    public static void invalidateAll() {
+        clear();
+        ThreadLocalContext.get().addCommitHook(CLEAR_HOOK);
+    }
+
+    /**
+     * Invalidate all cached values immediately.
+     */
+    public static void clear() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Cached value.
+     */
+    private static class Entry {
+        /**
+         * Generation of the cache when the value was loaded.
+         */
+        private final long generation;
+
+        /**
+         * Value.
+         */
+        private final Object value;
+
+        private Entry(long generation, Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+}
@@ -1,28 +1,41 @@
 package com.sismics.docs.core.util.authentication;
 
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
-import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.UserDao;
-import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.metrics.Histogram;
+import com.sismics.util.metrics.MetricRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.directory.api.ldap.model.cursor.EntryCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.ldap.client.api.LdapConnection;
 import org.apache.directory.ldap.client.api.LdapConnectionConfig;
-import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.apache.directory.ldap.client.api.ValidatingPoolableLdapConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * LDAP authentication handler.
+ * Connections to the LDAP server are pooled, and the users found in the directory are cached for a short time.
  *
  * @author bgamard
  */
@@ -34,48 +47,107 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
     private static final Logger log = LoggerFactory.getLogger(LdapAuthenticationHandler.class);
 
     /**
-     * Get a LDAP connection.
-     * @return LdapConnection
+     * Maximum number of pooled connections.
      */
-    private LdapConnection getConnection() {
-        ConfigDao configDao = new ConfigDao();
-        Config ldapEnabled = configDao.getById(ConfigType.LDAP_ENABLED);
-        if (ldapEnabled == null || !Boolean.parseBoolean(ldapEnabled.getValue())) {
-            return null;
-        }
+    private static final int POOL_SIZE = getPoolSize();
 
-        LdapConnectionConfig config = new LdapConnectionConfig();
-        config.setLdapHost(ConfigUtil.getConfigStringValue(ConfigType.LDAP_HOST));
-        config.setLdapPort(ConfigUtil.getConfigIntegerValue(ConfigType.LDAP_PORT));
-        config.setUseSsl(ConfigUtil.getConfigBooleanValue(ConfigType.LDAP_USESSL));
-        config.setName(ConfigUtil.getConfigStringValue(ConfigType.LDAP_ADMIN_DN));
-        config.setCredentials(ConfigUtil.getConfigStringValue(ConfigType.LDAP_ADMIN_PASSWORD));
+    /**
+     * Maximum time to wait for a pooled connection (in seconds).
+     */
+    private static final long POOL_MAX_WAIT_SECONDS = 30;
+
+    /**
+     * Interval between two validations of the idle connections (in seconds).
+     */
+    private static final long IDLE_VALIDATION_INTERVAL_SECONDS = 30;
+
+    /**
+     * Idle connections are closed after this delay (in seconds).
+     */
+    private static final long IDLE_TIMEOUT_SECONDS = 300;
+
+    /**
+     * Maximum number of cached users.
+     */
+    private static final int USER_ENTRY_CACHE_SIZE = 10000;
+
+    /**
+     * Cached users are searched again after this delay, in case they are moved in the directory (in seconds).
+     */
+    private static final long USER_ENTRY_CACHE_EXPIRATION_SECONDS = 300;
+
+    /**
+     * Users found in the directory, by base DN and search filter.
+     * Only the lookups are cached, the password is always checked by the LDAP server.
+     */
+    private static final Cache<String, Entry> userEntryCache = CacheBuilder.newBuilder()
+            .maximumSize(USER_ENTRY_CACHE_SIZE)
+            .expireAfterWrite(USER_ENTRY_CACHE_EXPIRATION_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Duration of the LDAP authentications.
+     */
+    private static final Histogram loginHistogram = MetricRegistry.histogram("ldap.login");
+
+    /**
+     * Number of rejected LDAP authentications.
+     */
+    private static final AtomicLong loginFailureCounter = MetricRegistry.counter("ldap.login.failures");
+
+    /**
+     * Number of users found in the cache.
+     */
+    private static final AtomicLong userEntryCacheHitCounter = MetricRegistry.counter("ldap.user_cache.hit");
 
-        return new LdapNetworkConnection(config);
+    /**
+     * Number of users searched in the directory.
+     */
+    private static final AtomicLong userEntryCacheMissCounter = MetricRegistry.counter("ldap.user_cache.miss");
+
+    /**
+     * Current connection pool, null if the LDAP authentication is disabled.
+     */
+    private static ConnectionPool connectionPool;
+
+    static {
+        MetricRegistry.gauge("ldap.pool.active", () -> {
+            ConnectionPool currentPool = getCurrentPool();
+            return currentPool == null ? null : currentPool.pool.getNumActive();
+        });
+        MetricRegistry.gauge("ldap.pool.idle", () -> {
+            ConnectionPool currentPool = getCurrentPool();
+            return currentPool == null ? null : currentPool.pool.getNumIdle();
+        });
     }
 
     @Override
     public User authenticate(String username, String password) {
+        // An empty password would be an anonymous bind, accepted by most servers
+        if (Strings.isNullOrEmpty(password)) {
+            return null;
+        }
+
         // Fetch and authenticate the user
         Entry userEntry;
-        try (LdapConnection ldapConnection = getConnection()) {
-            if (ldapConnection == null) {
+        long startNanos = System.nanoTime();
+        try {
+            LdapConnectionPool pool = getPool();
+            if (pool == null) {
                 return null;
             }
-            ldapConnection.bind();
 
-            EntryCursor cursor = ldapConnection.search(ConfigUtil.getConfigStringValue(ConfigType.LDAP_BASE_DN),
-                    ConfigUtil.getConfigStringValue(ConfigType.LDAP_FILTER).replace("USERNAME", username), SearchScope.SUBTREE);
-            if (cursor.next()) {
-                userEntry = cursor.get();
-                ldapConnection.bind(userEntry.getDn(), password);
-            } else {
-                // User not found
+            userEntry = authenticate(pool, username, password);
+            if (userEntry == null) {
+                // User not found or invalid password
+                loginFailureCounter.incrementAndGet();
                 return null;
             }
         } catch (Exception e) {
             log.error("Error authenticating \"" + username + "\" using the LDAP", e);
             return null;
+        } finally {
+            loginHistogram.update(System.nanoTime() - startNanos);
         }
 
         UserDao userDao = new UserDao();
@@ -105,4 +177,240 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
 
         return user;
     }
+
+    /**
+     * Search a user in the directory and check its password.
+     *
+     * @param pool Connection pool
+     * @param username Username
+     * @param password Password
+     * @return User entry, null if the user is not found or the password is invalid
+     * @throws Exception e
+     */
+    private Entry authenticate(LdapConnectionPool pool, String username, String password) throws Exception {
+        String baseDn = ConfigUtil.getConfigStringValue(ConfigType.LDAP_BASE_DN);
+        String filter = ConfigUtil.getConfigStringValue(ConfigType.LDAP_FILTER).replace("USERNAME", username);
+        String cacheKey = baseDn + "\n" + filter;
+
+        Entry userEntry = userEntryCache.getIfPresent(cacheKey);
+        if (userEntry != null) {
+            userEntryCacheHitCounter.incrementAndGet();
+            if (bind(pool, userEntry.getDn(), password)) {
+                return userEntry;
+            }
+
+            // The user may have been moved since it was cached, search it again
+            userEntryCache.invalidate(cacheKey);
+            Entry searchedUserEntry = search(pool, baseDn, filter);
+            if (searchedUserEntry == null) {
+                return null;
+            }
+            if (searchedUserEntry.getDn().equals(userEntry.getDn())) {
+                // Same user, the password is invalid
+                userEntryCache.put(cacheKey, searchedUserEntry);
+                return null;
+            }
+            userEntry = searchedUserEntry;
+        } else {
+            userEntryCacheMissCounter.incrementAndGet();
+            userEntry = search(pool, baseDn, filter);
+            if (userEntry == null) {
+                return null;
+            }
+        }
+
+        userEntryCache.put(cacheKey, userEntry);
+        return bind(pool, userEntry.getDn(), password) ? userEntry : null;
+    }
+
+    /**
+     * Search a user in the directory.
+     *
+     * @param pool Connection pool
+     * @param baseDn Base DN
+     * @param filter Search filter
+     * @return First user found, null if none
+     * @throws Exception e
+     */
+    private Entry search(LdapConnectionPool pool, String baseDn, String filter) throws Exception {
+        return execute(pool, connection -> {
+            try (EntryCursor cursor = connection.search(baseDn, filter, SearchScope.SUBTREE)) {
+                return cursor.next() ? cursor.get() : null;
+            }
+        });
+    }
+
+    /**
+     * Check the password of a user.
+     * The pool binds the connection with the administrator credentials again when it is released.
+     *
+     * @param pool Connection pool
+     * @param dn User DN
+     * @param password Password
+     * @return True if the password is valid
+     * @throws Exception e
+     */
+    private boolean bind(LdapConnectionPool pool, Dn dn, String password) throws Exception {
+        return execute(pool, connection -> {
+            try {
+                connection.bind(dn, password);
+                return true;
+            } catch (LdapAuthenticationException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Run an operation with a pooled connection.
+     * A connection closed by the server since its last validation is replaced once.
+     *
+     * @param pool Connection pool
+     * @param operation Operation
+     * @return Result of the operation
+     * @throws Exception e
+     */
+    private <T> T execute(LdapConnectionPool pool, LdapOperation<T> operation) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            LdapConnection connection = pool.getConnection();
+            T result;
+            try {
+                result = operation.execute(connection);
+            } catch (Exception e) {
+                boolean disconnected = !connection.isConnected();
+                pool.invalidateObject(connection);
+                if (attempt > 0 || !disconnected) {
+                    throw e;
+                }
+                continue;
+            }
+            pool.releaseConnection(connection);
+            return result;
+        }
+    }
+
+    /**
+     * Returns the connection pool of the current LDAP configuration.
+     * The pool is created again when the configuration changes.
+     *
+     * @return Connection pool, null if the LDAP authentication is disabled
+     */
+    private static synchronized LdapConnectionPool getPool() {
+        if (!ConfigUtil.getConfigBooleanValue(ConfigType.LDAP_ENABLED, false)) {
+            closePool();
+            return null;
+        }
+
+        String host = ConfigUtil.getConfigStringValue(ConfigType.LDAP_HOST);
+        int port = ConfigUtil.getConfigIntegerValue(ConfigType.LDAP_PORT);
+        boolean useSsl = ConfigUtil.getConfigBooleanValue(ConfigType.LDAP_USESSL);
+        String adminDn = ConfigUtil.getConfigStringValue(ConfigType.LDAP_ADMIN_DN);
+        String adminPassword = ConfigUtil.getConfigStringValue(ConfigType.LDAP_ADMIN_PASSWORD);
+        List<Object> settings = Arrays.asList(host, port, useSsl, adminDn, adminPassword);
+        if (connectionPool != null && connectionPool.settings.equals(settings)) {
+            return connectionPool.pool;
+        }
+        closePool();
+
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost(host);
+        config.setLdapPort(port);
+        config.setUseSsl(useSsl);
+        config.setName(adminDn);
+        config.setCredentials(adminPassword);
+
+        // Idle connections are validated in the background, not on each login
+        GenericObjectPoolConfig<LdapConnection> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(POOL_SIZE);
+        poolConfig.setMaxIdle(POOL_SIZE);
+        poolConfig.setMaxWait(Duration.ofSeconds(POOL_MAX_WAIT_SECONDS));
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofSeconds(IDLE_VALIDATION_INTERVAL_SECONDS));
+        poolConfig.setMinEvictableIdleTime(Duration.ofSeconds(IDLE_TIMEOUT_SECONDS));
+        poolConfig.setNumTestsPerEvictionRun(POOL_SIZE);
+
+        connectionPool = new ConnectionPool(settings,
+                new LdapConnectionPool(new ValidatingPoolableLdapConnectionFactory(config), poolConfig));
+        return connectionPool.pool;
+    }
+
+    /**
+     * Returns the current connection pool, without checking the configuration.
+     *
+     * @return Connection pool
+     */
+    private static synchronized ConnectionPool getCurrentPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Close the current connection pool and forget the cached users.
+     */
+    private static synchronized void closePool() {
+        if (connectionPool == null) {
+            return;
+        }
+
+        try {
+            connectionPool.pool.close();
+        } catch (Exception e) {
+            log.warn("Error closing the LDAP connection pool", e);
+        }
+        connectionPool = null;
+        userEntryCache.invalidateAll();
+    }
+
+    /**
+     * Returns the maximum number of pooled connections.
+     *
+     * @return Pool size
+     */
+    private static int getPoolSize() {
+        String poolSize = System.getenv(Constants.LDAP_POOL_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(poolSize)) {
+            try {
+                return Math.max(Integer.parseInt(poolSize.trim()), 1);
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + Constants.LDAP_POOL_SIZE_ENV + " value: " + poolSize + ", using the default");
+            }
+        }
+        return 8;
+    }
+
+    /**
+     * Operation using a LDAP connection.
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    private interface LdapOperation<T> {
+        /**
+         * Run the operation.
+         *
+         * @param connection LDAP connection
+         * @return Result
+         * @throws Exception e
+         */
+        T execute(LdapConnection connection) throws Exception;
+    }
+
+    /**
+     * Connection pool, with the settings it has been created for.
+     */
+    private static class ConnectionPool {
+        /**
+         * Connection settings.
+         */
+        private final List<Object> settings;
+
+        /**
+         * Pool.
+         */
+        private final LdapConnectionPool pool;
+
+        private ConnectionPool(List<Object> settings, LdapConnectionPool pool) {
+            this.settings = settings;
+            this.pool = pool;
+        }
+    }
 }
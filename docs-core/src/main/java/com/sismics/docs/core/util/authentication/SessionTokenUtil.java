@@ -0,0 +1,269 @@
+package com.sismics.docs.core.util.authentication;
+
+import com.google.common.base.Splitter;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.jpa.AuthenticationToken;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signed session tokens, verified without a database lookup.
+ * The cookie value contains the token ID, the user ID, the creation date and the long lasted flag, signed with HMAC-SHA256.
+ * A token found in the database is trusted for {@link #VERIFICATION_DELAY_MS}, then checked in the database again
+ * on its next use, so the cost only depends on the tokens in use.
+ * Tokens deleted by this instance are rejected immediately, but a token deleted by another instance
+ * (e.g. a logout) is accepted until its verification expires.
+ */
+public class SessionTokenUtil {
+    /**
+     * Signature algorithm.
+     */
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * Separator of the signed token parts.
+     */
+    private static final char SEPARATOR = '.';
+
+    /**
+     * Signature key, null if the signed session tokens are not started.
+     */
+    private static volatile SecretKeySpec key;
+
+    /**
+     * Delay during which a token found in the database is trusted (in milliseconds).
+     * This is the maximum delay before a token deleted by another instance is rejected.
+     */
+    public static final long VERIFICATION_DELAY_MS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Delay during which a token deleted by this instance is remembered (in milliseconds),
+     * longer than the transaction deleting it.
+     */
+    private static final long REVOCATION_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Time of the last database verification, by token ID.
+     */
+    private static final Map<String, Long> verifiedTokenMap = new ConcurrentHashMap<>();
+
+    /**
+     * Time of the deletion of the tokens deleted by this instance, by token ID.
+     */
+    private static final Map<String, Long> revokedTokenMap = new ConcurrentHashMap<>();
+
+    /**
+     * Returns true if the session tokens must be signed.
+     *
+     * @return True if enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getenv(Constants.SIGNED_SESSION_TOKEN_ENV));
+    }
+
+    /**
+     * Returns true if the signature key is loaded.
+     *
+     * @return True if started
+     */
+    public static boolean isStarted() {
+        return key != null;
+    }
+
+    /**
+     * Set the signature key.
+     *
+     * @param secret Secret, null to stop signing the session tokens
+     */
+    public static void setSecret(byte[] secret) {
+        key = secret == null ? null : new SecretKeySpec(secret, HMAC_ALGORITHM);
+        verifiedTokenMap.clear();
+        revokedTokenMap.clear();
+    }
+
+    /**
+     * Returns the cookie value of an authentication token.
+     *
+     * @param authenticationToken Authentication token
+     * @return Signed token, or the token ID if the signature key is not loaded
+     */
+    public static String sign(AuthenticationToken authenticationToken) {
+        if (key == null) {
+            return authenticationToken.getId();
+        }
+
+        String payload = authenticationToken.getId() + SEPARATOR
+                + authenticationToken.getUserId() + SEPARATOR
+                + authenticationToken.getCreationDate().getTime() + SEPARATOR
+                + (authenticationToken.isLongLasted() ? "1" : "0");
+        return payload + SEPARATOR + Base64.getUrlEncoder().withoutPadding().encodeToString(hmac(payload));
+    }
+
+    /**
+     * Verify the signature of a signed token.
+     *
+     * @param value Cookie value
+     * @return Session token, null if the token is not signed, the signature is invalid or the token has been deleted
+     */
+    public static SessionToken verify(String value) {
+        if (key == null) {
+            return null;
+        }
+
+        int signatureIndex = value.lastIndexOf(SEPARATOR);
+        if (signatureIndex < 0) {
+            return null;
+        }
+        String payload = value.substring(0, signatureIndex);
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(value.substring(signatureIndex + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(hmac(payload), signature)) {
+            return null;
+        }
+
+        List<String> partList = Splitter.on(SEPARATOR).splitToList(payload);
+        if (partList.size() != 4) {
+            return null;
+        }
+        SessionToken sessionToken = new SessionToken(partList.get(0), partList.get(1),
+                Long.parseLong(partList.get(2)), "1".equals(partList.get(3)));
+        if (revokedTokenMap.containsKey(sessionToken.id)) {
+            return null;
+        }
+        return sessionToken;
+    }
+
+    /**
+     * Returns the token ID of a cookie value, without verifying its signature.
+     *
+     * @param value Cookie value
+     * @return Token ID
+     */
+    public static String getTokenId(String value) {
+        int index = value.indexOf(SEPARATOR);
+        return index < 0 ? value : value.substring(0, index);
+    }
+
+    /**
+     * Returns true if the token has been found in the database recently, and not deleted since by this instance.
+     * Other tokens must be checked in the database.
+     *
+     * @param tokenId Token ID
+     * @return True if the token is active
+     */
+    public static boolean isActive(String tokenId) {
+        Long verificationTime = verifiedTokenMap.get(tokenId);
+        return verificationTime != null
+                && System.currentTimeMillis() - verificationTime < VERIFICATION_DELAY_MS
+                && !revokedTokenMap.containsKey(tokenId);
+    }
+
+    /**
+     * Mark a token as found in the database.
+     *
+     * @param tokenId Token ID
+     */
+    public static void setVerified(String tokenId) {
+        if (key != null && !revokedTokenMap.containsKey(tokenId)) {
+            verifiedTokenMap.put(tokenId, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Revoke a deleted token.
+     *
+     * @param tokenId Token ID
+     */
+    public static void revoke(String tokenId) {
+        if (key != null) {
+            revokedTokenMap.put(tokenId, System.currentTimeMillis());
+            verifiedTokenMap.remove(tokenId);
+        }
+    }
+
+    /**
+     * Forget the expired verifications and the old revocations.
+     */
+    public static void removeExpiredEntries() {
+        long now = System.currentTimeMillis();
+        verifiedTokenMap.values().removeIf(verificationTime -> now - verificationTime >= VERIFICATION_DELAY_MS);
+        revokedTokenMap.values().removeIf(revocationTime -> now - revocationTime >= REVOCATION_DELAY_MS);
+    }
+
+    /**
+     * Compute the signature of a payload.
+     *
+     * @param payload Payload
+     * @return Signature
+     */
+    private static byte[] hmac(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign the session token", e);
+        }
+    }
+
+    /**
+     * Content of a signed token.
+     */
+    public static class SessionToken {
+        /**
+         * Token ID.
+         */
+        private final String id;
+
+        /**
+         * User ID.
+         */
+        private final String userId;
+
+        /**
+         * Creation date (in milliseconds).
+         */
+        private final long creationDate;
+
+        /**
+         * True if the token is long lasted.
+         */
+        private final boolean longLasted;
+
+        private SessionToken(String id, String userId, long creationDate, boolean longLasted) {
+            this.id = id;
+            this.userId = userId;
+            this.creationDate = creationDate;
+            this.longLasted = longLasted;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public long getCreationDate() {
+            return creationDate;
+        }
+
+        public boolean isLongLasted() {
+            return longLasted;
+        }
+    }
+}
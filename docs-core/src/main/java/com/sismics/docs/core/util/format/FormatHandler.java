@@ -21,6 +21,16 @@ public interface FormatHandler {
      */
     boolean accept(String mimeType);
 
+    /**
+     * Returns the version of the thumbnail generation and content extraction.
+     * Increment it to invalidate the cached processing results of this format.
+     *
+     * @return Version
+     */
+    default int getVersion() {
+        return 1;
+    }
+
     /**
      * Generate a thumbnail.
      *
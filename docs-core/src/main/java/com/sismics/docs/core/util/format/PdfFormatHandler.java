@@ -1,9 +1,11 @@
 package com.sismics.docs.core.util.format;
 
+import com.google.common.base.Strings;
 import com.google.common.io.Closer;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.util.mime.MimeType;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
@@ -18,6 +20,14 @@ import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * PDF format handler.
@@ -30,6 +40,45 @@ public class PdfFormatHandler implements FormatHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(PdfFormatHandler.class);
 
+    /**
+     * Number of pages OCR-ized in parallel.
+     */
+    private static final int OCR_THREAD_COUNT = getOcrThreadCount();
+
+    /**
+     * OCR workers, shared by all the PDF files to bound the number of tesseract processes.
+     */
+    private static final ExecutorService ocrExecutor = Executors.newFixedThreadPool(OCR_THREAD_COUNT, new ThreadFactory() {
+        private final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pdf-ocr-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Rendered pages waiting for or being OCR-ized, shared by all the PDF files to bound the memory used.
+     */
+    private static final Semaphore renderedPageSemaphore = new Semaphore(OCR_THREAD_COUNT, true);
+
+    /**
+     * Page OCR state: waiting for a worker.
+     */
+    private static final int PAGE_PENDING = 0;
+
+    /**
+     * Page OCR state: OCR-ized by a worker.
+     */
+    private static final int PAGE_STARTED = 1;
+
+    /**
+     * Page OCR state: cancelled before being OCR-ized.
+     */
+    private static final int PAGE_CANCELLED = 2;
+
     @Override
     public boolean accept(String mimeType) {
         return mimeType.equals(MimeType.APPLICATION_PDF);
@@ -45,35 +94,89 @@ public class PdfFormatHandler implements FormatHandler {
     }
 
     @Override
-    public String extractContent(String language, Path file) {
-        String content = null;
+    public String extractContent(String language, Path file) throws Exception {
+        // Failures are thrown, so that a partial content is not taken for the file content
+        String content;
         try (InputStream inputStream = Files.newInputStream(file);
              PDDocument pdfDocument = PDDocument.load(inputStream)) {
             content = new PDFTextStripper().getText(pdfDocument);
-        } catch (Exception e) {
-            log.error("Error while extracting text from the PDF", e);
         }
 
         // No text content, try to OCR it
-        if (language != null && content != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
+        if (language != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
             StringBuilder sb = new StringBuilder();
+            List<Future<String>> pageContentList = new ArrayList<>();
+            List<AtomicInteger> pageStateList = new ArrayList<>();
             try (InputStream inputStream = Files.newInputStream(file);
                  PDDocument pdfDocument = PDDocument.load(inputStream)) {
+                // Pages are rendered one by one, and OCR-ized in parallel
                 PDFRenderer renderer = new PDFRenderer(pdfDocument);
-                for (int pageIndex = 0; pageIndex < pdfDocument.getNumberOfPages(); pageIndex++) {
-                    log.info("OCR page " + (pageIndex + 1) + "/" + pdfDocument.getNumberOfPages() + " of PDF file containing only images");
+                int pageCount = pdfDocument.getNumberOfPages();
+                for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                    // Only keep as many rendered pages in memory as OCR workers, across all the files
+                    renderedPageSemaphore.acquire();
+                    BufferedImage image;
+                    try {
+                        image = renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY);
+                    } catch (Exception e) {
+                        renderedPageSemaphore.release();
+                        throw e;
+                    }
+
+                    int pageNumber = pageIndex + 1;
+                    AtomicInteger pageState = new AtomicInteger(PAGE_PENDING);
+                    pageStateList.add(pageState);
+                    pageContentList.add(ocrExecutor.submit(() -> {
+                        if (!pageState.compareAndSet(PAGE_PENDING, PAGE_STARTED)) {
+                            return null;
+                        }
+                        try {
+                            log.info("OCR page " + pageNumber + "/" + pageCount + " of PDF file containing only images");
+                            return FileUtil.ocrFile(language, image);
+                        } finally {
+                            renderedPageSemaphore.release();
+                        }
+                    }));
+                }
+
+                // Reassemble the pages in order
+                for (Future<String> pageContent : pageContentList) {
                     sb.append(" ");
-                    sb.append(FileUtil.ocrFile(language, renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY)));
+                    sb.append(pageContent.get());
                 }
                 return sb.toString();
             } catch (Exception e) {
-                log.error("Error while OCR-izing the PDF", e);
+                for (int i = 0; i < pageContentList.size(); i++) {
+                    pageContentList.get(i).cancel(true);
+                    if (pageStateList.get(i).compareAndSet(PAGE_PENDING, PAGE_CANCELLED)) {
+                        // This page will never be OCR-ized, release its rendering
+                        renderedPageSemaphore.release();
+                    }
+                }
+                throw e;
             }
         }
 
         return content;
     }
 
+    /**
+     * Returns the number of pages OCR-ized in parallel.
+     *
+     * @return Number of OCR workers
+     */
+    private static int getOcrThreadCount() {
+        String ocrThreadCount = System.getenv(Constants.OCR_THREAD_COUNT_ENV);
+        if (!Strings.isNullOrEmpty(ocrThreadCount)) {
+            try {
+                return Math.max(Integer.parseInt(ocrThreadCount.trim()), 1);
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + Constants.OCR_THREAD_COUNT_ENV + " value: " + ocrThreadCount + ", using the default");
+            }
+        }
+        return Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDDocument mergeDoc = PDDocument.load(file.toFile(), memUsageSettings);
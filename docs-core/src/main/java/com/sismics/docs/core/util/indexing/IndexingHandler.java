@@ -9,6 +9,7 @@ import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Indexing handler.
@@ -36,19 +37,46 @@ public interface IndexingHandler {
     void shutDown();
 
     /**
-     * Clear the index.
+     * Start rebuilding the index into a shadow index.
+     * Until the rebuild is finished, searches use the current index, changes are applied
+     * to both indexes, and lists of documents and files are only indexed in the shadow index.
+     *
+     * @return Checkpoint of an interrupted rebuild to resume, empty to rebuild everything
+     * @throws Exception e
+     */
+    Map<String, String> startRebuild() throws Exception;
+
+    /**
+     * Save the progress of the rebuild, to be resumed if interrupted.
+     *
+     * @param checkpoint Checkpoint
+     * @throws Exception e
      */
-    void clearIndex();
+    void checkpointRebuild(Map<String, String> checkpoint) throws Exception;
 
     /**
-     * Index a list of documents.
+     * Replace the current index with the rebuilt one.
+     *
+     * @throws Exception e
+     */
+    void finishRebuild() throws Exception;
+
+    /**
+     * Stop an unfinished rebuild, keeping its last checkpoint.
+     */
+    void abortRebuild();
+
+    /**
+     * Index a list of documents, deleted documents are removed from the index.
+     * This method is thread safe and can be called concurrently.
      *
      * @param documentList All documents
      */
     void createDocuments(List<Document> documentList);
 
     /**
-     * Index a list of files.
+     * Index a list of files, deleted files are removed from the index.
+     * This method is thread safe and can be called concurrently.
      *
      * @param fileList All files
      */
@@ -79,8 +107,9 @@ public interface IndexingHandler {
      * Update an indexed file.
      *
      * @param file File
+     * @param previousDocumentId ID of the document of the file before the update, null if unchanged
      */
-    void updateFile(File file);
+    void updateFile(File file, String previousDocumentId);
 
     /**
      * Delete a file or a document.
@@ -89,6 +118,14 @@ public interface IndexingHandler {
      */
     void deleteDocument(String id);
 
+    /**
+     * Delete a file.
+     *
+     * @param id File ID
+     * @param documentId ID of the document of the file, null if orphan
+     */
+    void deleteFile(String id, String documentId);
+
     /**
      * Create an ACL.
      *
@@ -117,4 +154,15 @@ public interface IndexingHandler {
      * @throws Exception e
      */
     void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception;
+
+    /**
+     * Suggest search terms according to the user query.
+     * Only the terms of documents readable by the targets are suggested.
+     *
+     * @param search User search query
+     * @param targetIdList List of targets ID of the user
+     * @param suggestionList Suggestion of search query (updated by side effects)
+     * @throws Exception e
+     */
+    void suggestSearchTerms(String search, List<String> targetIdList, List<String> suggestionList) throws Exception;
 }
@@ -2,11 +2,17 @@ package com.sismics.docs.core.util.indexing;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
@@ -16,57 +22,106 @@ import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.jpa.PageCursor;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.metrics.MetricRegistry;
+import com.sismics.util.metrics.Timer;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CheckIndex;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.join.JoinUtil;
+import org.apache.lucene.search.join.ScoreMode;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import org.apache.lucene.search.spell.LuceneDictionary;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
+import java.text.BreakIterator;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 /**
  * Lucene indexing handler.
  * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Other search criteria are still using the database, unless filtering is enabled
+ * with DOCS_LUCENE_FILTERING: fulltext searches are then filtered, sorted
+ * and paginated in the index, and the database only fetches the current page.
  *
  * @author bgamard
  */
@@ -77,21 +132,221 @@ public class LuceneIndexingHandler implements IndexingHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(LuceneIndexingHandler.class);
 
+    /**
+     * Maximum delay before a write is visible to searches (in milliseconds).
+     */
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    /**
+     * Maximum delay between two commits of pending writes (in milliseconds).
+     */
+    private static final long COMMIT_INTERVAL_MS = 60000;
+
+    /**
+     * Number of pending writes triggering a commit.
+     */
+    private static final int COMMIT_MAX_PENDING = 1000;
+
+    /**
+     * Minimum delay between two rebuilds of the search suggester (in milliseconds).
+     */
+    private static final long SUGGESTER_REBUILD_INTERVAL_MS = 30000;
+
+    /**
+     * Maximum number of search suggestions.
+     */
+    private static final int SUGGESTION_COUNT = 10;
+
+    /**
+     * Number of suggestions looked up for each returned one, the unreadable ones are dropped.
+     */
+    private static final int SUGGESTION_LOOKUP_FACTOR = 5;
+
+    /**
+     * Maximum number of documents of each suggestion checked for their readability in the database.
+     * A suggestion is dropped if none of them is readable.
+     */
+    private static final int SUGGESTION_DOCUMENT_COUNT = 100;
+
+    /**
+     * Target length of a search highlight.
+     */
+    private static final int HIGHLIGHT_LENGTH = 100;
+
+    /**
+     * Lucene directory storages persisted in files.
+     */
+    private static final List<String> FILE_STORAGE_LIST = Lists.newArrayList("FILE", "MMAP", "HYBRID");
+
+    /**
+     * Maximum size of a newly flushed or merged segment kept in RAM by the HYBRID storage (in MB).
+     */
+    private static final double NRT_CACHE_MAX_MERGE_SIZE_MB = 5.0;
+
+    /**
+     * Maximum size of all the segments kept in RAM by the HYBRID storage (in MB).
+     */
+    private static final double NRT_CACHE_MAX_SIZE_MB = 60.0;
+
+    /**
+     * Commit data key of the indexed fields version.
+     */
+    private static final String INDEX_VERSION_KEY = "index_version";
+
+    /**
+     * Current version of the indexed fields.
+     * Increment it to rebuild the index when the indexed fields change.
+     */
+    private static final String INDEX_VERSION = "1";
+
+    /**
+     * Commit data key of the filtering fields version.
+     */
+    private static final String FILTER_VERSION_KEY = "filter_version";
+
+    /**
+     * Current version of the filtering fields.
+     * Increment it to rebuild the index when the filtering fields change.
+     */
+    private static final String FILTER_VERSION = "1";
+
+    /**
+     * Number of documents loaded at once when building the filtering fields.
+     */
+    private static final int FILTER_BATCH_SIZE = 100;
+
+    /**
+     * Indexed file content, with offsets to highlight it without analyzing it again.
+     */
+    private static final FieldType CONTENT_FIELD_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        CONTENT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_FIELD_TYPE.freeze();
+    }
+
+    /**
+     * Lucene directory storage (RAM, FILE, MMAP or HYBRID).
+     */
+    private String luceneStorage;
+
     /**
      * Lucene directory.
      */
     private Directory directory;
 
     /**
-     * Directory reader.
+     * Near-real-time searcher manager, opened on the index writer.
      */
-    private DirectoryReader directoryReader;
+    private volatile SearcherManager searcherManager;
 
     /**
      * Index writer.
      */
     private IndexWriter indexWriter;
 
+    /**
+     * Shadow index directory, while the index is being rebuilt.
+     */
+    private Directory rebuildDirectory;
+
+    /**
+     * Shadow index writer, null if the index is not being rebuilt.
+     */
+    private volatile IndexWriter rebuildWriter;
+
+    /**
+     * IDs written by live changes since the rebuild started.
+     * Their batches were read earlier and would overwrite them with outdated data.
+     */
+    private final Set<String> liveWrittenIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Locks ordering the live and batch writes of a same ID in the index being rebuilt.
+     */
+    private final Striped<Lock> rebuildLocks = Striped.lock(64);
+
+    /**
+     * Lock allowing concurrent writes, but not during an index swap.
+     */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    /**
+     * Lock preventing a searcher refresh in the middle of an index swap.
+     */
+    private final Object refreshLock = new Object();
+
+    /**
+     * Background executor refreshing the searcher and committing the index.
+     */
+    private ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * Number of writes since the last commit.
+     */
+    private final AtomicInteger pendingWriteCount = new AtomicInteger();
+
+    /**
+     * Time of the last commit.
+     */
+    private volatile long lastCommitTime = System.currentTimeMillis();
+
+    /**
+     * Index commit timer.
+     */
+    private final Timer commitTimer = MetricRegistry.timer("lucene.commit");
+
+    /**
+     * Searcher refresh timer.
+     */
+    private final Timer refreshTimer = MetricRegistry.timer("lucene.refresh");
+
+    /**
+     * Search suggester built from the indexed titles, null until the first build.
+     */
+    private volatile FuzzySuggester suggester;
+
+    /**
+     * True if the index has changed since the last suggester build.
+     */
+    private volatile boolean suggesterOutdated = true;
+
+    /**
+     * Time of the last suggester build.
+     */
+    private volatile long lastSuggesterBuildTime;
+
+    /**
+     * Lock preventing concurrent suggester builds.
+     */
+    private final Object suggesterLock = new Object();
+
+    /**
+     * Suggester build timer.
+     */
+    private final Timer suggesterBuildTimer = MetricRegistry.timer("lucene.suggester_build");
+
+    /**
+     * True if fulltext searches are filtered, sorted and paginated in the index.
+     */
+    private final boolean filtering;
+
+    /**
+     * Constructor, filtering is enabled with DOCS_LUCENE_FILTERING.
+     */
+    public LuceneIndexingHandler() {
+        this(Boolean.parseBoolean(System.getenv(Constants.LUCENE_FILTERING_ENV)));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param filtering True if fulltext searches are filtered, sorted and paginated in the index
+     */
+    LuceneIndexingHandler(boolean filtering) {
+        this.filtering = filtering;
+    }
+
     @Override
     public boolean accept() {
         // Embedded Lucene can always start
@@ -105,41 +360,45 @@ public class LuceneIndexingHandler implements IndexingHandler {
         } catch (Exception e) {
             // An error occurred initializing Lucene, the index is out of date or broken, delete everything
             log.info("Unable to initialize Lucene, cleaning up the index: " + e.getMessage());
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            Files.walk(luceneDirectory)
-                    .sorted(Comparator.reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(java.io.File::delete);
+            deleteDirectory(DirectoryUtil.getLuceneDirectory());
 
             // Re-initialize and schedule a full reindex
             initLucene();
             RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
-            AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+            AppContext.getInstance().postAsyncEvent(rebuildIndexAsyncEvent);
         }
+
+        // Refresh the searcher and commit pending writes in the background
+        MetricRegistry.gauge("lucene.pending_writes", pendingWriteCount::get);
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lucene-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintainIndex,
+                REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     private void initLucene() throws Exception {
         ConfigDao configDao = new ConfigDao();
         Config luceneStorageConfig = configDao.getById(ConfigType.LUCENE_DIRECTORY_STORAGE);
-        String luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+        luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
 
         // RAM directory storage by default
-        if (luceneStorage == null || luceneStorage.equals("RAM")) {
+        if (isFileStorage()) {
+            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+            log.info("Using {} Lucene storage: {}", luceneStorage, luceneDirectory);
+            directory = openFileDirectory(luceneDirectory);
+        } else {
             directory = new RAMDirectory();
             log.info("Using RAM Lucene storage");
-        } else if (luceneStorage.equals("FILE")) {
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            log.info("Using file Lucene storage: {}", luceneDirectory);
-            directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
         }
 
         // Create an index writer
-        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
-        config.setCommitOnClose(true);
-        config.setMergeScheduler(new ConcurrentMergeScheduler());
-        indexWriter = new IndexWriter(directory, config);
+        indexWriter = new IndexWriter(directory, createIndexWriterConfig());
 
         // Check index version and rebuild it if necessary
+        boolean rebuildIndex = false;
         if (DirectoryReader.indexExists(directory)) {
             log.info("Checking index health and version");
             try (CheckIndex checkIndex = new CheckIndex(directory)) {
@@ -148,16 +407,106 @@ public class LuceneIndexingHandler implements IndexingHandler {
                     throw new Exception("Index is dirty");
                 }
             }
+
+            // The indexed fields may be missing or outdated
+            Map<String, String> userData = SegmentInfos.readLatestCommit(directory).getUserData();
+            if (!INDEX_VERSION.equals(userData.get(INDEX_VERSION_KEY))) {
+                log.info("Index fields are outdated, rebuilding the index");
+                rebuildIndex = true;
+            } else if (filtering && !FILTER_VERSION.equals(userData.get(FILTER_VERSION_KEY))) {
+                log.info("Index filtering fields are outdated, rebuilding the index");
+                rebuildIndex = true;
+            }
+        } else {
+            indexWriter.setLiveCommitData(getCommitData().entrySet());
+        }
+
+        // Open a near-real-time searcher on the index writer, pending writes are visible without a commit
+        searcherManager = new SearcherManager(indexWriter, null);
+
+        // Resume an interrupted rebuild
+        if (isFileStorage()) {
+            try (Directory interruptedRebuildDirectory = openFileDirectory(DirectoryUtil.getLuceneRebuildDirectory())) {
+                if (DirectoryReader.indexExists(interruptedRebuildDirectory)) {
+                    log.info("Resuming the interrupted index rebuild");
+                    rebuildIndex = true;
+                }
+            }
+        }
+
+        if (rebuildIndex) {
+            RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
+            AppContext.getInstance().postAsyncEvent(rebuildIndexAsyncEvent);
+        }
+    }
+
+    /**
+     * Create an index writer configuration.
+     *
+     * @return Index writer configuration
+     */
+    private IndexWriterConfig createIndexWriterConfig() {
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setCommitOnClose(true);
+        config.setMergeScheduler(new ConcurrentMergeScheduler());
+        return config;
+    }
+
+    /**
+     * Returns true if the index is stored in files.
+     *
+     * @return True if the index is stored in files
+     */
+    private boolean isFileStorage() {
+        return FILE_STORAGE_LIST.contains(luceneStorage);
+    }
+
+    /**
+     * Open an index directory stored in files.
+     * FILE reads the files with NIO, MMAP maps them in memory outside of the heap,
+     * and HYBRID also keeps small freshly flushed segments in RAM until they are merged or committed.
+     *
+     * @param path Path of the index directory
+     * @return Directory
+     * @throws IOException e
+     */
+    private Directory openFileDirectory(Path path) throws IOException {
+        switch (luceneStorage) {
+            case "MMAP":
+                return new MMapDirectory(path, NoLockFactory.INSTANCE);
+            case "HYBRID":
+                return new NRTCachingDirectory(new MMapDirectory(path, NoLockFactory.INSTANCE),
+                        NRT_CACHE_MAX_MERGE_SIZE_MB, NRT_CACHE_MAX_SIZE_MB);
+            default:
+                return new NIOFSDirectory(path, NoLockFactory.INSTANCE);
+        }
+    }
+
+    /**
+     * Returns the commit data of an index built with the current fields.
+     *
+     * @return Commit data
+     */
+    private Map<String, String> getCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(INDEX_VERSION_KEY, INDEX_VERSION);
+        if (filtering) {
+            commitData.put(FILTER_VERSION_KEY, FILTER_VERSION);
         }
+        return commitData;
     }
 
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        abortRebuild();
+        if (searcherManager != null) {
             try {
-                directoryReader.close();
+                searcherManager.close();
             } catch (IOException e) {
-                log.error("Error closing the index reader", e);
+                log.error("Error closing the searcher manager", e);
             }
         }
         if (indexWriter != null) {
@@ -176,96 +525,261 @@ public class LuceneIndexingHandler implements IndexingHandler {
         }
     }
 
-    @Override
-    public void clearIndex() {
-        handle(IndexWriter::deleteAll);
-    }
-
     @Override
     public void createDocuments(List<Document> documentList) {
-        handle(indexWriter -> {
-            for (Document document : documentList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-                indexWriter.addDocument(luceneDocument);
-            }
-        });
+        Map<String, Multimap<String, String>> filterFieldMap = getFilterFields(documentList);
+        for (Document document : documentList) {
+            handleBatch(document.getId(), indexWriter -> {
+                if (document.getDeleteDate() == null) {
+                    org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
+                    indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+                } else {
+                    indexWriter.deleteDocuments(new Term("id", document.getId()));
+                }
+            });
+        }
     }
 
     @Override
     public void createFiles(List<File> fileList) {
-        handle(indexWriter -> {
-            for (File file : fileList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-                indexWriter.addDocument(luceneDocument);
-            }
-        });
+        for (File file : fileList) {
+            handleBatch(file.getId(), indexWriter -> {
+                if (file.getDeleteDate() == null) {
+                    org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
+                    indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
+                } else {
+                    indexWriter.deleteDocuments(new Term("id", file.getId()));
+                }
+            });
+        }
     }
 
     @Override
     public void createDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.addDocument(luceneDocument);
+        Map<String, Multimap<String, String>> filterFieldMap = getFilterFields(Collections.singletonList(document));
+        handle(document.getId(), indexWriter -> {
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
+            indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
         });
     }
 
     @Override
     public void createFile(final File file) {
-        handle(indexWriter -> {
+        handle(file.getId(), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-            indexWriter.addDocument(luceneDocument);
+            indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
+
+        // The document is filtered on the MIME types of its files
+        if (filtering && file.getDocumentId() != null) {
+            updateFilterFields(file.getDocumentId());
+        }
     }
 
     @Override
-    public void updateFile(final File file) {
-        handle(indexWriter -> {
+    public void updateFile(final File file, String previousDocumentId) {
+        handle(file.getId(), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
             indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
+
+        if (filtering) {
+            if (file.getDocumentId() != null) {
+                updateFilterFields(file.getDocumentId());
+            }
+            if (previousDocumentId != null && !previousDocumentId.equals(file.getDocumentId())) {
+                // The file has been moved from this document
+                updateFilterFields(previousDocumentId);
+            }
+        }
     }
 
     @Override
     public void updateDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
+        Map<String, Multimap<String, String>> filterFieldMap = getFilterFields(Collections.singletonList(document));
+        handle(document.getId(), indexWriter -> {
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
             indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
         });
     }
 
     @Override
     public void deleteDocument(final String id) {
-        handle(indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+        handle(id, indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+    }
+
+    @Override
+    public void deleteFile(String id, String documentId) {
+        deleteDocument(id);
+
+        if (filtering && documentId != null) {
+            updateFilterFields(documentId);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, String> startRebuild() throws Exception {
+        Map<String, String> checkpoint = new HashMap<>();
+        if (isFileStorage()) {
+            rebuildDirectory = openFileDirectory(DirectoryUtil.getLuceneRebuildDirectory());
+            if (DirectoryReader.indexExists(rebuildDirectory)) {
+                checkpoint.putAll(SegmentInfos.readLatestCommit(rebuildDirectory).getUserData());
+            }
+        } else {
+            rebuildDirectory = new RAMDirectory();
+        }
+
+        IndexWriter writer = new IndexWriter(rebuildDirectory, createIndexWriterConfig());
+        String checkpointIndexVersion = checkpoint.remove(INDEX_VERSION_KEY);
+        String checkpointFilterVersion = checkpoint.remove(FILTER_VERSION_KEY);
+        if (checkpoint.isEmpty() || !INDEX_VERSION.equals(checkpointIndexVersion)
+                || !Objects.equals(filtering ? FILTER_VERSION : null, checkpointFilterVersion)) {
+            // Nothing to resume, or the interrupted rebuild was using other fields
+            writer.deleteAll();
+            checkpoint.clear();
+        }
+        liveWrittenIdSet.clear();
+        rebuildWriter = writer;
+        return checkpoint;
+    }
+
+    @Override
+    public void checkpointRebuild(Map<String, String> checkpoint) throws Exception {
+        Map<String, String> commitData = new HashMap<>(checkpoint);
+        commitData.putAll(getCommitData());
+        rebuildWriter.setLiveCommitData(commitData.entrySet());
+        rebuildWriter.commit();
+    }
+
+    @Override
+    public void finishRebuild() throws Exception {
+        // Block writes during the swap, they are applied to both indexes otherwise
+        swapLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                IndexWriter writer = rebuildWriter;
+                rebuildWriter = null;
+                liveWrittenIdSet.clear();
+                writer.setLiveCommitData(getCommitData().entrySet());
+                writer.close();
+
+                // Searches keep using the previous index until the new searcher manager is published
+                synchronized (refreshLock) {
+                    SearcherManager previousSearcherManager = searcherManager;
+                    Directory previousDirectory = directory;
+                    indexWriter.close();
+
+                    // Swap the index directories instead of copying the rebuilt index
+                    Path previousPath = null;
+                    if (isFileStorage()) {
+                        rebuildDirectory.close();
+                        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+                        Path luceneRebuildDirectory = DirectoryUtil.getLuceneRebuildDirectory();
+                        previousPath = luceneDirectory.resolveSibling(luceneDirectory.getFileName() + "_previous");
+                        if (Files.exists(previousPath)) {
+                            deleteDirectory(previousPath);
+                        }
+                        Files.move(luceneDirectory, previousPath, StandardCopyOption.ATOMIC_MOVE);
+                        Files.move(luceneRebuildDirectory, luceneDirectory, StandardCopyOption.ATOMIC_MOVE);
+                        directory = openFileDirectory(luceneDirectory);
+                    } else {
+                        directory = rebuildDirectory;
+                    }
+                    rebuildDirectory = null;
+
+                    indexWriter = new IndexWriter(directory, createIndexWriterConfig());
+                    searcherManager = new SearcherManager(indexWriter, null);
+                    pendingWriteCount.set(0);
+                    lastCommitTime = System.currentTimeMillis();
+
+                    // Searches in progress keep their reference on the previous index
+                    previousSearcherManager.close();
+                    previousDirectory.close();
+                    if (previousPath != null) {
+                        deleteDirectory(previousPath);
+                    }
+                }
+                suggesterOutdated = true;
+            }
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized void abortRebuild() {
+        IndexWriter writer = rebuildWriter;
+        if (writer == null) {
+            return;
+        }
+
+        rebuildWriter = null;
+        liveWrittenIdSet.clear();
+        try {
+            // Changes since the last checkpoint are committed, they are indexed again when resuming
+            writer.close();
+            rebuildDirectory.close();
+        } catch (IOException e) {
+            log.error("Error closing the rebuilt index", e);
+        }
+        rebuildDirectory = null;
+    }
+
+    /**
+     * Delete a directory and its content.
+     *
+     * @param path Directory
+     * @throws IOException e
+     */
+    private void deleteDirectory(Path path) throws IOException {
+        try (Stream<Path> pathStream = Files.walk(path)) {
+            pathStream.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(java.io.File::delete);
+        }
     }
 
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        // Tag ACLs are resolved at search time, only the document readers are indexed
+        if (filtering && perm == PermType.READ) {
+            updateFilterFields(sourceId);
+        }
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (filtering && perm == PermType.READ) {
+            updateFilterFields(sourceId);
+        }
+    }
+
+    /**
+     * Update the indexed filtering fields of a document from the database.
+     * Does nothing if the ID is not a document (e.g. a tag).
+     *
+     * @param documentId Document ID
+     */
+    private void updateFilterFields(String documentId) {
+        Document document = new DocumentDao().getById(documentId);
+        if (document != null) {
+            updateDocument(document);
+        }
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
+        boolean fulltextSearch = false;
 
-        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
-        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
-        sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        // Fulltext searches are entirely resolved by the index if possible
+        if (filtering && isIndexSearch(criteria, sortCriteria)) {
+            findByCriteriaInIndex(paginatedList, suggestionList, criteria, sortCriteria);
+            return;
+        }
+
+        StringBuilder sb = buildSelectQuery();
 
         // Add search criterias
         if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
@@ -277,15 +791,16 @@ public class LuceneIndexingHandler implements IndexingHandler {
         }
         parameterMap.put("targetIdList", criteria.getTargetIdList());
         if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSimpleSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
+            Set<String> documentIdSet = search(criteria.getSimpleSearch(), criteria.getFullSearch());
+            if (documentIdSet.isEmpty()) {
                 // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
+                documentIdSet.add(UUID.randomUUID().toString());
             }
             criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
+            parameterMap.put("documentIdList", documentIdSet);
+            fulltextSearch = true;
 
-            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+            suggestSearchTerms(criteria.getFullSearch(), criteria.getTargetIdList(), suggestionList);
         }
         if (criteria.getCreateDateMin() != null) {
             criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
@@ -362,13 +877,48 @@ public class LuceneIndexingHandler implements IndexingHandler {
         QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
         List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
 
-        // Assemble results
-        List<DocumentDto> documentDtoList = new ArrayList<>();
-        for (Object[] o : l) {
-            int i = 0;
-            DocumentDto documentDto = new DocumentDto();
-            documentDto.setId((String) o[i++]);
-            documentDto.setTitle((String) o[i++]);
+        // Assemble results, only this page is highlighted
+        List<DocumentDto> documentDtoList = assembleResultList(l);
+        if (fulltextSearch) {
+            highlight(criteria, documentDtoList);
+        }
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    /**
+     * Build the select part of the document search query.
+     *
+     * @return Query
+     */
+    private StringBuilder buildSelectQuery() {
+        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
+        sb.append(" s.count c5, ");
+        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
+        sb.append(" from T_DOCUMENT d ");
+        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
+                "   FROM T_SHARE s, T_ACL ac " +
+                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
+                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
+        sb.append(" left join (select rs.*, rs3.idDocument " +
+                "from T_ROUTE_STEP rs " +
+                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
+                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        return sb;
+    }
+
+    /**
+     * Assemble the results of the document search query.
+     *
+     * @param l Query results
+     * @return List of documents
+     */
+    private List<DocumentDto> assembleResultList(List<Object[]> l) {
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        for (Object[] o : l) {
+            int i = 0;
+            DocumentDto documentDto = new DocumentDto();
+            documentDto.setId((String) o[i++]);
+            documentDto.setTitle((String) o[i++]);
             documentDto.setDescription((String) o[i++]);
             documentDto.setCreateTimestamp(((Timestamp) o[i++]).getTime());
             documentDto.setLanguage((String) o[i++]);
@@ -378,34 +928,442 @@ public class LuceneIndexingHandler implements IndexingHandler {
             documentDto.setActiveRoute(o[i++] != null);
             documentDto.setCurrentStepName((String) o[i++]);
             documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
             documentDtoList.add(documentDto);
         }
+        return documentDtoList;
+    }
 
-        paginatedList.setResultList(documentDtoList);
+    /**
+     * Returns true if the search can be filtered, sorted and paginated in the index.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return True if the index can handle this search
+     */
+    private boolean isIndexSearch(DocumentCriteria criteria, SortCriteria sortCriteria) {
+        if (Strings.isNullOrEmpty(criteria.getSimpleSearch()) && Strings.isNullOrEmpty(criteria.getFullSearch())) {
+            // Listing without search is handled by the database
+            return false;
+        }
+        if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
+            // Route steps are not indexed
+            return false;
+        }
+        return getSort(sortCriteria) != null;
+    }
+
+    /**
+     * Returns the index sort matching a sort criteria.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Sort, null if this column is not sortable in the index
+     */
+    private Sort getSort(SortCriteria sortCriteria) {
+        if (sortCriteria == null) {
+            return Sort.RELEVANCE;
+        }
+        boolean reverse = !sortCriteria.isAsc();
+        switch (sortCriteria.getColumn()) {
+            case 0:
+                return new Sort(new SortField("id_sort", SortField.Type.STRING, reverse));
+            case 1:
+                return new Sort(new SortField("title_sort", SortField.Type.STRING, reverse));
+            case 3:
+                return new Sort(new SortField("create_date", SortField.Type.LONG, reverse));
+            case 4:
+                return new Sort(new SortField("language_sort", SortField.Type.STRING, reverse));
+            case 8:
+                return new Sort(new SortField("update_date", SortField.Type.LONG, reverse));
+            default:
+                return null;
+        }
     }
 
     /**
-     * Suggest search terms according to the user query.
+     * Search documents in the index.
+     * The index filters, sorts and paginates the results, the database only fetches the current page.
      *
-     * @param search User search query
+     * @param paginatedList List of documents (updated by side effects)
      * @param suggestionList Suggestion of search query (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
      * @throws Exception e
      */
-    private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
+    private void findByCriteriaInIndex(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        String searchQuery = criteria.getSimpleSearch() + " " + criteria.getFullSearch();
+        Analyzer analyzer = new StandardAnalyzer();
+        Query fileQuery = buildFileQuery(analyzer, searchQuery, criteria.getFullSearch());
+
+        List<String> documentIdList = new ArrayList<>();
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            // Documents matching on their own fields or on one of their files
+            Query textQuery = new BooleanQuery.Builder()
+                    .add(buildDocumentQuery(analyzer, searchQuery), BooleanClause.Occur.SHOULD)
+                    .add(JoinUtil.createJoinQuery("document_id", false, "id", fileQuery, searcher, ScoreMode.Max), BooleanClause.Occur.SHOULD)
+                    .build();
+            BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER)
+                    .add(textQuery, BooleanClause.Occur.MUST);
+            addFilterClauses(queryBuilder, criteria);
+
+            // Sort and paginate
+            int offset = paginatedList.getOffset();
+            TopFieldCollector collector = TopFieldCollector.create(getSort(sortCriteria),
+                    Math.max(offset + paginatedList.getLimit(), 1), Integer.MAX_VALUE);
+            searcher.search(queryBuilder.build(), collector);
+            paginatedList.setResultCount(collector.getTotalHits());
+            if (offset + paginatedList.getLimit() < collector.getTotalHits()) {
+                // Index searches are paginated by offset
+                paginatedList.setNextCursor(PageCursor.ofOffset(offset + paginatedList.getLimit()));
+            }
+            for (ScoreDoc scoreDoc : collector.topDocs(offset, paginatedList.getLimit()).scoreDocs) {
+                documentIdList.add(searcher.doc(scoreDoc.doc).get("id"));
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        suggestSearchTerms(criteria.getFullSearch(), criteria.getTargetIdList(), suggestionList);
+
+        if (documentIdList.isEmpty()) {
+            paginatedList.setResultList(new ArrayList<>());
+            return;
+        }
+
+        // Fetch this page from the database, keeping the index order
+        StringBuilder sb = buildSelectQuery();
+        sb.append(" where d.DOC_ID_C in :documentIdList and d.DOC_DELETEDATE_D is null");
+        Map<String, Object> parameterMap = new HashMap<>();
+        parameterMap.put("targetIdList", criteria.getTargetIdList());
+        parameterMap.put("documentIdList", documentIdList);
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+        List<DocumentDto> documentDtoList = assembleResultList(l);
+        documentDtoList.sort(Comparator.comparingInt(documentDto -> documentIdList.indexOf(documentDto.getId())));
+        highlight(criteria, documentDtoList);
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    /**
+     * Highlight the best matching file of each document.
+     * Only the returned page is highlighted, using the offsets stored in the index.
+     *
+     * @param criteria Search criteria
+     * @param documentDtoList List of documents (updated by side effects)
+     * @throws Exception e
+     */
+    private void highlight(DocumentCriteria criteria, List<DocumentDto> documentDtoList) throws Exception {
+        if (documentDtoList.isEmpty()) {
+            return;
+        }
+
+        String searchQuery = criteria.getSimpleSearch() + " " + criteria.getFullSearch();
+        Analyzer analyzer = new StandardAnalyzer();
+        Query fileTextQuery = buildFileTextQuery(analyzer, searchQuery, criteria.getFullSearch());
+        Query fileQuery = buildFileQuery(analyzer, searchQuery, criteria.getFullSearch());
+
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            UnifiedHighlighter highlighter = new UnifiedHighlighter(searcher, analyzer);
+            highlighter.setFormatter(new DefaultPassageFormatter("<strong>", "</strong>", "... ", true));
+            highlighter.setBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(
+                    BreakIterator.getWordInstance(Locale.ROOT), HIGHLIGHT_LENGTH));
+            highlighter.setHandleMultiTermQuery(true);
+            highlighter.setMaxNoHighlightPassages(0); // No highlight if the content doesn't match
+            highlighter.setFieldMatcher(field -> true); // Terms searched in the file name are highlighted too
+
+            for (DocumentDto documentDto : documentDtoList) {
+                Query documentFileQuery = new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("document_id", documentDto.getId())), BooleanClause.Occur.FILTER)
+                        .add(fileQuery, BooleanClause.Occur.MUST)
+                        .build();
+                TopDocs topDocs = searcher.search(documentFileQuery, 1);
+                if (topDocs.scoreDocs.length > 0) {
+                    documentDto.setHighlight(highlighter.highlight("content", fileTextQuery, topDocs)[0]);
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Add the search criteria as filters on the indexed documents.
+     *
+     * @param queryBuilder Query builder
+     * @param criteria Search criteria
+     */
+    private void addFilterClauses(BooleanQuery.Builder queryBuilder, DocumentCriteria criteria) {
+        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            queryBuilder.add(buildReadableQuery(criteria.getTargetIdList()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+            queryBuilder.add(LongPoint.newRangeQuery("create_date",
+                    criteria.getCreateDateMin() == null ? Long.MIN_VALUE : criteria.getCreateDateMin().getTime(),
+                    criteria.getCreateDateMax() == null ? Long.MAX_VALUE : criteria.getCreateDateMax().getTime()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+            queryBuilder.add(LongPoint.newRangeQuery("update_date",
+                    criteria.getUpdateDateMin() == null ? Long.MIN_VALUE : criteria.getUpdateDateMin().getTime(),
+                    criteria.getUpdateDateMax() == null ? Long.MAX_VALUE : criteria.getUpdateDateMax().getTime()), BooleanClause.Occur.FILTER);
+        }
+        if (!criteria.getTitleList().isEmpty()) {
+            queryBuilder.add(new TermInSetQuery("title_exact", toBytesRefList(criteria.getTitleList())), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getTagIdList()) {
+            queryBuilder.add(new TermInSetQuery("tag", toBytesRefList(tagIdList)), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+            queryBuilder.add(new TermInSetQuery("tag", toBytesRefList(tagIdList)), BooleanClause.Occur.MUST_NOT);
+        }
+        if (criteria.getShared() != null && criteria.getShared()) {
+            queryBuilder.add(new TermQuery(new Term("shared", "true")), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getMimeType() != null) {
+            queryBuilder.add(new TermQuery(new Term("mimetype", criteria.getMimeType())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getLanguage() != null) {
+            queryBuilder.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getCreatorId() != null) {
+            queryBuilder.add(new TermQuery(new Term("creator", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
+        }
+    }
+
+    /**
+     * Build the query matching the indexed documents readable by a list of targets.
+     *
+     * @param targetIdList List of targets ID
+     * @return Query
+     */
+    private Query buildReadableQuery(List<String> targetIdList) {
+        // Readable directly or through one of its tags
+        return new BooleanQuery.Builder()
+                .add(new TermInSetQuery("reader", toBytesRefList(targetIdList)), BooleanClause.Occur.SHOULD)
+                .add(new TermInSetQuery("tag", toBytesRefList(getReadableTagIdList(targetIdList))), BooleanClause.Occur.SHOULD)
+                .build();
+    }
+
+    /**
+     * Returns the tags readable by a list of targets.
+     * Documents readable through their tags are resolved at search time.
+     *
+     * @param targetIdList List of targets
+     * @return List of tag IDs
+     */
+    private List<String> getReadableTagIdList(List<String> targetIdList) {
+        Map<String, Object> parameterMap = new HashMap<>();
+        parameterMap.put("targetIdList", targetIdList);
+        @SuppressWarnings("unchecked")
+        List<String> tagIdList = QueryUtil.getNativeQuery(new QueryParam("select distinct a.ACL_SOURCEID_C from T_ACL a " +
+                " join T_TAG t on t.TAG_ID_C = a.ACL_SOURCEID_C " +
+                " where a.ACL_TARGETID_C in (:targetIdList) and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null", parameterMap))
+                .getResultList();
+        return tagIdList;
+    }
+
+    /**
+     * Convert a list of strings to index terms.
+     *
+     * @param valueList List of strings
+     * @return List of terms
+     */
+    private List<BytesRef> toBytesRefList(List<String> valueList) {
+        List<BytesRef> bytesRefList = new ArrayList<>();
+        for (String value : valueList) {
+            bytesRefList.add(new BytesRef(value));
+        }
+        return bytesRefList;
+    }
+
+    @Override
+    public void suggestSearchTerms(String search, List<String> targetIdList, List<String> suggestionList) throws Exception {
+        if (suggesterOutdated && EnvironmentUtil.isUnitTest()) {
+            // Events are processed synchronously in unit tests, suggest from the latest writes
+            buildSuggester();
+        }
+
+        FuzzySuggester currentSuggester = suggester;
+        if (currentSuggester == null) {
+            // The suggester is not built yet
             return;
         }
 
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
         int lastIndex = search.lastIndexOf(' ');
         String suggestQuery = search.substring(Math.max(lastIndex, 0));
-        List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
+        List<Lookup.LookupResult> lookupResultList = currentSuggester.lookup(suggestQuery, false,
+                SUGGESTION_COUNT * SUGGESTION_LOOKUP_FACTOR);
+        List<String> termList = new ArrayList<>();
         for (Lookup.LookupResult lookupResult : lookupResultList) {
-            suggestionList.add(lookupResult.key.toString());
+            termList.add(lookupResult.key.toString());
+        }
+
+        // The suggester is built from all the titles, only keep the terms of readable documents
+        Set<String> readableTermSet = getReadableTitleTermSet(termList, targetIdList);
+        for (String term : termList) {
+            if (suggestionList.size() >= SUGGESTION_COUNT) {
+                break;
+            }
+            if (readableTermSet.contains(term)) {
+                suggestionList.add(term);
+            }
+        }
+    }
+
+    /**
+     * Returns the title terms found in at least one document readable by a list of targets.
+     * The postings of the terms are intersected with a single readable documents query.
+     *
+     * @param termList List of title terms
+     * @param targetIdList List of targets ID
+     * @return Set of readable terms
+     * @throws Exception e
+     */
+    private Set<String> getReadableTitleTermSet(List<String> termList, List<String> targetIdList) throws Exception {
+        if (termList.isEmpty() || SecurityUtil.skipAclCheck(targetIdList)) {
+            return new HashSet<>(termList);
+        }
+
+        Set<String> readableTermSet = new HashSet<>();
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            // Readable documents if the readers are in the index, all the documents otherwise
+            BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+            if (filtering) {
+                queryBuilder.add(buildReadableQuery(targetIdList), BooleanClause.Occur.FILTER);
+            }
+            Weight weight = searcher.createWeight(searcher.rewrite(queryBuilder.build()),
+                    org.apache.lucene.search.ScoreMode.COMPLETE_NO_SCORES, 1f);
+
+            Map<String, List<String>> documentIdListByTerm = new HashMap<>();
+            Set<String> documentIdSet = new HashSet<>();
+            for (String term : termList) {
+                List<Integer> docList = findTitleTermDocs(searcher, weight, term, filtering ? 1 : SUGGESTION_DOCUMENT_COUNT);
+                if (filtering && !docList.isEmpty()) {
+                    readableTermSet.add(term);
+                } else if (!docList.isEmpty()) {
+                    List<String> documentIdList = new ArrayList<>();
+                    for (int doc : docList) {
+                        documentIdList.add(searcher.doc(doc, Sets.newHashSet("id")).get("id"));
+                    }
+                    documentIdListByTerm.put(term, documentIdList);
+                    documentIdSet.addAll(documentIdList);
+                }
+            }
+
+            // Check the readers in the database, with a single query for the first documents of all the terms
+            Set<String> readableDocumentIdSet = getReadableDocumentIdSet(documentIdSet, targetIdList);
+            for (Map.Entry<String, List<String>> entry : documentIdListByTerm.entrySet()) {
+                if (entry.getValue().stream().anyMatch(readableDocumentIdSet::contains)) {
+                    readableTermSet.add(entry.getKey());
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        return readableTermSet;
+    }
+
+    /**
+     * Returns the documents containing a title term and matching a query, in index order.
+     *
+     * @param searcher Index searcher
+     * @param weight Weight of the query
+     * @param term Title term
+     * @param limit Maximum number of documents returned
+     * @return List of index document IDs
+     * @throws IOException e
+     */
+    private List<Integer> findTitleTermDocs(IndexSearcher searcher, Weight weight, String term, int limit) throws IOException {
+        List<Integer> docList = new ArrayList<>();
+        BytesRef termBytesRef = new BytesRef(term);
+        for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+            Terms terms = context.reader().terms("title");
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            Scorer scorer = weight.scorer(context);
+            if (!termsEnum.seekExact(termBytesRef) || scorer == null) {
+                continue;
+            }
+
+            // Leapfrog between the term postings and the query matches
+            Bits liveDocs = context.reader().getLiveDocs();
+            PostingsEnum postingsEnum = termsEnum.postings(null, PostingsEnum.NONE);
+            DocIdSetIterator queryIterator = scorer.iterator();
+            int doc = postingsEnum.nextDoc();
+            while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                int queryDoc = queryIterator.docID() < doc ? queryIterator.advance(doc) : queryIterator.docID();
+                if (queryDoc == DocIdSetIterator.NO_MORE_DOCS) {
+                    break;
+                }
+                if (queryDoc != doc) {
+                    doc = postingsEnum.advance(queryDoc);
+                    continue;
+                }
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    docList.add(context.docBase + doc);
+                    if (docList.size() >= limit) {
+                        return docList;
+                    }
+                }
+                doc = postingsEnum.nextDoc();
+            }
+        }
+        return docList;
+    }
+
+    /**
+     * Returns the documents readable by a list of targets, according to the database.
+     *
+     * @param documentIdSet Set of document IDs to check
+     * @param targetIdList List of targets ID
+     * @return Set of readable document IDs
+     */
+    private Set<String> getReadableDocumentIdSet(Set<String> documentIdSet, List<String> targetIdList) {
+        if (documentIdSet.isEmpty()) {
+            return new HashSet<>();
+        }
+        Map<String, Object> parameterMap = new HashMap<>();
+        parameterMap.put("targetIdList", targetIdList);
+        parameterMap.put("documentIdList", documentIdSet);
+        @SuppressWarnings("unchecked")
+        List<String> readableDocumentIdList = QueryUtil.getNativeQuery(new QueryParam("select distinct d.DOC_ID_C from T_DOCUMENT d " +
+                " left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null " +
+                " left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null " +
+                " left join T_ACL a2 on a2.ACL_TARGETID_C in (:targetIdList) and a2.ACL_SOURCEID_C = dta.DOT_IDTAG_C and a2.ACL_PERM_C = 'READ' and a2.ACL_DELETEDATE_D is null " +
+                " where d.DOC_ID_C in (:documentIdList) and d.DOC_DELETEDATE_D is null " +
+                " and (a.ACL_ID_C is not null or a2.ACL_ID_C is not null)", parameterMap))
+                .getResultList();
+        return new HashSet<>(readableDocumentIdList);
+    }
+
+    /**
+     * Build the search suggester from the indexed titles.
+     * The previous suggester is used until the new one is built.
+     */
+    private void buildSuggester() {
+        synchronized (suggesterLock) {
+            suggesterOutdated = false;
+            long startTime = System.nanoTime();
+            try {
+                IndexSearcher searcher = acquireSearcher();
+                try {
+                    FuzzySuggester newSuggester = new FuzzySuggester(directory, "suggest", new StandardAnalyzer());
+                    newSuggester.build(new LuceneDictionary(searcher.getIndexReader(), "title"));
+                    suggester = newSuggester;
+                } finally {
+                    searcherManager.release(searcher);
+                }
+                lastSuggesterBuildTime = System.currentTimeMillis();
+                suggesterBuildTimer.updateSince(startTime);
+            } catch (IOException e) {
+                suggesterOutdated = true;
+                log.error("Error building the search suggester", e);
+            }
         }
     }
 
@@ -414,10 +1372,10 @@ public class LuceneIndexingHandler implements IndexingHandler {
      *
      * @param simpleSearchQuery Search query on metadatas
      * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
+     * @return Set of document IDs
      * @throws Exception e
      */
-    private Map<String, String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
+    private Set<String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
         // The fulltext query searches in all fields
         String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
 
@@ -426,6 +1384,49 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
         // Search on documents and files
         BooleanQuery query = new BooleanQuery.Builder()
+                .add(buildDocumentQuery(analyzer, searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildFileTextQuery(analyzer, searchQuery, fullSearchQuery), BooleanClause.Occur.SHOULD)
+                .build();
+
+        // Search
+        Set<String> documentIdSet = new HashSet<>();
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
+            ScoreDoc[] docs = topDocs.scoreDocs;
+
+            // Extract document IDs, the highlights are computed after pagination
+            Set<String> fieldSet = Sets.newHashSet("doctype", "id", "document_id");
+            for (ScoreDoc doc : docs) {
+                org.apache.lucene.document.Document document = searcher.doc(doc.doc, fieldSet);
+                String type = document.get("doctype");
+                String documentId = null;
+                if (type.equals("document")) {
+                    documentId = document.get("id");
+                } else if (type.equals("file")) {
+                    documentId = document.get("document_id");
+                }
+
+                if (documentId != null) {
+                    documentIdSet.add(documentId);
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        return documentIdSet;
+    }
+
+    /**
+     * Build the fulltext query on documents fields.
+     *
+     * @param analyzer Analyzer
+     * @param searchQuery Search query
+     * @return Query
+     */
+    private Query buildDocumentQuery(Analyzer analyzer, String searchQuery) {
+        return new BooleanQuery.Builder()
                 .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
@@ -436,47 +1437,37 @@ public class LuceneIndexingHandler implements IndexingHandler {
                 .add(buildQueryParser(analyzer, "type").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "coverage").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "rights").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
                 .build();
+    }
 
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
-        }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
-
-        SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
-        SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
-        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
-
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
-                String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
-                }
-            }
-
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
-            }
-        }
+    /**
+     * Build the fulltext query on files.
+     *
+     * @param analyzer Analyzer
+     * @param searchQuery Search query on metadatas
+     * @param fullSearchQuery Search query on content
+     * @return Query
+     */
+    private Query buildFileQuery(Analyzer analyzer, String searchQuery, String fullSearchQuery) {
+        return new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("doctype", "file")), BooleanClause.Occur.FILTER)
+                .add(buildFileTextQuery(analyzer, searchQuery, fullSearchQuery), BooleanClause.Occur.MUST)
+                .build();
+    }
 
-        return documentMap;
+    /**
+     * Build the fulltext query on files fields.
+     *
+     * @param analyzer Analyzer
+     * @param searchQuery Search query on metadatas
+     * @param fullSearchQuery Search query on content
+     * @return Query
+     */
+    private Query buildFileTextQuery(Analyzer analyzer, String searchQuery, String fullSearchQuery) {
+        return new BooleanQuery.Builder()
+                .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
+                .build();
     }
 
     /**
@@ -492,13 +1483,74 @@ public class LuceneIndexingHandler implements IndexingHandler {
         return simpleQueryParser;
     }
 
+    /**
+     * Load the filtering fields of documents from the database.
+     *
+     * @param documentList List of documents
+     * @return Filtering fields by document ID, empty if filtering is disabled
+     */
+    private Map<String, Multimap<String, String>> getFilterFields(List<Document> documentList) {
+        Map<String, Multimap<String, String>> filterFieldMap = new HashMap<>();
+        if (!filtering) {
+            return filterFieldMap;
+        }
+
+        for (List<Document> documentBatch : Lists.partition(documentList, FILTER_BATCH_SIZE)) {
+            List<String> documentIdList = new ArrayList<>();
+            for (Document document : documentBatch) {
+                documentIdList.add(document.getId());
+                filterFieldMap.put(document.getId(), HashMultimap.create());
+            }
+            Map<String, Object> parameterMap = new HashMap<>();
+            parameterMap.put("documentIdList", documentIdList);
+
+            // Direct readers
+            addFilterField(filterFieldMap, "reader", new QueryParam("select a.ACL_SOURCEID_C, a.ACL_TARGETID_C from T_ACL a " +
+                    " where a.ACL_SOURCEID_C in (:documentIdList) and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null", parameterMap));
+
+            // Tags
+            addFilterField(filterFieldMap, "tag", new QueryParam("select dt.DOT_IDDOCUMENT_C, dt.DOT_IDTAG_C from T_DOCUMENT_TAG dt " +
+                    " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null", parameterMap));
+
+            // Files MIME types
+            addFilterField(filterFieldMap, "mimetype", new QueryParam("select distinct f.FIL_IDDOC_C, f.FIL_MIMETYPE_C from T_FILE f " +
+                    " where f.FIL_IDDOC_C in (:documentIdList) and f.FIL_DELETEDATE_D is null", parameterMap));
+
+            // Shares
+            addFilterField(filterFieldMap, "shared", new QueryParam("select distinct ac.ACL_SOURCEID_C, 'true' from T_SHARE s, T_ACL ac " +
+                    " where ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_SOURCEID_C in (:documentIdList) " +
+                    " and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null", parameterMap));
+        }
+
+        return filterFieldMap;
+    }
+
+    /**
+     * Add the results of a (document ID, value) query as a filtering field.
+     *
+     * @param filterFieldMap Filtering fields by document ID (updated by side effects)
+     * @param field Field name
+     * @param queryParam Query returning the document ID and the value
+     */
+    private void addFilterField(Map<String, Multimap<String, String>> filterFieldMap, String field, QueryParam queryParam) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+        for (Object[] o : l) {
+            Multimap<String, String> documentFieldMap = filterFieldMap.get((String) o[0]);
+            if (documentFieldMap != null && o[1] != null) {
+                documentFieldMap.put(field, o[1].toString());
+            }
+        }
+    }
+
     /**
      * Build Lucene document from database document.
      *
      * @param document Document
+     * @param filterFieldMap Filtering fields, null if filtering is disabled
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromDocument(Document document) {
+    private org.apache.lucene.document.Document getDocumentFromDocument(Document document, Multimap<String, String> filterFieldMap) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
@@ -531,6 +1583,25 @@ public class LuceneIndexingHandler implements IndexingHandler {
             luceneDocument.add(new TextField("rights", document.getRights(), Field.Store.NO));
         }
 
+        // Fields used to filter, sort and paginate searches
+        if (filterFieldMap != null) {
+            luceneDocument.add(new SortedDocValuesField("id_sort", new BytesRef(document.getId())));
+            luceneDocument.add(new StringField("title_exact", document.getTitle(), Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("title_sort", new BytesRef(document.getTitle())));
+            luceneDocument.add(new StringField("creator", document.getUserId(), Field.Store.NO));
+            luceneDocument.add(new StringField("language", document.getLanguage(), Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("language_sort", new BytesRef(document.getLanguage())));
+            long createDate = document.getCreateDate().getTime();
+            luceneDocument.add(new LongPoint("create_date", createDate));
+            luceneDocument.add(new NumericDocValuesField("create_date", createDate));
+            long updateDate = document.getUpdateDate() == null ? createDate : document.getUpdateDate().getTime();
+            luceneDocument.add(new LongPoint("update_date", updateDate));
+            luceneDocument.add(new NumericDocValuesField("update_date", updateDate));
+            for (Map.Entry<String, String> entry : filterFieldMap.entries()) {
+                luceneDocument.add(new StringField(entry.getKey(), entry.getValue(), Field.Store.NO));
+            }
+        }
+
         return luceneDocument;
     }
 
@@ -549,60 +1620,161 @@ public class LuceneIndexingHandler implements IndexingHandler {
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            if (filtering) {
+                // Used to join files to their documents
+                luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
+            }
         }
         if (file.getContent() != null) {
-            luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
+            luceneDocument.add(new Field("content", file.getContent(), CONTENT_FIELD_TYPE));
         }
 
         return luceneDocument;
     }
 
     /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
+     * Acquire the current searcher, release it with the searcher manager.
      *
-     * @return the directoryReader
+     * @return Index searcher
+     * @throws IOException e
      */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
+    private IndexSearcher acquireSearcher() throws IOException {
+        while (true) {
+            SearcherManager manager = searcherManager;
             try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
+                return manager.acquire();
+            } catch (AlreadyClosedException e) {
+                // The index has just been swapped, retry with the new searcher manager
+                if (manager == searcherManager) {
+                    throw e;
                 }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
             }
-        } else {
+        }
+    }
+
+    /**
+     * Encapsulate a process into a Lucene context.
+     * The changes are committed when enough writes are pending,
+     * otherwise by the background maintenance task.
+     *
+     * @param id ID of the written document or file
+     * @param runnable Runnable
+     */
+    private void handle(String id, LuceneRunnable runnable) {
+        swapLock.readLock().lock();
+        try {
             try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
+                runnable.run(indexWriter);
+            } catch (Exception e) {
+                log.error("Error in running index writing", e);
+            }
+
+            // Keep the index being rebuilt up to date
+            IndexWriter writer = rebuildWriter;
+            if (writer != null) {
+                Lock lock = rebuildLocks.get(id);
+                lock.lock();
+                try {
+                    liveWrittenIdSet.add(id);
+                    runnable.run(writer);
+                } catch (Exception e) {
+                    log.error("Error in running rebuilt index writing", e);
+                } finally {
+                    lock.unlock();
                 }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
             }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        suggesterOutdated = true;
+        if (pendingWriteCount.incrementAndGet() >= COMMIT_MAX_PENDING) {
+            commit();
+        }
+
+        if (EnvironmentUtil.isUnitTest()) {
+            // Events are processed synchronously in unit tests, make the changes visible right away
+            refresh();
         }
-        return directoryReader;
     }
 
     /**
-     * Encapsulate a process into a Lucene context.
+     * Encapsulate a batch indexing process into a Lucene context.
+     * During a rebuild, the batch is only written to the index being rebuilt,
+     * unless a live change has already written a more recent version.
      *
+     * @param id ID of the written document or file
      * @param runnable Runnable
      */
-    private void handle(LuceneRunnable runnable) {
+    private void handleBatch(String id, LuceneRunnable runnable) {
+        IndexWriter writer = rebuildWriter;
+        if (writer == null) {
+            handle(id, runnable);
+            return;
+        }
+
+        Lock lock = rebuildLocks.get(id);
+        lock.lock();
         try {
-            runnable.run(indexWriter);
+            if (!liveWrittenIdSet.contains(id)) {
+                runnable.run(writer);
+            }
         } catch (Exception e) {
-            log.error("Error in running index writing", e);
+            log.error("Error in running rebuilt index writing", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Background maintenance of the index.
+     * Refresh the near-real-time searcher, rebuild the search suggester
+     * and commit pending writes periodically.
+     */
+    private void maintainIndex() {
+        try {
+            refresh();
+            if (suggesterOutdated && System.currentTimeMillis() - lastSuggesterBuildTime >= SUGGESTER_REBUILD_INTERVAL_MS) {
+                buildSuggester();
+            }
+            if (pendingWriteCount.get() > 0 && System.currentTimeMillis() - lastCommitTime >= COMMIT_INTERVAL_MS) {
+                commit();
+            }
+        } catch (Throwable t) {
+            // Never let an error cancel the scheduled maintenance
+            log.error("Error maintaining the index", t);
         }
+    }
 
+    /**
+     * Reopen the searcher if the index has changed.
+     */
+    private void refresh() {
+        synchronized (refreshLock) {
+            try {
+                if (!searcherManager.isSearcherCurrent()) {
+                    long startTime = System.nanoTime();
+                    searcherManager.maybeRefreshBlocking();
+                    refreshTimer.updateSince(startTime);
+                }
+            } catch (IOException e) {
+                log.error("Error refreshing the index searcher", e);
+            }
+        }
+    }
+
+    /**
+     * Commit all pending writes to the directory.
+     */
+    private synchronized void commit() {
+        int pendingWrites = pendingWriteCount.getAndSet(0);
+        long startTime = System.nanoTime();
         try {
             indexWriter.commit();
+            commitTimer.updateSince(startTime);
+            lastCommitTime = System.currentTimeMillis();
         } catch (IOException e) {
+            pendingWriteCount.addAndGet(pendingWrites);
             log.error("Cannot commit index writer", e);
         }
     }
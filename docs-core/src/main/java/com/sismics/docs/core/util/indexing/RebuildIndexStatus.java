@@ -0,0 +1,97 @@
+package com.sismics.docs.core.util.indexing;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the index rebuild.
+ */
+public class RebuildIndexStatus {
+    /**
+     * True if a rebuild is running.
+     */
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Current phase (documents or files).
+     */
+    private static volatile String phase;
+
+    /**
+     * Number of documents and files indexed.
+     */
+    private static final AtomicLong indexedCount = new AtomicLong();
+
+    /**
+     * Total number of documents and files to index.
+     */
+    private static volatile long totalCount;
+
+    /**
+     * Start time of the rebuild.
+     */
+    private static volatile long startTime;
+
+    /**
+     * Start a rebuild.
+     *
+     * @param total Total number of documents and files to index
+     * @return False if a rebuild is already running
+     */
+    public static boolean start(long total) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        phase = null;
+        indexedCount.set(0);
+        totalCount = total;
+        startTime = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * End the current rebuild.
+     */
+    public static void finish() {
+        phase = null;
+        running.set(false);
+    }
+
+    /**
+     * Set the current phase.
+     *
+     * @param currentPhase Phase
+     */
+    public static void setPhase(String currentPhase) {
+        phase = currentPhase;
+    }
+
+    /**
+     * Add indexed documents or files.
+     *
+     * @param count Number of indexed documents or files
+     */
+    public static void addIndexed(long count) {
+        indexedCount.addAndGet(count);
+    }
+
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    public static String getPhase() {
+        return phase;
+    }
+
+    public static long getIndexedCount() {
+        return indexedCount.get();
+    }
+
+    public static long getTotalCount() {
+        return totalCount;
+    }
+
+    public static long getStartTime() {
+        return startTime;
+    }
+}
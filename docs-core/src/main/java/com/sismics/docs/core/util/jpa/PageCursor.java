@@ -0,0 +1,237 @@
+package com.sismics.docs.core.util.jpa;
+
+import com.google.common.base.Splitter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position of a page in a paginated list, exchanged with the clients as an opaque string.
+ * A key cursor contains the sort value and the ID of the last record of the previous page,
+ * the next page is then fetched without scanning the previous records.
+ * An offset cursor is used when the list cannot be seeked by key.
+ */
+public class PageCursor {
+    /**
+     * Separator of the cursor parts.
+     */
+    private static final char SEPARATOR = '|';
+
+    /**
+     * Offset of the page, null for a key cursor.
+     */
+    private final Integer offset;
+
+    /**
+     * Index of the sorted column.
+     */
+    private final int sortColumn;
+
+    /**
+     * True if sorted in ascending order.
+     */
+    private final boolean asc;
+
+    /**
+     * ID of the last record of the previous page.
+     */
+    private final String id;
+
+    /**
+     * Sort value of the last record of the previous page.
+     */
+    private final Object value;
+
+    private PageCursor(Integer offset, int sortColumn, boolean asc, String id, Object value) {
+        this.offset = offset;
+        this.sortColumn = sortColumn;
+        this.asc = asc;
+        this.id = id;
+        this.value = value;
+    }
+
+    /**
+     * Creates an offset cursor.
+     *
+     * @param offset Offset of the page
+     * @return Cursor
+     */
+    public static PageCursor ofOffset(int offset) {
+        return new PageCursor(offset, 0, true, null, null);
+    }
+
+    /**
+     * Creates a key cursor.
+     *
+     * @param sortCriteria Sort criteria of the list
+     * @param id ID of the last record of the previous page
+     * @param value Sort value of the last record of the previous page
+     * @return Cursor
+     */
+    public static PageCursor ofKey(SortCriteria sortCriteria, String id, Object value) {
+        return new PageCursor(null, sortCriteria.getColumn(), sortCriteria.isAsc(), id, normalize(value));
+    }
+
+    /**
+     * Decodes a cursor sent by a client.
+     *
+     * @param cursor Encoded cursor
+     * @return Cursor
+     * @throws IllegalArgumentException If the cursor is invalid
+     */
+    public static PageCursor decode(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        List<String> partList = Splitter.on(SEPARATOR).limit(5).splitToList(decoded);
+        if (partList.size() == 2 && "o".equals(partList.get(0))) {
+            int offset = Integer.parseInt(partList.get(1));
+            if (offset < 0) {
+                throw new IllegalArgumentException("Negative cursor offset");
+            }
+            return ofOffset(offset);
+        }
+        if (partList.size() == 5 && "k".equals(partList.get(0))) {
+            return new PageCursor(null, Integer.parseInt(partList.get(1)), "a".equals(partList.get(2)),
+                    partList.get(3), decodeValue(partList.get(4)));
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    /**
+     * Encodes this cursor for the clients.
+     *
+     * @return Encoded cursor
+     */
+    public String encode() {
+        String decoded;
+        if (offset != null) {
+            decoded = "o" + SEPARATOR + offset;
+        } else {
+            decoded = "k" + SEPARATOR + sortColumn + SEPARATOR + (asc ? "a" : "d") + SEPARATOR + id + SEPARATOR + encodeValue(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns true if this key cursor has been created with the same sort criteria.
+     *
+     * @param sortCriteria Sort criteria
+     * @return True if the cursor can be used to seek this list
+     */
+    public boolean matches(SortCriteria sortCriteria) {
+        return offset == null && sortCriteria != null
+                && sortCriteria.getColumn() == sortColumn && sortCriteria.isAsc() == asc;
+    }
+
+    /**
+     * Getter of offset.
+     *
+     * @return offset
+     */
+    public Integer getOffset() {
+        return offset;
+    }
+
+    /**
+     * Getter of id.
+     *
+     * @return id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Getter of value.
+     *
+     * @return value
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Converts a value returned by a native query to a type supported by the cursors.
+     *
+     * @param value Value
+     * @return Normalized value
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof BigInteger) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+        if (value == null || value instanceof String || value instanceof Timestamp
+                || value instanceof BigDecimal || value instanceof Boolean) {
+            return value;
+        }
+        throw new IllegalArgumentException("Unsupported cursor value: " + value.getClass());
+    }
+
+    /**
+     * Encodes a sort value, prefixed by its type.
+     *
+     * @param value Value
+     * @return Encoded value
+     */
+    private static String encodeValue(Object value) {
+        if (value == null) {
+            return "n";
+        }
+        if (value instanceof Timestamp) {
+            // Keep the nanoseconds, the next page must not return records with the same milliseconds
+            Timestamp timestamp = (Timestamp) value;
+            return "t" + timestamp.getTime() + ":" + timestamp.getNanos();
+        }
+        if (value instanceof Long) {
+            return "l" + value;
+        }
+        if (value instanceof BigDecimal) {
+            return "d" + value;
+        }
+        if (value instanceof Boolean) {
+            return "b" + value;
+        }
+        return "s" + value;
+    }
+
+    /**
+     * Decodes a sort value.
+     *
+     * @param encoded Encoded value
+     * @return Value
+     */
+    private static Object decodeValue(String encoded) {
+        if (encoded.isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor value");
+        }
+        String value = encoded.substring(1);
+        switch (encoded.charAt(0)) {
+            case 'n':
+                return null;
+            case 't':
+                int index = value.indexOf(':');
+                if (index < 0) {
+                    throw new IllegalArgumentException("Invalid cursor timestamp");
+                }
+                Timestamp timestamp = new Timestamp(Long.parseLong(value.substring(0, index)));
+                timestamp.setNanos(Integer.parseInt(value.substring(index + 1)));
+                return timestamp;
+            case 'l':
+                return Long.parseLong(value);
+            case 'd':
+                return new BigDecimal(value);
+            case 'b':
+                return Boolean.parseBoolean(value);
+            case 's':
+                return value;
+            default:
+                throw new IllegalArgumentException("Invalid cursor value");
+        }
+    }
+}
@@ -18,10 +18,30 @@ public class PaginatedList<T> {
      */
     private int offset;
 
+    /**
+     * Position of the page, null to use the offset.
+     */
+    private PageCursor cursor;
+
+    /**
+     * How the total number of records is counted.
+     */
+    private CountMode countMode = CountMode.EXACT;
+
     /**
      * Total number of records.
      */
     private int resultCount;
+
+    /**
+     * True if the total number of records is a lower bound.
+     */
+    private boolean resultCountApproximate;
+
+    /**
+     * Position of the next page, null if this is the last page.
+     */
+    private PageCursor nextCursor;
     
     /**
      * List of records of the current page.
@@ -57,6 +77,24 @@ public class PaginatedList<T> {
         this.resultCount = resultCount;
     }
 
+    /**
+     * Getter of resultCountApproximate.
+     *
+     * @return resultCountApproximate
+     */
+    public boolean isResultCountApproximate() {
+        return resultCountApproximate;
+    }
+
+    /**
+     * Setter of resultCountApproximate.
+     *
+     * @param resultCountApproximate resultCountApproximate
+     */
+    public void setResultCountApproximate(boolean resultCountApproximate) {
+        this.resultCountApproximate = resultCountApproximate;
+    }
+
     /**
      * Getter of resultList.
      *
@@ -92,4 +130,78 @@ public class PaginatedList<T> {
     public int getOffset() {
         return offset;
     }
+
+    /**
+     * Getter of cursor.
+     *
+     * @return cursor
+     */
+    public PageCursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Setter of cursor.
+     *
+     * @param cursor cursor
+     */
+    public void setCursor(PageCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Getter of countMode.
+     *
+     * @return countMode
+     */
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    /**
+     * Setter of countMode.
+     *
+     * @param countMode countMode
+     */
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    /**
+     * Getter of nextCursor.
+     *
+     * @return nextCursor
+     */
+    public PageCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Setter of nextCursor.
+     *
+     * @param nextCursor nextCursor
+     */
+    public void setNextCursor(PageCursor nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * How the total number of records is counted.
+     */
+    public enum CountMode {
+        /**
+         * Count all the records.
+         */
+        EXACT,
+
+        /**
+         * Count the records up to a limit.
+         */
+        APPROXIMATE,
+
+        /**
+         * Don't count the records.
+         */
+        NONE
+    }
 }
@@ -1,7 +1,12 @@
 package com.sismics.docs.core.util.jpa;
 
 import jakarta.persistence.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utilities for paginated lists.
@@ -19,6 +24,11 @@ public class PaginatedLists {
      */
     private static final int MAX_PAGE_SIZE = 100;
 
+    /**
+     * Maximum number of records counted in the approximate count mode.
+     */
+    public static final int APPROXIMATE_COUNT_LIMIT = 1000;
+
     /**
      * Constructs a paginated list.
      * 
@@ -39,6 +49,25 @@ public class PaginatedLists {
         return new PaginatedList<>(pageSize, offset);
     }
     
+    /**
+     * Constructs a paginated list starting at a cursor.
+     *
+     * @param pageSize Size of the page
+     * @param offset Offset of the page, ignored if there is a cursor
+     * @param cursor Encoded cursor of the page (optional)
+     * @return Paginated list
+     * @throws IllegalArgumentException If the cursor is invalid
+     */
+    public static <E> PaginatedList<E> create(Integer pageSize, Integer offset, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return create(pageSize, offset);
+        }
+        PageCursor pageCursor = PageCursor.decode(cursor);
+        PaginatedList<E> paginatedList = create(pageSize, pageCursor.getOffset() == null ? 0 : pageCursor.getOffset());
+        paginatedList.setCursor(pageCursor);
+        return paginatedList;
+    }
+
     /**
      * Constructs a paginated list with default parameters.
      * 
@@ -55,20 +84,38 @@ public class PaginatedLists {
      * @param queryParam Query parameters
      */
     private static <E> void executeCountQuery(PaginatedList<E> paginatedList, QueryParam queryParam) {
+        if (paginatedList.getCountMode() == PaginatedList.CountMode.NONE) {
+            return;
+        }
+
+        boolean approximate = paginatedList.getCountMode() == PaginatedList.CountMode.APPROXIMATE;
         StringBuilder sb = new StringBuilder("select count(*) as result_count from (");
-        sb.append(queryParam.getQueryString());
+        if (approximate) {
+            // Stop counting after the limit
+            sb.append("select 1 as c0 from (");
+            sb.append(queryParam.getQueryString());
+            sb.append(") as t0 limit ");
+            sb.append(APPROXIMATE_COUNT_LIMIT + 1);
+        } else {
+            sb.append(queryParam.getQueryString());
+        }
         sb.append(") as t1");
 
         QueryParam countQueryParam = new QueryParam(sb.toString(), queryParam.getParameterMap());
         
         Query q = QueryUtil.getNativeQuery(countQueryParam);
         
-        Number resultCount = (Number) q.getSingleResult();
-        paginatedList.setResultCount(resultCount.intValue());
+        int resultCount = ((Number) q.getSingleResult()).intValue();
+        if (approximate && resultCount > APPROXIMATE_COUNT_LIMIT) {
+            paginatedList.setResultCount(APPROXIMATE_COUNT_LIMIT);
+            paginatedList.setResultCountApproximate(true);
+        } else {
+            paginatedList.setResultCount(resultCount);
+        }
     }
 
     /**
-     * Executes a query and returns the data of the current page.
+     * Executes a query and returns the data of the current page, paginated by offset.
      * 
      * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
@@ -79,12 +126,83 @@ public class PaginatedLists {
         Query q = QueryUtil.getNativeQuery(queryParam);
         
         q.setFirstResult(paginatedList.getOffset());
-        q.setMaxResults(paginatedList.getLimit());
-        return q.getResultList();
+        q.setMaxResults(paginatedList.getLimit() + 1);
+        List<Object[]> resultList = q.getResultList();
+        if (resultList.size() > paginatedList.getLimit()) {
+            paginatedList.setNextCursor(PageCursor.ofOffset(paginatedList.getOffset() + paginatedList.getLimit()));
+            return resultList.subList(0, paginatedList.getLimit());
+        }
+        return resultList;
     }
 
     /**
-     * Executes a paginated request with 2 native queries (one to count the number of results, and one to return the page).
+     * Executes a sorted query and returns the data of the current page.
+     * The page starts after the key cursor if there is one, the query doesn't need to scan the previous pages.
+     * The sort value and the ID (column c0) of the last record are returned as the next cursor.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
+     * @param queryParam Query parameters
+     * @param sortCriteria Sort criteria
+     * @param seek True to start the page after the key cursor
+     * @return List of results
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> List<Object[]> executeSeekQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria, boolean seek) {
+        String column = "t.c" + sortCriteria.getColumn();
+        Map<String, Object> parameterMap = new HashMap<>(queryParam.getParameterMap());
+        StringBuilder sb = new StringBuilder("select t.*, ");
+        sb.append(column);
+        sb.append(" as seek_value, t.c0 as seek_id from (");
+        sb.append(queryParam.getQueryString());
+        sb.append(") t");
+
+        if (seek) {
+            // Records after the cursor, null values are sorted last
+            PageCursor cursor = paginatedList.getCursor();
+            if (cursor.getValue() == null) {
+                sb.append(" where ").append(column).append(" is null and t.c0 > :seekId");
+            } else {
+                sb.append(" where (").append(column).append(sortCriteria.isAsc() ? " > " : " < ").append(":seekValue");
+                sb.append(" or (").append(column).append(" = :seekValue and t.c0 > :seekId)");
+                sb.append(" or ").append(column).append(" is null)");
+                parameterMap.put("seekValue", cursor.getValue());
+            }
+            parameterMap.put("seekId", cursor.getId());
+        }
+
+        // The ID makes the order unique, so that the records with the same value are not skipped
+        sb.append(" order by ").append(column).append(sortCriteria.isAsc() ? " asc" : " desc");
+        sb.append(" nulls last, t.c0 asc");
+
+        Query q = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap));
+        if (!seek) {
+            q.setFirstResult(paginatedList.getOffset());
+        }
+        int limit = paginatedList.getLimit();
+        q.setMaxResults(limit + 1);
+        List<Object[]> rowList = q.getResultList();
+
+        // Remove the seek columns
+        List<Object[]> resultList = new ArrayList<>();
+        for (Object[] row : rowList.subList(0, Math.min(limit, rowList.size()))) {
+            resultList.add(Arrays.copyOf(row, row.length - 2));
+        }
+
+        if (rowList.size() > limit) {
+            if (limit == 0) {
+                paginatedList.setNextCursor(seek ? paginatedList.getCursor() : PageCursor.ofOffset(paginatedList.getOffset()));
+            } else {
+                Object[] row = rowList.get(limit - 1);
+                paginatedList.setNextCursor(PageCursor.ofKey(sortCriteria, (String) row[row.length - 1], row[row.length - 2]));
+            }
+        }
+        return resultList;
+    }
+
+    /**
+     * Executes a paginated request with 2 native queries (one to return the page, and one to count the number of results).
+     * Sorted requests are paginated with a key cursor if possible, and an offset otherwise.
+     * The count query is skipped if the count is known from the last page, or if the count is not required.
      * 
      * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
@@ -92,8 +210,21 @@ public class PaginatedLists {
      * @return List of results
      */
     public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
-        QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
-        executeCountQuery(paginatedList, sortedQueryParam);
-        return executeResultQuery(paginatedList, sortedQueryParam);
+        PageCursor cursor = paginatedList.getCursor();
+        boolean seek = cursor != null && cursor.matches(sortCriteria);
+        List<Object[]> resultList;
+        if (sortCriteria == null) {
+            resultList = executeResultQuery(paginatedList, queryParam);
+        } else {
+            resultList = executeSeekQuery(paginatedList, queryParam, sortCriteria, seek);
+        }
+
+        if (!seek && paginatedList.getNextCursor() == null && (!resultList.isEmpty() || paginatedList.getOffset() == 0)) {
+            // Last page, all the records are known
+            paginatedList.setResultCount(paginatedList.getOffset() + resultList.size());
+        } else {
+            executeCountQuery(paginatedList, queryParam);
+        }
+        return resultList;
     }
 }
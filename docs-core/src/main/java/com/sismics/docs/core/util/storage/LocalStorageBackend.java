@@ -0,0 +1,202 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Storage in a local directory.
+ * Objects are spread in 2 levels of 256 subdirectories, from the hash of the file ID,
+ * so that a file and its thumbnails are in the same subdirectory.
+ * Objects stored directly in the root directory by the previous versions are still readable,
+ * and can be moved to the new layout with {@link #migrateLegacyLayout()}.
+ */
+public class LocalStorageBackend implements StorageBackend {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(LocalStorageBackend.class);
+
+    /**
+     * Prefix of the files being written.
+     */
+    private static final String TEMPORARY_PREFIX = ".tmp-";
+
+    /**
+     * Root directory.
+     */
+    private final Path root;
+
+    /**
+     * Constructor of LocalStorageBackend.
+     *
+     * @param root Root directory
+     */
+    public LocalStorageBackend(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the path of a stored object.
+     *
+     * @param key Key
+     * @return Path in the hashed layout, or in the root directory if the object has not been migrated yet
+     */
+    public Path getPath(String key) {
+        Path path = getShardedPath(key);
+        if (!Files.exists(path)) {
+            Path legacyPath = root.resolve(key);
+            if (Files.exists(legacyPath)) {
+                return legacyPath;
+            }
+        }
+        return path;
+    }
+
+    @Override
+    public InputStream read(String key) throws IOException {
+        try {
+            return Files.newInputStream(getShardedPath(key));
+        } catch (NoSuchFileException e) {
+            return Files.newInputStream(root.resolve(key));
+        }
+    }
+
+    @Override
+    public InputStream read(String key, long offset) throws IOException {
+        SeekableByteChannel channel;
+        try {
+            channel = Files.newByteChannel(getShardedPath(key));
+        } catch (NoSuchFileException e) {
+            channel = Files.newByteChannel(root.resolve(key));
+        }
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public StorageOutputStream write(String key) throws IOException {
+        Path path = getShardedPath(key);
+        Files.createDirectories(path.getParent());
+        Path tmpPath = path.resolveSibling(TEMPORARY_PREFIX + UUID.randomUUID());
+        OutputStream out = Files.newOutputStream(tmpPath);
+        return new StorageOutputStream() {
+            @Override
+            protected void doWrite(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            protected void publish() throws IOException {
+                try {
+                    out.close();
+                    move(tmpPath, path);
+                    Files.deleteIfExists(root.resolve(key));
+                } finally {
+                    Files.deleteIfExists(tmpPath);
+                }
+            }
+
+            @Override
+            protected void abort() throws IOException {
+                try {
+                    out.close();
+                } finally {
+                    Files.deleteIfExists(tmpPath);
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(getPath(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(getPath(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(getShardedPath(key));
+        Files.deleteIfExists(root.resolve(key));
+    }
+
+    @Override
+    public Stream<String> list() throws IOException {
+        return Files.walk(root, 3)
+                .filter(Files::isRegularFile)
+                .map(path -> path.getFileName().toString())
+                .filter(fileName -> !fileName.startsWith("."));
+    }
+
+    /**
+     * Move the objects stored in the root directory to the hashed layout.
+     *
+     * @return Number of moved objects
+     * @throws IOException e
+     */
+    public int migrateLegacyLayout() throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> pathList = Files.newDirectoryStream(root, Files::isRegularFile)) {
+            for (Path legacyPath : pathList) {
+                String key = legacyPath.getFileName().toString();
+                if (key.startsWith(".")) {
+                    continue;
+                }
+                Path path = getShardedPath(key);
+                Files.createDirectories(path.getParent());
+                move(legacyPath, path);
+                if (++count % 1000 == 0) {
+                    log.info("{} files moved to the hashed storage layout", count);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the path of an object in the hashed layout.
+     *
+     * @param key Key
+     * @return Path
+     */
+    private Path getShardedPath(String key) {
+        int index = key.indexOf('_');
+        String fileId = index < 0 ? key : key.substring(0, index);
+        String hash = Hashing.sha256().hashString(fileId, StandardCharsets.UTF_8).toString();
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(key);
+    }
+
+    /**
+     * Move a file, atomically if supported.
+     *
+     * @param source Source path
+     * @param target Target path
+     * @throws IOException e
+     */
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
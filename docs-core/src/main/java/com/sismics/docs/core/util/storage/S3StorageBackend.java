@@ -0,0 +1,724 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.GeneralSecurityException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Storage in an S3-compatible object store (AWS S3, MinIO, Ceph...).
+ * Requests are signed with AWS Signature Version 4 and use path-style URLs.
+ * Objects are read as streams, and written with multipart uploads whose parts are sent in parallel.
+ */
+public class S3StorageBackend implements StorageBackend {
+    /**
+     * Default size of the uploaded parts (in bytes), S3 requires at least 5 MiB except for the last part.
+     */
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Maximum number of parts of an object uploaded in parallel.
+     */
+    private static final int UPLOAD_PARALLELISM = 4;
+
+    /**
+     * Initial size of the buffer of an uploaded object, grown up to the part size.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Hash of an empty payload.
+     */
+    private static final String EMPTY_PAYLOAD_HASH = sha256Hex(new byte[0]);
+
+    /**
+     * Date format of the signed requests.
+     */
+    private static final DateTimeFormatter AMZ_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    /**
+     * Endpoint URL.
+     */
+    private final URI endpoint;
+
+    /**
+     * Region.
+     */
+    private final String region;
+
+    /**
+     * Bucket name.
+     */
+    private final String bucket;
+
+    /**
+     * Access key.
+     */
+    private final String accessKey;
+
+    /**
+     * Secret key.
+     */
+    private final String secretKey;
+
+    /**
+     * Size of the uploaded parts (in bytes).
+     */
+    private final int partSize;
+
+    /**
+     * HTTP client.
+     */
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    /**
+     * Executor uploading the parts.
+     */
+    private final ExecutorService uploadExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("s3-upload-%d")
+            .setDaemon(true)
+            .build());
+
+    /**
+     * Constructor of S3StorageBackend.
+     *
+     * @param endpoint Endpoint URL (example: https://s3.eu-west-1.amazonaws.com)
+     * @param region Region (example: eu-west-1)
+     * @param bucket Bucket name
+     * @param accessKey Access key
+     * @param secretKey Secret key
+     */
+    public S3StorageBackend(URI endpoint, String region, String bucket, String accessKey, String secretKey) {
+        this(endpoint, region, bucket, accessKey, secretKey, DEFAULT_PART_SIZE);
+    }
+
+    /**
+     * Constructor of S3StorageBackend.
+     *
+     * @param endpoint Endpoint URL (example: https://s3.eu-west-1.amazonaws.com)
+     * @param region Region (example: eu-west-1)
+     * @param bucket Bucket name
+     * @param accessKey Access key
+     * @param secretKey Secret key
+     * @param partSize Size of the uploaded parts (in bytes)
+     */
+    public S3StorageBackend(URI endpoint, String region, String bucket, String accessKey, String secretKey, int partSize) {
+        this.endpoint = endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.partSize = partSize;
+    }
+
+    @Override
+    public InputStream read(String key) throws IOException {
+        return read(key, 0);
+    }
+
+    @Override
+    public InputStream read(String key, long offset) throws IOException {
+        HttpResponse<InputStream> response = send("GET", key, new TreeMap<>(), null,
+                offset > 0 ? "bytes=" + offset + "-" : null, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 200 && offset > 0) {
+            // Range not supported by the server
+            InputStream is = response.body();
+            is.skipNBytes(offset);
+            return is;
+        }
+        if (response.statusCode() == 200 || response.statusCode() == 206) {
+            return response.body();
+        }
+        try (InputStream is = response.body()) {
+            if (response.statusCode() == 404) {
+                throw new NoSuchFileException(key);
+            }
+            if (response.statusCode() == 416) {
+                // Reading from the end of the object
+                return InputStream.nullInputStream();
+            }
+            throw new IOException("Error reading " + key + " from S3: " + response.statusCode()
+                    + " " + new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public StorageOutputStream write(String key) {
+        return new MultipartOutputStream(key);
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return head(key) >= 0;
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        long size = head(key);
+        if (size < 0) {
+            throw new NoSuchFileException(key);
+        }
+        return size;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        HttpResponse<String> response = send("DELETE", key, new TreeMap<>(), null, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 204 && response.statusCode() != 200 && response.statusCode() != 404) {
+            throw new IOException("Error deleting " + key + " from S3: " + response.statusCode() + " " + response.body());
+        }
+    }
+
+    @Override
+    public Stream<String> list() {
+        Iterator<String> iterator = new Iterator<>() {
+            /**
+             * Keys of the current page.
+             */
+            private Iterator<String> page = null;
+
+            /**
+             * Continuation token of the next page, null if this is the last page.
+             */
+            private String continuationToken = null;
+
+            @Override
+            public boolean hasNext() {
+                while (page == null || !page.hasNext() && continuationToken != null) {
+                    fetchPage();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            private void fetchPage() {
+                Map<String, String> query = new TreeMap<>();
+                query.put("list-type", "2");
+                if (continuationToken != null) {
+                    query.put("continuation-token", continuationToken);
+                }
+                try {
+                    HttpResponse<byte[]> response = send("GET", null, query, null, HttpResponse.BodyHandlers.ofByteArray());
+                    Document document = parseXml(response, "listing the objects");
+                    List<String> keyList = new ArrayList<>();
+                    NodeList contentList = document.getElementsByTagName("Contents");
+                    for (int i = 0; i < contentList.getLength(); i++) {
+                        keyList.add(getText((Element) contentList.item(i), "Key"));
+                    }
+                    page = keyList.iterator();
+                    continuationToken = "true".equals(getText(document.getDocumentElement(), "IsTruncated")) ?
+                            getText(document.getDocumentElement(), "NextContinuationToken") : null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Returns the size of an object.
+     *
+     * @param key Key
+     * @return Size, -1 if the object doesn't exist
+     * @throws IOException e
+     */
+    private long head(String key) throws IOException {
+        HttpResponse<Void> response = send("HEAD", key, new TreeMap<>(), null, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return -1;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Error reading " + key + " from S3: " + response.statusCode());
+        }
+        return response.headers().firstValueAsLong("Content-Length").orElse(0);
+    }
+
+    /**
+     * Upload a whole object.
+     *
+     * @param key Key
+     * @param data Content of the object
+     * @throws IOException e
+     */
+    private void putObject(String key, byte[] data) throws IOException {
+        HttpResponse<String> response = send("PUT", key, new TreeMap<>(), data, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Error writing " + key + " to S3: " + response.statusCode() + " " + response.body());
+        }
+    }
+
+    /**
+     * Start a multipart upload.
+     *
+     * @param key Key
+     * @return Upload ID
+     * @throws IOException e
+     */
+    private String createMultipartUpload(String key) throws IOException {
+        Map<String, String> query = new TreeMap<>();
+        query.put("uploads", "");
+        HttpResponse<byte[]> response = send("POST", key, query, new byte[0], HttpResponse.BodyHandlers.ofByteArray());
+        return getText(parseXml(response, "starting the upload of " + key).getDocumentElement(), "UploadId");
+    }
+
+    /**
+     * Upload a part of an object.
+     *
+     * @param key Key
+     * @param uploadId Upload ID
+     * @param partNumber Part number (first is 1)
+     * @param data Content of the part
+     * @return ETag of the part
+     * @throws IOException e
+     */
+    private String uploadPart(String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        Map<String, String> query = new TreeMap<>();
+        query.put("partNumber", Integer.toString(partNumber));
+        query.put("uploadId", uploadId);
+        HttpResponse<String> response = send("PUT", key, query, data, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Error uploading the part " + partNumber + " of " + key + " to S3: " + response.statusCode() + " " + response.body());
+        }
+        return response.headers().firstValue("ETag")
+                .orElseThrow(() -> new IOException("No ETag returned for the part " + partNumber + " of " + key));
+    }
+
+    /**
+     * Complete a multipart upload.
+     *
+     * @param key Key
+     * @param uploadId Upload ID
+     * @param etagList ETags of the parts
+     * @throws IOException e
+     */
+    private void completeMultipartUpload(String key, String uploadId, List<String> etagList) throws IOException {
+        StringBuilder sb = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etagList.size(); i++) {
+            sb.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etagList.get(i).replace("&", "&amp;").replace("<", "&lt;"))
+                    .append("</ETag></Part>");
+        }
+        sb.append("</CompleteMultipartUpload>");
+
+        Map<String, String> query = new TreeMap<>();
+        query.put("uploadId", uploadId);
+        HttpResponse<byte[]> response = send("POST", key, query, sb.toString().getBytes(StandardCharsets.UTF_8), HttpResponse.BodyHandlers.ofByteArray());
+
+        // Errors can be returned after a 200 status
+        parseXml(response, "completing the upload of " + key);
+    }
+
+    /**
+     * Abort a multipart upload, the uploaded parts are deleted.
+     *
+     * @param key Key
+     * @param uploadId Upload ID
+     */
+    private void abortMultipartUpload(String key, String uploadId) {
+        Map<String, String> query = new TreeMap<>();
+        query.put("uploadId", uploadId);
+        try {
+            send("DELETE", key, query, null, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            // The incomplete upload will be removed by the bucket lifecycle rules
+        }
+    }
+
+    /**
+     * Send a signed request.
+     *
+     * @param method HTTP method
+     * @param key Object key, null for a request on the bucket
+     * @param query Query parameters, sorted by name
+     * @param body Request body, null if none
+     * @param bodyHandler Response body handler
+     * @param <T> Response body type
+     * @return Response
+     * @throws IOException e
+     */
+    private <T> HttpResponse<T> send(String method, String key, Map<String, String> query, byte[] body,
+                                     HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        return send(method, key, query, body, null, bodyHandler);
+    }
+
+    /**
+     * Send a signed request.
+     *
+     * @param method HTTP method
+     * @param key Object key, null for a bucket request
+     * @param query Query parameters, sorted
+     * @param body Request body, can be null
+     * @param range Value of the Range header, can be null
+     * @param bodyHandler Response body handler
+     * @param <T> Response body type
+     * @return Response
+     * @throws IOException e
+     */
+    private <T> HttpResponse<T> send(String method, String key, Map<String, String> query, byte[] body, String range,
+                                     HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        String path = "/" + uriEncode(bucket, false) + (key == null ? "" : "/" + uriEncode(key, false));
+        StringBuilder queryString = new StringBuilder();
+        for (Map.Entry<String, String> entry : query.entrySet()) {
+            if (queryString.length() > 0) {
+                queryString.append('&');
+            }
+            queryString.append(uriEncode(entry.getKey(), true)).append('=').append(uriEncode(entry.getValue(), true));
+        }
+        String basePath = Strings.nullToEmpty(endpoint.getRawPath()).replaceAll("/+$", "");
+        URI uri = URI.create(endpoint.getScheme() + "://" + endpoint.getRawAuthority() + basePath + path
+                + (queryString.length() == 0 ? "" : "?" + queryString));
+
+        // Canonical request
+        String payloadHash = body == null ? EMPTY_PAYLOAD_HASH : sha256Hex(body);
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String amzDate = AMZ_DATE_FORMAT.format(now);
+        String date = amzDate.substring(0, 8);
+        String host = endpoint.getPort() == -1 ? endpoint.getHost() : endpoint.getHost() + ":" + endpoint.getPort();
+        String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+        String canonicalRequest = method + "\n"
+                + basePath + path + "\n"
+                + queryString + "\n"
+                + "host:" + host + "\n"
+                + "x-amz-content-sha256:" + payloadHash + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + signedHeaders + "\n"
+                + payloadHash;
+
+        // Signature
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = BaseEncoding.base16().lowerCase().encode(hmac(signingKey, stringToSign));
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("x-amz-content-sha256", payloadHash)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+        if (range != null) {
+            requestBuilder.header("Range", range);
+        }
+        try {
+            return httpClient.send(requestBuilder.build(), bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted S3 request");
+        }
+    }
+
+    /**
+     * Parse an XML response, checking for errors.
+     *
+     * @param response Response
+     * @param action Action, for the error messages
+     * @return XML document
+     * @throws IOException e
+     */
+    private static Document parseXml(HttpResponse<byte[]> response, String action) throws IOException {
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(response.body()));
+        } catch (Exception e) {
+            throw new IOException("Error " + action + " in S3: " + response.statusCode(), e);
+        }
+        if (response.statusCode() != 200 || "Error".equals(document.getDocumentElement().getTagName())) {
+            throw new IOException("Error " + action + " in S3: " + response.statusCode() + " "
+                    + getText(document.getDocumentElement(), "Message"));
+        }
+        return document;
+    }
+
+    /**
+     * Returns the text of the first child element with a name.
+     *
+     * @param element Parent element
+     * @param name Child element name
+     * @return Text, null if there is no such element
+     */
+    private static String getText(Element element, String name) {
+        NodeList nodeList = element.getElementsByTagName(name);
+        return nodeList.getLength() == 0 ? null : nodeList.item(0).getTextContent();
+    }
+
+    /**
+     * URI encode a value as specified by AWS.
+     *
+     * @param value Value
+     * @param encodeSlash True to encode the slashes
+     * @return Encoded value
+     */
+    private static String uriEncode(String value, boolean encodeSlash) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_' || c == '.' || c == '~' || c == '/' && !encodeSlash) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the hexadecimal SHA-256 of some data.
+     *
+     * @param data Data
+     * @return Hash
+     */
+    private static String sha256Hex(byte[] data) {
+        return Hashing.sha256().hashBytes(data).toString();
+    }
+
+    /**
+     * Returns the HMAC-SHA256 of a value.
+     *
+     * @param key Key
+     * @param value Value
+     * @return HMAC
+     */
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign the S3 request", e);
+        }
+    }
+
+    /**
+     * Output stream buffering the parts of an object and uploading them in parallel.
+     * Small objects are uploaded in a single request when the stream is published.
+     * An aborted stream uploads nothing, and aborts the multipart upload if it was started.
+     */
+    private class MultipartOutputStream extends StorageOutputStream {
+        /**
+         * Key.
+         */
+        private final String key;
+
+        /**
+         * Limits the number of parts being uploaded, and the memory used by their buffers.
+         */
+        private final Semaphore semaphore = new Semaphore(UPLOAD_PARALLELISM);
+
+        /**
+         * Uploaded parts, returning their ETag.
+         */
+        private final List<Future<String>> partList = new ArrayList<>();
+
+        /**
+         * Number of uploaded parts known to be successful, in order.
+         */
+        private int checkedPartCount;
+
+        /**
+         * Buffer of the current part, grown as needed since most objects are small.
+         */
+        private byte[] buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, partSize)];
+
+        /**
+         * Position in the buffer.
+         */
+        private int position;
+
+        /**
+         * Upload ID, null if the multipart upload is not started.
+         */
+        private String uploadId;
+
+        private MultipartOutputStream(String key) {
+            this.key = key;
+        }
+
+        @Override
+        protected void doWrite(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int count = Math.min(len, partSize - position);
+                if (position + count > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(Math.max(position + count, buffer.length * 2), partSize));
+                }
+                System.arraycopy(b, off, buffer, position, count);
+                position += count;
+                off += count;
+                len -= count;
+                if (position == partSize) {
+                    uploadPart(buffer);
+                    buffer = new byte[partSize];
+                    position = 0;
+                }
+            }
+        }
+
+        @Override
+        protected void publish() throws IOException {
+            if (uploadId == null) {
+                putObject(key, Arrays.copyOf(buffer, position));
+                buffer = null;
+                return;
+            }
+
+            try {
+                if (position > 0) {
+                    uploadPart(Arrays.copyOf(buffer, position));
+                }
+                buffer = null;
+                List<String> etagList = new ArrayList<>();
+                for (Future<String> part : partList) {
+                    etagList.add(part.get());
+                }
+                completeMultipartUpload(key, uploadId, etagList);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            } catch (ExecutionException e) {
+                abort();
+                throw toIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw new InterruptedIOException("Interrupted S3 upload");
+            }
+        }
+
+        /**
+         * Upload a part in the background.
+         *
+         * @param data Content of the part
+         * @throws IOException e
+         */
+        private void uploadPart(byte[] data) throws IOException {
+            if (uploadId == null) {
+                uploadId = createMultipartUpload(key);
+            }
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted S3 upload");
+            }
+            try {
+                checkUploadedParts();
+            } catch (IOException e) {
+                semaphore.release();
+                throw e;
+            }
+            int partNumber = partList.size() + 1;
+            String currentUploadId = uploadId;
+            partList.add(uploadExecutor.submit(() -> {
+                try {
+                    return S3StorageBackend.this.uploadPart(key, currentUploadId, partNumber, data);
+                } finally {
+                    semaphore.release();
+                }
+            }));
+        }
+
+        /**
+         * Fail fast if an uploaded part has failed, instead of uploading the next parts.
+         * Only the parts still being uploaded are checked again, at most the upload parallelism.
+         *
+         * @throws IOException Error of the failed part
+         */
+        private void checkUploadedParts() throws IOException {
+            for (int i = checkedPartCount; i < partList.size(); i++) {
+                Future<String> part = partList.get(i);
+                if (!part.isDone()) {
+                    continue;
+                }
+                try {
+                    part.get();
+                } catch (ExecutionException e) {
+                    throw toIOException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted S3 upload");
+                }
+                if (i == checkedPartCount) {
+                    checkedPartCount++;
+                }
+            }
+        }
+
+        /**
+         * Returns the error of a failed part.
+         *
+         * @param e Execution exception
+         * @return IO exception
+         */
+        private IOException toIOException(ExecutionException e) {
+            return e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+
+        @Override
+        protected void abort() {
+            buffer = null;
+            for (Future<String> part : partList) {
+                part.cancel(true);
+            }
+            if (uploadId != null) {
+                abortMultipartUpload(key, uploadId);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.Stream;
+
+/**
+ * Storage of the encrypted files and their thumbnails.
+ * Stored objects are identified by a key: the file ID, or the file ID followed by _web or _thumb.
+ */
+public interface StorageBackend {
+    /**
+     * Open a stored object for reading.
+     *
+     * @param key Key
+     * @return Input stream, to be closed by the caller
+     * @throws java.nio.file.NoSuchFileException If the object doesn't exist
+     * @throws IOException e
+     */
+    InputStream read(String key) throws IOException;
+
+    /**
+     * Open a stored object for reading, starting at an offset.
+     *
+     * @param key Key
+     * @param offset Offset of the first byte to read
+     * @return Input stream, to be closed by the caller
+     * @throws java.nio.file.NoSuchFileException If the object doesn't exist
+     * @throws IOException e
+     */
+    default InputStream read(String key, long offset) throws IOException {
+        InputStream inputStream = read(key);
+        try {
+            ByteStreams.skipFully(inputStream, offset);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+        return inputStream;
+    }
+
+    /**
+     * Open a stored object for writing, replacing the previous object if any.
+     * The object is only visible once the stream is committed then closed,
+     * closing it without a commit discards the written data.
+     *
+     * @param key Key
+     * @return Output stream, to be committed and closed by the caller
+     * @throws IOException e
+     */
+    StorageOutputStream write(String key) throws IOException;
+
+    /**
+     * Write a stored object from an input stream.
+     *
+     * @param key Key
+     * @param inputStream Content of the object
+     * @throws IOException e
+     */
+    default void write(String key, InputStream inputStream) throws IOException {
+        try (StorageOutputStream outputStream = write(key)) {
+            ByteStreams.copy(inputStream, outputStream);
+            outputStream.commit();
+        }
+    }
+
+    /**
+     * Returns true if an object exists.
+     *
+     * @param key Key
+     * @return True if the object exists
+     * @throws IOException e
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Returns the size of a stored object.
+     *
+     * @param key Key
+     * @return Size (in bytes)
+     * @throws java.nio.file.NoSuchFileException If the object doesn't exist
+     * @throws IOException e
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * Delete a stored object, does nothing if it doesn't exist.
+     *
+     * @param key Key
+     * @throws IOException e
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * List the keys of all the stored objects.
+     *
+     * @return Stream of keys, to be closed by the caller
+     * @throws IOException e
+     */
+    Stream<String> list() throws IOException;
+}
@@ -0,0 +1,91 @@
+package com.sismics.docs.core.util.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream of a stored object.
+ * The object is only published when the stream is closed after {@link #commit()} has been called.
+ * If the stream is closed without a commit, or if a write failed, the written data is discarded
+ * and the previous object, if any, is left untouched.
+ */
+public abstract class StorageOutputStream extends OutputStream {
+    /**
+     * True if the content is complete.
+     */
+    private boolean committed;
+
+    /**
+     * True if a write failed.
+     */
+    private boolean failed;
+
+    /**
+     * True if the stream is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Mark the content as complete, the object is published when the stream is closed.
+     * Data can still be written until then, e.g. the last block of a wrapping cipher stream.
+     */
+    public void commit() {
+        committed = true;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        try {
+            doWrite(b, off, len);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (committed && !failed) {
+            publish();
+        } else {
+            abort();
+        }
+    }
+
+    /**
+     * Write data to the object being stored.
+     *
+     * @param b Data
+     * @param off Offset in the data
+     * @param len Number of bytes to write
+     * @throws IOException e
+     */
+    protected abstract void doWrite(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Publish the object, replacing the previous one.
+     * The written data must be discarded if the publication fails.
+     *
+     * @throws IOException e
+     */
+    protected abstract void publish() throws IOException;
+
+    /**
+     * Discard the written data.
+     *
+     * @throws IOException e
+     */
+    protected abstract void abort() throws IOException;
+}
@@ -0,0 +1,100 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.base.Strings;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.DirectoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Storage backend utilities.
+ */
+public class StorageUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(StorageUtil.class);
+
+    /**
+     * S3 storage backend, if configured.
+     */
+    private static volatile StorageBackend s3Backend;
+
+    /**
+     * Returns the configured storage backend.
+     * The local storage directory is used unless DOCS_STORAGE_BACKEND is set to s3.
+     *
+     * @return Storage backend
+     */
+    public static StorageBackend getBackend() {
+        if (!"s3".equalsIgnoreCase(System.getenv(Constants.STORAGE_BACKEND_ENV))) {
+            return getLocalBackend();
+        }
+
+        if (s3Backend == null) {
+            synchronized (StorageUtil.class) {
+                if (s3Backend == null) {
+                    String endpoint = System.getenv(Constants.S3_ENDPOINT_ENV);
+                    String bucket = System.getenv(Constants.S3_BUCKET_ENV);
+                    if (Strings.isNullOrEmpty(endpoint) || Strings.isNullOrEmpty(bucket)) {
+                        throw new IllegalStateException("The S3 storage needs " + Constants.S3_ENDPOINT_ENV + " and " + Constants.S3_BUCKET_ENV);
+                    }
+                    String region = System.getenv(Constants.S3_REGION_ENV);
+                    s3Backend = new S3StorageBackend(URI.create(endpoint),
+                            Strings.isNullOrEmpty(region) ? "us-east-1" : region, bucket,
+                            Strings.nullToEmpty(System.getenv(Constants.S3_ACCESS_KEY_ENV)),
+                            Strings.nullToEmpty(System.getenv(Constants.S3_SECRET_KEY_ENV)));
+                }
+            }
+        }
+        return s3Backend;
+    }
+
+    /**
+     * Returns the storage backend of the local storage directory.
+     *
+     * @return Local storage backend
+     */
+    public static LocalStorageBackend getLocalBackend() {
+        return new LocalStorageBackend(DirectoryUtil.getStorageDirectory());
+    }
+
+    /**
+     * Copy the objects missing from a storage backend.
+     * Objects already stored in the target with the same size are skipped, so an interrupted migration can be resumed.
+     *
+     * @param source Source storage backend
+     * @param target Target storage backend
+     * @return Number of copied objects
+     * @throws IOException e
+     */
+    public static int migrate(StorageBackend source, StorageBackend target) throws IOException {
+        int count = 0;
+        try (Stream<String> keyStream = source.list()) {
+            Iterator<String> iterator = keyStream.iterator();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                if (target.exists(key) && target.size(key) == source.size(key)) {
+                    continue;
+                }
+                try (InputStream inputStream = source.read(key)) {
+                    target.write(key, inputStream);
+                }
+                if (++count % 100 == 0) {
+                    log.info("{} files copied to the new storage", count);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("Storage migration done, {} files copied", count);
+        return count;
+    }
+}
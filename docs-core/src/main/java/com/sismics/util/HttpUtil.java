@@ -1,8 +1,14 @@
 package com.sismics.util;
 
+import com.google.common.base.Splitter;
+
 import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * HTTP request utilities.
@@ -15,6 +21,17 @@ public class HttpUtil {
      */
     private static final SimpleDateFormat EXPIRES_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
 
+    /**
+     * Format of the HTTP dates.
+     */
+    private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * Single byte range.
+     */
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     /**
      * Build an Expires HTTP header.
      *
@@ -24,4 +41,79 @@ public class HttpUtil {
     public static String buildExpiresHeader(long futureTime) {
         return EXPIRES_FORMAT.format(new Date().getTime() + futureTime);
     }
+
+    /**
+     * Format a date for the Last-Modified HTTP header.
+     *
+     * @param date Date
+     * @return Formatted header value
+     */
+    public static String formatHttpDate(Date date) {
+        return HTTP_DATE_FORMAT.format(date.toInstant());
+    }
+
+    /**
+     * Check if an entity tag matches an If-None-Match or If-Range HTTP header.
+     *
+     * @param header Header value, can be null
+     * @param entityTag Entity tag, quoted
+     * @return True if the header contains the entity tag or *
+     */
+    public static boolean matchesEntityTag(String header, String entityTag) {
+        if (header == null) {
+            return false;
+        }
+        for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(header)) {
+            if (tag.equals("*") || tag.equals(entityTag) || tag.startsWith("W/") && tag.substring(2).equals(entityTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a Range HTTP header.
+     * Only single byte ranges are supported, other ranges are ignored and the whole content is sent.
+     *
+     * @param header Header value, can be null
+     * @param length Content length
+     * @return First and last byte positions (inclusive), an empty array if the range is not satisfiable,
+     * or null if the whole content must be sent
+     */
+    public static long[] parseRange(String header, long length) {
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = RANGE_PATTERN.matcher(header.trim());
+        if (!matcher.matches() || matcher.group(1).isEmpty() && matcher.group(2).isEmpty()) {
+            return null;
+        }
+
+        long start;
+        long end;
+        try {
+            if (matcher.group(1).isEmpty()) {
+                // Suffix range: last bytes
+                long suffixLength = Long.parseLong(matcher.group(2));
+                if (suffixLength == 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(matcher.group(1));
+                end = matcher.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(matcher.group(2)), length - 1);
+                if (end < start && start < length) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (start >= length) {
+            return new long[0];
+        }
+        return new long[] { start, end };
+    }
 }
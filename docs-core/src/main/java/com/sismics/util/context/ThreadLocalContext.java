@@ -3,9 +3,16 @@ package com.sismics.util.context;
 import com.google.common.collect.Lists;
 import com.sismics.docs.core.model.context.AppContext;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import jakarta.persistence.EntityManager;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * Context associated to a user request, and stored in a ThreadLocal.
@@ -13,6 +20,11 @@ import java.util.List;
  * @author jtremeaux
  */
 public class ThreadLocalContext {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ThreadLocalContext.class);
+
     /**
      * ThreadLocal to store the context.
      */
@@ -23,11 +35,26 @@ public class ThreadLocalContext {
      */
     private EntityManager entityManager;
 
+    /**
+     * Creates the entity manager on first use, null if the entity manager is set directly.
+     */
+    private Supplier<EntityManager> entityManagerSupplier;
+
     /**
      * List of async events posted during this request.
      */
     private List<Object> asyncEventList = Lists.newArrayList();
 
+    /**
+     * True if this context is a bulk operation, its async events are processed after the interactive ones.
+     */
+    private boolean bulk;
+
+    /**
+     * Actions to run after the current transaction is committed.
+     */
+    private Set<Runnable> commitHookSet = new LinkedHashSet<>();
+
     /**
      * Private constructor.
      */
@@ -62,6 +89,9 @@ public class ThreadLocalContext {
      * @return entityManager
      */
     public EntityManager getEntityManager() {
+        if (entityManager == null && entityManagerSupplier != null) {
+            entityManager = entityManagerSupplier.get();
+        }
         if (entityManager != null && entityManager.isOpen()) {
             // This disables the L1 cache
             entityManager.flush();
@@ -70,6 +100,15 @@ public class ThreadLocalContext {
         return entityManager;
     }
 
+    /**
+     * Returns the entity manager if it has already been created, without flushing it.
+     *
+     * @return Entity manager, null if the database has not been accessed yet
+     */
+    public EntityManager getCurrentEntityManager() {
+        return entityManager;
+    }
+
     /**
      * Setter of entityManager.
      *
@@ -79,6 +118,15 @@ public class ThreadLocalContext {
         this.entityManager = entityManager;
     }
 
+    /**
+     * Create the entity manager lazily, on the first database access.
+     *
+     * @param entityManagerSupplier Creates an entity manager with an active transaction
+     */
+    public void setEntityManagerSupplier(Supplier<EntityManager> entityManagerSupplier) {
+        this.entityManagerSupplier = entityManagerSupplier;
+    }
+
     /**
      * Add an async event to the queue to be fired after the current request.
      *
@@ -89,14 +137,60 @@ public class ThreadLocalContext {
     }
 
     /**
-     * Fire all pending async events.
+     * Run the commit hooks and fire all pending async events.
+     * The transaction is already committed, so a failing hook or event doesn't prevent the next ones.
      */
     public void fireAllAsyncEvents() {
+        Iterator<Runnable> commitHookIterator = commitHookSet.iterator();
+        while (commitHookIterator.hasNext()) {
+            Runnable commitHook = commitHookIterator.next();
+            commitHookIterator.remove();
+            try {
+                commitHook.run();
+            } catch (RuntimeException e) {
+                log.error("Error running a commit hook", e);
+            }
+        }
+
         Iterator<Object> iterator = asyncEventList.iterator();
         while (iterator.hasNext()) {
             Object asyncEvent = iterator.next();
             iterator.remove();
-            AppContext.getInstance().getAsyncEventBus().post(asyncEvent);
+            try {
+                AppContext.getInstance().postAsyncEvent(asyncEvent, bulk);
+            } catch (RejectedExecutionException e) {
+                // Only happens when the application is shutting down
+                log.error("Async event not processed: " + asyncEvent, e);
+            }
         }
     }
+
+    /**
+     * Setter of bulk.
+     *
+     * @param bulk bulk
+     */
+    public void setBulk(boolean bulk) {
+        this.bulk = bulk;
+    }
+
+    /**
+     * Add an action to run after the current request, once the transaction is committed.
+     * The same action is run only once.
+     *
+     * @param commitHook Action
+     */
+    public void addCommitHook(Runnable commitHook) {
+        commitHookSet.add(commitHook);
+    }
+
+    /**
+     * Returns true if an action is waiting for the current transaction to be committed.
+     *
+     * @param commitHook Action
+     * @return True if the action is pending
+     */
+    public boolean hasCommitHook(Runnable commitHook) {
+        return commitHookSet.contains(commitHook);
+    }
 }
@@ -53,6 +53,9 @@ public final class EMF {
             openHelper.open();
             
             emfInstance = Persistence.createEntityManagerFactory("transactions-optional", getEntityManagerProperties());
+
+            // Close the connections used by the schema upgrade, once the in-memory databases are held by the new ones
+            StandardServiceRegistryBuilder.destroy(reg);
             
         } catch (Throwable t) {
             log.error("Error creating EMF", t);
@@ -83,6 +86,7 @@ public final class EMF {
         if(databasePoolSize == null) {
             databasePoolSize = "10";
         }
+        String databasePoolType = System.getenv("DATABASE_POOL_TYPE");
 
         log.info("Configuring EntityManager from environment parameters");
         Properties props = new Properties();
@@ -105,13 +109,42 @@ public final class EMF {
         props.put("hibernate.show_sql", "false");
         props.put("hibernate.format_sql", "false");
         props.put("hibernate.max_fetch_depth", "5");
-        props.put("hibernate.cache.use_second_level_cache", "false");
-        props.put("hibernate.connection.initial_pool_size", "1");
+        // Local caches of the reference data, only consistent if this instance is the only one writing to the database
+        boolean cacheEnabled = !"false".equalsIgnoreCase(System.getenv("DATABASE_CACHE_ENABLED"));
+        props.put("hibernate.cache.use_second_level_cache", Boolean.toString(cacheEnabled));
+        props.put("hibernate.cache.use_query_cache", Boolean.toString(cacheEnabled));
+        if (cacheEnabled) {
+            props.put("hibernate.cache.region.factory_class", GuavaRegionFactory.class.getName());
+        }
         props.put("hibernate.connection.pool_size", databasePoolSize);
-        props.put("hibernate.connection.pool_validation_interval", "5");
+        if ("hibernate".equalsIgnoreCase(databasePoolType)) {
+            // Hibernate built-in pool, not meant for production
+            props.put("hibernate.connection.initial_pool_size", "1");
+            props.put("hibernate.connection.pool_validation_interval", "5");
+        } else {
+            props.put("hibernate.connection.provider_class", HikariConnectionProvider.class.getName());
+            putEnv(props, HikariConnectionProvider.MINIMUM_IDLE, "DATABASE_POOL_MIN_IDLE");
+            putEnv(props, HikariConnectionProvider.CONNECTION_TIMEOUT, "DATABASE_POOL_TIMEOUT");
+            putEnv(props, HikariConnectionProvider.LEAK_DETECTION_THRESHOLD, "DATABASE_POOL_LEAK_DETECTION_THRESHOLD");
+            putEnv(props, HikariConnectionProvider.STATEMENT_CACHE_SIZE, "DATABASE_STATEMENT_CACHE_SIZE");
+        }
         return props;
     }
     
+    /**
+     * Copy an environment variable to a property, if it is set.
+     *
+     * @param props Properties
+     * @param key Property key
+     * @param env Environment variable name
+     */
+    private static void putEnv(Properties props, String key, String env) {
+        String value = System.getenv(env);
+        if (!Strings.isNullOrEmpty(value)) {
+            props.put(key, value);
+        }
+    }
+
     /**
      * Private constructor.
      */
@@ -0,0 +1,196 @@
+package com.sismics.util.jpa;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.sismics.util.metrics.MetricRegistry;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hibernate second-level cache regions stored in Guava caches.
+ * Each region has its own size and expiration, which can be overridden with the
+ * hibernate.cache.docs.[region].max_size and hibernate.cache.docs.[region].expire_after_write (in seconds) properties.
+ */
+public class GuavaRegionFactory extends RegionFactoryTemplate {
+    /**
+     * Prefix of the region properties.
+     */
+    private static final String REGION_PROPERTY_PREFIX = "hibernate.cache.docs.";
+
+    /**
+     * Default region size and expiration (in seconds).
+     */
+    private static final RegionPolicy DEFAULT_POLICY = new RegionPolicy(1000, 600);
+
+    /**
+     * Size and expiration (in seconds) of the known regions.
+     */
+    private static final Map<String, RegionPolicy> POLICY_MAP = ImmutableMap.<String, RegionPolicy>builder()
+            .put("config", new RegionPolicy(100, 3600))
+            .put("role", new RegionPolicy(100, 3600))
+            .put("role_base_function", new RegionPolicy(1000, 3600))
+            .put("tag", new RegionPolicy(10000, 600))
+            .put("group", new RegionPolicy(1000, 600))
+            .put("metadata", new RegionPolicy(1000, 3600))
+            .put("vocabulary", new RegionPolicy(1000, 3600))
+            .put("route_model", new RegionPolicy(1000, 3600))
+            .put(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, new RegionPolicy(10000, 300))
+            // Missing timestamps would let outdated query results be used, they are never evicted
+            .put(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, new RegionPolicy(0, 0))
+            .build();
+
+    /**
+     * Configuration values.
+     */
+    private Map<String, Object> configValues;
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+        this.configValues = configValues;
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        configValues = null;
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.READ_WRITE;
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                   DomainDataRegionBuildingContext buildingContext) {
+        return new GuavaStorageAccess(regionConfig.getRegionName(), getPolicy(regionConfig.getRegionName()));
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return new GuavaStorageAccess(regionName, getPolicy(regionName));
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return new GuavaStorageAccess(regionName, getPolicy(regionName));
+    }
+
+    /**
+     * Returns the size and expiration of a region.
+     *
+     * @param regionName Region name
+     * @return Region policy
+     */
+    private RegionPolicy getPolicy(String regionName) {
+        RegionPolicy policy = POLICY_MAP.getOrDefault(regionName, DEFAULT_POLICY);
+        return new RegionPolicy(
+                ConfigurationHelper.getInt(REGION_PROPERTY_PREFIX + regionName + ".max_size", configValues, policy.maxSize),
+                ConfigurationHelper.getInt(REGION_PROPERTY_PREFIX + regionName + ".expire_after_write", configValues, policy.expireAfterWrite));
+    }
+
+    /**
+     * Size and expiration of a region.
+     */
+    private static class RegionPolicy {
+        /**
+         * Maximum number of entries, 0 for no limit.
+         */
+        private final int maxSize;
+
+        /**
+         * Expiration after the entry is written (in seconds), 0 for no expiration.
+         */
+        private final int expireAfterWrite;
+
+        private RegionPolicy(int maxSize, int expireAfterWrite) {
+            this.maxSize = maxSize;
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+
+    /**
+     * Storage of a region.
+     */
+    private static class GuavaStorageAccess implements DomainDataStorageAccess {
+        /**
+         * Cached data.
+         */
+        private final Cache<Object, Object> cache;
+
+        /**
+         * Number of cache hits.
+         */
+        private final AtomicLong hitCounter;
+
+        /**
+         * Number of cache misses.
+         */
+        private final AtomicLong missCounter;
+
+        private GuavaStorageAccess(String regionName, RegionPolicy policy) {
+            CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+            if (policy.maxSize > 0) {
+                cacheBuilder.maximumSize(policy.maxSize);
+            }
+            if (policy.expireAfterWrite > 0) {
+                cacheBuilder.expireAfterWrite(policy.expireAfterWrite, TimeUnit.SECONDS);
+            }
+            cache = cacheBuilder.build();
+
+            String metricPrefix = "hibernate_cache." + regionName;
+            hitCounter = MetricRegistry.counter(metricPrefix + ".hit");
+            missCounter = MetricRegistry.counter(metricPrefix + ".miss");
+            MetricRegistry.gauge(metricPrefix + ".size", cache::size);
+        }
+
+        @Override
+        public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+            Object value = cache.getIfPresent(key);
+            if (value == null) {
+                missCounter.incrementAndGet();
+            } else {
+                hitCounter.incrementAndGet();
+            }
+            return value;
+        }
+
+        @Override
+        public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+            cache.put(key, value);
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return cache.asMap().containsKey(key);
+        }
+
+        @Override
+        public void evictData() {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public void evictData(Object key) {
+            cache.invalidate(key);
+        }
+
+        @Override
+        public void release() {
+            cache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.sismics.util.jpa;
+
+import com.sismics.util.metrics.Histogram;
+import com.sismics.util.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hibernate connection provider backed by a HikariCP pool.
+ * The pool reports its acquire latency, saturation and leaks in the {@link MetricRegistry}.
+ */
+public class HikariConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+    /**
+     * Minimum number of idle connections.
+     */
+    public static final String MINIMUM_IDLE = "hibernate.hikari.minimum_idle";
+
+    /**
+     * Maximum time to wait for a connection (in milliseconds).
+     */
+    public static final String CONNECTION_TIMEOUT = "hibernate.hikari.connection_timeout";
+
+    /**
+     * Time a connection can be used before a leak is reported (in milliseconds), 0 to disable.
+     */
+    public static final String LEAK_DETECTION_THRESHOLD = "hibernate.hikari.leak_detection_threshold";
+
+    /**
+     * Number of prepared statements cached by each PostgreSQL connection.
+     */
+    public static final String STATEMENT_CACHE_SIZE = "hibernate.hikari.statement_cache_size";
+
+    /**
+     * Pool.
+     */
+    private HikariDataSource dataSource;
+
+    @Override
+    public void configure(Map<String, Object> configurationValues) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("docs");
+        config.setDriverClassName(ConfigurationHelper.getString(AvailableSettings.DRIVER, configurationValues));
+        config.setJdbcUrl(ConfigurationHelper.getString(AvailableSettings.URL, configurationValues));
+        config.setUsername(ConfigurationHelper.getString(AvailableSettings.USER, configurationValues));
+        config.setPassword(ConfigurationHelper.getString(AvailableSettings.PASS, configurationValues));
+        config.setAutoCommit(false);
+
+        // A fixed size pool by default, so bursts don't wait for new connections
+        int poolSize = ConfigurationHelper.getInt(AvailableSettings.POOL_SIZE, configurationValues, 10);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(Math.min(ConfigurationHelper.getInt(MINIMUM_IDLE, configurationValues, poolSize), poolSize));
+        config.setConnectionTimeout(ConfigurationHelper.getLong(CONNECTION_TIMEOUT, configurationValues, 30000));
+        long leakDetectionThreshold = ConfigurationHelper.getLong(LEAK_DETECTION_THRESHOLD, configurationValues, 60000);
+        config.setLeakDetectionThreshold(leakDetectionThreshold);
+
+        // Server-side prepared statements are cached per connection by the PostgreSQL driver
+        if (config.getDriverClassName() != null && config.getDriverClassName().contains("postgresql")) {
+            int statementCacheSize = ConfigurationHelper.getInt(STATEMENT_CACHE_SIZE, configurationValues, 256);
+            config.addDataSourceProperty("preparedStatementCacheQueries", Integer.toString(statementCacheSize));
+            if (statementCacheSize == 0) {
+                config.addDataSourceProperty("prepareThreshold", "0");
+            }
+        }
+
+        config.setMetricsTrackerFactory((poolName, poolStats) -> new MetricsTracker(poolStats, leakDetectionThreshold));
+        dataSource = new HikariDataSource(config);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || HikariConnectionProvider.class.isAssignableFrom(unwrapType)
+                || DataSource.class.isAssignableFrom(unwrapType) && unwrapType.isInstance(dataSource);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (ConnectionProvider.class.equals(unwrapType) || HikariConnectionProvider.class.isAssignableFrom(unwrapType)) {
+            return (T) this;
+        }
+        if (DataSource.class.isAssignableFrom(unwrapType) && unwrapType.isInstance(dataSource)) {
+            return (T) dataSource;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Records the pool activity in the metric registry.
+     */
+    private static class MetricsTracker implements IMetricsTracker {
+        /**
+         * Time to get a connection from the pool.
+         */
+        private final Histogram acquireHistogram = MetricRegistry.histogram("database.pool.acquire");
+
+        /**
+         * Time to open a new connection.
+         */
+        private final Histogram createHistogram = MetricRegistry.histogram("database.pool.create");
+
+        /**
+         * Time a connection is used before being returned to the pool.
+         */
+        private final Histogram usageHistogram = MetricRegistry.histogram("database.pool.usage");
+
+        /**
+         * Number of connections requests which timed out.
+         */
+        private final AtomicLong timeoutCounter = MetricRegistry.counter("database.pool.timeouts");
+
+        /**
+         * Number of connections used longer than the leak detection threshold.
+         */
+        private final AtomicLong leakCounter = MetricRegistry.counter("database.pool.leaks");
+
+        /**
+         * Leak detection threshold (in milliseconds), 0 if disabled.
+         */
+        private final long leakDetectionThreshold;
+
+        private MetricsTracker(PoolStats poolStats, long leakDetectionThreshold) {
+            this.leakDetectionThreshold = leakDetectionThreshold;
+            MetricRegistry.gauge("database.pool.active", poolStats::getActiveConnections);
+            MetricRegistry.gauge("database.pool.idle", poolStats::getIdleConnections);
+            MetricRegistry.gauge("database.pool.total", poolStats::getTotalConnections);
+            MetricRegistry.gauge("database.pool.max", poolStats::getMaxConnections);
+            MetricRegistry.gauge("database.pool.pending", poolStats::getPendingThreads);
+            MetricRegistry.gauge("database.pool.saturation",
+                    () -> (double) poolStats.getActiveConnections() / Math.max(poolStats.getMaxConnections(), 1));
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            createHistogram.update(TimeUnit.MILLISECONDS.toNanos(connectionCreatedMillis));
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquireHistogram.update(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usageHistogram.update(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+            if (leakDetectionThreshold > 0 && elapsedBorrowedMillis >= leakDetectionThreshold) {
+                // The stack trace of the leak is logged by HikariCP
+                leakCounter.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeoutCounter.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.sismics.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram metric, records the distribution of an operation duration in fixed buckets.
+ */
+public class Histogram {
+    /**
+     * Upper bounds of the buckets (in milliseconds), the last bucket has no upper bound.
+     */
+    private static final long[] BUCKET_BOUNDS_MS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    /**
+     * Number of recorded operations in each bucket.
+     */
+    private final LongAdder[] bucketCounts = new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+
+    /**
+     * Longest recorded duration (in nanoseconds).
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    public Histogram() {
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record an operation duration.
+     *
+     * @param durationNanos Duration in nanoseconds
+     */
+    public void update(long durationNanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && durationNanos > TimeUnit.MILLISECONDS.toNanos(BUCKET_BOUNDS_MS[bucket])) {
+            bucket++;
+        }
+        bucketCounts[bucket].increment();
+        maxNanos.accumulateAndGet(durationNanos, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded operations.
+     *
+     * @return Count
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucketCount : bucketCounts) {
+            count += bucketCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns an upper bound of a percentile of the recorded durations.
+     * Durations are only known at the bucket precision.
+     *
+     * @param percentile Percentile, between 0 and 100
+     * @return Duration in milliseconds, 0 if nothing has been recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] counts = new long[bucketCounts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCounts[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= rank) {
+                return Math.min(BUCKET_BOUNDS_MS[i], getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return Max duration in milliseconds
+     */
+    public double getMaxMillis() {
+        return (double) maxNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
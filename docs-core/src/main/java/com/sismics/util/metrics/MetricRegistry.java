@@ -0,0 +1,107 @@
+package com.sismics.util.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Application wide registry of named metrics.
+ */
+public class MetricRegistry {
+    /**
+     * Counters by name.
+     */
+    private static final Map<String, AtomicLong> counterMap = new ConcurrentHashMap<>();
+
+    /**
+     * Timers by name.
+     */
+    private static final Map<String, Timer> timerMap = new ConcurrentHashMap<>();
+
+    /**
+     * Histograms by name.
+     */
+    private static final Map<String, Histogram> histogramMap = new ConcurrentHashMap<>();
+
+    /**
+     * Gauges by name.
+     */
+    private static final Map<String, Supplier<Number>> gaugeMap = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a counter, creating it if necessary.
+     *
+     * @param name Counter name
+     * @return Counter
+     */
+    public static AtomicLong counter(String name) {
+        return counterMap.computeIfAbsent(name, k -> new AtomicLong());
+    }
+
+    /**
+     * Returns a timer, creating it if necessary.
+     *
+     * @param name Timer name
+     * @return Timer
+     */
+    public static Timer timer(String name) {
+        return timerMap.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /**
+     * Returns a histogram, creating it if necessary.
+     *
+     * @param name Histogram name
+     * @return Histogram
+     */
+    public static Histogram histogram(String name) {
+        return histogramMap.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * Register a gauge, replacing any previous gauge with the same name.
+     *
+     * @param name Gauge name
+     * @param supplier Supplier of the current value
+     */
+    public static void gauge(String name, Supplier<Number> supplier) {
+        gaugeMap.put(name, supplier);
+    }
+
+    /**
+     * Returns the current value of all metrics.
+     * Timers are flattened into count, mean and max values, histograms into count, percentiles and max values.
+     *
+     * @return Metric values by name
+     */
+    public static SortedMap<String, Number> getValues() {
+        SortedMap<String, Number> valueMap = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counterMap.entrySet()) {
+            valueMap.put(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Timer> entry : timerMap.entrySet()) {
+            Timer timer = entry.getValue();
+            valueMap.put(entry.getKey() + ".count", timer.getCount());
+            valueMap.put(entry.getKey() + ".mean_ms", timer.getMeanMillis());
+            valueMap.put(entry.getKey() + ".max_ms", timer.getMaxMillis());
+        }
+        for (Map.Entry<String, Histogram> entry : histogramMap.entrySet()) {
+            Histogram histogram = entry.getValue();
+            valueMap.put(entry.getKey() + ".count", histogram.getCount());
+            valueMap.put(entry.getKey() + ".p50_ms", histogram.getPercentileMillis(50));
+            valueMap.put(entry.getKey() + ".p95_ms", histogram.getPercentileMillis(95));
+            valueMap.put(entry.getKey() + ".p99_ms", histogram.getPercentileMillis(99));
+            valueMap.put(entry.getKey() + ".max_ms", histogram.getMaxMillis());
+        }
+        for (Map.Entry<String, Supplier<Number>> entry : gaugeMap.entrySet()) {
+            Number value = entry.getValue().get();
+            if (value != null) {
+                valueMap.put(entry.getKey(), value);
+            }
+        }
+        return valueMap;
+    }
+}
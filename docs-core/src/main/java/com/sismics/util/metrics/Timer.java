@@ -0,0 +1,76 @@
+package com.sismics.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timer metric, records the count, mean and max duration of an operation.
+ */
+public class Timer {
+    /**
+     * Number of recorded operations.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Total duration of all recorded operations (in nanoseconds).
+     */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Longest recorded duration (in nanoseconds).
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record an operation duration.
+     *
+     * @param durationNanos Duration in nanoseconds
+     */
+    public void update(long durationNanos) {
+        count.increment();
+        totalNanos.add(durationNanos);
+        maxNanos.accumulateAndGet(durationNanos, Math::max);
+    }
+
+    /**
+     * Record an operation started at the given time.
+     *
+     * @param startNanos Start time, from System.nanoTime()
+     */
+    public void updateSince(long startNanos) {
+        update(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded operations.
+     *
+     * @return Count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean duration of the recorded operations.
+     *
+     * @return Mean duration in milliseconds
+     */
+    public double getMeanMillis() {
+        long currentCount = count.sum();
+        if (currentCount == 0) {
+            return 0;
+        }
+        return (double) totalNanos.sum() / currentCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return Max duration in milliseconds
+     */
+    public double getMaxMillis() {
+        return (double) maxNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -1,9 +1,14 @@
 package com.sismics.util.mime;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Utility to check MIME types.
@@ -11,6 +16,11 @@ import java.nio.file.Path;
  * @author bgamard
  */
 public class MimeTypeUtil {
+    /**
+     * Magic number of the PDF files.
+     */
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
     /**
      * Try to guess the MIME type of a file.
      * 
@@ -33,6 +43,54 @@ public class MimeTypeUtil {
         return mimeType;
     }
     
+    /**
+     * Try to guess the MIME type of a file from its name, or from its first bytes.
+     * Used while a file is being uploaded, without reading it again.
+     *
+     * @param head First bytes of the file
+     * @param name File name
+     * @return MIME type
+     * @throws IOException e
+     */
+    public static String guessMimeType(byte[] head, String name) throws IOException {
+        String mimeType = null;
+        if (name != null) {
+            try {
+                mimeType = Files.probeContentType(Paths.get(name).getFileName());
+            } catch (InvalidPathException e) {
+                // Not a valid file name on this system, try the content
+            }
+            if (mimeType == null) {
+                mimeType = URLConnection.getFileNameMap().getContentTypeFor(name);
+            }
+        }
+
+        if (mimeType == null) {
+            if (startsWith(head, PDF_MAGIC)) {
+                mimeType = MimeType.APPLICATION_PDF;
+            } else {
+                mimeType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(head));
+            }
+        }
+
+        if (mimeType == null) {
+            return MimeType.DEFAULT;
+        }
+
+        return mimeType;
+    }
+
+    /**
+     * Returns true if some data starts with a prefix.
+     *
+     * @param data Data
+     * @param prefix Prefix
+     * @return True if the data starts with the prefix
+     */
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(Arrays.copyOf(data, prefix.length), prefix);
+    }
+
     /**
      * Get a file extension linked to a MIME type.
      * 
@@ -1,20 +1,32 @@
 package com.sismics.docs.core.dao.jpa;
 
+import com.google.common.collect.Sets;
 import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.AuthenticationTokenDao;
 import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.GroupDao;
+import com.sismics.docs.core.dao.RoleBaseFunctionDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.criteria.UserCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.dao.dto.UserDto;
+import com.sismics.docs.core.model.jpa.AuthenticationToken;
 import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.Group;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.authentication.InternalAuthenticationHandler;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.core.constant.PermType;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.metrics.MetricRegistry;
 import org.junit.Assert;
 import org.junit.Test;
 
+import jakarta.persistence.EntityManager;
+
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -389,4 +401,87 @@ public class TestJpa extends BaseTransactionalTest {
         userDao.delete("docUser1", user1.getId());
         TransactionUtil.commit();
     }
-}
\ No newline at end of file
+    
+    /**
+     * Test the revocation of the signed session tokens deleted in the database.
+     */
+    @Test
+    public void testSessionTokenRevocation() throws Exception {
+        SessionTokenUtil.setSecret("secret".getBytes(StandardCharsets.UTF_8));
+        try {
+            User user = createUser("tokenUser");
+            AuthenticationTokenDao authenticationTokenDao = new AuthenticationTokenDao();
+            String oldTokenId = authenticationTokenDao.create(new AuthenticationToken()
+                    .setUserId(user.getId())
+                    .setLastConnectionDate(new Date(System.currentTimeMillis() - 2 * 24 * 3600 * 1000L)));
+            String tokenId = authenticationTokenDao.create(new AuthenticationToken()
+                    .setUserId(user.getId())
+                    .setLastConnectionDate(new Date()));
+            TransactionUtil.commit();
+            SessionTokenUtil.setVerified(oldTokenId);
+            SessionTokenUtil.setVerified(tokenId);
+
+            // Old session tokens are revoked on login
+            authenticationTokenDao.deleteOldSessionToken(user.getId());
+            TransactionUtil.commit();
+            Assert.assertFalse(SessionTokenUtil.isActive(oldTokenId));
+            Assert.assertTrue(SessionTokenUtil.isActive(tokenId));
+
+            // The tokens of a deleted user are revoked
+            new UserDao().delete("tokenUser", user.getId());
+            TransactionUtil.commit();
+            Assert.assertFalse(SessionTokenUtil.isActive(tokenId));
+        } finally {
+            SessionTokenUtil.setSecret(null);
+        }
+    }
+
+    /**
+     * Test the second-level cache of the reference data.
+     */
+    @Test
+    public void testSecondLevelCache() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        GroupDao groupDao = new GroupDao();
+        Group group = new Group();
+        group.setName("cacheGroup");
+        String groupId = groupDao.create(group, "admin");
+        TransactionUtil.commit();
+
+        // The second query is served by the query cache, which holds the entity data
+        em.clear();
+        Assert.assertEquals("cacheGroup", groupDao.getActiveById(groupId).getName());
+        long queryHitCount = MetricRegistry.counter("hibernate_cache.default-query-results-region.hit").get();
+        em.clear();
+        Assert.assertEquals("cacheGroup", groupDao.getActiveById(groupId).getName());
+        Assert.assertEquals(queryHitCount + 1, MetricRegistry.counter("hibernate_cache.default-query-results-region.hit").get());
+
+        // Loads by ID are served by the entity region
+        long hitCount = MetricRegistry.counter("hibernate_cache.group.hit").get();
+        em.clear();
+        Assert.assertEquals("cacheGroup", em.find(Group.class, groupId).getName());
+        Assert.assertEquals(hitCount + 1, MetricRegistry.counter("hibernate_cache.group.hit").get());
+
+        // Updates are visible in the cache
+        group.setName("cacheGroupUpdated");
+        groupDao.update(group, "admin");
+        TransactionUtil.commit();
+        em.clear();
+        Assert.assertEquals("cacheGroupUpdated", groupDao.getActiveById(groupId).getName());
+        Assert.assertEquals(groupId, groupDao.getActiveByName("cacheGroupUpdated").getId());
+        Assert.assertNull(groupDao.getActiveByName("cacheGroup"));
+
+        // Cached query results are invalidated by the deletion
+        groupDao.delete(groupId, "admin");
+        TransactionUtil.commit();
+        em.clear();
+        Assert.assertNull(groupDao.getActiveById(groupId));
+
+        // Base functions of the cached roles
+        RoleBaseFunctionDao roleBaseFunctionDao = new RoleBaseFunctionDao();
+        Assert.assertTrue(roleBaseFunctionDao.findByRoleId(Sets.newHashSet("admin")).contains("ADMIN"));
+        em.clear();
+        Assert.assertTrue(roleBaseFunctionDao.findByRoleId(Sets.newHashSet("admin")).contains("ADMIN"));
+        Assert.assertTrue(roleBaseFunctionDao.findByRoleId(Sets.newHashSet("user")).isEmpty());
+    }
+}
@@ -0,0 +1,119 @@
+package com.sismics.docs.core.model.context;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.util.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test of the bounded async event queues.
+ */
+public class TestAsyncEventQueue {
+    @Test
+    public void testSaturatedQueue() throws Exception {
+        AsyncEventQueue queue = new AsyncEventQueue("test_saturated", 1, 1, Thread.NORM_PRIORITY, false);
+        BlockingListener listener = new BlockingListener();
+        queue.register(listener);
+        try {
+            // One event is processed, one is waiting, the queue is full
+            queue.post(new Object());
+            Assert.assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+            queue.post(new Object());
+            Assert.assertTrue(queue.isFull());
+            Assert.assertEquals(2, queue.getQueuedTaskCount());
+            Assert.assertEquals(2, MetricRegistry.getValues().get("async.test_saturated.queued").intValue());
+            Assert.assertEquals(1, MetricRegistry.getValues().get("async.test_saturated.active").intValue());
+
+            // Posting to a full queue blocks until there is some space
+            Thread poster = new Thread(() -> queue.post(new Object()));
+            poster.start();
+            poster.join(500);
+            Assert.assertTrue(poster.isAlive());
+            Assert.assertEquals(1, MetricRegistry.counter("async.test_saturated.blocked").get());
+
+            // Nothing is dropped
+            listener.release.countDown();
+            poster.join(10000);
+            Assert.assertFalse(poster.isAlive());
+            queue.shutDown();
+            Assert.assertEquals(3, listener.processedCount.get());
+            Assert.assertEquals(0, MetricRegistry.counter("async.test_saturated.rejected").get());
+            Assert.assertEquals(3, MetricRegistry.timer("async.test_saturated.wait").getCount());
+        } finally {
+            listener.release.countDown();
+            queue.shutDown();
+        }
+    }
+
+    @Test
+    public void testShutdownQueue() throws Exception {
+        AsyncEventQueue queue = new AsyncEventQueue("test_shutdown", 1, 1, Thread.NORM_PRIORITY, false);
+        BlockingListener listener = new BlockingListener();
+        queue.register(listener);
+        try {
+            queue.post(new Object());
+            Assert.assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+            queue.post(new Object());
+
+            // A blocked post is rejected when the queue shuts down
+            AtomicReference<Exception> exception = new AtomicReference<>();
+            Thread poster = new Thread(() -> {
+                try {
+                    queue.post(new Object());
+                } catch (Exception e) {
+                    exception.set(e);
+                }
+            });
+            poster.start();
+            Thread shutdown = new Thread(queue::shutDown);
+            shutdown.start();
+            poster.join(10000);
+            Assert.assertFalse(poster.isAlive());
+            Assert.assertTrue(exception.get() instanceof RejectedExecutionException);
+            Assert.assertEquals(1, MetricRegistry.counter("async.test_shutdown.rejected").get());
+
+            // The queued events are still processed
+            listener.release.countDown();
+            shutdown.join(10000);
+            Assert.assertEquals(2, listener.processedCount.get());
+        } finally {
+            listener.release.countDown();
+            queue.shutDown();
+        }
+    }
+
+    /**
+     * Listener blocking until released.
+     */
+    public static class BlockingListener {
+        /**
+         * Signaled when the first event is being processed.
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Releases the processing of the events.
+         */
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        /**
+         * Number of processed events.
+         */
+        private final AtomicInteger processedCount = new AtomicInteger();
+
+        @Subscribe
+        @AllowConcurrentEvents
+        public void on(Object event) throws InterruptedException {
+            started.countDown();
+            release.await();
+            processedCount.incrementAndGet();
+        }
+    }
+}
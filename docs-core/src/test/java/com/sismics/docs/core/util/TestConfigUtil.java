@@ -0,0 +1,53 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the in-memory configuration parameters.
+ */
+public class TestConfigUtil extends BaseTransactionalTest {
+    @Test
+    public void testSnapshot() {
+        // The parameters are loaded once
+        ConfigUtil.clear();
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        long loadCount = MetricRegistry.counter("config_cache.load").get();
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertTrue(ConfigUtil.getConfigBooleanValue(ConfigType.LDAP_ENABLED, true));
+        Assert.assertNull(ConfigUtil.getConfigStringValue(ConfigType.LDAP_HOST, null));
+        Assert.assertEquals(loadCount, MetricRegistry.counter("config_cache.load").get());
+        try {
+            ConfigUtil.getConfigStringValue(ConfigType.LDAP_HOST);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // NOP
+        }
+
+        // A modification replaces the snapshot
+        ConfigDao configDao = new ConfigDao();
+        configDao.update(ConfigType.DEFAULT_LANGUAGE, "fra");
+        TransactionUtil.commit();
+        ThreadLocalContext.get().fireAllAsyncEvents();
+        Assert.assertEquals("fra", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals(loadCount + 1, MetricRegistry.counter("config_cache.load").get());
+
+        // The uncommitted parameters are only seen by the modifying transaction
+        configDao.update(ConfigType.DEFAULT_LANGUAGE, "eng");
+        loadCount = MetricRegistry.counter("config_cache.load").get();
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals(loadCount + 2, MetricRegistry.counter("config_cache.load").get());
+
+        TransactionUtil.commit();
+        ThreadLocalContext.get().fireAllAsyncEvents();
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals(loadCount + 3, MetricRegistry.counter("config_cache.load").get());
+    }
+}
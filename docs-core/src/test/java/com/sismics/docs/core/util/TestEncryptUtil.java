@@ -3,12 +3,16 @@ package com.sismics.docs.core.util;
 import com.google.common.base.Strings;
 import com.google.common.io.ByteStreams;
 import com.sismics.BaseTest;
+import com.sismics.util.metrics.MetricRegistry;
+import com.sismics.util.metrics.Timer;
 import org.junit.Assert;
 import org.junit.Test;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Test of the encryption utilities.
@@ -48,4 +52,48 @@ public class TestEncryptUtil extends BaseTest {
         
         Assert.assertEquals(encryptedData.length, assertData.length);
     }
+
+    @Test
+    public void cachedKeyTest() throws Exception {
+        String privateKey = EncryptionUtil.generatePrivateKey();
+        byte[] data = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF));
+        Timer keyDerivationTimer = MetricRegistry.timer("encryption.key_derivation");
+
+        // The first cipher derives the key, the next ones reuse it
+        long derivationCount = keyDerivationTimer.getCount();
+        byte[] encryptedData = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                EncryptionUtil.getEncryptionCipher(privateKey)));
+        Assert.assertEquals(derivationCount + 1, keyDerivationTimer.getCount());
+        byte[] encryptedData2 = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                EncryptionUtil.getEncryptionCipher(privateKey)));
+        Assert.assertEquals(derivationCount + 1, keyDerivationTimer.getCount());
+        Assert.assertArrayEquals(encryptedData, encryptedData2);
+
+        // The cached key decrypts the data encrypted with the derived key
+        byte[] decryptedData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                new ByteArrayInputStream(encryptedData), privateKey));
+        Assert.assertEquals(derivationCount + 1, keyDerivationTimer.getCount());
+        Assert.assertArrayEquals(data, decryptedData);
+
+        // Files encrypted before the cache are decrypted the same way with a cached key
+        for (int i = 0; i < 2; i++) {
+            decryptedData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                    getSystemResourceAsStream(FILE_PDF_ENCRYPTED), "OnceUponATime"));
+            Assert.assertArrayEquals(data, decryptedData);
+        }
+    }
+
+    @Test
+    public void decryptRangeTest() throws Exception {
+        byte[] data = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF));
+        byte[] encryptedData = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF_ENCRYPTED));
+
+        // Decrypt from inside a block, without reading the previous blocks
+        for (long offset : new long[] { 0, 15, 16, 1000, 4099, data.length - 1 }) {
+            long blockStart = EncryptionUtil.getBlockStart(offset);
+            InputStream inputStream = EncryptionUtil.decryptInputStream(new ByteArrayInputStream(encryptedData,
+                    (int) blockStart, encryptedData.length - (int) blockStart), "OnceUponATime", offset);
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, (int) offset, data.length), ByteStreams.toByteArray(inputStream));
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.core.util.jpa.PageCursor;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.sql.Timestamp;
+
+/**
+ * Test of the page cursors.
+ */
+public class TestPageCursor {
+    @Test
+    public void encodeTest() {
+        SortCriteria sortCriteria = new SortCriteria(3, false);
+
+        // Offset cursor
+        PageCursor pageCursor = PageCursor.decode(PageCursor.ofOffset(20).encode());
+        Assert.assertEquals(Integer.valueOf(20), pageCursor.getOffset());
+        Assert.assertFalse(pageCursor.matches(sortCriteria));
+
+        // Key cursor on a timestamp, the nanoseconds are kept
+        Timestamp timestamp = new Timestamp(1000L);
+        timestamp.setNanos(123456789);
+        pageCursor = PageCursor.decode(PageCursor.ofKey(sortCriteria, "id1", timestamp).encode());
+        Assert.assertNull(pageCursor.getOffset());
+        Assert.assertEquals("id1", pageCursor.getId());
+        Assert.assertEquals(timestamp, pageCursor.getValue());
+        Assert.assertTrue(pageCursor.matches(sortCriteria));
+        Assert.assertFalse(pageCursor.matches(new SortCriteria(3, true)));
+        Assert.assertFalse(pageCursor.matches(null));
+
+        // Key cursor on other values
+        Assert.assertEquals("a|b", PageCursor.decode(PageCursor.ofKey(sortCriteria, "id1", "a|b").encode()).getValue());
+        Assert.assertEquals(12L, PageCursor.decode(PageCursor.ofKey(sortCriteria, "id1", BigInteger.valueOf(12)).encode()).getValue());
+        Assert.assertNull(PageCursor.decode(PageCursor.ofKey(sortCriteria, "id1", null).encode()).getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTest() {
+        PageCursor.decode("invalid");
+    }
+}
@@ -0,0 +1,83 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Test of the signed session tokens.
+ */
+public class TestSessionTokenUtil {
+    @After
+    public void tearDown() {
+        SessionTokenUtil.setSecret(null);
+    }
+
+    @Test
+    public void signedTokenTest() {
+        AuthenticationToken authenticationToken = new AuthenticationToken()
+                .setId("token1")
+                .setUserId("user1")
+                .setLongLasted(true)
+                .setCreationDate(new Date(1000L));
+
+        // Without secret, the token ID is used as is
+        Assert.assertEquals("token1", SessionTokenUtil.sign(authenticationToken));
+        Assert.assertNull(SessionTokenUtil.verify("token1"));
+
+        // Sign and verify a token
+        SessionTokenUtil.setSecret("secret".getBytes(StandardCharsets.UTF_8));
+        String value = SessionTokenUtil.sign(authenticationToken);
+        Assert.assertEquals("token1", SessionTokenUtil.getTokenId(value));
+        Assert.assertEquals("token1", SessionTokenUtil.getTokenId("token1"));
+        SessionTokenUtil.SessionToken sessionToken = SessionTokenUtil.verify(value);
+        Assert.assertNotNull(sessionToken);
+        Assert.assertEquals("token1", sessionToken.getId());
+        Assert.assertEquals("user1", sessionToken.getUserId());
+        Assert.assertEquals(1000L, sessionToken.getCreationDate());
+        Assert.assertTrue(sessionToken.isLongLasted());
+
+        // Tampered tokens are rejected
+        Assert.assertNull(SessionTokenUtil.verify(value.replace("user1", "admin")));
+        Assert.assertNull(SessionTokenUtil.verify(value.substring(0, value.length() - 2)));
+        Assert.assertNull(SessionTokenUtil.verify("token1"));
+
+        // Tokens signed with another secret are rejected
+        SessionTokenUtil.setSecret("other".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(SessionTokenUtil.verify(value));
+    }
+
+    @Test
+    public void revokedTokenTest() {
+        SessionTokenUtil.setSecret("secret".getBytes(StandardCharsets.UTF_8));
+        String value = SessionTokenUtil.sign(new AuthenticationToken()
+                .setId("token2")
+                .setUserId("user1")
+                .setCreationDate(new Date()));
+
+        // Unknown tokens must be checked in the database
+        Assert.assertFalse(SessionTokenUtil.isActive("token2"));
+        SessionTokenUtil.setVerified("token2");
+        Assert.assertTrue(SessionTokenUtil.isActive("token2"));
+        Assert.assertNotNull(SessionTokenUtil.verify(value));
+
+        // Recent verifications are kept
+        SessionTokenUtil.removeExpiredEntries();
+        Assert.assertTrue(SessionTokenUtil.isActive("token2"));
+
+        // Revoke the token, immediately on this instance
+        SessionTokenUtil.revoke("token2");
+        Assert.assertFalse(SessionTokenUtil.isActive("token2"));
+        Assert.assertNull(SessionTokenUtil.verify(value));
+
+        // Still revoked if found in the database before the deletion is committed
+        SessionTokenUtil.setVerified("token2");
+        Assert.assertFalse(SessionTokenUtil.isActive("token2"));
+        Assert.assertNull(SessionTokenUtil.verify(value));
+    }
+}
@@ -0,0 +1,390 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.util.storage.LocalStorageBackend;
+import com.sismics.docs.core.util.storage.S3StorageBackend;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageOutputStream;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test of the storage backends.
+ */
+public class TestStorageBackend {
+    @Test
+    public void localTest() throws Exception {
+        Path root = Files.createTempDirectory("docs_storage");
+        LocalStorageBackend backend = new LocalStorageBackend(root);
+
+        // Write a file and its thumbnail, they are in the same hashed directory
+        backend.write("file1", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+        backend.write("file1_thumb", new ByteArrayInputStream("thumb".getBytes(StandardCharsets.UTF_8)));
+        Path path = backend.getPath("file1");
+        Assert.assertEquals(root, path.getParent().getParent().getParent());
+        Assert.assertEquals(path.getParent(), backend.getPath("file1_thumb").getParent());
+
+        // A failed write leaves the previous object and no temporary file
+        try {
+            backend.write("file1", failingInputStream("partial".getBytes(StandardCharsets.UTF_8)));
+            Assert.fail();
+        } catch (IOException e) {
+            // OK
+        }
+        try (OutputStream os = backend.write("file1_thumb")) {
+            os.write("uncommitted".getBytes(StandardCharsets.UTF_8));
+        }
+        try (Stream<Path> pathStream = Files.list(path.getParent())) {
+            Assert.assertEquals(2, pathStream.count());
+        }
+        try (InputStream is = backend.read("file1_thumb")) {
+            Assert.assertEquals("thumb", new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+        Assert.assertTrue(backend.exists("file1"));
+        Assert.assertEquals(7, backend.size("file1"));
+        try (InputStream is = backend.read("file1")) {
+            Assert.assertEquals("content", new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+        try (InputStream is = backend.read("file1", 3)) {
+            Assert.assertEquals("tent", new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+
+        // Files of the previous layout are still readable
+        Files.write(root.resolve("file2"), "legacy".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(backend.exists("file2"));
+        try (InputStream is = backend.read("file2")) {
+            Assert.assertEquals("legacy", new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+        try (Stream<String> keyStream = backend.list()) {
+            Assert.assertEquals(Arrays.asList("file1", "file1_thumb", "file2"), keyStream.sorted().collect(Collectors.toList()));
+        }
+
+        // Move them to the hashed layout
+        Assert.assertEquals(1, backend.migrateLegacyLayout());
+        Assert.assertFalse(Files.exists(root.resolve("file2")));
+        Assert.assertNotEquals(root, backend.getPath("file2").getParent());
+        Assert.assertEquals(6, backend.size("file2"));
+
+        // Delete
+        backend.delete("file1");
+        Assert.assertFalse(backend.exists("file1"));
+        Assert.assertTrue(backend.exists("file1_thumb"));
+        try {
+            backend.read("file1");
+            Assert.fail();
+        } catch (NoSuchFileException e) {
+            // OK
+        }
+    }
+
+    @Test
+    public void s3Test() throws Exception {
+        FakeS3Server server = new FakeS3Server();
+        try {
+            // Small part size to test the multipart uploads
+            S3StorageBackend backend = new S3StorageBackend(server.getEndpoint(), "us-east-1", "docs", "access", "secret", 1024);
+
+            // Single request upload
+            backend.write("file1", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+            Assert.assertEquals(0, server.multipartUploadCount.get());
+            Assert.assertTrue(backend.exists("file1"));
+            Assert.assertEquals(7, backend.size("file1"));
+            try (InputStream is = backend.read("file1")) {
+                Assert.assertEquals("content", new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+            }
+
+            // Multipart upload
+            byte[] data = new byte[5000];
+            new Random(42).nextBytes(data);
+            try (StorageOutputStream os = backend.write("file1_web")) {
+                os.write(data, 0, 100);
+                os.write(data, 100, data.length - 100);
+                os.commit();
+            }
+            Assert.assertEquals(1, server.multipartUploadCount.get());
+            Assert.assertEquals(5000, backend.size("file1_web"));
+            try (InputStream is = backend.read("file1_web")) {
+                Assert.assertArrayEquals(data, ByteStreams.toByteArray(is));
+            }
+            try (InputStream is = backend.read("file1_web", 4000)) {
+                Assert.assertArrayEquals(Arrays.copyOfRange(data, 4000, data.length), ByteStreams.toByteArray(is));
+            }
+            Assert.assertEquals(1, server.rangeRequestCount.get());
+
+            // A failed write uploads nothing, or aborts the multipart upload
+            try {
+                backend.write("file1", failingInputStream(new byte[100]));
+                Assert.fail();
+            } catch (IOException e) {
+                // OK
+            }
+            try {
+                backend.write("file1_web", failingInputStream(new byte[3000]));
+                Assert.fail();
+            } catch (IOException e) {
+                // OK
+            }
+            Assert.assertEquals(2, server.multipartUploadCount.get());
+            Assert.assertEquals(1, server.abortedUploadCount.get());
+            Assert.assertTrue(server.uploadMap.isEmpty());
+            try (InputStream is = backend.read("file1")) {
+                Assert.assertEquals("content", new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+            }
+            Assert.assertEquals(5000, backend.size("file1_web"));
+
+            // A failed part stops the upload before the next parts are sent
+            server.failingPart = true;
+            int partCount = server.uploadedPartCount.get();
+            try (StorageOutputStream os = backend.write("file1_web")) {
+                for (int i = 0; i < 100; i++) {
+                    os.write(new byte[1024]);
+                }
+                Assert.fail();
+            } catch (IOException e) {
+                // OK
+            }
+            server.failingPart = false;
+            Assert.assertTrue(server.uploadedPartCount.get() - partCount < 100);
+            Assert.assertEquals(2, server.abortedUploadCount.get());
+            Assert.assertTrue(server.uploadMap.isEmpty());
+            Assert.assertEquals(5000, backend.size("file1_web"));
+
+            // List with several pages
+            for (int i = 0; i < 5; i++) {
+                backend.write("file" + (i + 2), new ByteArrayInputStream(new byte[i]));
+            }
+            try (Stream<String> keyStream = backend.list()) {
+                Assert.assertEquals(7, keyStream.count());
+            }
+
+            // Delete
+            backend.delete("file1");
+            Assert.assertFalse(backend.exists("file1"));
+            try {
+                backend.size("file1");
+                Assert.fail();
+            } catch (NoSuchFileException e) {
+                // OK
+            }
+            try {
+                backend.read("file1");
+                Assert.fail();
+            } catch (NoSuchFileException e) {
+                // OK
+            }
+
+            // Migrate a local storage, the objects already copied are skipped
+            Path root = Files.createTempDirectory("docs_storage");
+            LocalStorageBackend localBackend = new LocalStorageBackend(root);
+            localBackend.write("file10", new ByteArrayInputStream("local".getBytes(StandardCharsets.UTF_8)));
+            localBackend.write("file2", new ByteArrayInputStream(new byte[0]));
+            Assert.assertEquals(1, StorageUtil.migrate(localBackend, backend));
+            Assert.assertEquals(5, backend.size("file10"));
+            Assert.assertEquals(0, StorageUtil.migrate(localBackend, backend));
+
+            Assert.assertTrue(server.signed);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Returns an input stream failing after some data.
+     *
+     * @param data Data read before the failure
+     * @return Input stream
+     */
+    private static InputStream failingInputStream(byte[] data) {
+        return new SequenceInputStream(new ByteArrayInputStream(data), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Read error");
+            }
+        });
+    }
+
+    /**
+     * Minimal in-memory S3 server.
+     */
+    private static class FakeS3Server {
+        private static final Pattern PART_ETAG_PATTERN = Pattern.compile("<ETag>([^<]*)</ETag>");
+
+        private final HttpServer httpServer;
+
+        private final SortedMap<String, byte[]> objectMap = new TreeMap<>();
+
+        private final Map<String, Map<Integer, byte[]>> uploadMap = new ConcurrentHashMap<>();
+
+        private final AtomicInteger multipartUploadCount = new AtomicInteger();
+
+        private final AtomicInteger abortedUploadCount = new AtomicInteger();
+
+        private final AtomicInteger rangeRequestCount = new AtomicInteger();
+
+        private final AtomicInteger uploadedPartCount = new AtomicInteger();
+
+        private volatile boolean failingPart;
+
+        private volatile boolean signed = true;
+
+        private FakeS3Server() throws IOException {
+            httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpServer.createContext("/docs", exchange -> {
+                try {
+                    handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            });
+            httpServer.start();
+        }
+
+        private URI getEndpoint() {
+            return URI.create("http://127.0.0.1:" + httpServer.getAddress().getPort());
+        }
+
+        private void stop() {
+            httpServer.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !authorization.startsWith("AWS4-HMAC-SHA256 Credential=access/")) {
+                signed = false;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String key = path.length() > "/docs/".length() ? path.substring("/docs/".length()) : null;
+            Map<String, String> query = new HashMap<>();
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null) {
+                for (String param : rawQuery.split("&")) {
+                    String[] parts = param.split("=", 2);
+                    query.put(parts[0], parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "");
+                }
+            }
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String method = exchange.getRequestMethod();
+
+            if (key == null) {
+                // List the objects, 3 per page
+                List<String> keyList;
+                synchronized (objectMap) {
+                    String token = query.get("continuation-token");
+                    keyList = (token == null ? objectMap : objectMap.tailMap(token)).keySet().stream().limit(4).collect(Collectors.toList());
+                }
+                StringBuilder sb = new StringBuilder("<ListBucketResult>");
+                for (String listedKey : keyList.subList(0, Math.min(3, keyList.size()))) {
+                    sb.append("<Contents><Key>").append(listedKey).append("</Key></Contents>");
+                }
+                sb.append("<IsTruncated>").append(keyList.size() > 3).append("</IsTruncated>");
+                if (keyList.size() > 3) {
+                    sb.append("<NextContinuationToken>").append(keyList.get(3)).append("</NextContinuationToken>");
+                }
+                sb.append("</ListBucketResult>");
+                respond(exchange, 200, sb.toString().getBytes(StandardCharsets.UTF_8));
+            } else if (method.equals("POST") && query.containsKey("uploads")) {
+                String uploadId = "upload" + multipartUploadCount.incrementAndGet();
+                uploadMap.put(uploadId, new ConcurrentHashMap<>());
+                respond(exchange, 200, ("<InitiateMultipartUploadResult><UploadId>" + uploadId
+                        + "</UploadId></InitiateMultipartUploadResult>").getBytes(StandardCharsets.UTF_8));
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                Map<Integer, byte[]> partMap = uploadMap.remove(query.get("uploadId"));
+                Matcher matcher = PART_ETAG_PATTERN.matcher(new String(body, StandardCharsets.UTF_8));
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                int partNumber = 1;
+                while (matcher.find()) {
+                    Assert.assertEquals("\"etag" + partNumber + "\"", matcher.group(1));
+                    content.write(partMap.get(partNumber++));
+                }
+                synchronized (objectMap) {
+                    objectMap.put(key, content.toByteArray());
+                }
+                respond(exchange, 200, "<CompleteMultipartUploadResult/>".getBytes(StandardCharsets.UTF_8));
+            } else if (method.equals("PUT") && query.containsKey("uploadId")) {
+                uploadedPartCount.incrementAndGet();
+                if (failingPart) {
+                    respond(exchange, 500, "<Error><Code>InternalError</Code></Error>".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                int partNumber = Integer.parseInt(query.get("partNumber"));
+                uploadMap.get(query.get("uploadId")).put(partNumber, body);
+                exchange.getResponseHeaders().add("ETag", "\"etag" + partNumber + "\"");
+                respond(exchange, 200, null);
+            } else if (method.equals("PUT")) {
+                synchronized (objectMap) {
+                    objectMap.put(key, body);
+                }
+                respond(exchange, 200, null);
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                uploadMap.remove(query.get("uploadId"));
+                abortedUploadCount.incrementAndGet();
+                respond(exchange, 204, null);
+            } else if (method.equals("DELETE")) {
+                synchronized (objectMap) {
+                    objectMap.remove(key);
+                }
+                respond(exchange, 204, null);
+            } else {
+                byte[] data;
+                synchronized (objectMap) {
+                    data = objectMap.get(key);
+                }
+                if (data == null) {
+                    respond(exchange, 404, method.equals("HEAD") ? null : "<Error><Code>NoSuchKey</Code></Error>".getBytes(StandardCharsets.UTF_8));
+                } else if (method.equals("HEAD")) {
+                    exchange.getResponseHeaders().add("Content-Length", Integer.toString(data.length));
+                    exchange.sendResponseHeaders(200, -1);
+                } else if (exchange.getRequestHeaders().containsKey("Range")) {
+                    rangeRequestCount.incrementAndGet();
+                    String range = exchange.getRequestHeaders().getFirst("Range");
+                    int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                    respond(exchange, 206, Arrays.copyOfRange(data, start, data.length));
+                } else {
+                    respond(exchange, 200, data);
+                }
+            }
+        }
+
+        private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+            if (body == null || body.length == 0) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Tag;
+import com.sismics.docs.core.model.jpa.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Test of the tag cache.
+ */
+public class TestTagCache extends BaseTransactionalTest {
+    @Test
+    public void testAclInvalidation() throws Exception {
+        User owner = createUser("tag_cache_owner");
+        User reader = createUser("tag_cache_reader");
+
+        // Create a tag readable by its owner
+        Tag tag = new Tag();
+        tag.setName("cached");
+        tag.setColor("#ff0000");
+        tag.setUserId(owner.getId());
+        new TagDao().create(tag, owner.getId());
+        AclDao aclDao = new AclDao();
+        createAcl(aclDao, tag.getId(), owner.getId());
+        Assert.assertEquals(1, TagCache.getVisibleTagList(Lists.newArrayList(owner.getId())).size());
+        Assert.assertTrue(TagCache.getVisibleTagList(Lists.newArrayList(reader.getId())).isEmpty());
+
+        // The cached tags are served until an ACL is modified
+        Assert.assertSame(TagCache.getVisibleTagList(Lists.newArrayList(reader.getId())),
+                TagCache.getVisibleTagList(Lists.newArrayList(reader.getId())));
+
+        // Sharing the tag invalidates the cache
+        createAcl(aclDao, tag.getId(), reader.getId());
+        List<TagDto> tagDtoList = TagCache.getVisibleTagList(Lists.newArrayList(reader.getId()));
+        Assert.assertEquals(1, tagDtoList.size());
+        Assert.assertEquals("cached", tagDtoList.get(0).getName());
+
+        // Unsharing the tag invalidates the cache
+        aclDao.delete(tag.getId(), PermType.READ, reader.getId(), owner.getId(), AclType.USER);
+        Assert.assertTrue(TagCache.getVisibleTagList(Lists.newArrayList(reader.getId())).isEmpty());
+        Assert.assertEquals(1, TagCache.getVisibleTagList(Lists.newArrayList(owner.getId())).size());
+    }
+
+    /**
+     * Create a READ ACL on a tag.
+     *
+     * @param aclDao ACL DAO
+     * @param tagId Tag ID
+     * @param targetId Target ID
+     */
+    private void createAcl(AclDao aclDao, String tagId, String targetId) {
+        Acl acl = new Acl();
+        acl.setPerm(PermType.READ);
+        acl.setType(AclType.USER);
+        acl.setSourceId(tagId);
+        acl.setTargetId(targetId);
+        aclDao.create(acl, targetId);
+    }
+}
@@ -0,0 +1,185 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.util.mime.MimeType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Test of the Lucene indexing handler, with the searches filtered in the index.
+ */
+public class TestLuceneIndexingHandler extends BaseTransactionalTest {
+    @Test
+    public void testFilterFields() throws Exception {
+        LuceneIndexingHandler indexingHandler = new LuceneIndexingHandler(true);
+        indexingHandler.startUp();
+        try {
+            User creator = createUser("filter_creator");
+            User reader = createUser("filter_reader");
+
+            // Create a document readable by its creator
+            Document document = createDocument(creator, "Filtered document");
+            AclDao aclDao = new AclDao();
+            createAcl(aclDao, document.getId(), creator.getId());
+            indexingHandler.createDocument(document);
+            Assert.assertEquals(1, search(indexingHandler, creator.getId(), null));
+            Assert.assertEquals(0, search(indexingHandler, reader.getId(), null));
+
+            // Only the titles of readable documents are suggested
+            Assert.assertEquals(Lists.newArrayList("filtered"), suggest(indexingHandler, creator.getId()));
+            Assert.assertTrue(suggest(indexingHandler, reader.getId()).isEmpty());
+
+            // The readers are updated with the ACLs
+            createAcl(aclDao, document.getId(), reader.getId());
+            indexingHandler.createAcl(document.getId(), PermType.READ, reader.getId());
+            Assert.assertEquals(1, search(indexingHandler, reader.getId(), null));
+            aclDao.delete(document.getId(), PermType.READ, reader.getId(), creator.getId(), AclType.USER);
+            indexingHandler.deleteAcl(document.getId(), PermType.READ, reader.getId());
+            Assert.assertEquals(0, search(indexingHandler, reader.getId(), null));
+
+            // The MIME types are updated with the files
+            Assert.assertEquals(0, search(indexingHandler, creator.getId(), MimeType.APPLICATION_PDF));
+            File file = new File();
+            file.setUserId(creator.getId());
+            file.setDocumentId(document.getId());
+            file.setName("filtered.pdf");
+            file.setMimeType(MimeType.APPLICATION_PDF);
+            file.setVersion(0);
+            file.setLatestVersion(true);
+            file.setSize(0L);
+            FileDao fileDao = new FileDao();
+            fileDao.create(file, creator.getId());
+            indexingHandler.createFile(file);
+            Assert.assertEquals(1, search(indexingHandler, creator.getId(), MimeType.APPLICATION_PDF));
+
+            // The MIME types of both documents are updated when a file is moved
+            Document otherDocument = createDocument(creator, "Filtered other document");
+            createAcl(aclDao, otherDocument.getId(), creator.getId());
+            indexingHandler.createDocument(otherDocument);
+            file.setDocumentId(otherDocument.getId());
+            fileDao.update(file);
+            indexingHandler.updateFile(file, document.getId());
+            Assert.assertEquals(1, search(indexingHandler, creator.getId(), MimeType.APPLICATION_PDF));
+            Assert.assertEquals(2, search(indexingHandler, creator.getId(), null));
+
+            // The MIME types are updated when a file is deleted
+            fileDao.delete(file.getId(), creator.getId());
+            indexingHandler.deleteFile(file.getId(), otherDocument.getId());
+            Assert.assertEquals(0, search(indexingHandler, creator.getId(), MimeType.APPLICATION_PDF));
+        } finally {
+            indexingHandler.shutDown();
+        }
+    }
+
+    @Test
+    public void testRebuildKeepsLiveChanges() throws Exception {
+        LuceneIndexingHandler indexingHandler = new LuceneIndexingHandler();
+        indexingHandler.startUp();
+        try {
+            User creator = createUser("rebuild_creator");
+            AclDao aclDao = new AclDao();
+            Document indexedDocument = createDocument(creator, "Filtered indexed document");
+            createAcl(aclDao, indexedDocument.getId(), creator.getId());
+            Document deletedDocument = createDocument(creator, "Filtered deleted document");
+            createAcl(aclDao, deletedDocument.getId(), creator.getId());
+
+            // A document is deleted after its batch is read, but before the batch is indexed
+            indexingHandler.startRebuild();
+            indexingHandler.deleteDocument(deletedDocument.getId());
+            indexingHandler.createDocuments(Lists.newArrayList(indexedDocument, deletedDocument));
+            indexingHandler.finishRebuild();
+            Assert.assertEquals(1, search(indexingHandler, creator.getId(), null));
+
+            // The swapped index is written to
+            indexingHandler.createDocument(deletedDocument);
+            Assert.assertEquals(2, search(indexingHandler, creator.getId(), null));
+        } finally {
+            indexingHandler.shutDown();
+        }
+    }
+
+    /**
+     * Create a document.
+     *
+     * @param creator Creator
+     * @param title Title
+     * @return Document
+     */
+    private Document createDocument(User creator, String title) {
+        Document document = new Document();
+        document.setUserId(creator.getId());
+        document.setLanguage("eng");
+        document.setTitle(title);
+        document.setCreateDate(new Date());
+        new DocumentDao().create(document, creator.getId());
+        return document;
+    }
+
+    /**
+     * Create a READ ACL on a document.
+     *
+     * @param aclDao ACL DAO
+     * @param documentId Document ID
+     * @param targetId Target ID
+     */
+    private void createAcl(AclDao aclDao, String documentId, String targetId) {
+        Acl acl = new Acl();
+        acl.setPerm(PermType.READ);
+        acl.setType(AclType.USER);
+        acl.setSourceId(documentId);
+        acl.setTargetId(targetId);
+        aclDao.create(acl, targetId);
+    }
+
+    /**
+     * Suggest the terms of the titles starting with "filt".
+     *
+     * @param indexingHandler Indexing handler
+     * @param targetId Target ID of the searching user
+     * @return Suggested terms
+     * @throws Exception e
+     */
+    private List<String> suggest(IndexingHandler indexingHandler, String targetId) throws Exception {
+        List<String> suggestionList = new ArrayList<>();
+        indexingHandler.suggestSearchTerms("filt", Lists.newArrayList(targetId), suggestionList);
+        return suggestionList;
+    }
+
+    /**
+     * Search the documents titled "filtered".
+     *
+     * @param indexingHandler Indexing handler
+     * @param targetId Target ID of the searching user
+     * @param mimeType Files MIME type, null for all documents
+     * @return Number of documents found
+     * @throws Exception e
+     */
+    private int search(IndexingHandler indexingHandler, String targetId, String mimeType) throws Exception {
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList(targetId));
+        criteria.setSimpleSearch("filtered");
+        criteria.setFullSearch("filtered");
+        criteria.setMimeType(mimeType);
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(10, 0);
+        indexingHandler.findByCriteria(paginatedList, new ArrayList<>(), criteria, null);
+        return paginatedList.getResultCount();
+    }
+}
@@ -0,0 +1,45 @@
+package com.sismics.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * Test of the HTTP utilities.
+ */
+public class TestHttpUtil {
+    @Test
+    public void parseRangeTest() {
+        Assert.assertNull(HttpUtil.parseRange(null, 100));
+        Assert.assertArrayEquals(new long[] { 0, 9 }, HttpUtil.parseRange("bytes=0-9", 100));
+        Assert.assertArrayEquals(new long[] { 50, 99 }, HttpUtil.parseRange("bytes=50-", 100));
+        Assert.assertArrayEquals(new long[] { 50, 99 }, HttpUtil.parseRange("bytes=50-500", 100));
+        Assert.assertArrayEquals(new long[] { 90, 99 }, HttpUtil.parseRange("bytes=-10", 100));
+        Assert.assertArrayEquals(new long[] { 0, 99 }, HttpUtil.parseRange("bytes=-500", 100));
+
+        // Not satisfiable
+        Assert.assertEquals(0, HttpUtil.parseRange("bytes=100-", 100).length);
+        Assert.assertEquals(0, HttpUtil.parseRange("bytes=-0", 100).length);
+
+        // Ignored
+        Assert.assertNull(HttpUtil.parseRange("bytes=0-9,20-29", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=9-0", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=-", 100));
+        Assert.assertNull(HttpUtil.parseRange("lines=0-9", 100));
+    }
+
+    @Test
+    public void matchesEntityTagTest() {
+        Assert.assertFalse(HttpUtil.matchesEntityTag(null, "\"a\""));
+        Assert.assertTrue(HttpUtil.matchesEntityTag("\"a\"", "\"a\""));
+        Assert.assertTrue(HttpUtil.matchesEntityTag("\"b\", W/\"a\"", "\"a\""));
+        Assert.assertTrue(HttpUtil.matchesEntityTag("*", "\"a\""));
+        Assert.assertFalse(HttpUtil.matchesEntityTag("\"b\"", "\"a\""));
+    }
+
+    @Test
+    public void formatHttpDateTest() {
+        Assert.assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpUtil.formatHttpDate(new Date(0)));
+    }
+}
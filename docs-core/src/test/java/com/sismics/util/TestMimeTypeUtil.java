@@ -6,8 +6,10 @@ import com.sismics.util.mime.MimeTypeUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Test of the utilities to check MIME types.
@@ -69,4 +71,18 @@ public class TestMimeTypeUtil extends BaseTest {
         path = Paths.get(getResource(FILE_MP4).toURI());
         Assert.assertEquals(MimeType.VIDEO_MP4, MimeTypeUtil.guessMimeType(path, FILE_MP4));
     }
+
+    @Test
+    public void testHead() throws Exception {
+        // Detect from the file name
+        byte[] head = Arrays.copyOf(Files.readAllBytes(Paths.get(getResource(FILE_DOCX).toURI())), 4096);
+        Assert.assertEquals(MimeType.OFFICE_DOCUMENT, MimeTypeUtil.guessMimeType(head, FILE_DOCX));
+
+        // Detect from the content without a file name
+        head = Arrays.copyOf(Files.readAllBytes(Paths.get(getResource(FILE_PDF).toURI())), 4096);
+        Assert.assertEquals(MimeType.APPLICATION_PDF, MimeTypeUtil.guessMimeType(head, null));
+        head = Arrays.copyOf(Files.readAllBytes(Paths.get(getResource(FILE_PNG).toURI())), 4096);
+        Assert.assertEquals(MimeType.IMAGE_PNG, MimeTypeUtil.guessMimeType(head, "image"));
+        Assert.assertEquals(MimeType.DEFAULT, MimeTypeUtil.guessMimeType(new byte[] { 1, 2, 3 }, null));
+    }
 }
@@ -0,0 +1,28 @@
+package com.sismics.util.jpa;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.util.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+/**
+ * Test of the HikariCP connection pool used by the test entity manager factory.
+ */
+public class TestHikariConnectionProvider extends BaseTransactionalTest {
+    @Test
+    public void poolMetricsTest() {
+        // The transaction of the test holds a connection
+        new UserDao().getActiveByUsername("admin");
+        SortedMap<String, Number> valueMap = MetricRegistry.getValues();
+        Assert.assertEquals(10, valueMap.get("database.pool.max").intValue());
+        Assert.assertTrue(valueMap.get("database.pool.active").intValue() >= 1);
+        Assert.assertTrue(valueMap.get("database.pool.total").intValue() <= 10);
+        Assert.assertEquals(0, valueMap.get("database.pool.pending").intValue());
+        Assert.assertTrue(valueMap.get("database.pool.saturation").doubleValue() > 0);
+        Assert.assertTrue(valueMap.get("database.pool.acquire.count").longValue() >= 1);
+        Assert.assertEquals(0, valueMap.get("database.pool.timeouts").longValue());
+    }
+}
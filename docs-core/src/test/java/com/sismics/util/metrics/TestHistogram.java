@@ -0,0 +1,58 @@
+package com.sismics.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test of the bucketed histogram.
+ */
+public class TestHistogram {
+    @Test
+    public void bucketEdgeTest() {
+        // A duration equal to a bound is counted in the bucket of this bound
+        Histogram histogram = new Histogram();
+        histogram.update(TimeUnit.MILLISECONDS.toNanos(2));
+        histogram.update(TimeUnit.MILLISECONDS.toNanos(2));
+        histogram.update(TimeUnit.MILLISECONDS.toNanos(2) + 1);
+        Assert.assertEquals(3, histogram.getCount());
+        Assert.assertEquals(2, histogram.getPercentileMillis(50), 0);
+        Assert.assertEquals(2, histogram.getPercentileMillis(66), 0);
+
+        // The next duration is in the next bucket, bounded by the max
+        Assert.assertEquals(2.000001, histogram.getPercentileMillis(67), 1e-9);
+        Assert.assertEquals(2.000001, histogram.getMaxMillis(), 1e-9);
+
+        // Durations above the last bound are reported with the max
+        histogram = new Histogram();
+        histogram.update(TimeUnit.SECONDS.toNanos(20));
+        Assert.assertEquals(20000, histogram.getPercentileMillis(50), 0);
+    }
+
+    @Test
+    public void percentileTest() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentileMillis(99), 0);
+        Assert.assertEquals(0, histogram.getMaxMillis(), 0);
+
+        // 90 fast, 9 medium and 1 slow operations
+        for (int i = 0; i < 90; i++) {
+            histogram.update(TimeUnit.MICROSECONDS.toNanos(500));
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.update(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        histogram.update(TimeUnit.MILLISECONDS.toNanos(3000));
+        Assert.assertEquals(100, histogram.getCount());
+
+        // Percentiles are the upper bound of their bucket
+        Assert.assertEquals(1, histogram.getPercentileMillis(50), 0);
+        Assert.assertEquals(1, histogram.getPercentileMillis(90), 0);
+        Assert.assertEquals(25, histogram.getPercentileMillis(95), 0);
+        Assert.assertEquals(25, histogram.getPercentileMillis(99), 0);
+        Assert.assertEquals(3000, histogram.getPercentileMillis(100), 0);
+        Assert.assertEquals(3000, histogram.getMaxMillis(), 0);
+    }
+}
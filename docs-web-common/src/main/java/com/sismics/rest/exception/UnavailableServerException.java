@@ -0,0 +1,33 @@
+package com.sismics.rest.exception;
+
+import jakarta.json.Json;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Jersey exception encapsulating a temporary overload of the server (SERVICE_UNAVAILABLE).
+ * The client is told when to retry with the Retry-After header.
+ */
+public class UnavailableServerException extends WebApplicationException {
+    /**
+     * Serial UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor of UnavailableServerException.
+     *
+     * @param type Error type (e.g. QueueFull)
+     * @param message Human readable error message
+     * @param retryAfter Delay before retrying (in seconds)
+     */
+    public UnavailableServerException(String type, String message, int retryAfter) {
+        super(Response.status(Status.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, retryAfter)
+            .entity(Json.createObjectBuilder()
+                .add("type", type)
+                .add("message", message).build()).build());
+    }
+}
@@ -26,7 +26,19 @@ public class AclUtil {
      */
     public static void addAcls(JsonObjectBuilder json, String sourceId, List<String> targetIdList) {
         AclDao aclDao = new AclDao();
-        List<AclDto> aclDtoList = aclDao.getBySourceId(sourceId, AclType.USER);
+        addAcls(json, sourceId, aclDao.getBySourceId(sourceId, AclType.USER), targetIdList);
+    }
+
+    /**
+     * Add already loaded ACLs to a JSON response.
+     *
+     * @param json JSON
+     * @param sourceId Source ID
+     * @param aclDtoList ACLs of the source
+     * @param targetIdList List of target ID
+     */
+    public static void addAcls(JsonObjectBuilder json, String sourceId, List<AclDto> aclDtoList, List<String> targetIdList) {
+        AclDao aclDao = new AclDao();
         JsonArrayBuilder aclList = Json.createArrayBuilder();
         for (AclDto aclDto : aclDtoList) {
             aclList.add(Json.createObjectBuilder()
@@ -5,6 +5,9 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -28,15 +31,15 @@ import java.io.ByteArrayInputStream;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.interfaces.RSAPublicKey;
-import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Optional.ofNullable;
 
 /**
  * This filter is used to authenticate the user having an active session by validating a jwt token.
  * The filter extracts the jwt token stored from Authorization header.
- * It validates the token by calling an Identity Broker like KeyCloak.
+ * It validates the token with the public keys of an Identity Broker like KeyCloak, cached for one hour.
  * If validated, the user is retrieved, and the filter injects a UserPrincipal into the request attribute.
  *
  * @author smitra
@@ -44,6 +47,24 @@ import static java.util.Optional.ofNullable;
 public class JwtBasedSecurityFilter extends SecurityFilter {
     private static final Logger log = LoggerFactory.getLogger(JwtBasedSecurityFilter.class);
     private static final okhttp3.OkHttpClient client = new okhttp3.OkHttpClient();
+    /**
+     * Public keys of the jwt issuers, by certificates URL and key ID.
+     */
+    private static final Cache<String, RSAPublicKey> publicKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+    /**
+     * Minimum delay between two fetches of the certificates of a jwt issuer, for unknown keys.
+     */
+    private static final long MIN_FETCH_INTERVAL_MS = 10000;
+    /**
+     * Certificates URLs fetched recently.
+     */
+    private static final Cache<String, Boolean> recentFetchCache = CacheBuilder.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(MIN_FETCH_INTERVAL_MS, TimeUnit.MILLISECONDS)
+            .build();
     /**
      * Name of the header used to store the authentication token.
      */
@@ -52,11 +73,16 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
      * True if this authentication method is enabled.
      */
     private boolean enabled;
+    /**
+     * Only trusted jwt issuer, null to trust any issuer.
+     */
+    private String issuer;
 
     @Override
     public void init(FilterConfig filterConfig) {
         enabled = Boolean.parseBoolean(filterConfig.getInitParameter("enabled"))
                 || Boolean.parseBoolean(System.getProperty("docs.jwt_authentication"));
+        issuer = Strings.emptyToNull(System.getenv(Constants.JWT_ISSUER_ENV));
     }
 
     @Override
@@ -119,9 +145,26 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
     }
 
     private RSAPublicKey getPublicKey(DecodedJWT jwt) {
+        // The issuer is not verified yet, don't call an untrusted one
+        if (jwt.getIssuer() == null || issuer != null && !issuer.equals(jwt.getIssuer())) {
+            return null;
+        }
         String jwtIssuerCerts = jwt.getIssuer() + "/protocol/openid-connect/certs";
-        String publicKey = "";
-        RSAPublicKey rsaPublicKey = null;
+        String cacheKey = jwtIssuerCerts + "#" + jwt.getKeyId();
+        RSAPublicKey rsaPublicKey = publicKeyCache.getIfPresent(cacheKey);
+        if (rsaPublicKey != null) {
+            return rsaPublicKey;
+        }
+
+        // Unknown key, the issuer keys may have been rotated
+        if (recentFetchCache.asMap().putIfAbsent(jwtIssuerCerts, Boolean.TRUE) != null) {
+            return null;
+        }
+        fetchPublicKeys(jwtIssuerCerts);
+        return publicKeyCache.getIfPresent(cacheKey);
+    }
+
+    private void fetchPublicKeys(String jwtIssuerCerts) {
         Request request = new Request.Builder()
                 .url(jwtIssuerCerts)
                 .get()
@@ -134,15 +177,15 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
                     try (JsonReader jsonReader = Json.createReader(reader)) {
                         JsonObject jwks = jsonReader.readObject();
                         JsonArray keys = jwks.getJsonArray("keys");
-                        publicKey = keys.stream().filter(key -> Objects.equals(key.asJsonObject().getString("kid"),
-                                        jwt.getKeyId()))
-                                .findFirst()
-                                .map(k -> k.asJsonObject().getJsonArray("x5c").getString(0))
-                                .orElse("");
-                        var decode = Base64.getDecoder().decode(publicKey);
-                        var certificate = CertificateFactory.getInstance("X.509")
-                                .generateCertificate(new ByteArrayInputStream(decode));
-                        rsaPublicKey = (RSAPublicKey) certificate.getPublicKey();
+                        for (JsonObject key : keys.getValuesAs(JsonObject.class)) {
+                            if (!key.containsKey("kid") || !key.containsKey("x5c")) {
+                                continue;
+                            }
+                            var decode = Base64.getDecoder().decode(key.getJsonArray("x5c").getString(0));
+                            var certificate = CertificateFactory.getInstance("X.509")
+                                    .generateCertificate(new ByteArrayInputStream(decode));
+                            publicKeyCache.put(jwtIssuerCerts + "#" + key.getString("kid"), (RSAPublicKey) certificate.getPublicKey());
+                        }
                     }
                 }
             }
@@ -151,7 +194,6 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
         } catch (CertificateException e) {
             log.error("Error in getting the certificate: ", e);
         }
-        return rsaPublicKey;
     }
 
     private JWTVerifier buildJWTVerifier(DecodedJWT jwt) throws CertificateException {
@@ -7,11 +7,13 @@ import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.jpa.EMF;
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.ws.rs.core.HttpHeaders;
 import org.apache.log4j.Level;
 import org.apache.log4j.PatternLayout;
 import org.apache.log4j.RollingFileAppender;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
@@ -72,17 +74,10 @@ public class RequestContextFilter implements Filter {
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws IOException, ServletException {
-        EntityManager em;
-        
-        try {
-            em = EMF.get().createEntityManager();
-        } catch (Exception e) {
-            throw new ServletException("Cannot create entity manager", e);
-        }
+        // The transaction is started on the first database access, many requests never need one
         ThreadLocalContext context = ThreadLocalContext.get();
-        context.setEntityManager(em);
-        EntityTransaction tx = em.getTransaction();
-        tx.begin();
+        boolean readOnly = isReadOnly((HttpServletRequest) request);
+        context.setEntityManagerSupplier(() -> createEntityManager(readOnly));
         
         try {
             addCacheHeaders(response);
@@ -95,7 +90,8 @@ public class RequestContextFilter implements Filter {
                 log.error("An exception occured, rolling back current transaction", e);
 
                 // If an unprocessed error comes up from the application layers (Jersey...), rollback the transaction (should not happen)
-                if (em.isOpen()) {
+                EntityManager em = context.getCurrentEntityManager();
+                if (em != null && em.isOpen()) {
                     if (em.getTransaction() != null && em.getTransaction().isActive()) {
                         em.getTransaction().rollback();
                     }
@@ -111,21 +107,56 @@ public class RequestContextFilter implements Filter {
         }
 
         // No error processing the request : commit / rollback the current transaction depending on the HTTP code
-        if (em.isOpen()) {
-            if (em.getTransaction() != null && em.getTransaction().isActive()) {
-                HttpServletResponse r = (HttpServletResponse) response;
-                int statusClass = r.getStatus() / 100;
-                if (statusClass == 2 || statusClass == 3) {
-                    try {
+        HttpServletResponse r = (HttpServletResponse) response;
+        context.setEntityManagerSupplier(null);
+        try {
+            endTransaction(context, r.getStatus());
+        } catch (Exception e) {
+            log.error("Error during commit", e);
+            r.sendError(500);
+        }
+
+        // Fire all pending async events after request transaction commit.
+        // This way, all modifications done during this request are available in the listeners.
+        try {
+            context.fireAllAsyncEvents();
+        } finally {
+            ThreadLocalContext.cleanup();
+        }
+    }
+
+    /**
+     * End the transaction of the current request, and release its database connection.
+     * The transaction is committed if the response is successful, rolled back otherwise.
+     * If the database is accessed again during this request, a new transaction is started.
+     * Async events are still fired at the end of the request.
+     *
+     * @param status HTTP status of the response
+     */
+    public static void endTransaction(int status) {
+        endTransaction(ThreadLocalContext.get(), status);
+    }
+
+    /**
+     * End the transaction of a request, and release its database connection.
+     *
+     * @param context Request context
+     * @param status HTTP status of the response
+     */
+    private static void endTransaction(ThreadLocalContext context, int status) {
+        EntityManager em = context.getCurrentEntityManager();
+        context.setEntityManager(null);
+        if (em != null && em.isOpen()) {
+            try {
+                if (em.getTransaction() != null && em.getTransaction().isActive()) {
+                    int statusClass = status / 100;
+                    if (statusClass == 2 || statusClass == 3) {
                         em.getTransaction().commit();
-                    } catch (Exception e) {
-                        log.error("Error during commit", e);
-                        r.sendError(500);
+                    } else {
+                        em.getTransaction().rollback();
                     }
-                } else {
-                    em.getTransaction().rollback();
                 }
-                
+            } finally {
                 try {
                     em.close();
                 } catch (Exception e) {
@@ -133,12 +164,40 @@ public class RequestContextFilter implements Filter {
                 }
             }
         }
+    }
 
-        // Fire all pending async events after request transaction commit.
-        // This way, all modifications done during this request are available in the listeners.
-        context.fireAllAsyncEvents();
+    /**
+     * Create the entity manager of a request, and begin its transaction.
+     *
+     * @param readOnly True if the request is not expected to modify entities
+     * @return Entity manager
+     */
+    private static EntityManager createEntityManager(boolean readOnly) {
+        EntityManager em;
+        try {
+            em = EMF.get().createEntityManager();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot create entity manager", e);
+        }
+        if (readOnly) {
+            // Loaded entities are not snapshotted nor dirty checked on flush
+            em.unwrap(Session.class).setDefaultReadOnly(true);
+        }
+        EntityTransaction tx = em.getTransaction();
+        tx.begin();
+        return em;
+    }
 
-        ThreadLocalContext.cleanup();
+    /**
+     * Returns true if a request only reads entities.
+     * Updates by query and new entities are still written, for the few GET endpoints recording a state.
+     *
+     * @param request Request
+     * @return Read-only request
+     */
+    private static boolean isReadOnly(HttpServletRequest request) {
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
     }
 
     /**
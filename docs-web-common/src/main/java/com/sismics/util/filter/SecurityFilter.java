@@ -1,5 +1,6 @@
 package com.sismics.util.filter;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.GroupDao;
@@ -7,6 +8,7 @@ import com.sismics.docs.core.dao.RoleBaseFunctionDao;
 import com.sismics.docs.core.dao.criteria.GroupCriteria;
 import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.authentication.AuthenticationCache;
 import com.sismics.security.AnonymousPrincipal;
 import com.sismics.security.UserPrincipal;
 import org.joda.time.DateTimeZone;
@@ -73,6 +75,25 @@ public abstract class SecurityFilter implements Filter {
     private void injectAuthenticatedUser(HttpServletRequest request, User user) {
         UserPrincipal userPrincipal = new UserPrincipal(user.getId(), user.getUsername());
 
+        // Add groups and base functions
+        PrincipalData principalData = AuthenticationCache.get(AuthenticationCache.getPrincipalKey(user.getId()),
+                () -> loadPrincipalData(user));
+        userPrincipal.setGroupIdSet(principalData.groupIdSet);
+        userPrincipal.setBaseFunctionSet(principalData.baseFunctionSet);
+
+        // Add email
+        userPrincipal.setEmail(user.getEmail());
+
+        request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+    }
+
+    /**
+     * Load the groups (including the parent groups) and base functions of a user.
+     *
+     * @param user User
+     * @return Principal data
+     */
+    private PrincipalData loadPrincipalData(User user) {
         // Add groups
         GroupDao groupDao = new GroupDao();
         Set<String> groupRoleIdSet = new HashSet<>();
@@ -86,18 +107,13 @@ public abstract class SecurityFilter implements Filter {
                 groupRoleIdSet.add(groupDto.getRoleId());
             }
         }
-        userPrincipal.setGroupIdSet(groupIdSet);
 
         // Add base functions
         groupRoleIdSet.add(user.getRoleId());
         RoleBaseFunctionDao userBaseFunction = new RoleBaseFunctionDao();
         Set<String> baseFunctionSet = userBaseFunction.findByRoleId(groupRoleIdSet);
-        userPrincipal.setBaseFunctionSet(baseFunctionSet);
 
-        // Add email
-        userPrincipal.setEmail(user.getEmail());
-
-        request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+        return new PrincipalData(ImmutableSet.copyOf(groupIdSet), ImmutableSet.copyOf(baseFunctionSet));
     }
 
     /**
@@ -142,4 +158,24 @@ public abstract class SecurityFilter implements Filter {
      */
     protected abstract User authenticate(HttpServletRequest request);
 
+    /**
+     * Groups and base functions of a user, shared between requests.
+     */
+    private static class PrincipalData {
+        /**
+         * Group IDs, including the parent groups.
+         */
+        private final Set<String> groupIdSet;
+
+        /**
+         * Base functions.
+         */
+        private final Set<String> baseFunctionSet;
+
+        private PrincipalData(Set<String> groupIdSet, Set<String> baseFunctionSet) {
+            this.groupIdSet = groupIdSet;
+            this.baseFunctionSet = baseFunctionSet;
+        }
+    }
+
 }
\ No newline at end of file
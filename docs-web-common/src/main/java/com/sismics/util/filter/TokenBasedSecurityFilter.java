@@ -4,6 +4,8 @@ import com.sismics.docs.core.dao.AuthenticationTokenDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.authentication.AuthenticationCache;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -14,6 +16,7 @@ import java.util.Date;
  * This filter is used to authenticate the user having an active session via an authentication token stored in database.
  * The filter extracts the authentication token stored in a cookie.
  * If the cookie exists and the token is valid, the filter injects a UserPrincipal into a request attribute.
+ * Signed tokens are verified without a database lookup while they are known to be active.
  * If not, the user is anonymous, and the filter injects a AnonymousPrincipal into the request attribute.
  *
  * @author jtremeaux
@@ -84,26 +87,71 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
         }
     }
 
+    /**
+     * Returns true if the signed token is not expired, without its last connection date.
+     * Session tokens used since longer than their lifetime must be checked in the database.
+     *
+     * @param sessionToken Signed session token
+     * @return Token valid
+     */
+    private boolean isTokenValid(SessionTokenUtil.SessionToken sessionToken) {
+        long lifetime = sessionToken.isLongLasted() ? TOKEN_LONG_LIFETIME : TOKEN_SESSION_LIFETIME;
+        return new Date().getTime() < sessionToken.getCreationDate() + lifetime * 1000L;
+    }
+
     @Override
     protected User authenticate(HttpServletRequest request) {
         // Get the value of the client authentication token
-        String authTokenId = extractAuthToken(request.getCookies());
-        if (authTokenId == null) {
+        String authTokenValue = extractAuthToken(request.getCookies());
+        if (authTokenValue == null) {
             return null;
         }
 
-        // Get the corresponding server token
+        // Check the signed token without accessing the database
+        String authTokenId;
+        boolean signed = false;
+        if (SessionTokenUtil.isStarted() && authTokenValue.indexOf('.') >= 0) {
+            SessionTokenUtil.SessionToken sessionToken = SessionTokenUtil.verify(authTokenValue);
+            if (sessionToken == null) {
+                return null;
+            }
+            if (SessionTokenUtil.isActive(sessionToken.getId()) && isTokenValid(sessionToken)) {
+                return AuthenticationCache.get(AuthenticationCache.getUserKey(sessionToken.getUserId()),
+                        () -> new UserDao().getById(sessionToken.getUserId()));
+            }
+            authTokenId = sessionToken.getId();
+            signed = true;
+        } else {
+            authTokenId = SessionTokenUtil.getTokenId(authTokenValue);
+        }
+
+        // Get the corresponding server token, signed tokens are verified in the database
+        // to detect the deletions by other instances
         AuthenticationTokenDao authTokenDao = new AuthenticationTokenDao();
-        AuthenticationToken authToken = authTokenDao.get(authTokenId);
+        String tokenKey = AuthenticationCache.getTokenKey(authTokenId);
+        AuthenticationToken authToken = signed ? authTokenDao.get(authTokenId)
+                : AuthenticationCache.get(tokenKey, () -> authTokenDao.get(authTokenId));
         if (authToken == null) {
             return null;
         }
 
         if (isTokenExpired(authToken)) {
-            handleExpiredToken(authTokenDao, authTokenId);
-            return null;
+            // The cached last connection date may be outdated, check again from the database
+            AuthenticationCache.invalidate(tokenKey);
+            authToken = authTokenDao.get(authTokenId);
+            if (authToken == null) {
+                return null;
+            }
+            if (isTokenExpired(authToken)) {
+                handleExpiredToken(authTokenDao, authTokenId);
+                return null;
+            }
+        }
+        if (signed) {
+            SessionTokenUtil.setVerified(authTokenId);
         }
 
-        return new UserDao().getById(authToken.getUserId());
+        String userId = authToken.getUserId();
+        return AuthenticationCache.get(AuthenticationCache.getUserKey(userId), () -> new UserDao().getById(userId));
     }
 }
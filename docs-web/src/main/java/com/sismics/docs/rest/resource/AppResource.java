@@ -8,14 +8,18 @@ import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
+import com.sismics.docs.core.event.StorageMigrationAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.context.AsyncEventQueue;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.ConfigUtil;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.indexing.RebuildIndexStatus;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
@@ -26,6 +30,7 @@ import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.log4j.LogCriteria;
 import com.sismics.util.log4j.LogEntry;
 import com.sismics.util.log4j.MemoryAppender;
+import com.sismics.util.metrics.MetricRegistry;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
@@ -40,10 +45,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * General app REST resource.
@@ -68,6 +73,7 @@ public class AppResource extends BaseResource {
      * @apiSuccess {Boolean} guest_login True if guest login is enabled
      * @apiSuccess {String} default_language Default platform language
      * @apiSuccess {Number} queued_tasks Number of queued tasks waiting to be processed
+     * @apiSuccess {Object} queues Number of queued tasks by event queue
      * @apiSuccess {String} total_memory Allocated JVM memory (in bytes)
      * @apiSuccess {String} free_memory Free JVM memory (in bytes)
      * @apiSuccess {String} document_count Number of documents
@@ -110,6 +116,11 @@ public class AppResource extends BaseResource {
         if (globalQuota > 0) {
             response.add("global_storage_quota", globalQuota);
         }
+        JsonObjectBuilder queues = Json.createObjectBuilder();
+        for (AsyncEventQueue queue : AppContext.getInstance().getAsyncEventQueueList()) {
+            queues.add(queue.getName(), queue.getQueuedTaskCount());
+        }
+        response.add("queues", queues);
 
         return Response.ok().entity(response.build()).build();
     }
@@ -601,6 +612,42 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Returns the application metrics.
+     *
+     * @api {get} /app/metrics Get the application metrics
+     * @apiName GetAppMetrics
+     * @apiGroup App
+     * @apiSuccess {Object} metrics Metric values by name
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("metrics")
+    public Response metrics() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        JsonObjectBuilder metrics = Json.createObjectBuilder();
+        for (Map.Entry<String, Number> entry : MetricRegistry.getValues().entrySet()) {
+            Number value = entry.getValue();
+            if (value instanceof Double || value instanceof Float) {
+                metrics.add(entry.getKey(), value.doubleValue());
+            } else {
+                metrics.add(entry.getKey(), value.longValue());
+            }
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("metrics", metrics);
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Destroy and rebuild the search index.
      *
@@ -632,6 +679,72 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Get the search index rebuild progress.
+     *
+     * @api {get} /app/batch/reindex Get the search index rebuild progress
+     * @apiName GetAppBatchReindex
+     * @apiGroup App
+     * @apiSuccess {Boolean} running True if the index is being rebuilt
+     * @apiSuccess {String} phase Current phase (documents or files)
+     * @apiSuccess {Number} indexed Number of documents and files indexed
+     * @apiSuccess {Number} total Total number of documents and files to index
+     * @apiSuccess {Number} start_date Start date of the rebuild (timestamp)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("batch/reindex")
+    public Response batchReindexProgress() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("running", RebuildIndexStatus.isRunning())
+                .add("phase", JsonUtil.nullable(RebuildIndexStatus.getPhase()))
+                .add("indexed", RebuildIndexStatus.getIndexedCount())
+                .add("total", RebuildIndexStatus.getTotalCount())
+                .add("start_date", RebuildIndexStatus.getStartTime());
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Migrate the stored files.
+     * With the local storage, the files are moved to the hashed directory layout.
+     * With another storage backend, the files of the local storage directory are copied to it.
+     *
+     * @api {post} /app/batch/migrate_storage Migrate the stored files
+     * @apiName PostAppBatchMigrateStorage
+     * @apiGroup App
+     * @apiSuccess {String} status Status OK
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @POST
+    @Path("batch/migrate_storage")
+    public Response batchMigrateStorage() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        StorageMigrationAsyncEvent storageMigrationAsyncEvent = new StorageMigrationAsyncEvent();
+        ThreadLocalContext.get().addAsyncEvent(storageMigrationAsyncEvent);
+
+        // Always return OK
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok");
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Clean storage.
      *
@@ -664,16 +777,18 @@ public class AppResource extends BaseResource {
         log.info("Checking {} files", fileMap.size());
 
         // Check if each stored file is valid
-        try (DirectoryStream<java.nio.file.Path> storedFileList = Files.newDirectoryStream(DirectoryUtil.getStorageDirectory())) {
-            for (java.nio.file.Path storedFile : storedFileList) {
-                String fileName = storedFile.getFileName().toString();
-                String[] fileNameArray = fileName.split("_");
-                if (!fileMap.containsKey(fileNameArray[0])) {
-                    log.info("Deleting orphan files at this location: {}", storedFile);
-                    Files.delete(storedFile);
+        StorageBackend storageBackend = StorageUtil.getBackend();
+        try (Stream<String> storedKeyStream = storageBackend.list()) {
+            Iterator<String> storedKeyIterator = storedKeyStream.iterator();
+            while (storedKeyIterator.hasNext()) {
+                String key = storedKeyIterator.next();
+                String[] keyArray = key.split("_");
+                if (!fileMap.containsKey(keyArray[0])) {
+                    log.info("Deleting orphan stored file: {}", key);
+                    storageBackend.delete(key);
                 }
             }
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             throw new ServerException("FileError", "Error deleting orphan files", e);
         }
 
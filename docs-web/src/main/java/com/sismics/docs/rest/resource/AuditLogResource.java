@@ -8,7 +8,6 @@ import com.sismics.docs.core.dao.criteria.AuditLogCriteria;
 import com.sismics.docs.core.dao.dto.AuditLogDto;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.util.JsonUtil;
@@ -37,7 +36,12 @@ public class AuditLogResource extends BaseResource {
      * @apiName GetAuditlog
      * @apiGroup Auditlog
      * @apiParam {String} [document] Document ID
-     * @apiSuccess {String} total Total number of logs
+     * @apiParam {Number} [limit] Total number of logs to return (default is <code>20</code>)
+     * @apiParam {String} [cursor] Start after this cursor, returned as <code>next</code> by the previous page
+     * @apiParam {String="exact","approximate","none"} [total] Counting mode of the total, <code>approximate</code> stops counting after 1000 logs (default is <code>exact</code>)
+     * @apiSuccess {String} total Total number of logs (absent if <code>total</code> is <code>none</code>)
+     * @apiSuccess {Boolean} total_approximate True if there are more logs than the total (only if <code>total</code> is <code>approximate</code>)
+     * @apiSuccess {String} next Cursor of the next page, null if this is the last page
      * @apiSuccess {Object[]} logs List of logs
      * @apiSuccess {String} logs.id ID
      * @apiSuccess {String} logs.username Username
@@ -48,20 +52,29 @@ public class AuditLogResource extends BaseResource {
      * @apiSuccess {Number} logs.create_date Create date (timestamp)
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) NotFound Document not found
+     * @apiError (client) ValidationError Validation error
      * @apiPermission user
      * @apiVersion 1.5.0
      *
+     * @param documentId Document ID
+     * @param limit Page limit
+     * @param cursor Page cursor
+     * @param total Count mode of the total
      * @return Response
      */
     @GET
-    public Response list(@QueryParam("document") String documentId) {
+    public Response list(
+            @QueryParam("document") String documentId,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") String total) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
         
         // On a document or a user?
-        PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(20, 0);
         SortCriteria sortCriteria = new SortCriteria(1, false);
+        PaginatedList<AuditLogDto> paginatedList = createPaginatedList(limit == null ? 20 : limit, null, cursor, total, sortCriteria);
         AuditLogCriteria criteria = new AuditLogCriteria();
         if (Strings.isNullOrEmpty(documentId)) {
             // Search logs for a user
@@ -95,8 +108,8 @@ public class AuditLogResource extends BaseResource {
 
         // Send the response
         JsonObjectBuilder response = Json.createObjectBuilder()
-                .add("logs", logs)
-                .add("total", paginatedList.getResultCount());
+                .add("logs", logs);
+        addPagination(response, paginatedList);
         return Response.ok().entity(response.build()).build();
     }
 }
@@ -1,12 +1,19 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.util.jpa.PageCursor;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.security.IPrincipal;
 import com.sismics.security.UserPrincipal;
+import com.sismics.util.JsonUtil;
 import com.sismics.util.filter.SecurityFilter;
 
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.Produces;
@@ -122,4 +129,60 @@ public abstract class BaseResource {
         }
         return targetIdList;
     }
+
+    /**
+     * Returns a paginated list from the pagination parameters.
+     *
+     * @param limit Page limit
+     * @param offset Page offset
+     * @param cursor Page cursor, returned as next by the previous page
+     * @param total Count mode of the total (exact, approximate or none)
+     * @param sortCriteria Sort criteria
+     * @return Paginated list
+     */
+    <E> PaginatedList<E> createPaginatedList(Integer limit, Integer offset, String cursor, String total, SortCriteria sortCriteria) {
+        PaginatedList<E> paginatedList;
+        try {
+            paginatedList = PaginatedLists.create(limit, offset, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ClientException("ValidationError", "Invalid cursor", e);
+        }
+
+        // A key cursor is only valid with the same sort
+        PageCursor pageCursor = paginatedList.getCursor();
+        if (pageCursor != null && pageCursor.getOffset() == null && !pageCursor.matches(sortCriteria)) {
+            throw new ClientException("ValidationError", "The cursor doesn't match the sort criteria");
+        }
+
+        if (total != null) {
+            try {
+                paginatedList.setCountMode(PaginatedList.CountMode.valueOf(total.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new ClientException("ValidationError", "total must be exact, approximate or none", e);
+            }
+        }
+        return paginatedList;
+    }
+
+    /**
+     * Adds the total and the next cursor of a paginated list to a response.
+     *
+     * @param response Response
+     * @param paginatedList Paginated list
+     */
+    void addPagination(JsonObjectBuilder response, PaginatedList<?> paginatedList) {
+        switch (paginatedList.getCountMode()) {
+            case EXACT:
+                response.add("total", paginatedList.getResultCount());
+                break;
+            case APPROXIMATE:
+                response.add("total", paginatedList.getResultCount())
+                        .add("total_approximate", paginatedList.isResultCountApproximate());
+                break;
+            case NONE:
+                break;
+        }
+        PageCursor nextCursor = paginatedList.getNextCursor();
+        response.add("next", JsonUtil.nullable(nextCursor == null ? null : nextCursor.encode()));
+    }
 }
@@ -1,6 +1,9 @@
 package com.sismics.docs.rest.resource;
 
+import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
@@ -34,8 +37,8 @@ import com.sismics.docs.core.util.DocumentUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.MetadataUtil;
 import com.sismics.docs.core.util.PdfUtil;
+import com.sismics.docs.core.util.TagCache;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.util.DocumentSearchCriteriaUtil;
 import com.sismics.rest.exception.ClientException;
@@ -81,7 +84,9 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -106,6 +111,7 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} id Document ID
      * @apiParam {String} [share] Share ID
      * @apiParam {Boolean} [files] If true includes files information
+     * @apiParam {String} [fields] Comma separated list of facets to include: tags, acls (with writable), inherited_acls, contributors, relations, route_step, metadata, files. All facets except files by default
      * @apiSuccess {String} id ID
      * @apiSuccess {String} title Title
      * @apiSuccess {String} description Description
@@ -170,6 +176,8 @@ public class DocumentResource extends BaseResource {
      *
      * @param documentId Document ID
      * @param shareId Share ID
+     * @param files Include files
+     * @param fields Facets to include
      * @return Response
      */
     @GET
@@ -177,7 +185,8 @@ public class DocumentResource extends BaseResource {
     public Response get(
             @PathParam("id") String documentId,
             @QueryParam("share") String shareId,
-            @QueryParam("files") Boolean files) {
+            @QueryParam("files") Boolean files,
+            @QueryParam("fields") String fields) {
         authenticate();
 
         DocumentDao documentDao = new DocumentDao();
@@ -186,6 +195,12 @@ public class DocumentResource extends BaseResource {
             throw new NotFoundException();
         }
 
+        // Facets to include, all except files by default
+        Set<String> fieldSet = null;
+        if (fields != null) {
+            fieldSet = Sets.newHashSet(Splitter.on(',').trimResults().omitEmptyStrings().split(fields));
+        }
+
         JsonObjectBuilder document = createDocumentObjectBuilder(documentDto)
                 .add("creator", documentDto.getCreator())
                 .add("coverage", JsonUtil.nullable(documentDto.getCoverage()))
@@ -198,80 +213,98 @@ public class DocumentResource extends BaseResource {
                 .add("subject", JsonUtil.nullable(documentDto.getSubject()))
                 .add("type", JsonUtil.nullable(documentDto.getType()));
 
+        // Add tags visible by the current user on this document (no tags in anonymous mode)
         List<TagDto> tagDtoList = null;
-        if (principal.isAnonymous()) {
-            // No tags in anonymous mode (sharing)
-            document.add("tags", Json.createArrayBuilder());
-        } else {
-            // Add tags visible by the current user on this document
-            TagDao tagDao = new TagDao();
-            tagDtoList = tagDao.findByCriteria(
-                    new TagCriteria()
-                            .setTargetIdList(getTargetIdList(null)) // No tags for shares
-                            .setDocumentId(documentId),
-                    new SortCriteria(1, true));
-            document.add("tags", createTagsArrayBuilder(tagDtoList));
+        if (!principal.isAnonymous() && (fieldSet == null || fieldSet.contains("tags") || fieldSet.contains("inherited_acls"))) {
+            tagDtoList = getDocumentTagList(documentId);
         }
+        if (fieldSet == null || fieldSet.contains("tags")) {
+            document.add("tags", tagDtoList == null ? Json.createArrayBuilder() : createTagsArrayBuilder(tagDtoList));
+        }
+
+        // Load the direct and inherited ACLs at once
+        boolean includeAcls = fieldSet == null || fieldSet.contains("acls");
+        boolean includeInheritedAcls = tagDtoList != null && (fieldSet == null || fieldSet.contains("inherited_acls"));
+        if (includeAcls || includeInheritedAcls) {
+            List<String> sourceIdList = Lists.newArrayList(documentId);
+            if (includeInheritedAcls) {
+                for (TagDto tagDto : tagDtoList) {
+                    sourceIdList.add(tagDto.getId());
+                }
+            }
+            Map<String, List<AclDto>> aclDtoListBySource = new HashMap<>();
+            for (AclDto aclDto : new AclDao().getBySourceIds(sourceIdList, AclType.USER)) {
+                aclDtoListBySource.computeIfAbsent(aclDto.getSourceId(), sourceId -> new ArrayList<>()).add(aclDto);
+            }
 
-        // Add ACL
-        AclUtil.addAcls(document, documentId, getTargetIdList(shareId));
+            // Add ACL
+            if (includeAcls) {
+                AclUtil.addAcls(document, documentId, aclDtoListBySource.getOrDefault(documentId, Collections.emptyList()), getTargetIdList(shareId));
+            }
 
-        // Add computed ACL
-        if (tagDtoList != null) {
-            JsonArrayBuilder aclList = Json.createArrayBuilder();
-            for (TagDto tagDto : tagDtoList) {
-                AclDao aclDao = new AclDao();
-                List<AclDto> aclDtoList = aclDao.getBySourceId(tagDto.getId(), AclType.USER);
-                for (AclDto aclDto : aclDtoList) {
-                    aclList.add(Json.createObjectBuilder()
-                            .add("perm", aclDto.getPerm().name())
-                            .add("source_id", tagDto.getId())
-                            .add("source_name", tagDto.getName())
-                            .add("source_color", tagDto.getColor())
-                            .add("id", aclDto.getTargetId())
-                            .add("name", JsonUtil.nullable(aclDto.getTargetName()))
-                            .add("type", aclDto.getTargetType()));
+            // Add computed ACL
+            if (includeInheritedAcls) {
+                JsonArrayBuilder aclList = Json.createArrayBuilder();
+                for (TagDto tagDto : tagDtoList) {
+                    for (AclDto aclDto : aclDtoListBySource.getOrDefault(tagDto.getId(), Collections.emptyList())) {
+                        aclList.add(Json.createObjectBuilder()
+                                .add("perm", aclDto.getPerm().name())
+                                .add("source_id", tagDto.getId())
+                                .add("source_name", tagDto.getName())
+                                .add("source_color", tagDto.getColor())
+                                .add("id", aclDto.getTargetId())
+                                .add("name", JsonUtil.nullable(aclDto.getTargetName()))
+                                .add("type", aclDto.getTargetType()));
+                    }
                 }
+                document.add("inherited_acls", aclList);
             }
-            document.add("inherited_acls", aclList);
         }
 
         // Add contributors
-        ContributorDao contributorDao = new ContributorDao();
-        List<ContributorDto> contributorDtoList = contributorDao.getByDocumentId(documentId);
-        JsonArrayBuilder contributorList = Json.createArrayBuilder();
-        for (ContributorDto contributorDto : contributorDtoList) {
-            contributorList.add(Json.createObjectBuilder()
-                    .add("username", contributorDto.getUsername())
-                    .add("email", contributorDto.getEmail()));
+        if (fieldSet == null || fieldSet.contains("contributors")) {
+            ContributorDao contributorDao = new ContributorDao();
+            List<ContributorDto> contributorDtoList = contributorDao.getByDocumentId(documentId);
+            JsonArrayBuilder contributorList = Json.createArrayBuilder();
+            for (ContributorDto contributorDto : contributorDtoList) {
+                contributorList.add(Json.createObjectBuilder()
+                        .add("username", contributorDto.getUsername())
+                        .add("email", contributorDto.getEmail()));
+            }
+            document.add("contributors", contributorList);
         }
-        document.add("contributors", contributorList);
 
         // Add relations
-        RelationDao relationDao = new RelationDao();
-        List<RelationDto> relationDtoList = relationDao.getByDocumentId(documentId);
-        JsonArrayBuilder relationList = Json.createArrayBuilder();
-        for (RelationDto relationDto : relationDtoList) {
-            relationList.add(Json.createObjectBuilder()
-                    .add("id", relationDto.getId())
-                    .add("title", relationDto.getTitle())
-                    .add("source", relationDto.isSource()));
+        if (fieldSet == null || fieldSet.contains("relations")) {
+            RelationDao relationDao = new RelationDao();
+            List<RelationDto> relationDtoList = relationDao.getByDocumentId(documentId);
+            JsonArrayBuilder relationList = Json.createArrayBuilder();
+            for (RelationDto relationDto : relationDtoList) {
+                relationList.add(Json.createObjectBuilder()
+                        .add("id", relationDto.getId())
+                        .add("title", relationDto.getTitle())
+                        .add("source", relationDto.isSource()));
+            }
+            document.add("relations", relationList);
         }
-        document.add("relations", relationList);
 
         // Add current route step
-        RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
-        if (routeStepDto != null && !principal.isAnonymous()) {
-            JsonObjectBuilder step = routeStepDto.toJson();
-            step.add("transitionable", getTargetIdList(null).contains(routeStepDto.getTargetId()));
-            document.add("route_step", step);
+        if (!principal.isAnonymous() && (fieldSet == null || fieldSet.contains("route_step"))) {
+            RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
+            if (routeStepDto != null) {
+                JsonObjectBuilder step = routeStepDto.toJson();
+                step.add("transitionable", getTargetIdList(null).contains(routeStepDto.getTargetId()));
+                document.add("route_step", step);
+            }
         }
 
         // Add custom metadata
-        MetadataUtil.addMetadata(document, documentId);
+        if (fieldSet == null || fieldSet.contains("metadata")) {
+            MetadataUtil.addMetadata(document, documentId);
+        }
 
         // Add files
-        if (Boolean.TRUE == files) {
+        if (Boolean.TRUE == files || fieldSet != null && fieldSet.contains("files")) {
             FileDao fileDao = new FileDao();
             List<File> fileList = fileDao.getByDocumentsIds(Collections.singleton(documentId));
 
@@ -365,6 +398,8 @@ public class DocumentResource extends BaseResource {
      *
      * @apiParam {String} [limit] Total number of documents to return (default is <code>10</code>)
      * @apiParam {String} [offset] Start at this index (default is <code>0</code>)
+     * @apiParam {String} [cursor] Start after this cursor, returned as <code>next</code> by the previous page (replaces the offset)
+     * @apiParam {String="exact","approximate","none"} [total] Counting mode of the total, <code>approximate</code> stops counting after 1000 documents (default is <code>exact</code>)
      * @apiParam {Number} [sort_column] Column index to sort on
      * @apiParam {Boolean} [asc] If <code>true</code> sorts in ascending order
      * @apiParam {String} [search] Search query (see "Document search syntax" on the top of the page for explanations) when the input is entered by a human.
@@ -385,7 +420,9 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} [search[ubefore]] The document must have been updated before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[workflow]] If the value is <code>me</code> the document must have an active route, for other values the criteria is ignored
      *
-     * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Number} total Total number of documents (absent if <code>total</code> is <code>none</code>)
+     * @apiSuccess {Boolean} total_approximate True if there are more documents than the total (only if <code>total</code> is <code>approximate</code>)
+     * @apiSuccess {String} next Cursor of the next page, null if this is the last page
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
@@ -418,6 +455,8 @@ public class DocumentResource extends BaseResource {
      *
      * @param limit Page limit
      * @param offset Page offset
+     * @param cursor Page cursor
+     * @param total Count mode of the total
      * @param sortColumn Sort column
      * @param asc Sorting
      * @param search Search query
@@ -429,6 +468,8 @@ public class DocumentResource extends BaseResource {
     public Response list(
             @QueryParam("limit") Integer limit,
             @QueryParam("offset") Integer offset,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") String total,
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
             @QueryParam("search") String search,
@@ -457,11 +498,11 @@ public class DocumentResource extends BaseResource {
         JsonArrayBuilder documents = Json.createArrayBuilder();
 
         TagDao tagDao = new TagDao();
-        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(limit, offset);
-        List<String> suggestionList = Lists.newArrayList();
         SortCriteria sortCriteria = new SortCriteria(sortColumn, asc);
+        PaginatedList<DocumentDto> paginatedList = createPaginatedList(limit, offset, cursor, total, sortCriteria);
+        List<String> suggestionList = Lists.newArrayList();
 
-        List<TagDto> allTagDtoList = tagDao.findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
+        List<TagDto> allTagDtoList = TagCache.getVisibleTagList(getTargetIdList(null));
 
         DocumentCriteria documentCriteria = DocumentSearchCriteriaUtil.parseSearchQuery(search, allTagDtoList);
         DocumentSearchCriteriaUtil.addHttpSearchParams(
@@ -500,11 +541,13 @@ public class DocumentResource extends BaseResource {
             filesCountByDocument = fileDao.countByDocumentsIds(documentsIds);
         }
 
+        // Find the tags of the documents, keeping those accessible by the current user
+        Map<String, List<String>> tagIdsByDocument = tagDao.getTagIdsByDocumentsIds(documentsIds);
+        Map<String, TagDto> allTagDtoMap = Maps.uniqueIndex(allTagDtoList, TagDto::getId);
+
         for (DocumentDto documentDto : paginatedList.getResultList()) {
             // Get tags accessible by the current user on this document
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria()
-                    .setTargetIdList(getTargetIdList(null))
-                    .setDocumentId(documentDto.getId()), new SortCriteria(1, true));
+            List<TagDto> tagDtoList = filterVisibleTags(tagIdsByDocument.get(documentDto.getId()), allTagDtoMap);
 
             Long filesCount;
             Collection<File> filesOfDocument = null;
@@ -538,8 +581,8 @@ public class DocumentResource extends BaseResource {
             suggestions.add(suggestion);
         }
 
-        response.add("total", paginatedList.getResultCount())
-                .add("documents", documents)
+        addPagination(response, paginatedList);
+        response.add("documents", documents)
                 .add("suggestions", suggestions);
 
         return Response.ok().entity(response.build()).build();
@@ -556,6 +599,8 @@ public class DocumentResource extends BaseResource {
      *
      * @param limit      Page limit
      * @param offset     Page offset
+     * @param cursor     Page cursor
+     * @param total      Count mode of the total
      * @param sortColumn Sort column
      * @param asc        Sorting
      * @param search     Search query
@@ -567,6 +612,8 @@ public class DocumentResource extends BaseResource {
     public Response listPost(
             @FormParam("limit") Integer limit,
             @FormParam("offset") Integer offset,
+            @FormParam("cursor") String cursor,
+            @FormParam("total") String total,
             @FormParam("sort_column") Integer sortColumn,
             @FormParam("asc") Boolean asc,
             @FormParam("search") String search,
@@ -589,6 +636,8 @@ public class DocumentResource extends BaseResource {
         return list(
                 limit,
                 offset,
+                cursor,
+                total,
                 sortColumn,
                 asc,
                 search,
@@ -610,6 +659,50 @@ public class DocumentResource extends BaseResource {
         );
     }
 
+    /**
+     * Suggest search terms.
+     *
+     * @api {get} /document/suggest Suggest search terms
+     * @apiDescription Suggestions are computed from the titles of the readable documents, without running the search itself.
+     * @apiName GetDocumentSuggest
+     * @apiGroup Document
+     * @apiParam {String} search Search query
+     * @apiSuccess {String[]} suggestions List of search suggestions
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param search Search query
+     * @return Response
+     */
+    @GET
+    @Path("suggest")
+    public Response suggest(@QueryParam("search") String search) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        ValidationUtil.validateRequired(search, "search");
+
+        List<String> suggestionList = Lists.newArrayList();
+        try {
+            AppContext.getInstance().getIndexingHandler().suggestSearchTerms(search, getTargetIdList(null), suggestionList);
+        } catch (Exception e) {
+            throw new ServerException("SearchError", "Error searching in documents", e);
+        }
+
+        JsonArrayBuilder suggestions = Json.createArrayBuilder();
+        for (String suggestion : suggestionList) {
+            suggestions.add(suggestion);
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("suggestions", suggestions);
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Creates a new document.
      *
@@ -957,7 +1050,7 @@ public class DocumentResource extends BaseResource {
         // Add files to the document
         try {
             for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
-                FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
+                FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(),
                         document.getLanguage(), principal.getId(), document.getId());
             }
         } catch (IOException e) {
@@ -1012,6 +1105,7 @@ public class DocumentResource extends BaseResource {
             FileDeletedAsyncEvent fileDeletedAsyncEvent = new FileDeletedAsyncEvent();
             fileDeletedAsyncEvent.setUserId(principal.getId());
             fileDeletedAsyncEvent.setFileId(file.getId());
+            fileDeletedAsyncEvent.setDocumentId(file.getDocumentId());
             fileDeletedAsyncEvent.setFileSize(file.getSize());
             ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         }
@@ -1053,6 +1147,39 @@ public class DocumentResource extends BaseResource {
         }
     }
 
+    /**
+     * Returns the tags of a document visible by the current user, sorted by name.
+     *
+     * @param documentId Document ID
+     * @return List of tags
+     */
+    private List<TagDto> getDocumentTagList(String documentId) {
+        Map<String, List<String>> tagIdsByDocument = new TagDao().getTagIdsByDocumentsIds(Collections.singleton(documentId));
+        List<TagDto> allTagDtoList = TagCache.getVisibleTagList(getTargetIdList(null));
+        return filterVisibleTags(tagIdsByDocument.get(documentId), Maps.uniqueIndex(allTagDtoList, TagDto::getId));
+    }
+
+    /**
+     * Keep the tags visible by the current user, sorted by name.
+     *
+     * @param tagIdList Tag IDs, nullable
+     * @param allTagDtoMap Tags visible by the current user, by ID
+     * @return List of tags
+     */
+    private static List<TagDto> filterVisibleTags(List<String> tagIdList, Map<String, TagDto> allTagDtoMap) {
+        List<TagDto> tagDtoList = new ArrayList<>();
+        if (tagIdList != null) {
+            for (String tagId : tagIdList) {
+                TagDto tagDto = allTagDtoMap.get(tagId);
+                if (tagDto != null) {
+                    tagDtoList.add(tagDto);
+                }
+            }
+        }
+        tagDtoList.sort(Comparator.comparing(TagDto::getName));
+        return tagDtoList;
+    }
+
     /**
      * Update relations list on a document.
      *
@@ -15,12 +15,16 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.ChunkedUploadUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.ZipExportUtil;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
+import com.sismics.rest.exception.UnavailableServerException;
 import com.sismics.rest.util.RestUtil;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.HttpUtil;
@@ -41,16 +45,14 @@ import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.NoSuchFileException;
 import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * File REST resources.
@@ -59,6 +61,11 @@ import java.util.zip.ZipOutputStream;
  */
 @Path("/file")
 public class FileResource extends BaseResource {
+    /**
+     * Delay before retrying to add a file when the processing queue is full (in seconds).
+     */
+    private static final int QUEUE_FULL_RETRY_AFTER = 30;
+
     /**
      * Add a file (with or without a document).
      *
@@ -76,6 +83,7 @@ public class FileResource extends BaseResource {
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) ValidationError Validation error
      * @apiError (client) NotFound Document not found
+     * @apiError (unavailable) QueueFull Too many files are waiting to be processed, retry after the Retry-After delay
      * @apiError (server) StreamError Error reading the input file
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
@@ -100,6 +108,11 @@ public class FileResource extends BaseResource {
         // Validate input data
         ValidationUtil.validateRequired(fileBodyPart, "file");
 
+        // Push back when too many files are waiting to be processed
+        if (AppContext.getInstance().isFileProcessingQueueFull()) {
+            throw new UnavailableServerException("QueueFull", "Too many files are waiting to be processed, try again later", QUEUE_FULL_RETRY_AFTER);
+        }
+
         // Get the document
         DocumentDto documentDto = null;
         if (Strings.isNullOrEmpty(documentId)) {
@@ -112,36 +125,336 @@ public class FileResource extends BaseResource {
             }
         }
         
-        // Keep unencrypted data temporary on disk
+        // Stream the file to the storage
         String name = fileBodyPart.getContentDisposition() != null ?
                 URLDecoder.decode(fileBodyPart.getContentDisposition().getFileName(), StandardCharsets.UTF_8) : null;
-        java.nio.file.Path unencryptedFile;
-        long fileSize;
-        try {
-            unencryptedFile = AppContext.getInstance().getFileService().createTemporaryFile(name);
-            Files.copy(fileBodyPart.getValueAs(InputStream.class), unencryptedFile, StandardCopyOption.REPLACE_EXISTING);
-            fileSize = Files.size(unencryptedFile);
-        } catch (IOException e) {
-            throw new ServerException("StreamError", "Error reading the input file", e);
-        }
-
-        try {
-            String fileId = FileUtil.createFile(name, previousFileId, unencryptedFile, fileSize, documentDto == null ?
+        try (InputStream inputStream = fileBodyPart.getValueAs(InputStream.class)) {
+            File file = FileUtil.createFile(name, previousFileId, inputStream, documentDto == null ?
                     null : documentDto.getLanguage(), principal.getId(), documentId);
 
             // Always return OK
             JsonObjectBuilder response = Json.createObjectBuilder()
                     .add("status", "ok")
-                    .add("id", fileId)
-                    .add("size", fileSize);
+                    .add("id", file.getId())
+                    .add("size", file.getSize());
             return Response.ok().entity(response.build()).build();
         } catch (IOException e) {
+            if ("StreamError".equals(e.getMessage())) {
+                throw new ServerException("StreamError", "Error reading the input file", e);
+            }
             throw new ClientException(e.getMessage(), e.getMessage(), e);
         } catch (Exception e) {
             throw new ServerException("FileError", "Error adding a file", e);
         }
     }
     
+    /**
+     * Start a chunked upload.
+     *
+     * @api {put} /file/upload Start a chunked upload
+     * @apiDescription Large files can be sent in several chunks, which can be retried or sent concurrently.
+     * The chunks are sent with PUT /file/upload/:uploadId/:index, then the file is created with POST /file/upload/:uploadId/complete.
+     * Uploads without activity for a day are deleted.
+     * @apiName PutFileUpload
+     * @apiGroup File
+     * @apiParam {String} [id] Document ID
+     * @apiParam {String} [previousFileId] ID of the file to replace by this new version
+     * @apiParam {String} [name] File name
+     * @apiParam {Number} size File size (in bytes)
+     * @apiSuccess {String} upload_id Upload ID
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (client) NotFound Document not found
+     * @apiError (client) QuotaReached Quota limit reached
+     * @apiError (server) UploadError Error starting the upload
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param documentId Document ID
+     * @param previousFileId Previous file ID
+     * @param name File name
+     * @param sizeStr File size
+     * @return Response
+     */
+    @PUT
+    @Path("upload")
+    public Response createUpload(
+            @FormParam("id") String documentId,
+            @FormParam("previousFileId") String previousFileId,
+            @FormParam("name") String name,
+            @FormParam("size") String sizeStr) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        // Validate input data
+        name = ValidationUtil.validateLength(name, "name", 1, 200, true);
+        ValidationUtil.validateRequired(sizeStr, "size");
+        long size = ValidationUtil.validateLong(sizeStr, "size");
+        if (size < 0) {
+            throw new ClientException("ValidationError", "size must be positive");
+        }
+        if (Strings.isNullOrEmpty(documentId)) {
+            documentId = null;
+        } else if (new DocumentDao().getDocument(documentId, PermType.WRITE, getTargetIdList(null)) == null) {
+            throw new NotFoundException();
+        }
+        if (Strings.isNullOrEmpty(previousFileId)) {
+            previousFileId = null;
+        }
+
+        // Check the quota now with the other uploads in progress, the chunks can't exceed the announced size
+        User user = new UserDao().getById(principal.getId());
+        ChunkedUploadUtil.ChunkedUpload upload;
+        try {
+            upload = ChunkedUploadUtil.create(principal.getId(), documentId, previousFileId, name, size,
+                    user.getStorageQuota() - user.getStorageCurrent());
+        } catch (IOException e) {
+            if ("QuotaReached".equals(e.getMessage())) {
+                throw new ClientException("QuotaReached", "QuotaReached", e);
+            }
+            throw new ServerException("UploadError", "Error starting the upload", e);
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("upload_id", upload.getId());
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Send a chunk of a chunked upload.
+     *
+     * @api {put} /file/upload/:uploadId/:index Send a chunk
+     * @apiDescription The request body is the raw chunk content (application/octet-stream).
+     * A chunk sent again replaces the previous one, all chunks except the last one can have any size.
+     * @apiName PutFileUploadChunk
+     * @apiGroup File
+     * @apiParam {String} uploadId Upload ID
+     * @apiParam {Number} index Chunk index, starting at 0
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {Number} size Chunk size (in bytes)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload not found
+     * @apiError (client) InvalidChunk Chunk index too high
+     * @apiError (client) UploadCompleting The upload is being completed
+     * @apiError (client) UploadTooLarge More data than the announced file size
+     * @apiError (server) StreamError Error reading the chunk
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param uploadId Upload ID
+     * @param index Chunk index
+     * @param inputStream Chunk content
+     * @return Response
+     */
+    @PUT
+    @Path("upload/{uploadId: [a-z0-9\\-]+}/{index: [0-9]+}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public Response uploadChunk(
+            @PathParam("uploadId") String uploadId,
+            @PathParam("index") int index,
+            InputStream inputStream) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        ChunkedUploadUtil.ChunkedUpload upload = findUpload(uploadId);
+        User user = new UserDao().getById(principal.getId());
+        long chunkSize;
+        try {
+            chunkSize = ChunkedUploadUtil.writeChunk(upload, index, inputStream, user.getPrivateKey());
+        } catch (IOException e) {
+            if (Lists.newArrayList("InvalidChunk", "UploadCompleting", "UploadTooLarge").contains(e.getMessage())) {
+                throw new ClientException(e.getMessage(), e.getMessage(), e);
+            }
+            throw new ServerException("StreamError", "Error reading the chunk", e);
+        } catch (Exception e) {
+            throw new ServerException("StreamError", "Error reading the chunk", e);
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok")
+                .add("size", chunkSize);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the progress of a chunked upload.
+     *
+     * @api {get} /file/upload/:uploadId Get the progress of a chunked upload
+     * @apiDescription An interrupted upload is resumed by sending the missing chunks.
+     * @apiName GetFileUpload
+     * @apiGroup File
+     * @apiParam {String} uploadId Upload ID
+     * @apiSuccess {String} upload_id Upload ID
+     * @apiSuccess {String} name File name
+     * @apiSuccess {Number} size Announced file size (in bytes)
+     * @apiSuccess {Number} offset Number of bytes received from the start of the file, without missing chunks
+     * @apiSuccess {Object[]} chunks Received chunks
+     * @apiSuccess {Number} chunks.index Chunk index
+     * @apiSuccess {Number} chunks.size Chunk size (in bytes)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload not found
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param uploadId Upload ID
+     * @return Response
+     */
+    @GET
+    @Path("upload/{uploadId: [a-z0-9\\-]+}")
+    public Response getUpload(@PathParam("uploadId") String uploadId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        ChunkedUploadUtil.ChunkedUpload upload = findUpload(uploadId);
+        JsonArrayBuilder chunks = Json.createArrayBuilder();
+        long offset;
+        try {
+            for (Map.Entry<Integer, Long> chunk : upload.getChunkSizes().entrySet()) {
+                chunks.add(Json.createObjectBuilder()
+                        .add("index", chunk.getKey())
+                        .add("size", chunk.getValue()));
+            }
+            offset = upload.getOffset();
+        } catch (IOException e) {
+            throw new ServerException("UploadError", "Error reading the upload", e);
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("upload_id", upload.getId())
+                .add("name", JsonUtil.nullable(upload.getName()))
+                .add("size", upload.getSize())
+                .add("offset", offset)
+                .add("chunks", chunks);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Complete a chunked upload and create the file.
+     *
+     * @api {post} /file/upload/:uploadId/complete Complete a chunked upload
+     * @apiDescription The chunks are assembled in order, there must be no missing chunk.
+     * @apiName PostFileUploadComplete
+     * @apiGroup File
+     * @apiParam {String} uploadId Upload ID
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {String} id File ID
+     * @apiSuccess {Number} size File size (in bytes)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload or document not found
+     * @apiError (client) UploadIncomplete Some chunks are missing
+     * @apiError (client) UploadCompleting The upload is already being completed
+     * @apiError (client) QuotaReached Quota limit reached
+     * @apiError (unavailable) QueueFull Too many files are waiting to be processed, retry after the Retry-After delay
+     * @apiError (server) FileError Error adding a file
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param uploadId Upload ID
+     * @return Response
+     */
+    @POST
+    @Path("upload/{uploadId: [a-z0-9\\-]+}/complete")
+    public Response completeUpload(@PathParam("uploadId") String uploadId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        // Push back when too many files are waiting to be processed
+        if (AppContext.getInstance().isFileProcessingQueueFull()) {
+            throw new UnavailableServerException("QueueFull", "Too many files are waiting to be processed, try again later", QUEUE_FULL_RETRY_AFTER);
+        }
+
+        ChunkedUploadUtil.ChunkedUpload upload = findUpload(uploadId);
+
+        // The document may have been deleted or unshared since the upload started
+        DocumentDto documentDto = null;
+        if (upload.getDocumentId() != null) {
+            documentDto = new DocumentDao().getDocument(upload.getDocumentId(), PermType.WRITE, getTargetIdList(null));
+            if (documentDto == null) {
+                throw new NotFoundException();
+            }
+        }
+
+        User user = new UserDao().getById(principal.getId());
+        try {
+            if (!ChunkedUploadUtil.startCompletion(upload)) {
+                throw new ClientException("UploadCompleting", "The upload is already being completed");
+            }
+        } catch (IOException e) {
+            throw new ServerException("FileError", "Error adding a file", e);
+        }
+
+        File file;
+        try (InputStream inputStream = ChunkedUploadUtil.openContent(upload, user.getPrivateKey())) {
+            file = FileUtil.createFile(upload.getName(), upload.getPreviousFileId(), inputStream, documentDto == null ?
+                    null : documentDto.getLanguage(), principal.getId(), upload.getDocumentId());
+        } catch (Exception e) {
+            try {
+                ChunkedUploadUtil.cancelCompletion(upload);
+            } catch (IOException e1) {
+                // The upload will expire
+            }
+            if (e instanceof IOException && !"StreamError".equals(e.getMessage())) {
+                throw new ClientException(e.getMessage(), e.getMessage(), e);
+            }
+            throw new ServerException("FileError", "Error adding a file", e);
+        }
+
+        // The chunks are not needed anymore
+        try {
+            ChunkedUploadUtil.delete(upload);
+        } catch (IOException e) {
+            // The remaining chunks will be deleted when the upload expires
+        }
+
+        // Always return OK
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok")
+                .add("id", file.getId())
+                .add("size", file.getSize());
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Abort a chunked upload.
+     *
+     * @api {delete} /file/upload/:uploadId Abort a chunked upload
+     * @apiName DeleteFileUpload
+     * @apiGroup File
+     * @apiParam {String} uploadId Upload ID
+     * @apiSuccess {String} status Status OK
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload not found
+     * @apiError (server) UploadError Error deleting the upload
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param uploadId Upload ID
+     * @return Response
+     */
+    @DELETE
+    @Path("upload/{uploadId: [a-z0-9\\-]+}")
+    public Response deleteUpload(@PathParam("uploadId") String uploadId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        ChunkedUploadUtil.ChunkedUpload upload = findUpload(uploadId);
+        try {
+            ChunkedUploadUtil.delete(upload);
+        } catch (IOException e) {
+            throw new ServerException("UploadError", "Error deleting the upload", e);
+        }
+
+        // Always return OK
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok");
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Attach a file to a document.
      *
@@ -192,19 +505,20 @@ public class FileResource extends BaseResource {
         }
         
         // Update the file
+        String previousDocumentId = file.getDocumentId();
         file.setDocumentId(documentId);
         file.setOrder(fileDao.getByDocumentId(principal.getId(), documentId).size());
         fileDao.update(file);
         
         // Raise a new file updated event and document updated event (it wasn't sent during file creation)
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(StorageUtil.getBackend().read(id), user.getPrivateKey());
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent fileUpdatedAsyncEvent = new FileUpdatedAsyncEvent();
             fileUpdatedAsyncEvent.setUserId(principal.getId());
             fileUpdatedAsyncEvent.setLanguage(documentDto.getLanguage());
             fileUpdatedAsyncEvent.setFileId(file.getId());
+            fileUpdatedAsyncEvent.setPreviousDocumentId(previousDocumentId);
             fileUpdatedAsyncEvent.setUnencryptedFile(unencryptedFile);
             ThreadLocalContext.get().addAsyncEvent(fileUpdatedAsyncEvent);
             
@@ -306,14 +620,14 @@ public class FileResource extends BaseResource {
 
         // Start the processing asynchronously
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(StorageUtil.getBackend().read(id), user.getPrivateKey());
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
             event.setUserId(principal.getId());
             event.setLanguage(documentDto.getLanguage());
             event.setFileId(file.getId());
             event.setUnencryptedFile(unencryptedFile);
+            event.setSkipCache(true);
             ThreadLocalContext.get().addAsyncEvent(event);
         } catch (Exception e) {
             throw new ServerException("ProcessingError", "Error processing this file", e);
@@ -525,6 +839,7 @@ public class FileResource extends BaseResource {
         FileDeletedAsyncEvent fileDeletedAsyncEvent = new FileDeletedAsyncEvent();
         fileDeletedAsyncEvent.setUserId(principal.getId());
         fileDeletedAsyncEvent.setFileId(file.getId());
+        fileDeletedAsyncEvent.setDocumentId(file.getDocumentId());
         fileDeletedAsyncEvent.setFileSize(file.getSize());
         ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         
@@ -546,6 +861,8 @@ public class FileResource extends BaseResource {
      * Returns a file.
      *
      * @api {get} /file/:id/data Get a file data
+     * @apiDescription The original file supports single byte ranges (Range and If-Range headers).
+     * Conditional requests (If-None-Match and If-Modified-Since headers) are supported for the original file and its thumbnails.
      * @apiName GetFile
      * @apiGroup File
      * @apiParam {String} id File ID
@@ -555,6 +872,7 @@ public class FileResource extends BaseResource {
      * @apiError (client) SizeError Size must be web or thumb
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
+     * @apiError (client) RangeNotSatisfiable The requested range is outside the file
      * @apiError (server) ServiceUnavailable Error reading the file
      * @apiPermission none
      * @apiVersion 1.5.0
@@ -580,7 +898,7 @@ public class FileResource extends BaseResource {
 
         // Get the stored file
         UserDao userDao = new UserDao();
-        java.nio.file.Path storedFile;
+        String storageKey;
         String mimeType;
         boolean decrypt;
         if (size != null) {
@@ -590,35 +908,81 @@ public class FileResource extends BaseResource {
                         .build();
             }
 
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_" + size);
+            storageKey = fileId + "_" + size;
             mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
             decrypt = true; // Thumbnails are encrypted
-            if (!Files.exists(storedFile)) {
-                try {
-                    storedFile = Paths.get(getClass().getResource("/image/file-" + size + ".png").toURI());
-                } catch (URISyntaxException e) {
-                    // Ignore
-                }
-                mimeType = MimeType.IMAGE_PNG;
-                decrypt = false;
-            }
         } else {
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
+            storageKey = fileId;
             mimeType = file.getMimeType();
             decrypt = true; // Original files are encrypted
         }
+
+        // A new version of a file has a new ID, so the stored content never changes
+        String entityTag = "\"" + fileId + "-" + file.getVersion() + (size == null ? "" : "-" + size) + "\"";
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            ifModifiedSince = -1;
+        }
+        if (ifNoneMatch != null ? HttpUtil.matchesEntityTag(ifNoneMatch, entityTag)
+                : ifModifiedSince >= 0 && file.getCreateDate().getTime() / 1000 <= ifModifiedSince / 1000) {
+            return Response.notModified()
+                    .header(HttpHeaders.ETAG, entityTag)
+                    .header(HttpHeaders.CACHE_CONTROL, "private")
+                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L))
+                    .build();
+        }
         
         // Stream the output and decrypt it if necessary
         StreamingOutput stream;
         
         // A file is always encrypted by the creator of it
         User user = userDao.getById(file.getUserId());
+
+        // Only the original file can be requested by range, its size is known
+        long[] range = null;
+        long length = -1;
         
         // Write the decrypted file to the output
         try {
-            InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
-                    EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
+            StorageBackend storageBackend = StorageUtil.getBackend();
+            String ifRange = request.getHeader("If-Range");
+            if (size == null && (ifRange == null || ifRange.equals(entityTag))) {
+                // The encrypted and decrypted files have the same size
+                length = file.getSize() == null || file.getSize().equals(File.UNKNOWN_SIZE) ?
+                        storageBackend.size(storageKey) : file.getSize();
+                range = HttpUtil.parseRange(request.getHeader("Range"), length);
+                if (range != null && range.length == 0) {
+                    return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header("Content-Range", "bytes */" + length)
+                            .build();
+                }
+            }
+
+            InputStream responseInputStream;
+            if (range != null) {
+                // Start decrypting at the first requested block
+                InputStream fileInputStream = storageBackend.read(storageKey, EncryptionUtil.getBlockStart(range[0]));
+                responseInputStream = ByteStreams.limit(EncryptionUtil.decryptInputStream(
+                        fileInputStream, user.getPrivateKey(), range[0]), range[1] - range[0] + 1);
+            } else {
+                InputStream fileInputStream;
+                try {
+                    fileInputStream = storageBackend.read(storageKey);
+                } catch (NoSuchFileException e) {
+                    if (size == null) {
+                        throw e;
+                    }
+                    // The thumbnail is not generated yet, use a generic one
+                    fileInputStream = getClass().getResourceAsStream("/image/file-" + size + ".png");
+                    mimeType = MimeType.IMAGE_PNG;
+                    decrypt = false;
+                }
+                responseInputStream = decrypt ?
+                        EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
+            }
                     
             stream = outputStream -> {
                 try {
@@ -639,10 +1003,20 @@ public class FileResource extends BaseResource {
         Response.ResponseBuilder builder = Response.ok(stream)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
                 .header(HttpHeaders.CONTENT_TYPE, mimeType);
+        if (range != null) {
+            builder.status(Status.PARTIAL_CONTENT)
+                    .header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length)
+                    .header(HttpHeaders.CONTENT_LENGTH, range[1] - range[0] + 1);
+        }
+        if (size == null) {
+            builder.header("Accept-Ranges", "bytes");
+        }
         if (decrypt) {
             // Cache real files
             builder.header(HttpHeaders.CACHE_CONTROL, "private")
-                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L))
+                    .header(HttpHeaders.ETAG, entityTag)
+                    .header(HttpHeaders.LAST_MODIFIED, HttpUtil.formatHttpDate(file.getCreateDate()));
         } else {
             // Do not cache the temporary thumbnail
             builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
@@ -721,33 +1095,12 @@ public class FileResource extends BaseResource {
      * Sent the content of a list of files.
      */
     private Response sendZippedFiles(String zipFileName, List<File> fileList) {
-        final UserDao userDao = new UserDao();
+        // Files are encrypted by the creator of them, load all their keys at once
+        final Map<String, String> privateKeyMap = fileList.isEmpty() ? Collections.emptyMap() :
+                new UserDao().getPrivateKeysByIds(fileList.stream().map(File::getUserId).collect(Collectors.toSet()));
 
         // Create the ZIP stream
-        StreamingOutput stream = outputStream -> {
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-                // Add each file to the ZIP stream
-                int index = 0;
-                for (File file : fileList) {
-                    java.nio.file.Path storedfile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                    InputStream fileInputStream = Files.newInputStream(storedfile);
-
-                    // Add the decrypted file to the ZIP stream
-                    // Files are encrypted by the creator of them
-                    User user = userDao.getById(file.getUserId());
-                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey())) {
-                        ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
-                        zipOutputStream.putNextEntry(zipEntry);
-                        ByteStreams.copy(decryptedStream, zipOutputStream);
-                        zipOutputStream.closeEntry();
-                    } catch (Exception e) {
-                        throw new WebApplicationException(e);
-                    }
-                    index++;
-                }
-            }
-            outputStream.close();
-        };
+        StreamingOutput stream = outputStream -> ZipExportUtil.writeZip(fileList, privateKeyMap, outputStream);
         
         // Write to the output
         return Response.ok(stream)
@@ -774,6 +1127,26 @@ public class FileResource extends BaseResource {
     }
 
 
+    /**
+     * Find a chunked upload of the current user.
+     *
+     * @param uploadId Upload ID
+     * @return Upload
+     */
+    private ChunkedUploadUtil.ChunkedUpload findUpload(String uploadId) {
+        ChunkedUploadUtil.ChunkedUpload upload;
+        try {
+            upload = ChunkedUploadUtil.get(uploadId, principal.getId());
+        } catch (IOException e) {
+            throw new ServerException("UploadError", "Error reading the upload", e);
+        }
+        if (upload == null) {
+            throw new NotFoundException();
+        }
+        return upload;
+    }
+
+
     /**
      * Find a list of files with access rights checking.
      *
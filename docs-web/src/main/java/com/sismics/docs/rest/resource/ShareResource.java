@@ -6,6 +6,8 @@ import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.ShareDao;
+import com.sismics.docs.core.event.AclCreatedAsyncEvent;
+import com.sismics.docs.core.event.AclDeletedAsyncEvent;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.model.jpa.Share;
@@ -83,6 +85,14 @@ public class ShareResource extends BaseResource {
         acl.setTargetId(share.getId());
         aclDao.create(acl, principal.getId());
 
+        // Raise an ACL created event
+        AclCreatedAsyncEvent aclCreatedAsyncEvent = new AclCreatedAsyncEvent();
+        aclCreatedAsyncEvent.setUserId(principal.getId());
+        aclCreatedAsyncEvent.setSourceId(documentId);
+        aclCreatedAsyncEvent.setPerm(PermType.READ);
+        aclCreatedAsyncEvent.setTargetId(share.getId());
+        ThreadLocalContext.get().addAsyncEvent(aclCreatedAsyncEvent);
+
         // Raise a document updated event
         DocumentUpdatedAsyncEvent event = new DocumentUpdatedAsyncEvent();
         event.setUserId(principal.getId());
@@ -139,6 +149,14 @@ public class ShareResource extends BaseResource {
         ShareDao shareDao = new ShareDao();
         shareDao.delete(id);
 
+        // Raise an ACL deleted event
+        AclDeletedAsyncEvent aclDeletedAsyncEvent = new AclDeletedAsyncEvent();
+        aclDeletedAsyncEvent.setUserId(principal.getId());
+        aclDeletedAsyncEvent.setSourceId(acl.getSourceId());
+        aclDeletedAsyncEvent.setPerm(PermType.READ);
+        aclDeletedAsyncEvent.setTargetId(id);
+        ThreadLocalContext.get().addAsyncEvent(aclDeletedAsyncEvent);
+
         // Raise a document updated event
         DocumentUpdatedAsyncEvent event = new DocumentUpdatedAsyncEvent();
         event.setUserId(principal.getId());
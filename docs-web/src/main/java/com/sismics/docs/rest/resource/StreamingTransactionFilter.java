@@ -0,0 +1,23 @@
+package com.sismics.docs.rest.resource;
+
+import com.sismics.util.filter.RequestContextFilter;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * End the request transaction before a streamed response is written.
+ * Files can take a long time to reach slow clients, the database connection is released meanwhile.
+ */
+@Provider
+public class StreamingTransactionFilter implements ContainerResponseFilter {
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (responseContext.getEntity() instanceof StreamingOutput) {
+            RequestContextFilter.endTransaction(responseContext.getStatus());
+        }
+    }
+}
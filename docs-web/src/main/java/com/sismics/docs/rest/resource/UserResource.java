@@ -18,6 +18,8 @@ import com.sismics.docs.core.model.jpa.*;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.RoutingUtil;
 import com.sismics.docs.core.util.authentication.AuthenticationUtil;
+import com.sismics.docs.core.util.authentication.SessionTokenUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
@@ -335,7 +337,8 @@ public class UserResource extends BaseResource {
             .setLongLasted(longLasted)
             .setIp(StringUtils.abbreviate(ip, 45))
             .setUserAgent(StringUtils.abbreviate(request.getHeader("user-agent"), 1000));
-        String token = authenticationTokenDao.create(authenticationToken);
+        authenticationTokenDao.create(authenticationToken);
+        String token = SessionTokenUtil.sign(authenticationToken);
         
         // Cleanup old session tokens
         authenticationTokenDao.deleteOldSessionToken(user.getId());
@@ -695,6 +698,12 @@ public class UserResource extends BaseResource {
      * @apiParam {Number} sort_column Column index to sort on
      * @apiParam {Boolean} asc If true, sort in ascending order
      * @apiParam {String} group Filter on this group
+     * @apiParam {Number} [limit] Total number of users to return, all users are returned if neither limit or cursor is specified
+     * @apiParam {String} [cursor] Start after this cursor, returned as <code>next</code> by the previous page
+     * @apiParam {String="exact","approximate","none"} [total] Counting mode of the total, <code>approximate</code> stops counting after 1000 users (default is <code>exact</code>)
+     * @apiSuccess {Number} total Total number of users (only if paginated and <code>total</code> is not <code>none</code>)
+     * @apiSuccess {Boolean} total_approximate True if there are more users than the total (only if <code>total</code> is <code>approximate</code>)
+     * @apiSuccess {String} next Cursor of the next page, null if this is the last page (only if paginated)
      * @apiSuccess {Object[]} users List of users
      * @apiSuccess {String} users.id ID
      * @apiSuccess {String} users.username Username
@@ -711,6 +720,9 @@ public class UserResource extends BaseResource {
      * @param sortColumn Sort index
      * @param asc If true, ascending sorting, else descending
      * @param groupName Only return users from this group
+     * @param limit Page limit
+     * @param cursor Page cursor
+     * @param total Count mode of the total
      * @return Response
      */
     @GET
@@ -718,7 +730,10 @@ public class UserResource extends BaseResource {
     public Response list(
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
-            @QueryParam("group") String groupName) {
+            @QueryParam("group") String groupName,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") String total) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
@@ -737,7 +752,17 @@ public class UserResource extends BaseResource {
         }
         
         UserDao userDao = new UserDao();
-        List<UserDto> userDtoList = userDao.findByCriteria(new UserCriteria().setGroupId(groupId), sortCriteria);
+        UserCriteria userCriteria = new UserCriteria().setGroupId(groupId);
+        JsonObjectBuilder response = Json.createObjectBuilder();
+        List<UserDto> userDtoList;
+        if (limit == null && Strings.isNullOrEmpty(cursor)) {
+            userDtoList = userDao.findByCriteria(userCriteria, sortCriteria);
+        } else {
+            PaginatedList<UserDto> paginatedList = createPaginatedList(limit, null, cursor, total, sortCriteria);
+            userDao.findByCriteria(paginatedList, userCriteria, sortCriteria);
+            userDtoList = paginatedList.getResultList();
+            addPagination(response, paginatedList);
+        }
         for (UserDto userDto : userDtoList) {
             users.add(Json.createObjectBuilder()
                     .add("id", userDto.getId())
@@ -750,8 +775,7 @@ public class UserResource extends BaseResource {
                     .add("disabled", userDto.getDisableTimestamp() != null));
         }
         
-        JsonObjectBuilder response = Json.createObjectBuilder()
-                .add("users", users);
+        response.add("users", users);
         return Response.ok().entity(response.build()).build();
     }
     
@@ -1102,16 +1126,16 @@ public class UserResource extends BaseResource {
     }
 
     /**
-     * Returns the authentication token value.
+     * Returns the authentication token ID.
      *
-     * @return Token value
+     * @return Token ID
      */
     private String getAuthToken() {
         if (request.getCookies() != null) {
             for (Cookie cookie : request.getCookies()) {
                 if (TokenBasedSecurityFilter.COOKIE_NAME.equals(cookie.getName())
                         && !Strings.isNullOrEmpty(cookie.getValue())) {
-                    return cookie.getValue();
+                    return SessionTokenUtil.getTokenId(cookie.getValue());
                 }
             }
         }
@@ -1137,6 +1161,7 @@ public class UserResource extends BaseResource {
             FileDeletedAsyncEvent fileDeletedAsyncEvent = new FileDeletedAsyncEvent();
             fileDeletedAsyncEvent.setUserId(principal.getId());
             fileDeletedAsyncEvent.setFileId(file.getId());
+            fileDeletedAsyncEvent.setDocumentId(file.getDocumentId());
             fileDeletedAsyncEvent.setFileSize(file.getSize());
             ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         }
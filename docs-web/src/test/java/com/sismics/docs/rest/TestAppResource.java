@@ -57,6 +57,7 @@ public class TestAppResource extends BaseJerseyTest {
         Long totalMemory = json.getJsonNumber("total_memory").longValue();
         Assert.assertTrue(totalMemory > 0 && totalMemory > freeMemory);
         Assert.assertEquals(0, json.getJsonNumber("queued_tasks").intValue());
+        Assert.assertEquals(0, json.getJsonObject("queues").getInt("processing"));
         Assert.assertFalse(json.getBoolean("guest_login"));
         Assert.assertFalse(json.getBoolean("ocr_enabled"));
         Assert.assertEquals("eng", json.getString("default_language"));
@@ -69,6 +70,22 @@ public class TestAppResource extends BaseJerseyTest {
                 .post(Entity.form(new Form()));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
 
+        // Check the rebuild progress, the rebuild is synchronous in unit tests
+        json = target().path("/app/batch/reindex").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("running"));
+        Assert.assertEquals(json.getJsonNumber("total").longValue(), json.getJsonNumber("indexed").longValue());
+
+        // Check the metrics
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        JsonObject metrics = json.getJsonObject("metrics");
+        Assert.assertTrue(metrics.containsKey("lucene.commit.count"));
+        Assert.assertTrue(metrics.containsKey("lucene.refresh.mean_ms"));
+        Assert.assertTrue(metrics.containsKey("lucene.pending_writes"));
+
         // Clean storage
         response = target().path("/app/batch/clean_storage").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
@@ -477,6 +494,32 @@ public class TestAppResource extends BaseJerseyTest {
                 .get(JsonObject.class);
         Assert.assertEquals("ldap1@teedy.io", json.getString("email"));
 
+        // Login again, the user is not searched in the directory
+        JsonObject metrics = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class)
+                .getJsonObject("metrics");
+        long userCacheHitCount = metrics.getJsonNumber("ldap.user_cache.hit").longValue();
+        long loginCount = metrics.getJsonNumber("ldap.login.count").longValue();
+        clientUtil.login("ldap1", "secret", false);
+
+        // The password is always checked by the LDAP server
+        Response response = target().path("/user/login").request()
+                .post(Entity.form(new Form()
+                        .param("username", "ldap1")
+                        .param("password", "wrongpassword")));
+        Assert.assertEquals(Status.FORBIDDEN, Status.fromStatusCode(response.getStatus()));
+
+        // Check the LDAP metrics
+        metrics = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class)
+                .getJsonObject("metrics");
+        Assert.assertEquals(userCacheHitCount + 2, metrics.getJsonNumber("ldap.user_cache.hit").longValue());
+        Assert.assertTrue(metrics.getJsonNumber("ldap.login.count").longValue() >= loginCount + 2);
+        Assert.assertTrue(metrics.getJsonNumber("ldap.login.failures").longValue() >= 1);
+        Assert.assertTrue(metrics.getJsonNumber("ldap.pool.idle").intValue() >= 1);
+
         // List all documents
         json = target().path("/document/list")
                 .queryParam("sort_column", 3)
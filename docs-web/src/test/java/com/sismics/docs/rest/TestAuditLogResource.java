@@ -119,6 +119,29 @@ public class TestAuditLogResource extends BaseJerseyTest {
         Assert.assertEquals(countByClass(logs, "Acl"), 2);
         Assert.assertEquals(countByClass(logs, "File"), 1);
 
+        // Get the logs for the document 3 by 3
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("limit", 3)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(4, json.getInt("total"));
+        Assert.assertEquals(3, json.getJsonArray("logs").size());
+        Assert.assertEquals(logs.getJsonObject(2).getString("id"), json.getJsonArray("logs").getJsonObject(2).getString("id"));
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("limit", 3)
+                .queryParam("cursor", json.getString("next"))
+                .queryParam("total", "none")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.containsKey("total"));
+        Assert.assertEquals(1, json.getJsonArray("logs").size());
+        Assert.assertEquals(logs.getJsonObject(3).getString("id"), json.getJsonArray("logs").getJsonObject(0).getString("id"));
+        Assert.assertTrue(json.isNull("next"));
+
         // Delete auditlog1
         String adminToken = adminToken();
         target().path("/user/auditlog1").request()
@@ -2,7 +2,8 @@ package com.sismics.docs.rest;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
@@ -171,6 +172,22 @@ public class TestDocumentResource extends BaseJerseyTest {
         documents = json.getJsonArray("documents");
         Assert.assertEquals(2, documents.size());
 
+        // Suggest search terms without searching
+        json = target().path("/document/suggest")
+                .queryParam("search", "docu")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals("document", json.getJsonArray("suggestions").getString(0));
+
+        // The titles of unreadable documents are not suggested
+        json = target().path("/document/suggest")
+                .queryParam("search", "docu")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document3Token)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonArray("suggestions").isEmpty());
+
         // Check highlights
         json = target().path("/document/list")
                 .queryParam("search", "full:uranium full:einstein")
@@ -418,12 +435,10 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
 
         // Check that the associated files are deleted from FS
-        java.io.File storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id).toFile();
-        java.io.File webFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_web").toFile();
-        java.io.File thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_thumb").toFile();
-        Assert.assertFalse(storedFile.exists());
-        Assert.assertFalse(webFile.exists());
-        Assert.assertFalse(thumbnailFile.exists());
+        StorageBackend storageBackend = StorageUtil.getBackend();
+        Assert.assertFalse(storageBackend.exists(file1Id));
+        Assert.assertFalse(storageBackend.exists(file1Id + "_web"));
+        Assert.assertFalse(storageBackend.exists(file1Id + "_thumb"));
         
         // Get a document (KO)
         response = target().path("/document/" + document1Id).request()
@@ -999,4 +1014,144 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals("BOOLEAN", meta.getString("type"));
         Assert.assertTrue(meta.getBoolean("value"));
     }
+
+    /**
+     * Test the projection of a document facets.
+     */
+    @Test
+    public void testDocumentFields() {
+        // Login document_fields
+        clientUtil.createUser("document_fields");
+        String documentFieldsToken = clientUtil.login("document_fields");
+
+        // Create a tag
+        JsonObject json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentFieldsToken)
+                .put(Entity.form(new Form()
+                        .param("name", "FieldsTag")
+                        .param("color", "#ff0000")), JsonObject.class);
+        String tagId = json.getString("id");
+
+        // Create a document
+        json = target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentFieldsToken)
+                .put(Entity.form(new Form()
+                        .param("title", "Document fields")
+                        .param("tags", tagId)
+                        .param("language", "eng")), JsonObject.class);
+        String documentId = json.getString("id");
+
+        // Get the document with all the facets except files
+        json = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentFieldsToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("tags").size());
+        Assert.assertEquals(2, json.getJsonArray("acls").size());
+        Assert.assertTrue(json.getBoolean("writable"));
+        Assert.assertEquals(2, json.getJsonArray("inherited_acls").size());
+        Assert.assertEquals(tagId, json.getJsonArray("inherited_acls").getJsonObject(0).getString("source_id"));
+        Assert.assertTrue(json.containsKey("contributors"));
+        Assert.assertTrue(json.containsKey("relations"));
+        Assert.assertTrue(json.containsKey("metadata"));
+        Assert.assertFalse(json.containsKey("files"));
+
+        // Get the document with some facets only
+        json = target().path("/document/" + documentId)
+                .queryParam("fields", "tags,inherited_acls,files")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentFieldsToken)
+                .get(JsonObject.class);
+        Assert.assertEquals("Document fields", json.getString("title"));
+        Assert.assertEquals(1, json.getJsonArray("tags").size());
+        Assert.assertEquals(2, json.getJsonArray("inherited_acls").size());
+        Assert.assertEquals(0, json.getJsonArray("files").size());
+        Assert.assertFalse(json.containsKey("acls"));
+        Assert.assertFalse(json.containsKey("writable"));
+        Assert.assertFalse(json.containsKey("contributors"));
+        Assert.assertFalse(json.containsKey("relations"));
+        Assert.assertFalse(json.containsKey("metadata"));
+    }
+
+    /**
+     * Test the pagination of the documents with a cursor.
+     */
+    @Test
+    public void testDocumentCursor() {
+        // Login document_cursor
+        clientUtil.createUser("document_cursor");
+        String documentCursorToken = clientUtil.login("document_cursor");
+
+        // Create 5 documents, 2 of them with the same create date
+        long createDate = new Date().getTime();
+        for (int i = 0; i < 5; i++) {
+            target().path("/document").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                    .put(Entity.form(new Form()
+                            .param("title", "Cursor document " + i)
+                            .param("language", "eng")
+                            .param("create_date", Long.toString(createDate - Math.min(i, 3) * 1000L))), JsonObject.class);
+        }
+
+        // List all documents
+        JsonObject json = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get(JsonObject.class);
+        JsonArray documents = json.getJsonArray("documents");
+        Assert.assertEquals(5, json.getInt("total"));
+        Assert.assertEquals(5, documents.size());
+        Assert.assertTrue(json.isNull("next"));
+
+        // Browse the documents 2 by 2, without counting them
+        String cursor = null;
+        int index = 0;
+        do {
+            json = target().path("/document/list")
+                    .queryParam("sort_column", 3)
+                    .queryParam("asc", false)
+                    .queryParam("limit", 2)
+                    .queryParam("cursor", cursor)
+                    .queryParam("total", "none")
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                    .get(JsonObject.class);
+            Assert.assertFalse(json.containsKey("total"));
+            JsonArray page = json.getJsonArray("documents");
+            for (int i = 0; i < page.size(); i++) {
+                Assert.assertEquals(documents.getJsonObject(index++).getString("id"), page.getJsonObject(i).getString("id"));
+            }
+            cursor = json.isNull("next") ? null : json.getString("next");
+        } while (cursor != null);
+        Assert.assertEquals(5, index);
+
+        // Approximate count
+        json = target().path("/document/list")
+                .queryParam("limit", 2)
+                .queryParam("total", "approximate")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(5, json.getInt("total"));
+        Assert.assertFalse(json.getBoolean("total_approximate"));
+        cursor = json.getString("next");
+
+        // The cursor is only valid with the same sort
+        Response response = target().path("/document/list")
+                .queryParam("sort_column", 1)
+                .queryParam("cursor", cursor)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+
+        // Invalid cursor
+        response = target().path("/document/list")
+                .queryParam("cursor", "invalid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+    }
 }
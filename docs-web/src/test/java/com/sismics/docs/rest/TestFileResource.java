@@ -2,7 +2,8 @@ package com.sismics.docs.rest;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import com.sismics.util.mime.MimeType;
 import com.sismics.util.mime.MimeTypeUtil;
@@ -16,13 +17,16 @@ import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -90,7 +94,8 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertTrue(fileBytes.length > 0);
         
         // Check that the files are not readable directly from FS
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id);
+        Path storedFile = StorageUtil.getLocalBackend().getPath(file1Id);
+        Assert.assertTrue(Files.exists(storedFile));
         Assert.assertEquals(MimeType.DEFAULT, MimeTypeUtil.guessMimeType(storedFile, null));
 
         // Get all files from a document
@@ -168,12 +173,10 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
         
         // Check that files are deleted from FS
-        storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id);
-        Path webFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_web");
-        Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_thumb");
-        Assert.assertFalse(Files.exists(storedFile));
-        Assert.assertFalse(Files.exists(webFile));
-        Assert.assertFalse(Files.exists(thumbnailFile));
+        StorageBackend storageBackend = StorageUtil.getBackend();
+        Assert.assertFalse(storageBackend.exists(file1Id));
+        Assert.assertFalse(storageBackend.exists(file1Id + "_web"));
+        Assert.assertFalse(storageBackend.exists(file1Id + "_thumb"));
         
         // Get all files from a document
         json = target().path("/file/list")
@@ -275,7 +278,12 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         InputStream is = (InputStream) response.getEntity();
         ZipInputStream zipInputStream = new ZipInputStream(is);
-        Assert.assertEquals(zipInputStream.getNextEntry().getName(), "0-PIA00452.jpg");
+        ZipEntry zipEntry = zipInputStream.getNextEntry();
+        Assert.assertEquals(zipEntry.getName(), "0-PIA00452.jpg");
+        Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod()); // JPEG files are already compressed
+        try (InputStream fileIs = Resources.getResource(FILE_PIA_00452_JPG).openStream()) {
+            Assert.assertArrayEquals(ByteStreams.toByteArray(fileIs), ByteStreams.toByteArray(zipInputStream));
+        }
         Assert.assertNull(zipInputStream.getNextEntry());
 
         // Fail if we don't have access to the document
@@ -301,8 +309,8 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         is = (InputStream) response.getEntity();
         zipInputStream = new ZipInputStream(is);
-        Assert.assertNotNull(zipInputStream.getNextEntry().getName());
-        Assert.assertNotNull(zipInputStream.getNextEntry().getName());
+        Assert.assertTrue(zipInputStream.getNextEntry().getName().startsWith("0-"));
+        Assert.assertTrue(zipInputStream.getNextEntry().getName().startsWith("1-"));
         Assert.assertNull(zipInputStream.getNextEntry());
         
         // Fail if we don't have access to the files
@@ -400,6 +408,244 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals("ok", json.getString("status"));
     }
     
+    /**
+     * Test the chunked uploads.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testChunkedUpload() throws Exception {
+        // Login file_chunk
+        clientUtil.createUser("file_chunk");
+        String fileChunkToken = clientUtil.login("file_chunk");
+
+        // Start an upload
+        byte[] data;
+        try (InputStream is = Resources.getResource(FILE_PIA_00452_JPG).openStream()) {
+            data = ByteStreams.toByteArray(is);
+        }
+        JsonObject json = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.form(new Form()
+                        .param("name", "PIA00452.jpg")
+                        .param("size", Integer.toString(data.length))), JsonObject.class);
+        String uploadId = json.getString("upload_id");
+
+        // Send the second chunk first
+        int chunkSize = 100000;
+        json = target().path("/file/upload/" + uploadId + "/1").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.entity(Arrays.copyOfRange(data, chunkSize, data.length), MediaType.APPLICATION_OCTET_STREAM), JsonObject.class);
+        Assert.assertEquals(data.length - chunkSize, json.getJsonNumber("size").longValue());
+
+        // Nothing is received from the start of the file
+        json = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .get(JsonObject.class);
+        Assert.assertEquals("PIA00452.jpg", json.getString("name"));
+        Assert.assertEquals(data.length, json.getJsonNumber("size").longValue());
+        Assert.assertEquals(0, json.getJsonNumber("offset").longValue());
+        Assert.assertEquals(1, json.getJsonArray("chunks").size());
+
+        // The upload can't be completed yet
+        Response response = target().path("/file/upload/" + uploadId + "/complete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .post(Entity.form(new Form()));
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals("UploadIncomplete", json.getString("type"));
+
+        // Send the first chunk, the upload is complete
+        target().path("/file/upload/" + uploadId + "/0").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.entity(Arrays.copyOfRange(data, 0, chunkSize), MediaType.APPLICATION_OCTET_STREAM), JsonObject.class);
+        json = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(data.length, json.getJsonNumber("offset").longValue());
+
+        // Other users can't see the upload
+        clientUtil.createUser("file_chunk2");
+        String fileChunk2Token = clientUtil.login("file_chunk2");
+        response = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunk2Token)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
+
+        // Complete the upload
+        json = target().path("/file/upload/" + uploadId + "/complete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .post(Entity.form(new Form()), JsonObject.class);
+        String file1Id = json.getString("id");
+        Assert.assertEquals(data.length, json.getJsonNumber("size").longValue());
+
+        // The upload is gone
+        response = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
+
+        // Get the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .get();
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertArrayEquals(data, ByteStreams.toByteArray((InputStream) response.getEntity()));
+        json = target().path("/file/list").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .get(JsonObject.class);
+        JsonArray files = json.getJsonArray("files");
+        Assert.assertEquals(1, files.size());
+        Assert.assertEquals("PIA00452.jpg", files.getJsonObject(0).getString("name"));
+        Assert.assertEquals("image/jpeg", files.getJsonObject(0).getString("mimetype"));
+
+        // Start an upload and send more data than announced
+        json = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.form(new Form()
+                        .param("name", "test.txt")
+                        .param("size", "5")), JsonObject.class);
+        uploadId = json.getString("upload_id");
+        response = target().path("/file/upload/" + uploadId + "/0").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.entity(new byte[6], MediaType.APPLICATION_OCTET_STREAM));
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals("UploadTooLarge", json.getString("type"));
+
+        // The uploads in progress share the quota
+        json = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.form(new Form()
+                        .param("name", "large.bin")
+                        .param("size", "600000")), JsonObject.class);
+        String largeUploadId = json.getString("upload_id");
+        response = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.form(new Form()
+                        .param("name", "large.bin")
+                        .param("size", "600000")));
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals("QuotaReached", json.getString("type"));
+        target().path("/file/upload/" + largeUploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .delete(JsonObject.class);
+
+        // The size must be announced
+        response = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .put(Entity.form(new Form()
+                        .param("name", "test.txt")));
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals("ValidationError", json.getString("type"));
+
+        // Abort the upload
+        json = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .delete(JsonObject.class);
+        Assert.assertEquals("ok", json.getString("status"));
+        response = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileChunkToken)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Test the range and conditional requests.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testFileRange() throws Exception {
+        // Login file_range
+        clientUtil.createUser("file_range");
+        String fileRangeToken = clientUtil.login("file_range");
+
+        // Add a file
+        String file1Id = clientUtil.addFileToDocument(FILE_PIA_00452_JPG, fileRangeToken, null);
+        byte[] data;
+        try (InputStream is = Resources.getResource(FILE_PIA_00452_JPG).openStream()) {
+            data = ByteStreams.toByteArray(is);
+        }
+
+        // Get the whole file
+        Response response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .get();
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        String entityTag = response.getHeaderString(HttpHeaders.ETAG);
+        String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+        Assert.assertNotNull(entityTag);
+        Assert.assertNotNull(lastModified);
+        Assert.assertArrayEquals(data, ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Get a range in the middle of an encrypted block
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=1000-1999")
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        Assert.assertEquals("bytes 1000-1999/" + data.length, response.getHeaderString("Content-Range"));
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Get the end of the file
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=-100")
+                .header("If-Range", entityTag)
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, data.length - 100, data.length), ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // The whole file is sent if the entity tag changed
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=0-99")
+                .header("If-Range", "\"other\"")
+                .get();
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertArrayEquals(data, ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Range outside the file
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=" + data.length + "-")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), response.getStatus());
+        Assert.assertEquals("bytes */" + data.length, response.getHeaderString("Content-Range"));
+
+        // Revalidate the file
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header(HttpHeaders.IF_NONE_MATCH, entityTag)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header(HttpHeaders.IF_MODIFIED_SINCE, lastModified)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "web")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header(HttpHeaders.IF_NONE_MATCH, entityTag)
+                .get();
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+
+        // Other users still can't read the file
+        clientUtil.createUser("file_range2");
+        String fileRange2Token = clientUtil.login("file_range2");
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRange2Token)
+                .header(HttpHeaders.IF_NONE_MATCH, entityTag)
+                .get();
+        Assert.assertEquals(Status.FORBIDDEN.getStatusCode(), response.getStatus());
+    }
+
     /**
      * Test user quota.
      * 
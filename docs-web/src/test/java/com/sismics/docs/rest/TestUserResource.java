@@ -58,6 +58,19 @@ public class TestUserResource extends BaseJerseyTest {
         Assert.assertFalse(user.getBoolean("totp_enabled"));
         Assert.assertFalse(user.getBoolean("disabled"));
 
+        // List the users one by one
+        json = target().path("/user/list")
+                .queryParam("sort_column", 2)
+                .queryParam("asc", false)
+                .queryParam("limit", 1)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(users.size(), json.getInt("total"));
+        Assert.assertEquals(1, json.getJsonArray("users").size());
+        Assert.assertEquals(user.getString("id"), json.getJsonArray("users").getJsonObject(0).getString("id"));
+        Assert.assertEquals(users.size() > 1, !json.isNull("next"));
+
         // Create a user KO (login length validation)
         Response response = target().path("/user").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
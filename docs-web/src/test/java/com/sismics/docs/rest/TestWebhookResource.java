@@ -22,7 +22,7 @@ public class TestWebhookResource extends BaseJerseyTest {
      * Test the webhook resource.
      */
     @Test
-    public void testWebhookResource() {
+    public void testWebhookResource() throws Exception {
         // Login admin
         String adminToken = adminToken();
 
@@ -85,6 +85,31 @@ public class TestWebhookResource extends BaseJerseyTest {
         webhooks = json.getJsonArray("webhooks");
         Assert.assertEquals(0, webhooks.size());
 
+        // Create a webhook on the file creation
+        target().path("/webhook").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .put(Entity.form(new Form()
+                        .param("event", "FILE_CREATED")
+                        .param("url", "http://localhost:" + getPort() + "/docs/thirdpartywebhook")), JsonObject.class);
+
+        // Add a file to the document, the file events are processed in their own queue
+        String file1Id = clientUtil.addFileToDocument(FILE_PIA_00452_JPG, webhook1Token, document1Id);
+
+        // Check the webhook payload
+        payload = ThirdPartyWebhookResource.getLastPayload();
+        Assert.assertEquals("FILE_CREATED", payload.getString("event"));
+        Assert.assertEquals(file1Id, payload.getString("id"));
+
+        // Delete the file webhook
+        json = target().path("/webhook")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        webhookId = json.getJsonArray("webhooks").getJsonObject(0).getString("id");
+        target().path("/webhook/" + webhookId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .delete(JsonObject.class);
+
         // Deletes webhook1
         target().path("/user/webhook1").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)